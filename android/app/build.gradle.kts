@@ -42,6 +42,16 @@ android {
         jvmTarget = JavaVersion.VERSION_11.toString()
     }
 
+    // The transfer benchmarks only run on request and write their numbers to
+    // the given file: ./gradlew :app:testDebugUnitTest -Pbench=bench.txt
+    testOptions {
+        unitTests.all { test ->
+            project.findProperty("bench")?.let {
+                test.systemProperty("debrify.bench", project.file(it.toString()).absolutePath)
+            }
+        }
+    }
+
     defaultConfig {
         applicationId = "com.debrify.app"
         minSdk = flutter.minSdkVersion
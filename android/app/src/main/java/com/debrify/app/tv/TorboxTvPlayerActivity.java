@@ -55,7 +55,6 @@ import androidx.media3.common.TrackSelectionOverride;
 import androidx.media3.common.Tracks;
 import androidx.media3.common.text.Cue;
 import androidx.media3.common.util.UnstableApi;
-import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.DecoderReuseEvaluation;
 import androidx.media3.exoplayer.ExoPlayer;
@@ -870,14 +869,20 @@ public class TorboxTvPlayerActivity extends AppCompatActivity {
         }
     }
 
+    // Allocates from the process's MediaBufferPool, under the one budget
+    // every player shares; no back buffer, as before.
     private LoadControl buildLoadControl(long estimatedBitrate) {
         long targetBufferMs = selectTargetBufferMs(estimatedBitrate);
         long minBufferMs = Math.min(targetBufferMs / 2, 7_500L);
         currentTargetBufferMs = targetBufferMs;
-        return new DefaultLoadControl.Builder()
-                .setBufferDurationsMs((int) minBufferMs, (int) targetBufferMs, 1_000, 2_000)
-                .setBackBuffer(0, false)
-                .build();
+        MediaBufferPool pool = MediaBufferPool.Companion.get(this);
+        return pool.new PooledLoadControl(
+                (int) minBufferMs,
+                (int) targetBufferMs,
+                1_000,
+                2_000,
+                pool.getBudgetBytes(),
+                false);
     }
 
     private void maybeRecreatePlayerForBandwidth() {
@@ -5595,6 +5600,7 @@ public class TorboxTvPlayerActivity extends AppCompatActivity {
             player.stop();
             player.release();
             player = null;
+            MediaBufferPool.Companion.get(this).trimIdle();
             offsetRenderersFactory = null;
             syncOverlay = null;
             if (linePickerOverlay != null) {
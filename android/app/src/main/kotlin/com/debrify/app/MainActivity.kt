@@ -465,21 +465,36 @@ class MainActivity : FlutterActivity() {
     }
 
     /** Finished recordings for the hub's Library zone: the recording store's
-     *  `done` entries (which carry channel name + duration) merged with a scan
-     *  of the on-disk destination — MediaStore on Q+ (a no-permission query
-     *  only ever returns OUR rows), a plain dir listing pre-Q (only when the
-     *  legacy grant is held). Scan-only files (tee recordings, entries the old
-     *  TTL pruned) surface with metadata read off the file itself. Call from a
-     *  worker thread — reconcile + scan are IO. */
+     *  `done` entries (which carry channel name + duration) merged with what
+     *  is on disk — the persistent [com.debrify.app.recording
+     *  .RecordingLibraryIndex] on Q+ (a no-permission query only ever returns
+     *  OUR rows), a plain dir listing pre-Q (only when the legacy grant is
+     *  held). Files with no entry (tee recordings, entries the old TTL
+     *  pruned) surface with what their writer or MediaStore knew. Newest
+     *  first, as [LibraryItem]s: sorting needs only the time, so a page
+     *  builds just its own rows. Call from a worker thread — reconcile +
+     *  revalidation are IO. */
     private fun buildRecordingsLibrary(
         ownerProfileId: String,
         includeUnassigned: Boolean,
         includeOtherOwners: Boolean,
-    ): List<Map<String, Any?>> {
+    ): List<LibraryItem> {
+        // The index's MediaStore pass doubles as the existence check for
+        // published entries: only those it no longer lists are asked about
+        // one by one, instead of every entry on every open.
+        val indexed = com.debrify.app.recording.RecordingLibraryIndex.revalidate(this)
         com.debrify.app.recording.RecordingTaskStore
-            .reconcileDeadEntries(this, forceFileCheck = true)
+            .reconcileDeadEntries(this, forceFileCheck = indexed == null)
+        if (indexed != null) {
+            com.debrify.app.recording.RecordingTaskStore
+                .pruneUnlisted(this, indexed.mapTo(HashSet()) { it.id })
+        }
         val entries = com.debrify.app.recording.RecordingTaskStore.all(this)
-        val out = ArrayList<Map<String, Any?>>()
+        val out = ArrayList<LibraryItem>()
+        // Marked by the user, kept by the index for the storage budget.
+        val autoDeleteIds = indexed.orEmpty()
+            .filter { it.autoDelete }
+            .mapTo(HashSet()) { it.id }
 
         // Every uri any entry owns — including another profile's rows and LIVE
         // captures, whose growing file must not be rediscovered as an
@@ -507,10 +522,10 @@ class MainActivity : FlutterActivity() {
             // crash-finalized entry's updatedAt is reconcile time, not the
             // capture's end — those carry an errorMessage marker and report
             // no duration rather than a wild number.
-            val durationMs =
-                if (entry.errorMessage == null) entry.updatedAt - entry.startedAtMs
-                else -1L
-            out.add(
+            out.add(LibraryItem(entry.startedAtMs) {
+                val durationMs =
+                    if (entry.errorMessage == null) entry.updatedAt - entry.startedAtMs
+                    else -1L
                 mapOf(
                     "taskId" to taskId,
                     "uri" to raw,
@@ -531,62 +546,33 @@ class MainActivity : FlutterActivity() {
                     "interrupted" to (entry.errorMessage != null),
                     "interruptedAtMs" to
                         if (entry.errorMessage != null) entry.updatedAt else null,
-                ),
-            )
+                    "autoDelete" to (
+                        runCatching { android.content.ContentUris.parseId(android.net.Uri.parse(raw)) }
+                            .getOrNull()?.let { it in autoDeleteIds } == true
+                    ),
+                )
+            })
         }
 
-        if (includeUnassigned && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            val projection = arrayOf(
-                android.provider.MediaStore.Downloads._ID,
-                android.provider.MediaStore.Downloads.DISPLAY_NAME,
-                android.provider.MediaStore.Downloads.SIZE,
-                android.provider.MediaStore.Downloads.DATE_MODIFIED,
-            )
-            runCatching {
-                contentResolver.query(
-                    android.provider.MediaStore.Downloads.EXTERNAL_CONTENT_URI,
-                    projection,
-                    "${android.provider.MediaStore.Downloads.RELATIVE_PATH} LIKE ?",
-                    arrayOf(
-                        "${com.debrify.app.recording.LiveRecordingService.RELATIVE_PATH}%",
-                    ),
-                    null,
-                )?.use { cursor ->
-                    val idCol = cursor.getColumnIndexOrThrow(
-                        android.provider.MediaStore.Downloads._ID,
-                    )
-                    val nameCol = cursor.getColumnIndexOrThrow(
-                        android.provider.MediaStore.Downloads.DISPLAY_NAME,
-                    )
-                    val sizeCol = cursor.getColumnIndexOrThrow(
-                        android.provider.MediaStore.Downloads.SIZE,
-                    )
-                    val dateCol = cursor.getColumnIndexOrThrow(
-                        android.provider.MediaStore.Downloads.DATE_MODIFIED,
+        if (includeUnassigned && indexed != null) {
+            for (row in indexed) {
+                if (row.id in coveredIds) continue
+                out.add(LibraryItem(row.modifiedMs) {
+                    mapOf(
+                        "taskId" to null,
+                        "uri" to row.uri.toString(),
+                        "name" to row.name,
+                        "channelName" to row.channelName,
+                        "bytes" to row.bytes,
+                        "recordedAtMs" to row.modifiedMs,
+                        "durationMs" to row.durationMs?.takeIf {
+                            it in 1_000L..(12L * 60 * 60 * 1000)
+                        },
+                        "ownerProfileId" to null,
+                        "ownershipState" to "unassigned",
+                        "autoDelete" to row.autoDelete,
                     )
-                    while (cursor.moveToNext()) {
-                        val id = cursor.getLong(idCol)
-                        if (id in coveredIds) continue
-                        val uri = android.content.ContentUris.withAppendedId(
-                            android.provider.MediaStore.Downloads.EXTERNAL_CONTENT_URI,
-                            id,
-                        )
-                        out.add(
-                            mapOf(
-                                "taskId" to null,
-                                "uri" to uri.toString(),
-                                "name" to (cursor.getString(nameCol) ?: "recording.ts"),
-                                "channelName" to null,
-                                "bytes" to cursor.getLong(sizeCol),
-                                // DATE_MODIFIED is in SECONDS.
-                                "recordedAtMs" to cursor.getLong(dateCol) * 1000L,
-                                "durationMs" to null,
-                                "ownerProfileId" to null,
-                                "ownershipState" to "unassigned",
-                            ),
-                        )
-                    }
-                }
+                })
             }
         } else if (includeUnassigned &&
             com.debrify.app.recording.LiveRecordingService.legacyStorageGranted(this)
@@ -597,24 +583,35 @@ class MainActivity : FlutterActivity() {
                 if (!file.isFile || file.absolutePath in coveredPaths) continue
                 val ext = file.extension.lowercase()
                 if (ext !in setOf("ts", "mts", "m2ts", "mkv", "mp4")) continue
-                out.add(
+                val modifiedMs = file.lastModified()
+                out.add(LibraryItem(modifiedMs) {
                     mapOf(
                         "taskId" to null,
                         "uri" to android.net.Uri.fromFile(file).toString(),
                         "name" to file.name,
                         "channelName" to null,
                         "bytes" to file.length(),
-                        "recordedAtMs" to file.lastModified(),
+                        "recordedAtMs" to modifiedMs,
                         "durationMs" to null,
                         "ownerProfileId" to null,
                         "ownershipState" to "unassigned",
-                    ),
-                )
+                    )
+                })
             }
         }
+        out.sortByDescending { it.recordedAtMs }
         return out
     }
 
+    /** One library row: its sort key, and the row itself built on demand. */
+    private class LibraryItem(val recordedAtMs: Long, val describe: () -> Map<String, Any?>)
+
+    /** The last library listing, for the pages after its first: a hub
+     *  scrolling through a large library reconciles and sorts once per
+     *  open (offset 0), not once per page. */
+    private class LibrarySnapshot(val query: List<Any>, val items: List<LibraryItem>)
+    @Volatile private var librarySnapshot: LibrarySnapshot? = null
+
     /** The Dart-owned setting (Settings → Home Page → Native Trailer Surface),
      *  read from the shared_preferences plugin's store. Must be checked here
      *  too: the transparency mode is fixed at activity creation, so flipping
@@ -1356,6 +1353,8 @@ class MainActivity : FlutterActivity() {
 					val resourceAuthRevision = call.argument<Number>("resourceAuthorizationRevision")
 						?.toLong()
 					val treeUri = call.argument<String>("treeUri")
+					val priority = call.argument<Number>("priority")?.toInt()
+					val contentId = call.argument<String>("contentId")
 					@Suppress("UNCHECKED_CAST")
 					val headers = call.argument<HashMap<String, String>>("headers") ?: hashMapOf()
 
@@ -1398,6 +1397,12 @@ class MainActivity : FlutterActivity() {
 						if (!treeUri.isNullOrEmpty()) {
 							putExtra(com.debrify.app.download.MediaStoreDownloadService.EXTRA_TREE_URI, treeUri)
 						}
+						priority?.let {
+							putExtra(com.debrify.app.download.MediaStoreDownloadService.EXTRA_PRIORITY, it)
+						}
+						if (!contentId.isNullOrEmpty()) {
+							putExtra(com.debrify.app.download.MediaStoreDownloadService.EXTRA_CONTENT_ID, contentId)
+						}
 					}
 					try {
 						androidx.core.content.ContextCompat.startForegroundService(this, intent)
@@ -1665,11 +1670,13 @@ class MainActivity : FlutterActivity() {
 					}
 					"queryRecordingsLibrary" -> {
 						// Finished recordings for the Recordings hub. The store's
-						// `done` entries are the index (channel name + duration),
-						// merged with a MediaStore scan of our own rows under the
-						// recordings path — the scan is what surfaces tee-recorded
-						// files and recordings whose entries the old 24h TTL
-						// already pruned. Worker thread: reconcile + scan are IO.
+						// `done` entries (channel name + duration), merged with the
+						// library index of our own rows under the recordings path —
+						// the index is what surfaces tee-recorded files and
+						// recordings whose entries the old 24h TTL already pruned.
+						// Optional offset/limit page the newest-first list: offset 0
+						// reconciles and sorts, later pages slice that listing.
+						// Worker thread: reconcile + revalidation are IO.
 						val active = com.debrify.app.profiles.ProfilePreferenceProjection
 							.activeJobContext(this)
 						val committed = com.debrify.app.profiles.ProfilePreferenceProjection
@@ -1684,13 +1691,21 @@ class MainActivity : FlutterActivity() {
 							(call.argument<Boolean>("includeUnassigned") == true && mayManageProfiles)
 						val includeOtherOwners = !committed ||
 							(call.argument<Boolean>("adminAggregate") == true && mayManageProfiles)
+						val offset = (call.argument<Int>("offset") ?: 0).coerceAtLeast(0)
+						val limit = call.argument<Int>("limit")?.coerceAtLeast(0)
+						val query = listOf(active.profileId, includeUnassigned, includeOtherOwners)
 						Thread {
 							val list = try {
-								buildRecordingsLibrary(
-									active.profileId,
-									includeUnassigned,
-									includeOtherOwners,
-								)
+								val items = librarySnapshot
+									?.takeIf { offset > 0 && it.query == query }?.items
+									?: buildRecordingsLibrary(
+										active.profileId,
+										includeUnassigned,
+										includeOtherOwners,
+									).also { librarySnapshot = LibrarySnapshot(query, it) }
+								val from = offset.coerceAtMost(items.size)
+								val to = if (limit != null) minOf(items.size, from + limit) else items.size
+								items.subList(from, to).map { it.describe() }
 							} catch (e: Exception) { null }
 							runOnUiThread {
 								if (list != null) result.success(list)
@@ -1698,6 +1713,31 @@ class MainActivity : FlutterActivity() {
 							}
 						}.start()
 					}
+					"setRecordingAutoDelete" -> {
+						val uriString = call.argument<String>("uri")
+						val autoDelete = call.argument<Boolean>("autoDelete") ?: false
+						if (uriString.isNullOrEmpty()) {
+							result.error("bad_args", "uri required", null)
+							return@setMethodCallHandler
+						}
+						// Same authority as deleting it: the mark lets the budget do
+						// exactly that later.
+						val indexedEntry = com.debrify.app.recording.RecordingTaskStore
+							.all(this).values.firstOrNull { it.uri == uriString }
+						if (indexedEntry == null && !activeMayManageProfiles()) {
+							result.error("profile_not_authorized", "Unassigned files are Admin-only", null)
+							return@setMethodCallHandler
+						}
+						if (indexedEntry != null && !mayControlOwner(indexedEntry.ownerProfileId)) {
+							result.error("profile_not_authorized", "Recording belongs to another profile", null)
+							return@setMethodCallHandler
+						}
+						Thread {
+							val ok = com.debrify.app.recording.RecordingLibraryIndex
+								.setAutoDelete(this, android.net.Uri.parse(uriString), autoDelete)
+							runOnUiThread { result.success(ok) }
+						}.start()
+					}
 					"deleteRecordingFile" -> {
 						val uriString = call.argument<String>("uri")
 						if (uriString.isNullOrEmpty()) {
@@ -1808,6 +1848,31 @@ class MainActivity : FlutterActivity() {
 							result.error("duplicate", "already scheduled", null)
 							return@setMethodCallHandler
 						}
+						// Against every schedule already pending, at each channel's
+						// learnt bitrate: refuse what can't fit even after the
+						// auto-delete recordings go; warn when it needs them to.
+						val budget = com.debrify.app.recording.RecordingBudget
+							.check(this, url, startMs, endMs)
+						val needText = com.debrify.app.recording.RecordingBudget
+							.describe(this, budget.needBytes)
+						if (!budget.fitsWithReclaim && !force) {
+							result.error(
+								"storage",
+								"Needs about $needText; only " +
+									com.debrify.app.recording.RecordingBudget
+										.describe(this, budget.spareBytes) +
+									" is free after recordings already scheduled",
+								mapOf("needBytes" to budget.needBytes, "spareBytes" to budget.spareBytes),
+							)
+							return@setMethodCallHandler
+						}
+						val storageWarning = when {
+							budget.fits -> null
+							budget.fitsWithReclaim ->
+								"Needs about $needText — older auto-delete recordings " +
+									"will be removed to make room"
+							else -> "Needs about $needText — storage may run out"
+						}
 						val id = "sched-${System.currentTimeMillis()}"
 							com.debrify.app.recording.RecordingScheduleStore.put(
 							this,
@@ -1832,6 +1897,7 @@ class MainActivity : FlutterActivity() {
 							"id" to id,
 							"exact" to com.debrify.app.recording.RecordingAlarmReceiver
 								.exactAlarmsGranted(this),
+							"storageWarning" to storageWarning,
 						))
 					}
 					"cancelScheduledRecording" -> {
@@ -1908,14 +1974,21 @@ class MainActivity : FlutterActivity() {
 							.filter { aggregate || requestedOwner == null || it.ownerProfileId == requestedOwner }
 							.map { e ->
 							val live = com.debrify.app.download.DownloadRegistry.live[e.taskId]
-							val bytes = live?.bytes ?: (e.uri?.let { u ->
+							// A segmented partial is written out of order: its
+							// file size overstates progress, its plan doesn't.
+							val segmented = com.debrify.app.download.SegmentPlan
+								.decode(e.total, e.segments)?.downloaded()
+							val bytes = live?.bytes ?: segmented ?: (e.uri?.let { u ->
 								try {
 									contentResolver.openFileDescriptor(Uri.parse(u), "r")?.use { pfd ->
 										java.io.FileInputStream(pfd.fileDescriptor).use { fis -> fis.channel.size() }
 									} ?: 0L
 								} catch (_: Exception) { 0L }
 							} ?: 0L)
-							val status = if (live != null) "running"
+							// Waiting for a download slot counts as running: the
+							// service owns it and will start it unprompted.
+							val queuePosition = com.debrify.app.download.DownloadRegistry.queued[e.taskId]
+							val status = if (live != null || queuePosition != null) "running"
 								else if (e.status == "running") "paused" else e.status
 							mapOf(
 								"taskId" to e.taskId,
@@ -1933,6 +2006,11 @@ class MainActivity : FlutterActivity() {
 								"connectionResourceId" to e.connectionResourceId,
 								"profileAuthorizationRevision" to e.profileAuthorizationRevision,
 								"resourceAuthorizationRevision" to e.resourceAuthorizationRevision,
+								"priority" to e.priority,
+								"queuePosition" to (queuePosition ?: 0),
+								"rate" to (live?.rateBps ?: 0L),
+								"throttled" to (live != null && com.debrify.app.download.DownloadRegistry.throttled),
+								"digest" to e.digest,
 							)
 						}
 						result.success(list)
@@ -12,7 +12,8 @@ object ChannelBridge {
 	// Terminal/transition events that arrive while the Flutter engine is
 	// detached are buffered and replayed in order when a listener attaches, so
 	// a download that completes in the background is not silently lost.
-	// Progress events are NOT buffered — they are superseded by the next tick
+	// Progress is not an event at all: it goes out as [ProgressFrames]' binary
+	// frames, only while a listener is attached — superseded by the next tick
 	// and by the on-disk truth Dart reconciles against.
 	private const val MAX_BUFFERED = 100
 	private val buffer = ArrayDeque<Map<String, Any?>>()
@@ -20,6 +21,7 @@ object ChannelBridge {
 	fun setSink(sink: EventChannel.EventSink?) {
 		mainHandler.post {
 			eventSink = sink
+			ProgressFrames.setListening(sink != null)
 			if (sink != null) {
 				val pending: List<Map<String, Any?>>
 				synchronized(buffer) {
@@ -39,7 +41,7 @@ object ChannelBridge {
 				val sink = eventSink
 				if (sink != null) {
 					try { sink.success(event) } catch (_: Exception) {}
-				} else if (event["type"] != "progress") {
+				} else {
 					synchronized(buffer) {
 						buffer.addLast(event)
 						while (buffer.size > MAX_BUFFERED) buffer.removeFirst()
@@ -50,4 +52,11 @@ object ChannelBridge {
 			// ignore if no listeners
 		}
 	}
+
+	/** Deliver a progress frame; dropped, never buffered, with no listener.
+	 *  Main thread only. */
+	internal fun emitFrame(frame: ByteArray) {
+		val sink = eventSink ?: return
+		try { sink.success(frame) } catch (_: Exception) {}
+	}
 }
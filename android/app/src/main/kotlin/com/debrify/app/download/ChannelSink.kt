@@ -0,0 +1,89 @@
+package com.debrify.app.download
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Process-wide pool of direct transfer buffers. A direct buffer goes to
+ * FileChannel.write as-is (a heap one is first copied into a temporary
+ * direct buffer by the JDK), and pooling means a retry, a resume or a new
+ * segment connection reuses memory instead of allocating 256 KiB of fresh
+ * heap on a TV box that is also running Flutter.
+ *
+ * Direct memory is only reclaimed when the owning ByteBuffer is collected,
+ * so the pool is capped: buffers returned past [MAX_POOLED] are dropped.
+ */
+internal object DirectBufferPool {
+	const val BUFFER_BYTES = 256 * 1024
+	private const val MAX_POOLED = 8
+
+	private val free = ConcurrentLinkedQueue<ByteBuffer>()
+	private val pooled = AtomicInteger(0)
+
+	fun acquire(): ByteBuffer {
+		val buffer = free.poll()
+		if (buffer != null) {
+			pooled.decrementAndGet()
+			buffer.clear()
+			return buffer
+		}
+		return ByteBuffer.allocateDirect(BUFFER_BYTES)
+	}
+
+	fun release(buffer: ByteBuffer) {
+		if (!buffer.isDirect || buffer.capacity() != BUFFER_BYTES) return
+		if (pooled.incrementAndGet() > MAX_POOLED) {
+			pooled.decrementAndGet()
+			return
+		}
+		free.offer(buffer)
+	}
+}
+
+/**
+ * Positioned writes into a download's FileChannel, with an fsync every
+ * [syncEveryBytes] written (0 = never; the caller syncs at the end). Bounded
+ * checkpoints keep a multi-GB download from piling up gigabytes of dirty
+ * page cache that one power cut — or one giant writeback stall at close —
+ * would otherwise pay for all at once. [onSync] runs on the writing thread
+ * right after each of those periodic fsyncs, for state that may only be
+ * persisted once the bytes it describes are durable.
+ *
+ * Safe to share between a segmented download's workers: positioned writes
+ * don't touch the channel position, and only the unsynced counter is locked.
+ */
+internal class ChannelSink(
+	private val channel: FileChannel,
+	private val syncEveryBytes: Long,
+	private val onSync: (() -> Unit)? = null,
+) {
+	private val lock = Any()
+	private var unsynced = 0L
+
+	/** Write every remaining byte of [buffer] at [position]; returns the count. */
+	fun writeAt(buffer: ByteBuffer, position: Long): Int {
+		val count = buffer.remaining()
+		var at = position
+		while (buffer.hasRemaining()) {
+			at += channel.write(buffer, at)
+		}
+		if (syncEveryBytes > 0L) {
+			val due = synchronized(lock) {
+				unsynced += count
+				(unsynced >= syncEveryBytes).also { if (it) unsynced = 0L }
+			}
+			if (due) {
+				channel.force(false)
+				onSync?.invoke()
+			}
+		}
+		return count
+	}
+
+	fun sync() {
+		synchronized(lock) { unsynced = 0L }
+		channel.force(false)
+	}
+}
@@ -0,0 +1,259 @@
+package com.debrify.app.download
+
+import java.nio.ByteBuffer
+
+/**
+ * CRC-32C (Castagnoli). The platform implementation (API 26+, JDK 9+) is
+ * hardware-accelerated where the CPU has it; older devices get a table-driven
+ * one producing the same values, so a download resumed after an OS upgrade
+ * still verifies.
+ */
+internal abstract class Crc32c {
+	abstract fun update(data: ByteBuffer)
+	abstract fun value(): Int
+
+	companion object {
+		// Reflected polynomial.
+		private const val POLY = 0x82F63B78L
+
+		private val platform: Boolean = try {
+			Class.forName("java.util.zip.CRC32C")
+			true
+		} catch (_: Throwable) {
+			false
+		}
+
+		fun create(): Crc32c = if (platform) Platform() else Portable()
+
+		/**
+		 * CRC of `A || B` from `crc(A)`, `crc(B)` and `B`'s length, without the
+		 * bytes (zlib's crc32_combine, over GF(2) matrices). This is what lets a
+		 * whole-file digest come out of per-chunk checksums with no second read
+		 * of a multi-GB file.
+		 */
+		fun combine(crc1: Int, crc2: Int, len2: Long): Int {
+			if (len2 <= 0L) return crc1
+			val even = LongArray(32)
+			val odd = LongArray(32)
+			odd[0] = POLY
+			var row = 1L
+			for (n in 1 until 32) {
+				odd[n] = row
+				row = row shl 1
+			}
+			square(even, odd) // 2 zero bits
+			square(odd, even) // 4 zero bits
+			var c1 = crc1.toLong() and 0xFFFFFFFFL
+			var len = len2
+			while (true) {
+				square(even, odd)
+				if (len and 1L != 0L) c1 = times(even, c1)
+				len = len shr 1
+				if (len == 0L) break
+				square(odd, even)
+				if (len and 1L != 0L) c1 = times(odd, c1)
+				len = len shr 1
+				if (len == 0L) break
+			}
+			return (c1 xor (crc2.toLong() and 0xFFFFFFFFL)).toInt()
+		}
+
+		private fun times(mat: LongArray, vec: Long): Long {
+			var v = vec
+			var sum = 0L
+			var i = 0
+			while (v != 0L) {
+				if (v and 1L != 0L) sum = sum xor mat[i]
+				v = v ushr 1
+				i++
+			}
+			return sum
+		}
+
+		private fun square(out: LongArray, mat: LongArray) {
+			for (n in 0 until 32) out[n] = times(mat, mat[n])
+		}
+
+		private val table = IntArray(256).also { t ->
+			for (i in 0 until 256) {
+				var c = i.toLong()
+				repeat(8) { c = if (c and 1L != 0L) (c ushr 1) xor POLY else c ushr 1 }
+				t[i] = c.toInt()
+			}
+		}
+	}
+
+	@Suppress("NewApi") // only constructed when the class exists
+	private class Platform : Crc32c() {
+		private val crc = java.util.zip.CRC32C()
+		override fun update(data: ByteBuffer) = crc.update(data)
+		override fun value(): Int = crc.value.toInt()
+	}
+
+	private class Portable : Crc32c() {
+		private var crc = -1
+		override fun update(data: ByteBuffer) {
+			var c = crc
+			while (data.hasRemaining()) {
+				c = table[(c xor data.get().toInt()) and 0xFF] xor (c ushr 8)
+			}
+			crc = c
+		}
+		override fun value(): Int = crc.inv()
+	}
+}
+
+/**
+ * Per-chunk CRC-32C of a download, computed on the write path as bytes land
+ * in the file. A chunk is [CHUNK_BYTES] aligned to offset 0 (the last one
+ * shorter) and is hashed by whoever writes it sequentially from its first
+ * byte — one stream, or one segment worker, since segment splits fall on
+ * chunk boundaries. A chunk first seen mid-way (resumed from an old entry,
+ * rewound past) is never hashed; it just leaves [fileDigest] unavailable.
+ *
+ * Only complete chunks are persisted ([encode]). On resume the service
+ * re-reads just the last of them (per segment, for a segmented download) and
+ * continues from its end, so a torn or silently altered tail is caught for
+ * the price of one chunk read.
+ */
+internal class ChunkChecksums private constructor(
+	private val done: HashMap<Int, Int>,
+) {
+	companion object {
+		const val CHUNK_BYTES = 4L * 1024 * 1024
+		private const val PREFIX = "crc32c:$CHUNK_BYTES:"
+
+		fun empty(): ChunkChecksums = ChunkChecksums(HashMap())
+
+		/** Inverse of [encode]; null for absent or foreign encodings. */
+		fun decode(encoded: String?): ChunkChecksums? {
+			if (encoded == null || !encoded.startsWith(PREFIX)) return null
+			val body = encoded.substring(PREFIX.length)
+			val map = HashMap<Int, Int>()
+			if (body.isNotEmpty()) {
+				for (pair in body.split(',')) {
+					val eq = pair.indexOf('=')
+					if (eq <= 0) return null
+					val index = pair.substring(0, eq).toIntOrNull() ?: return null
+					val crc = pair.substring(eq + 1).toLongOrNull(16) ?: return null
+					if (index < 0) return null
+					map[index] = crc.toInt()
+				}
+			}
+			return ChunkChecksums(map)
+		}
+
+		fun chunkStart(index: Int): Long = index * CHUNK_BYTES
+	}
+
+	private class Rolling(val crc: Crc32c, var length: Long)
+
+	private val open = HashMap<Int, Rolling>()
+
+	/** Hash [data]'s remaining bytes, which were just written at [position].
+	 *  [data] itself is not consumed. */
+	@Synchronized
+	fun record(position: Long, data: ByteBuffer) {
+		val view = data.duplicate()
+		var at = position
+		while (view.hasRemaining()) {
+			val index = (at / CHUNK_BYTES).toInt()
+			val offsetInChunk = at - chunkStart(index)
+			val n = minOf(view.remaining().toLong(), CHUNK_BYTES - offsetInChunk).toInt()
+			val piece = view.duplicate()
+			piece.limit(view.position() + n)
+			view.position(view.position() + n)
+			at += n
+			if (done.containsKey(index)) continue // rewritten identical bytes
+			var rolling = open[index]
+			if (offsetInChunk == 0L) {
+				rolling = Rolling(Crc32c.create(), 0L)
+				open[index] = rolling
+			} else if (rolling == null || rolling.length != offsetInChunk) {
+				// Not a continuation of what we hashed: this chunk can't be known.
+				open.remove(index)
+				continue
+			}
+			rolling.crc.update(piece)
+			rolling.length += n
+			if (rolling.length == CHUNK_BYTES) {
+				done[index] = rolling.crc.value()
+				open.remove(index)
+			}
+		}
+	}
+
+	/** Close the short last chunk once the file's length is known. */
+	@Synchronized
+	fun seal(total: Long) {
+		if (total <= 0L) return
+		val last = ((total - 1) / CHUNK_BYTES).toInt()
+		val rolling = open[last] ?: return
+		if (chunkStart(last) + rolling.length == total) {
+			done[last] = rolling.crc.value()
+			open.remove(last)
+		}
+	}
+
+	/** End of the gap-free hashed run from offset 0, open chunk included. */
+	@Synchronized
+	fun hashedPrefix(): Long {
+		val complete = completeChunks()
+		return chunkStart(complete) + (open[complete]?.length ?: 0L)
+	}
+
+	/** How many chunks from 0 have a checksum, without gaps. */
+	@Synchronized
+	fun completeChunks(): Int {
+		var n = 0
+		while (done.containsKey(n)) n++
+		return n
+	}
+
+	@Synchronized
+	fun crcOf(index: Int): Int? = done[index]
+
+	/**
+	 * The file is about to continue at [offset]: forget every chunk that
+	 * reaches past it. A chunk cut mid-way keeps its rolling state only if
+	 * that state ends exactly at [offset].
+	 */
+	@Synchronized
+	fun rewindTo(offset: Long) {
+		done.keys.removeAll { chunkStart(it) + CHUNK_BYTES > offset }
+		open.entries.removeAll { (index, rolling) -> chunkStart(index) + rolling.length != offset }
+	}
+
+	/**
+	 * Forget the chunks starting in `[from, until)`, which are about to be
+	 * written again — by a segment rolled back past them, say — and would
+	 * otherwise be skipped as already known.
+	 */
+	@Synchronized
+	fun forget(from: Long, until: Long) {
+		done.keys.removeAll { chunkStart(it) in from until until }
+		open.keys.removeAll { chunkStart(it) in from until until }
+	}
+
+	@Synchronized
+	fun encode(): String =
+		PREFIX + done.entries.sortedBy { it.key }
+			.joinToString(",") { "${it.key}=${Integer.toHexString(it.value)}" }
+
+	/**
+	 * `crc32c:xxxxxxxx` of the whole file, combined from the chunk checksums;
+	 * null unless every chunk of `[0, total)` was hashed.
+	 */
+	@Synchronized
+	fun fileDigest(total: Long): String? {
+		if (total <= 0L) return null
+		val chunks = ((total - 1) / CHUNK_BYTES).toInt() + 1
+		var crc = 0
+		for (i in 0 until chunks) {
+			val c = done[i] ?: return null
+			val len = minOf(CHUNK_BYTES, total - chunkStart(i))
+			crc = if (i == 0) c else Crc32c.combine(crc, c, len)
+		}
+		return "crc32c:" + String.format("%08x", crc)
+	}
+}
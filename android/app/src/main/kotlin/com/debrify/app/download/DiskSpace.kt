@@ -0,0 +1,123 @@
+package com.debrify.app.download
+
+import android.system.ErrnoException
+import android.system.Os
+import android.system.OsConstants
+import java.io.FileDescriptor
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Up-front space for long transfers (downloads and live recordings).
+ *
+ * A file that grows a few hundred KiB per write fragments badly on cheap
+ * flash, and running out of space surfaces hours into the transfer. A
+ * transfer that knows how large it will get [reserve]s the blocks when it
+ * starts. Before starting, it checks the volume against the bytes every other
+ * running or queued transfer still [expect]s to write ([admits]). Free space
+ * only counts when nobody has already claimed it.
+ *
+ * Everything here degrades to "no opinion": a descriptor that can't be
+ * measured or preallocated (a SAF provider serving a pipe or a socket, a
+ * filesystem without fallocate) admits and reserves nothing, and the transfer
+ * runs as it did before.
+ */
+object DiskSpace {
+	/** Left free on top of every admission, for the rest of the system. */
+	const val HEADROOM_BYTES = 200L * 1024 * 1024
+
+	// Bytes each transfer still has to write beyond what it has reserved,
+	// keyed "download:<id>" / "recording:<id>".
+	private val expected = ConcurrentHashMap<String, Long>()
+
+	/** Bytes an unprivileged writer may still use on [fd]'s volume; -1 when unknown. */
+	fun available(fd: FileDescriptor): Long =
+		try {
+			val stat = Os.fstatvfs(fd)
+			stat.f_bavail * stat.f_frsize
+		} catch (_: Exception) {
+			-1L
+		}
+
+	/** [key] will write [bytes] more that are not reserved yet. */
+	fun expect(key: String, bytes: Long) {
+		if (bytes > 0L) expected[key] = bytes else expected.remove(key)
+	}
+
+	fun release(key: String) {
+		expected.remove(key)
+	}
+
+	/** Bytes every transfer but [key] still expects to write. */
+	fun expectedByOthers(key: String): Long =
+		expected.entries.sumOf { if (it.key == key) 0L else it.value }
+
+	/**
+	 * Whether [need] more bytes fit on [fd]'s volume after every other
+	 * transfer's expectation and [HEADROOM_BYTES]. True when the volume can't
+	 * be measured.
+	 */
+	fun admits(fd: FileDescriptor, key: String, need: Long): Boolean {
+		val free = available(fd)
+		if (free < 0L) return true
+		return free - expectedByOthers(key) - HEADROOM_BYTES >= need
+	}
+
+	/**
+	 * Allocate `[offset, offset + length)` of [fd]'s file. Extends the file
+	 * to cover the range, like a write would, so callers that take progress
+	 * from the file size must not use it. False when the descriptor can't
+	 * preallocate.
+	 *
+	 * @throws IOException when the volume is out of space (or quota).
+	 */
+	fun reserve(fd: FileDescriptor, offset: Long, length: Long): Boolean {
+		if (length <= 0L) return true
+		return try {
+			Os.posix_fallocate(fd, offset, length)
+			true
+		} catch (e: ErrnoException) {
+			if (e.errno == OsConstants.ENOSPC || e.errno == OsConstants.EDQUOT) {
+				throw IOException("not enough free storage", e)
+			}
+			// EOPNOTSUPP, EINVAL, ESPIPE, ENODEV: not a preallocatable file.
+			false
+		}
+	}
+
+	/**
+	 * Cut a reserved-but-never-written tail — the zeros past the last byte a
+	 * dead process wrote — off [fd]'s file and return the new size, or -1
+	 * when the file can't be read. Stops at the first non-zero byte from the
+	 * end, so a file without such a tail costs a single block read.
+	 */
+	fun trimZeroTail(fd: FileDescriptor): Long {
+		return try {
+			val size = Os.fstat(fd).st_size
+			val block = ByteArray(1024 * 1024)
+			var end = size
+			scan@ while (end > 0L) {
+				val start = maxOf(0L, end - block.size)
+				val count = (end - start).toInt()
+				var read = 0
+				while (read < count) {
+					val n = Os.pread(fd, block, read, count - read, start + read)
+					// Short file under us: leave it as it is.
+					if (n <= 0) return size
+					read += n
+				}
+				for (i in count - 1 downTo 0) {
+					if (block[i] != 0.toByte()) {
+						end = start + i + 1
+						break@scan
+					}
+				}
+				end = start
+			}
+			if (end < size) Os.ftruncate(fd, end)
+			end
+		} catch (_: Exception) {
+			-1L
+		}
+	}
+}
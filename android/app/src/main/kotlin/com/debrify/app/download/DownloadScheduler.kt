@@ -0,0 +1,180 @@
+package com.debrify.app.download
+
+/**
+ * Admission control for the download service: at most [maxConcurrent] tasks
+ * hold a worker at once, the rest wait in priority order (higher first, FIFO
+ * among equals). Queued tasks cost nothing but a map entry — no thread, no
+ * connection, no file descriptor.
+ *
+ * Slots are counted per task, not per thread. A RESUME racing the tail of
+ * the task's previous worker may briefly run two threads for one task (the
+ * service's `running` claim lets only one of them download); both are
+ * admitted under the one slot, and the slot frees when the last one exits.
+ *
+ * Start callbacks always run outside the lock: they spawn threads and post
+ * notifications, and must never be able to re-enter a held monitor.
+ */
+internal class DownloadQueue(maxConcurrent: Int) {
+	private class Waiting(
+		val taskId: String,
+		var priority: Int,
+		val seq: Long,
+		val start: () -> Unit,
+	)
+
+	private val admitted = HashMap<String, Int>()
+	private val waiting = ArrayList<Waiting>()
+	private var seq = 0L
+	private var max = maxConcurrent.coerceAtLeast(1)
+
+	/**
+	 * Admit [taskId] now or queue it. Returns 0 when admitted (the callback has
+	 * run), else the 1-based queue position. Re-submitting a queued task only
+	 * updates its priority; re-submitting an admitted one starts it again under
+	 * the same slot.
+	 */
+	fun submit(taskId: String, priority: Int, start: () -> Unit): Int {
+		val toStart = ArrayList<() -> Unit>()
+		val position: Int
+		synchronized(this) {
+			val slots = admitted[taskId]
+			if (slots != null) {
+				admitted[taskId] = slots + 1
+				toStart.add(start)
+				position = 0
+			} else {
+				val queued = waiting.firstOrNull { it.taskId == taskId }
+				if (queued != null) {
+					queued.priority = priority
+				} else {
+					waiting.add(Waiting(taskId, priority, seq++, start))
+				}
+				reorder()
+				drainLocked(toStart)
+				position = positionLocked(taskId)
+			}
+		}
+		toStart.forEach { it() }
+		return position
+	}
+
+	/** A worker of [taskId] exited; frees the slot when it was the last one. */
+	fun finished(taskId: String) {
+		val toStart = ArrayList<() -> Unit>()
+		synchronized(this) {
+			val slots = admitted[taskId] ?: return
+			if (slots > 1) admitted[taskId] = slots - 1 else admitted.remove(taskId)
+			drainLocked(toStart)
+		}
+		toStart.forEach { it() }
+	}
+
+	/** Drop a queued (not admitted) task — paused or canceled while waiting. */
+	@Synchronized
+	fun withdraw(taskId: String): Boolean = waiting.removeAll { it.taskId == taskId }
+
+	fun setMaxConcurrent(value: Int) {
+		val toStart = ArrayList<() -> Unit>()
+		synchronized(this) {
+			max = value.coerceAtLeast(1)
+			drainLocked(toStart)
+		}
+		toStart.forEach { it() }
+	}
+
+	/** 1-based positions of every queued task. Admitted tasks are absent. */
+	@Synchronized
+	fun positions(): Map<String, Int> =
+		waiting.withIndex().associate { (i, w) -> w.taskId to i + 1 }
+
+	private fun reorder() {
+		waiting.sortWith(compareByDescending<Waiting> { it.priority }.thenBy { it.seq })
+	}
+
+	private fun drainLocked(out: MutableList<() -> Unit>) {
+		while (admitted.size < max && waiting.isNotEmpty()) {
+			val next = waiting.removeAt(0)
+			admitted[next.taskId] = 1
+			out.add(next.start)
+		}
+	}
+
+	private fun positionLocked(taskId: String): Int {
+		if (admitted.containsKey(taskId)) return 0
+		val i = waiting.indexOfFirst { it.taskId == taskId }
+		return if (i >= 0) i + 1 else -1
+	}
+}
+
+/**
+ * One byte budget shared by every connection of every download. Virtual-time
+ * pacing: each read reserves `bytes / rate` seconds after the previous
+ * reservation, and its caller waits until its slot comes up — so N workers
+ * split the rate between them with no per-worker bookkeeping. [BURST_NANOS]
+ * of idle credit may accumulate, enough to absorb scheduling jitter without
+ * letting an idle minute turn into a line-saturating spike.
+ *
+ * [rate] is re-read on every call (bytes/second, <= 0 for unlimited), so a
+ * limit change — playback starting on the TV — takes effect on the very
+ * next read.
+ */
+internal class TokenBucket(
+	private val rate: () -> Long,
+	private val clock: () -> Long = System::nanoTime,
+) {
+	companion object {
+		private const val BURST_NANOS = 250_000_000L
+		private const val SLICE_MS = 100L
+	}
+
+	private var nextFree = Long.MIN_VALUE
+
+	/**
+	 * Account for [bytes] just read and wait for their slot. Returns false if
+	 * [abort] turned true while waiting (pause/cancel must not sit out the
+	 * throttle); the bytes are then still in hand and the caller decides.
+	 */
+	fun acquire(bytes: Int, abort: () -> Boolean): Boolean {
+		val readyAt: Long
+		synchronized(this) {
+			val r = rate()
+			val now = clock()
+			if (r <= 0L) {
+				nextFree = now
+				return true
+			}
+			readyAt = maxOf(nextFree, now - BURST_NANOS)
+			nextFree = readyAt + bytes.toLong() * 1_000_000_000L / r
+		}
+		while (true) {
+			val remainingNanos = readyAt - clock()
+			if (remainingNanos <= 0L) return true
+			if (abort()) return false
+			// Lifting the limit releases waiters immediately.
+			if (rate() <= 0L) return true
+			try {
+				Thread.sleep(minOf(SLICE_MS, remainingNanos / 1_000_000L + 1))
+			} catch (_: InterruptedException) {
+				return false
+			}
+		}
+	}
+}
+
+/**
+ * Who is streaming over the network right now. The TV player flips its flag
+ * as playback starts and stops on a remote source; the download service
+ * throttles to the playback limit while any flag is set, so a queued season
+ * can't starve the episode being watched on the same link.
+ */
+object PlaybackContention {
+	private val active = java.util.concurrent.ConcurrentHashMap.newKeySet<Int>()
+
+	val isActive: Boolean get() = active.isNotEmpty()
+
+	/** [owner] is keyed by identity; call with false when it goes away. */
+	fun set(owner: Any, streaming: Boolean) {
+		val key = System.identityHashCode(owner)
+		if (streaming) active.add(key) else active.remove(key)
+	}
+}
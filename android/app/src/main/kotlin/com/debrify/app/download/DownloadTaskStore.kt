@@ -13,6 +13,19 @@ import com.debrify.app.security.DeviceSecretCipherPlugin
  * size is the resume offset's single source of truth, re-read on every
  * (re)start. Entries are written only on state transitions (created,
  * validators captured, paused, failed) and removed on complete/cancel.
+ *
+ * The exception is a segmented download: its file is written out of order, so
+ * the on-disk size says nothing about which bytes exist. [segments] carries a
+ * [SegmentPlan] encoding instead, persisted only at checkpoints taken AFTER an
+ * fsync — it may lag the disk, never lead it.
+ *
+ * [checksums] follows the same rule: the CRC-32C of every chunk known to be
+ * on disk ([ChunkChecksums]). [digest] is the whole-file CRC handed to
+ * Flutter with the completion, kept on the done record.
+ *
+ * Rows are kept in a [KeyedJournal] (one appended record per write, keyed
+ * reads from memory) rather than one prefs blob rewritten on every
+ * checkpoint; the blob is imported on first use.
  */
 data class TaskEntry(
 	val taskId: String,
@@ -35,17 +48,35 @@ data class TaskEntry(
 	val profileAuthorizationRevision: Long = 1L,
 	val resourceAuthorizationRevision: Long? = null,
 	val sealedExecutionPayload: String? = null,
+	val segments: String? = null,
+	// Scheduler order: higher starts first when the concurrency cap queues.
+	val priority: Int = 0,
+	val checksums: String? = null,
+	val digest: String? = null,
+	val contentId: String? = null,
 )
 
 object DownloadTaskStore {
 	private const val PREFS = "debrify_download_service"
 	private const val KEY = "tasks_v1"
+	private const val JOURNAL = "download_tasks"
 	private val lock = com.debrify.app.profiles.NativeProfileMigrationGate.lock
 
-	fun hasStoredState(context: Context): Boolean =
-		!prefs(context).getString(KEY, null).isNullOrBlank()
+	// Decoded rows, each valid while its stored row is unchanged: a sealed
+	// payload is opened once per write, not on every query.
+	private val decoded = HashMap<String, Pair<String, TaskEntry>>()
 
-	fun get(context: Context, taskId: String): TaskEntry? = all(context)[taskId]
+	fun hasStoredState(context: Context): Boolean {
+		val journal = journal(context)
+		return !journal.isEmpty() || journal.legacyUnreadable || !journal.isReadable()
+	}
+
+	fun get(context: Context, taskId: String): TaskEntry? {
+		synchronized(lock) {
+			val row = journal(context).get(taskId) ?: return null
+			return decode(taskId, row)
+		}
+	}
 
 	fun put(context: Context, entry: TaskEntry) {
 		synchronized(lock) {
@@ -63,7 +94,6 @@ object DownloadTaskStore {
 					allowRevisionDrift = true,
 				)
 			) throw SecurityException("Download profile authorization changed")
-			val map = loadJson(context)
 			val secured = if (!committed) {
 				// Profile flags off must retain the pre-profile plaintext format and
 				// must not gain an Android Keystore availability dependency.
@@ -71,35 +101,24 @@ object DownloadTaskStore {
 			} else if (entry.sealedExecutionPayload == null) {
 				entry.copy(sealedExecutionPayload = sealExecutionPayload(entry))
 			} else entry
-			map.put(entry.taskId, toJson(secured))
-			save(context, map)
+			journal(context).put(entry.taskId, toJson(secured).toString())
 		}
 	}
 
 	fun remove(context: Context, taskId: String) {
 		synchronized(lock) {
-			val map = loadJson(context)
-			if (map.has(taskId)) {
-				map.remove(taskId)
-				save(context, map)
-			}
+			journal(context).remove(taskId)
+			decoded.remove(taskId)
 		}
 	}
 
 	fun all(context: Context): Map<String, TaskEntry> {
 		synchronized(lock) {
-			val map = loadJson(context)
+			val rows = journal(context).snapshot()
+			decoded.keys.retainAll(rows.keys)
 			val out = HashMap<String, TaskEntry>()
-			map.keys().forEach { id ->
-				val source = runCatching { map.getJSONObject(id) }.getOrNull() ?: return@forEach
-				out[id] = try {
-					fromJson(id, source)
-				} catch (_: Exception) {
-					// Keep parseable task metadata visible and non-runnable when its
-					// sealed execution data cannot be opened. Silent disappearance is
-					// indistinguishable from data loss in the downloads UI.
-					fromJsonWithoutExecution(id, source)
-				}
+			for ((id, row) in rows) {
+				out[id] = decode(id, row) ?: continue
 			}
 			return out
 		}
@@ -107,6 +126,10 @@ object DownloadTaskStore {
 
 	fun clear(context: Context) {
 		synchronized(lock) {
+			val journal = journal(context)
+			journal.clear()
+			journal.legacyUnreadable = false
+			decoded.clear()
 			prefs(context).edit().remove(KEY).apply()
 		}
 	}
@@ -119,12 +142,12 @@ object DownloadTaskStore {
 			// one bad task cannot break the UI; migration instead parses every row
 			// before replacing anything, otherwise that isolation would silently
 			// turn corruption into deletion.
-			val source = loadJsonStrict(context)
+			val source = loadStrict(context)
 			val entries = ArrayList<Pair<String, TaskEntry>>()
-			source.keys().forEach { taskId ->
-				entries.add(taskId to fromJson(taskId, source.getJSONObject(taskId)))
+			for ((taskId, row) in source) {
+				entries.add(taskId to fromJson(taskId, JSONObject(row)))
 			}
-			val migrated = JSONObject()
+			val migrated = LinkedHashMap<String, String>()
 			for ((taskId, entry) in entries) {
 				val rebound = entry.copy(
 					ownerProfileId = ownerProfileId,
@@ -132,7 +155,7 @@ object DownloadTaskStore {
 					sealedExecutionPayload = null,
 				)
 				val secured = rebound.copy(sealedExecutionPayload = sealExecutionPayload(rebound))
-				migrated.put(taskId, toJson(secured))
+				migrated[taskId] = toJson(secured).toString()
 			}
 			saveDurably(context, migrated)
 		}
@@ -141,24 +164,33 @@ object DownloadTaskStore {
 	private fun prefs(context: Context) =
 		context.applicationContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
 
-	private fun loadJson(context: Context): JSONObject {
+	private fun journal(context: Context) = KeyedJournal.open(context, JOURNAL, PREFS, KEY)
+
+	private fun decode(taskId: String, row: String): TaskEntry? {
+		decoded[taskId]?.let { (cachedRow, entry) -> if (cachedRow == row) return entry }
+		val source = runCatching { JSONObject(row) }.getOrNull() ?: return null
 		return try {
-			JSONObject(prefs(context).getString(KEY, null) ?: "{}")
+			fromJson(taskId, source).also { decoded[taskId] = row to it }
 		} catch (_: Exception) {
-			JSONObject()
+			// Keep parseable task metadata visible and non-runnable when its
+			// sealed execution data cannot be opened. Silent disappearance is
+			// indistinguishable from data loss in the downloads UI. Not cached:
+			// the keystore may answer on the next query.
+			fromJsonWithoutExecution(taskId, source)
 		}
 	}
 
-	private fun loadJsonStrict(context: Context): JSONObject =
-		JSONObject(prefs(context).getString(KEY, null) ?: "{}")
-
-	private fun save(context: Context, map: JSONObject) {
-		prefs(context).edit().putString(KEY, map.toString()).apply()
+	private fun loadStrict(context: Context): Map<String, String> {
+		val journal = journal(context)
+		if (journal.legacyUnreadable || !journal.isReadable()) throw IllegalStateException("Stored download tasks are unreadable")
+		return journal.snapshot()
 	}
 
-	private fun saveDurably(context: Context, map: JSONObject) {
-		if (!prefs(context).edit().putString(KEY, map.toString()).commit()) {
-			throw IllegalStateException("Could not commit migrated download tasks")
+	private fun saveDurably(context: Context, rows: Map<String, String>) {
+		try {
+			journal(context).replaceAll(rows)
+		} catch (e: java.io.IOException) {
+			throw IllegalStateException("Could not commit migrated download tasks", e)
 		}
 	}
 
@@ -189,6 +221,11 @@ object DownloadTaskStore {
 		e.connectionResourceId?.let { put("connectionResourceId", it) }
 		put("profileAuthorizationRevision", e.profileAuthorizationRevision)
 		e.resourceAuthorizationRevision?.let { put("resourceAuthorizationRevision", it) }
+		e.segments?.let { put("segments", it) }
+		put("priority", e.priority)
+		e.checksums?.let { put("checksums", it) }
+		e.digest?.let { put("digest", it) }
+		e.contentId?.let { put("contentId", it) }
 	}
 
 	// Belt-and-braces against entries written before the omit-nulls rule.
@@ -231,6 +268,11 @@ object DownloadTaskStore {
 			resourceAuthorizationRevision = if (o.has("resourceAuthorizationRevision"))
 				o.optLong("resourceAuthorizationRevision") else null,
 			sealedExecutionPayload = sealed,
+			segments = optNullable(o, "segments"),
+			priority = o.optInt("priority", 0),
+			checksums = optNullable(o, "checksums"),
+			digest = optNullable(o, "digest"),
+			contentId = optNullable(o, "contentId"),
 		)
 	}
 
@@ -259,6 +301,11 @@ object DownloadTaskStore {
 			resourceAuthorizationRevision = if (o.has("resourceAuthorizationRevision"))
 				o.optLong("resourceAuthorizationRevision") else null,
 			sealedExecutionPayload = optNullable(o, "sealedExecutionPayload"),
+			segments = optNullable(o, "segments"),
+			priority = o.optInt("priority", 0),
+			checksums = optNullable(o, "checksums"),
+			digest = optNullable(o, "digest"),
+			contentId = optNullable(o, "contentId"),
 		)
 	}
 
@@ -288,7 +335,15 @@ object DownloadRegistry {
 	class Live(
 		@Volatile var bytes: Long,
 		@Volatile var total: Long,
+		@Volatile var rateBps: Long = 0L,
+		val ownerProfileId: String = "legacy-admin-v1",
 	)
 
 	val live = java.util.concurrent.ConcurrentHashMap<String, Live>()
+
+	// taskId -> 1-based position of tasks waiting for a download slot.
+	val queued = java.util.concurrent.ConcurrentHashMap<String, Int>()
+
+	// Whether running downloads are held to the playback limit right now.
+	@Volatile var throttled: Boolean = false
 }
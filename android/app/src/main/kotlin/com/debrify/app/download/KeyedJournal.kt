@@ -0,0 +1,331 @@
+package com.debrify.app.download
+
+import android.content.Context
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+import org.json.JSONObject
+
+/**
+ * Crash-safe keyed string store behind the native task stores
+ * ([DownloadTaskStore], RecordingTaskStore, RecordingScheduleStore). Rows live
+ * in an in-memory index; every put/remove appends ONE record to the journal
+ * file instead of rewriting the whole map, so a progress checkpoint costs the
+ * size of its own row however many tasks exist.
+ *
+ * Record layout (big endian):
+ *
+ *     int32 length        of the payload
+ *     int32 crc32         of the payload
+ *     payload             int8 op, int32 key length, UTF-8 key,
+ *                         UTF-8 value (rest; PUT only)
+ *
+ * Appends are not fsynced — the same durability as the SharedPreferences
+ * apply() they replace. A record torn by process or power death fails its
+ * length or CRC check on load and is cut off with everything after it; the
+ * earlier rows are intact. When dead records (overwritten or removed rows)
+ * outnumber live ones the file is compacted: rewritten to a temp file,
+ * fsynced and renamed over the journal. [replaceAll] takes the same path, so
+ * it returns only once the new contents are on disk.
+ *
+ * A journal that exists but can't be read fails closed: nothing rewrites it
+ * until a later read succeeds, since a rewrite from the empty index would
+ * wipe every row. Writes meanwhile are kept in memory and replayed over the
+ * file's rows once it reads; [isReadable] retries, and strict callers must
+ * fail while it is false.
+ *
+ * Callers serialize on their own lock; the methods are synchronized anyway so
+ * a stray caller can't interleave two appends.
+ */
+internal class KeyedJournal(private val file: File) {
+	companion object {
+		private const val DIR = "native_stores"
+		private const val OP_PUT: Byte = 1
+		private const val OP_REMOVE: Byte = 2
+		private const val HEADER_BYTES = 8
+		// A row is a few KB at most; anything larger is a corrupt length.
+		private const val MAX_RECORD_BYTES = 16 * 1024 * 1024
+		private const val MIN_DEAD_TO_COMPACT = 64
+
+		private val opened = HashMap<String, KeyedJournal>()
+
+		/**
+		 * The process-wide journal [name], importing the pre-journal
+		 * SharedPreferences blob (`{key: row, ...}` under [legacyPrefs] /
+		 * [legacyKey]) on first open. The blob is removed only after its rows
+		 * are durably in the journal; a blob that doesn't parse is left where
+		 * it is and reported through [legacyUnreadable]. Journals with no
+		 * pre-journal history pass null for both.
+		 */
+		fun open(context: Context, name: String, legacyPrefs: String?, legacyKey: String?): KeyedJournal =
+			synchronized(opened) {
+				opened.getOrPut(name) {
+					val app = context.applicationContext
+					val journal = KeyedJournal(File(File(app.filesDir, DIR), "$name.journal"))
+					if (legacyPrefs == null || legacyKey == null) return@getOrPut journal
+					val prefs = app.getSharedPreferences(legacyPrefs, Context.MODE_PRIVATE)
+					val legacy = prefs.getString(legacyKey, null)
+					if (!legacy.isNullOrBlank()) {
+						val parsed = try {
+							JSONObject(legacy)
+						} catch (_: Exception) {
+							null
+						}
+						if (parsed == null) {
+							journal.legacyUnreadable = true
+						} else {
+							val rows = LinkedHashMap<String, String>()
+							parsed.keys().forEach { key -> rows[key] = parsed.get(key).toString() }
+							// Rows already journaled are newer: an earlier import
+							// died between the rewrite and the blob's removal.
+							rows.putAll(journal.snapshot())
+							journal.onDurable = { prefs.edit().remove(legacyKey).commit() }
+							try {
+								journal.replaceAll(rows)
+							} catch (_: IOException) {
+								// Rows are served from memory; the blob goes
+								// with the first rewrite that does succeed.
+							}
+						}
+					}
+					journal
+				}
+			}
+	}
+
+	private val index = LinkedHashMap<String, String>()
+	private var records = 0
+	private var out: FileOutputStream? = null
+	// An append failed part-way: the tail may hold a torn record, so the next
+	// write rewrites the file from the index instead of appending after it.
+	private var needsRewrite = false
+	// Runs once, after the next successful compaction.
+	private var onDurable: (() -> Unit)? = null
+	// The file couldn't be read; [unapplied] holds the writes made since
+	// (null = removed), in order, for [recover] to replay.
+	private var unreadable = false
+	private val unapplied = LinkedHashMap<String, String?>()
+
+	/** True while an unparseable pre-journal blob is still in prefs. Lenient
+	 *  reads see an empty store, as they did before; strict ones must fail. */
+	@Volatile
+	var legacyUnreadable = false
+
+	init {
+		unreadable = !load()
+	}
+
+	@Synchronized
+	fun get(key: String): String? = index[key]
+
+	@Synchronized
+	fun isEmpty(): Boolean = index.isEmpty()
+
+	/** Copy of every row, in first-written order. */
+	@Synchronized
+	fun snapshot(): Map<String, String> = LinkedHashMap(index)
+
+	/** False while the journal file exists but can't be read (retried on
+	 *  each call); the index then holds only this session's writes. */
+	@Synchronized
+	fun isReadable(): Boolean = recover()
+
+	@Synchronized
+	fun put(key: String, value: String) {
+		if (index[key] == value) return
+		index[key] = value
+		write(OP_PUT, key, value)
+	}
+
+	@Synchronized
+	fun remove(key: String) {
+		// Unreadable, the row may be in the file without being in memory.
+		if (index.remove(key) == null && !unreadable) return
+		write(OP_REMOVE, key, null)
+	}
+
+	/** Replace every row and return once the result is durable. Throws while
+	 *  the journal is unreadable: its rows may be ones [rows] was built
+	 *  without. */
+	@Synchronized
+	fun replaceAll(rows: Map<String, String>) {
+		if (!recover()) throw IOException("${file.name} is unreadable")
+		index.clear()
+		index.putAll(rows)
+		compact()
+	}
+
+	@Synchronized
+	fun clear() {
+		index.clear()
+		closeOut()
+		file.delete()
+		records = 0
+		needsRewrite = false
+		unreadable = false
+		unapplied.clear()
+	}
+
+	private fun write(op: Byte, key: String, value: String?) {
+		if (unreadable) {
+			unapplied.remove(key)
+			unapplied[key] = value
+			recover()
+			return
+		}
+		append(op, key, value)
+	}
+
+	// Re-reads a journal the last load couldn't and replays the writes made
+	// since over its rows. False while it still can't be read; the file is
+	// left untouched.
+	private fun recover(): Boolean {
+		if (!unreadable) return true
+		val kept = LinkedHashMap(index)
+		index.clear()
+		records = 0
+		if (!load()) {
+			index.putAll(kept)
+			return false
+		}
+		unreadable = false
+		if (unapplied.isEmpty()) return true
+		for ((key, value) in unapplied) {
+			if (value == null) index.remove(key) else index[key] = value
+		}
+		unapplied.clear()
+		try {
+			compact()
+		} catch (_: IOException) {
+			// needsRewrite is set; the index is whole now, so the next write
+			// may rewrite from it.
+		}
+		return true
+	}
+
+	private fun append(op: Byte, key: String, value: String?) {
+		if (needsRewrite) {
+			try {
+				compact()
+			} catch (_: IOException) {
+				// Still dirty; the next write tries again.
+			}
+			return
+		}
+		try {
+			val stream = out ?: FileOutputStream(file, true).also { out = it }
+			// One write per record: a crash tears at most this record.
+			stream.write(encode(op, key, value))
+			records++
+		} catch (_: IOException) {
+			closeOut()
+			needsRewrite = true
+			return
+		}
+		val dead = records - index.size
+		if (dead >= MIN_DEAD_TO_COMPACT && dead > index.size) {
+			try {
+				compact()
+			} catch (_: IOException) {
+				// The appended journal is still valid; compact on a later write.
+			}
+		}
+	}
+
+	private fun compact() {
+		closeOut()
+		file.parentFile?.mkdirs()
+		val tmp = File(file.path + ".tmp")
+		FileOutputStream(tmp).use { stream ->
+			for ((key, value) in index) stream.write(encode(OP_PUT, key, value))
+			stream.fd.sync()
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete()
+			needsRewrite = true
+			throw IOException("Could not replace ${file.name}")
+		}
+		records = index.size
+		needsRewrite = false
+		onDurable?.invoke()
+		onDurable = null
+	}
+
+	private fun closeOut() {
+		try {
+			out?.close()
+		} catch (_: IOException) {
+		}
+		out = null
+	}
+
+	private fun encode(op: Byte, key: String, value: String?): ByteArray {
+		val keyBytes = key.toByteArray(Charsets.UTF_8)
+		val valueBytes = value?.toByteArray(Charsets.UTF_8) ?: ByteArray(0)
+		val payloadSize = 1 + 4 + keyBytes.size + valueBytes.size
+		val record = ByteBuffer.allocate(HEADER_BYTES + payloadSize)
+		record.position(HEADER_BYTES)
+		record.put(op)
+		record.putInt(keyBytes.size)
+		record.put(keyBytes)
+		record.put(valueBytes)
+		val crc = CRC32()
+		crc.update(record.array(), HEADER_BYTES, payloadSize)
+		record.putInt(0, payloadSize)
+		record.putInt(4, crc.value.toInt())
+		return record.array()
+	}
+
+	// False when the file exists but couldn't be read; the index is then
+	// untouched.
+	private fun load(): Boolean {
+		// A leftover temp file is a compaction that never reached its rename;
+		// the journal it was replacing is still whole.
+		File(file.path + ".tmp").delete()
+		if (!file.exists()) return true
+		val data = try {
+			file.readBytes()
+		} catch (_: IOException) {
+			return false
+		}
+		val buffer = ByteBuffer.wrap(data)
+		var good = 0
+		while (buffer.remaining() >= HEADER_BYTES) {
+			val length = buffer.int
+			val crc = buffer.int
+			if (length < 5 || length > MAX_RECORD_BYTES || length > buffer.remaining()) break
+			val start = buffer.position()
+			val check = CRC32()
+			check.update(data, start, length)
+			if (check.value.toInt() != crc) break
+			val op = data[start]
+			val keyLength = ByteBuffer.wrap(data, start + 1, 4).int
+			if (keyLength < 0 || keyLength > length - 5) break
+			val key = String(data, start + 5, keyLength, Charsets.UTF_8)
+			when (op) {
+				OP_PUT -> index[key] = String(
+					data,
+					start + 5 + keyLength,
+					length - 5 - keyLength,
+					Charsets.UTF_8,
+				)
+				OP_REMOVE -> index.remove(key)
+				else -> break
+			}
+			buffer.position(start + length)
+			records++
+			good = buffer.position()
+		}
+		if (good < data.size) {
+			try {
+				RandomAccessFile(file, "rw").use { it.setLength(good.toLong()) }
+			} catch (_: IOException) {
+				needsRewrite = true
+			}
+		}
+		return true
+	}
+}
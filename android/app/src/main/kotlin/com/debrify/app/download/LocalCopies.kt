@@ -0,0 +1,158 @@
+package com.debrify.app.download
+
+import android.content.Context
+import android.net.Uri
+import java.net.URI
+import org.json.JSONObject
+
+/**
+ * Finished downloads the player can play instead of the network. Completion
+ * hand-off rows in [DownloadTaskStore] are forgotten once Flutter reconciles
+ * them, so completed copies are indexed here on their own.
+ *
+ * A copy is found two ways:
+ *  - by its source link, normalized ([normalizeUrl]) so a re-signed debrid
+ *    link for the same file still matches;
+ *  - by content identity ([contentId]) when the download was started with
+ *    one, which also matches a stream resolved to a different host.
+ *
+ * Rows are checked against the file on every lookup — a copy deleted or
+ * truncated outside the app is dropped, never played — and are keyed by the
+ * profile that downloaded them ([keys]), so two profiles with the same title
+ * each keep their own copy and only ever see it.
+ */
+object LocalCopies {
+	private const val JOURNAL = "local_copies"
+	private const val URL_PREFIX = "url:"
+	private const val CONTENT_PREFIX = "content:"
+	private val lock = com.debrify.app.profiles.NativeProfileMigrationGate.lock
+
+	// Query parameters that sign or expire a link rather than name the file.
+	private val VOLATILE_PARAMS = setOf(
+		"token", "expires", "expiry", "exp", "signature", "sig", "auth",
+		"policy", "key-pair-id", "md5", "st", "verify",
+	)
+
+	/** A link's stable identity: no fragment, no signing parameters. */
+	fun normalizeUrl(url: String): String? {
+		val parsed = try {
+			URI(url.trim())
+		} catch (_: Exception) {
+			return null
+		}
+		val scheme = parsed.scheme?.lowercase() ?: return null
+		val host = parsed.host?.lowercase() ?: return null
+		val port = when {
+			parsed.port < 0 -> ""
+			scheme == "http" && parsed.port == 80 -> ""
+			scheme == "https" && parsed.port == 443 -> ""
+			else -> ":${parsed.port}"
+		}
+		val query = parsed.rawQuery
+			?.split('&')
+			?.filter { it.isNotEmpty() }
+			?.filterNot { param ->
+				val name = param.substringBefore('=').lowercase()
+				name in VOLATILE_PARAMS || name.startsWith("x-amz-")
+			}
+			?.sorted()
+			.orEmpty()
+		val path = parsed.rawPath?.takeIf { it.isNotEmpty() } ?: "/"
+		return buildString {
+			append(scheme).append("://").append(host).append(port).append(path)
+			if (query.isNotEmpty()) append('?').append(query.joinToString("&"))
+		}
+	}
+
+	/** `imdb:tt…` for a film, `imdb:tt…:season:episode` for an episode. */
+	fun contentId(imdbId: String?, season: Int?, episode: Int?): String? {
+		val id = imdbId?.trim()?.lowercase()?.takeIf { it.matches(Regex("tt\\d+")) } ?: return null
+		return if (season != null && episode != null) "imdb:$id:$season:$episode" else "imdb:$id"
+	}
+
+	/**
+	 * Journal keys for [ownerProfileId]'s copy of [url] / [contentId], link
+	 * first. Rows from before owners were part of the key are looked up by
+	 * [find] under the bare key as well.
+	 */
+	internal fun keys(ownerProfileId: String, url: String?, contentId: String?): List<String> =
+		listOfNotNull(
+			url?.let { normalizeUrl(it) }?.let { "$URL_PREFIX$ownerProfileId/$it" },
+			contentId?.let { "$CONTENT_PREFIX$ownerProfileId/$it" },
+		)
+
+	private fun legacyKeys(url: String?, contentId: String?): List<String> =
+		listOfNotNull(
+			url?.let { normalizeUrl(it) }?.let { URL_PREFIX + it },
+			contentId?.let { CONTENT_PREFIX + it },
+		)
+
+	/** A download of [url] finished into [uri]; index it under both keys. */
+	internal fun record(
+		context: Context,
+		taskId: String,
+		url: String,
+		contentId: String?,
+		uri: Uri,
+		total: Long,
+		ownerProfileId: String,
+	) {
+		if (total <= 0L) return
+		val row = JSONObject().apply {
+			put("taskId", taskId)
+			put("uri", uri.toString())
+			put("total", total)
+			put("ownerProfileId", ownerProfileId)
+			contentId?.let { put("contentId", it) }
+			put("completedAt", System.currentTimeMillis())
+		}.toString()
+		synchronized(lock) {
+			val journal = journal(context)
+			for (key in keys(ownerProfileId, url, contentId)) journal.put(key, row)
+		}
+	}
+
+	/**
+	 * The local copy of [url] or [contentId] for the active profile, if one
+	 * is still whole on disk. The link is tried first: it names the exact
+	 * file, where content identity may have been downloaded in another cut.
+	 */
+	fun find(context: Context, url: String?, contentId: String?): Uri? {
+		val profileId = com.debrify.app.profiles.ProfilePreferenceProjection
+			.activeJobContext(context).profileId
+		val keys = keys(profileId, url, contentId) + legacyKeys(url, contentId)
+		if (keys.isEmpty()) return null
+		for (key in keys) {
+			val row = synchronized(lock) { journal(context).get(key) } ?: continue
+			val parsed = try {
+				JSONObject(row)
+			} catch (_: Exception) {
+				null
+			}
+			if (parsed == null) {
+				synchronized(lock) { journal(context).remove(key) }
+				continue
+			}
+			if (parsed.optString("ownerProfileId") != profileId) continue
+			val uri = Uri.parse(parsed.optString("uri"))
+			if (isWhole(context, uri, parsed.optLong("total", -1L))) return uri
+			synchronized(lock) {
+				// Only drop the row that was checked; a newer copy may have
+				// been recorded under the key meanwhile.
+				val journal = journal(context)
+				if (journal.get(key) == row) journal.remove(key)
+			}
+		}
+		return null
+	}
+
+	private fun isWhole(context: Context, uri: Uri, total: Long): Boolean =
+		try {
+			context.contentResolver.openFileDescriptor(uri, "r")?.use { it.statSize == total } ?: false
+		} catch (_: Exception) {
+			false
+		}
+
+	private fun journal(context: Context): KeyedJournal =
+		KeyedJournal.open(context, JOURNAL, legacyPrefs = null, legacyKey = null)
+}
@@ -20,17 +20,20 @@ import android.provider.DocumentsContract
 import android.provider.MediaStore
 import androidx.core.app.NotificationCompat
 import androidx.core.app.TaskStackBuilder
-import java.io.BufferedInputStream
-import java.io.BufferedOutputStream
+import java.io.FileDescriptor
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.net.HttpURLConnection
 import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
 import java.nio.channels.FileChannel
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 class MediaStoreDownloadService : Service() {
 	companion object {
@@ -50,6 +53,8 @@ class MediaStoreDownloadService : Service() {
 		const val EXTRA_CONNECTION_RESOURCE_ID = "extra_connection_resource_id"
 		const val EXTRA_PROFILE_AUTH_REVISION = "extra_profile_auth_revision"
 		const val EXTRA_RESOURCE_AUTH_REVISION = "extra_resource_auth_revision"
+		const val EXTRA_PRIORITY = "extra_priority" // Int, higher starts first
+		const val EXTRA_CONTENT_ID = "extra_content_id" // see LocalCopies.contentId
 
 		private const val NOTIFICATION_CHANNEL_ID = "downloads_channel_v2"
 		private const val NOTIFICATION_CHANNEL_NAME = "Downloads"
@@ -63,6 +68,44 @@ class MediaStoreDownloadService : Service() {
 		private const val RETRY_PROGRESS_RESET_BYTES = 1L * 1024 * 1024
 		private const val STALL_TIMEOUT_MS = 60_000L
 		private const val STALL_CHECK_INTERVAL_MS = 10_000L
+		// fsync cadence while streaming, by bytes written; 0 syncs only at the
+		// end (and at segmented checkpoints).
+		private const val DEFAULT_SYNC_INTERVAL_MB = 64L
+
+		// Segmented mode. Below SEGMENTED_MIN_BYTES the extra handshakes cost
+		// more than a throttled connection does; a segment is never split into
+		// halves smaller than SEGMENT_MIN_SPLIT_BYTES.
+		private const val SEGMENTED_MIN_BYTES = 64L * 1024 * 1024
+		private const val SEGMENT_MIN_SPLIT_BYTES = 8L * 1024 * 1024
+		private const val INITIAL_CONNECTIONS = 2
+		private const val DEFAULT_MAX_CONNECTIONS = 4
+		private const val SEGMENT_ADAPT_INTERVAL_MS = 3_000L
+		// Per-segment progress is persisted after an fsync at this cadence;
+		// a process death loses at most this much of each connection's work.
+		private const val SEGMENT_CHECKPOINT_INTERVAL_MS = 5_000L
+		private const val SEGMENT_MAX_CONSECUTIVE_FAILURES = 3
+		private const val SEGMENT_RETRY_BACKOFF_MS = 1_000L
+
+		// Scheduler. The playback limit applies while the TV player streams
+		// from the network (see PlaybackContention); 0 disables either limit.
+		private const val DEFAULT_MAX_CONCURRENT = 3L
+		private const val DEFAULT_PLAYBACK_LIMIT_KBPS = 1024L
+
+		/** Per-task connection ceiling (Settings → Downloads). 1 turns
+		 *  segmented mode off entirely. */
+		fun maxConnections(context: Context): Int =
+			com.debrify.app.profiles.ProfilePreferenceProjection.getDeviceLong(
+				context,
+				"download_max_connections",
+				DEFAULT_MAX_CONNECTIONS.toLong(),
+			).toInt().coerceIn(1, 8)
+
+		fun syncIntervalBytes(context: Context): Long =
+			com.debrify.app.profiles.ProfilePreferenceProjection.getDeviceLong(
+				context,
+				"download_sync_interval_mb",
+				DEFAULT_SYNC_INTERVAL_MB,
+			).coerceIn(0L, 4096L) * 1024 * 1024
 	}
 
 	private class DownloadState(
@@ -82,13 +125,43 @@ class MediaStoreDownloadService : Service() {
 		@Volatile var total: Long = -1L,
 		@Volatile var etag: String? = null,
 		@Volatile var lastModified: String? = null,
+		// Non-null while the task downloads in segments; see [SegmentPlan].
+		@Volatile var segmentPlan: SegmentPlan? = null,
+		// The last plan encoding known to be fsync'd — the only one persisted.
+		@Volatile var durableSegments: String? = null,
+		@Volatile var priority: Int = 0,
+		// Null for a partial from before chunk checksums: it is finished
+		// without them and reports no digest.
+		@Volatile var checksums: ChunkChecksums? = ChunkChecksums.empty(),
+		// Same lag-never-lead rule as [durableSegments].
+		@Volatile var durableChecksums: String? = null,
+		@Volatile var digest: String? = null,
+		val contentId: String? = null,
 	) {
 		@Volatile var paused: Boolean = false
 		@Volatile var canceled: Boolean = false
 		@Volatile var connection: HttpURLConnection? = null
 		@Volatile var input: InputStream? = null
+		// Open connections of a segmented attempt, for pause/cancel/watchdog.
+		val segmentLinks: MutableSet<SegmentLink> = ConcurrentHashMap.newKeySet()
+		// Set once the server has shown it can't be trusted with ranges: the
+		// task stays single-stream for the rest of this process.
+		@Volatile var segmentationRefused: Boolean = false
+		// A persisted segment plan that no longer decodes: the file's bytes are
+		// out of order with no map of which exist, so its size means nothing.
+		@Volatile var untrustedPartial: Boolean = false
+		// A plan restored from the store whose segments' last chunks have not
+		// been re-read yet; see [checkSegmentTails].
+		@Volatile var segmentTailsUnchecked: Boolean = false
+		// End of the range preallocated for the file in this process
+		// ([DiskSpace.reserve]); segmented transfers only.
+		@Volatile var reserved: Long = 0L
 		// Timestamp of the last byte read, watched by the stall watchdog.
 		@Volatile var lastByteAt: Long = 0L
+		// Smoothed transfer rate (bytes/s), sampled at progress cadence.
+		@Volatile var rateBps: Long = 0L
+		var rateSampleAt: Long = 0L
+		var rateSampleBytes: Long = 0L
 		// Atomic claim so two threads can never both enter the download loop
 		// for the same task (START/RESUME race).
 		val running: AtomicBoolean = AtomicBoolean(false)
@@ -114,6 +187,35 @@ class MediaStoreDownloadService : Service() {
 
 	private class HttpCodeException(val code: Int, url: String) : IOException("HTTP $code for $url")
 
+	// A segment request answered with a full body (Range ignored, or If-Range
+	// saw a changed validator) or a range we didn't ask for.
+	private class RangeUnsupportedException(message: String) : IOException(message)
+
+	private class SegmentLink {
+		@Volatile var connection: HttpURLConnection? = null
+		@Volatile var lastByteAt: Long = System.currentTimeMillis()
+
+		fun close() {
+			try { connection?.disconnect() } catch (_: Exception) {}
+		}
+	}
+
+	// Shared by the coordinator and the workers of ONE segmented attempt.
+	private class SegmentRun(initialTarget: Int, val partial: PartialDownloads.Partial) {
+		@Volatile var target: Int = initialTarget
+		@Volatile var stopping: Boolean = false
+		@Volatile var fallback: Boolean = false
+		@Volatile var fatal: Outcome? = null
+		val active = AtomicInteger(0)
+		val bytes = AtomicLong(0L)
+		val workers: MutableList<Thread> = java.util.Collections.synchronizedList(ArrayList())
+	}
+
+	// Not outcomes: hand-offs between the single-stream and segmented paths,
+	// compared by identity in [runAttempt] and never applied to a task.
+	private val switchToSegmented = Outcome.Failed("switch to segmented")
+	private val switchToSingle = Outcome.Failed("switch to single stream")
+
 	private lateinit var notificationManager: NotificationManager
 	private val states = ConcurrentHashMap<String, DownloadState>()
 	private val mainHandler = Handler(Looper.getMainLooper())
@@ -121,6 +223,13 @@ class MediaStoreDownloadService : Service() {
 	private var wifiLock: WifiManager.WifiLock? = null
 	@Volatile private var watchdogScheduled = false
 
+	// Settings are re-read on every command and watchdog tick, never per read.
+	@Volatile private var bandwidthLimitBps = 0L
+	@Volatile private var playbackLimitBps = DEFAULT_PLAYBACK_LIMIT_KBPS * 1024
+	private val queue = DownloadQueue(DEFAULT_MAX_CONCURRENT.toInt())
+	private val bandwidth = TokenBucket({ effectiveLimitBps() })
+	private var publishedPositions: Map<String, Int> = emptyMap()
+
 	override fun onCreate() {
 		super.onCreate()
 		notificationManager = getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
@@ -133,6 +242,7 @@ class MediaStoreDownloadService : Service() {
 	}
 
 	override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+		refreshLimits()
 		// Commands from the app arrive via startForegroundService(); on
 		// Android 8+ the app is killed (ForegroundServiceDidNotStartInTimeException)
 		// if ANY such path returns without startForeground(). Claim foreground
@@ -160,8 +270,9 @@ class MediaStoreDownloadService : Service() {
 					// Duplicate START for a live task: never overwrite the state
 					// or spawn a second thread over the same destination. A new
 					// URL (refreshed debrid link) is still adopted so the next
-					// attempt/resume uses it.
+					// attempt/resume uses it, and so is a new priority.
 					existing.url = url
+					if (intent.hasExtra(EXTRA_PRIORITY)) existing.priority = intent.getIntExtra(EXTRA_PRIORITY, 0)
 					if (existing.running.get()) {
 						updateSummaryNotification()
 					} else {
@@ -197,8 +308,13 @@ class MediaStoreDownloadService : Service() {
 						profileAuthorizationRevision = intent.getLongExtra(EXTRA_PROFILE_AUTH_REVISION, 1L),
 						resourceAuthorizationRevision = if (intent.hasExtra(EXTRA_RESOURCE_AUTH_REVISION))
 							intent.getLongExtra(EXTRA_RESOURCE_AUTH_REVISION, 1L) else null,
+						priority = intent.getIntExtra(EXTRA_PRIORITY, 0),
+						contentId = intent.getStringExtra(EXTRA_CONTENT_ID),
 					)
 				}
+				if (persisted != null && intent.hasExtra(EXTRA_PRIORITY)) {
+					state.priority = intent.getIntExtra(EXTRA_PRIORITY, 0)
+				}
 				states[taskId] = state
 				updateSummaryNotification()
 				notifyTask(state, "Preparing...", indeterminate = true, completed = false)
@@ -209,13 +325,15 @@ class MediaStoreDownloadService : Service() {
 				val s = if (taskId != null) states[taskId] else null
 				if (s != null && !s.finished.get()) {
 					s.paused = true
+					// A queued task just leaves the queue; it has no worker.
+					if (queue.withdraw(s.taskId)) publishQueue()
 					// Force the worker out of a blocking connect()/read(). The
 					// connection is assigned before connect(), so a pause during
 					// the connect phase takes effect immediately too.
-					try { s.connection?.disconnect() } catch (_: Exception) {}
-					try { s.input?.close() } catch (_: Exception) {}
+					interruptTransfer(s)
 					if (!s.running.get()) {
 						// No worker to unwind (was idle): persist + settle here.
+						DiskSpace.release(spaceKey(s))
 						persistState(s, status = "paused")
 						notifyTask(s, "Paused", indeterminate = false, completed = false)
 						updateSummaryNotification()
@@ -302,8 +420,7 @@ class MediaStoreDownloadService : Service() {
 				val s = if (taskId != null) states[taskId] else null
 				if (s != null && !s.finished.get()) {
 					s.canceled = true
-					try { s.connection?.disconnect() } catch (_: Exception) {}
-					try { s.input?.close() } catch (_: Exception) {}
+					interruptTransfer(s)
 					if (!s.running.get()) {
 						// No worker thread owns the destination: safe to delete
 						// the row and finish inline (paused/idle task).
@@ -340,6 +457,10 @@ class MediaStoreDownloadService : Service() {
 	}
 
 	private fun stateFromEntry(entry: TaskEntry, urlOverride: String?, headersOverride: HashMap<String, String>?): DownloadState {
+		val plan = SegmentPlan.decode(entry.total, entry.segments)
+		val checksums = ChunkChecksums.decode(entry.checksums)
+		// Half-written chunks have no checksum state after a restart.
+		if (plan != null && checksums != null) plan.rewindToChunks()
 		return DownloadState(
 			taskId = entry.taskId,
 			url = urlOverride ?: entry.url,
@@ -356,7 +477,17 @@ class MediaStoreDownloadService : Service() {
 			total = entry.total,
 			etag = entry.etag,
 			lastModified = entry.lastModified,
-		)
+			segmentPlan = plan,
+			durableSegments = entry.segments,
+			priority = entry.priority,
+			checksums = checksums,
+			durableChecksums = entry.checksums,
+			digest = entry.digest,
+			contentId = entry.contentId,
+		).apply {
+			untrustedPartial = entry.segments != null && plan == null
+			segmentTailsUnchecked = plan != null && checksums != null
+		}
 	}
 
 	private fun persistState(state: DownloadState, status: String, errorMessage: String? = null) {
@@ -381,10 +512,23 @@ class MediaStoreDownloadService : Service() {
 				connectionResourceId = state.connectionResourceId,
 				profileAuthorizationRevision = state.profileAuthorizationRevision,
 				resourceAuthorizationRevision = state.resourceAuthorizationRevision,
+				segments = if (state.segmentPlan != null) state.durableSegments else null,
+				priority = state.priority,
+				checksums = state.durableChecksums,
+				digest = state.digest,
+				contentId = state.contentId,
 			))
 		} catch (_: Exception) {}
 	}
 
+	// Force the worker(s) out of any blocking connect()/read(). Connections
+	// are assigned before connect(), so this also covers the connect phase.
+	private fun interruptTransfer(state: DownloadState) {
+		try { state.connection?.disconnect() } catch (_: Exception) {}
+		try { state.input?.close() } catch (_: Exception) {}
+		state.segmentLinks.forEach { it.close() }
+	}
+
 	private fun spawnWorker(state: DownloadState) {
 		if (!jobAuthorizationValid(state)) {
 			persistState(state, status = "failed", errorMessage = "profile authorization changed")
@@ -394,15 +538,83 @@ class MediaStoreDownloadService : Service() {
 			stopIfIdle()
 			return
 		}
-		Thread {
-			try {
-				downloadLoop(state)
-			} catch (t: Throwable) {
-				// Crash net: downloadLoop handles its own errors; anything that
-				// escapes still must not leave a zombie state behind.
-				finishTask(state, Outcome.Failed(t.message ?: "crash"))
+		if (!admitQueued(state)) {
+			finishTask(state, Outcome.Failed("not enough free storage"))
+			return
+		}
+		val position = queue.submit(state.taskId, state.priority) {
+			Thread {
+				try {
+					downloadLoop(state)
+				} catch (t: Throwable) {
+					// Crash net: downloadLoop handles its own errors; anything that
+					// escapes still must not leave a zombie state behind.
+					finishTask(state, Outcome.Failed(t.message ?: "crash"))
+				} finally {
+					// Releasing the slot may admit the next queued task.
+					queue.finished(state.taskId)
+					publishQueue()
+				}
+			}.start()
+		}
+		expectSpace(state)
+		if (position > 0) {
+			// Persist now: a fresh task has no entry until its destination
+			// exists, and a queued one must survive the process like any other.
+			persistState(state, status = "running")
+			notifyTask(state, "Queued (#$position)", indeterminate = true, completed = false)
+		}
+		publishQueue()
+	}
+
+	// Mirror queue positions into DownloadRegistry (for queryDownloadTasks)
+	// and tell Dart about every position that moved.
+	@Synchronized
+	private fun publishQueue() {
+		val positions = queue.positions()
+		DownloadRegistry.queued.keys.retainAll(positions.keys)
+		DownloadRegistry.queued.putAll(positions)
+		positions.forEach { (taskId, position) ->
+			if (publishedPositions[taskId] == position) return@forEach
+			val s = states[taskId] ?: return@forEach
+			if (publishedPositions.containsKey(taskId)) {
+				notifyTask(s, "Queued (#$position)", indeterminate = true, completed = false)
 			}
-		}.start()
+			ChannelBridge.emit(mapOf(
+				"type" to "queued",
+				"taskId" to taskId,
+				"url" to s.url,
+				"fileName" to s.fileName,
+				"subDir" to s.subDir,
+				"ownerProfileId" to s.ownerProfileId,
+				"queuePosition" to position,
+			))
+		}
+		publishedPositions = positions
+	}
+
+	private fun refreshLimits() {
+		val prefs = com.debrify.app.profiles.ProfilePreferenceProjection
+		queue.setMaxConcurrent(
+			prefs.getDeviceLong(this, "download_max_concurrent", DEFAULT_MAX_CONCURRENT)
+				.coerceIn(1L, 10L).toInt()
+		)
+		// A raised cap may have admitted queued tasks.
+		publishQueue()
+		bandwidthLimitBps = prefs.getDeviceLong(this, "download_bandwidth_limit_kbps", 0L)
+			.coerceAtLeast(0L) * 1024
+		playbackLimitBps = prefs.getDeviceLong(this, "download_playback_limit_kbps", DEFAULT_PLAYBACK_LIMIT_KBPS)
+			.coerceAtLeast(0L) * 1024
+	}
+
+	private fun isThrottled(): Boolean = PlaybackContention.isActive && playbackLimitBps > 0L
+
+	// Bytes/second across ALL downloads; 0 means unlimited. The tighter of
+	// the standing limit and (during network playback) the playback limit.
+	private fun effectiveLimitBps(): Long {
+		val standing = bandwidthLimitBps
+		if (!isThrottled()) return standing
+		return if (standing > 0L) minOf(standing, playbackLimitBps) else playbackLimitBps
 	}
 
 	private fun jobAuthorizationValid(state: DownloadState): Boolean =
@@ -425,6 +637,15 @@ class MediaStoreDownloadService : Service() {
 		if (!state.finished.compareAndSet(false, true)) return
 		when (outcome) {
 			is Outcome.Complete -> {
+				state.segmentPlan = null
+				state.durableSegments = null
+				val reportedTotal = if (state.total > 0L) state.total else state.downloaded
+				state.checksums?.let { sums ->
+					sums.seal(reportedTotal)
+					state.digest = sums.fileDigest(reportedTotal)
+				}
+				state.checksums = null
+				state.durableChecksums = null
 				val uri = state.uri
 				if (uri != null && !state.isSaf && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
 					try {
@@ -435,8 +656,12 @@ class MediaStoreDownloadService : Service() {
 				// Retain a bounded terminal hand-off record until Flutter reconciles
 				// ownership/artifact ledgers after a background-only completion.
 				persistState(state, status = "done")
+				if (uri != null) {
+					LocalCopies.record(
+						this, state.taskId, state.url, state.contentId, uri, reportedTotal, state.ownerProfileId,
+					)
+				}
 				notifyTask(state, "Download complete", indeterminate = false, completed = true)
-				val reportedTotal = if (state.total > 0L) state.total else state.downloaded
 				ChannelBridge.emit(mapOf(
 					"type" to "complete",
 					"taskId" to state.taskId,
@@ -448,6 +673,7 @@ class MediaStoreDownloadService : Service() {
 					"ownerProfileId" to state.ownerProfileId,
 					"contentUri" to (uri?.toString() ?: ""),
 					"mimeType" to state.mimeType,
+					"digest" to state.digest,
 				))
 				notificationManager.cancel(taskNotificationId(state.taskId))
 			}
@@ -486,6 +712,9 @@ class MediaStoreDownloadService : Service() {
 		}
 		states.remove(state.taskId)
 		DownloadRegistry.live.remove(state.taskId)
+		PartialDownloads.withdraw(state.taskId, complete = outcome is Outcome.Complete)
+		DiskSpace.release(spaceKey(state))
+		if (queue.withdraw(state.taskId)) publishQueue()
 		if (states.isEmpty()) {
 			stopIfIdle()
 		} else {
@@ -590,6 +819,7 @@ class MediaStoreDownloadService : Service() {
 		watchdogScheduled = true
 		mainHandler.postDelayed(object : Runnable {
 			override fun run() {
+				refreshLimits()
 				val now = System.currentTimeMillis()
 				var anyRunning = false
 				states.values.forEach { s ->
@@ -597,14 +827,18 @@ class MediaStoreDownloadService : Service() {
 						anyRunning = true
 						if (!jobAuthorizationValid(s)) {
 							s.canceled = true
-							try { s.input?.close() } catch (_: Exception) {}
-							try { s.connection?.disconnect() } catch (_: Exception) {}
+							interruptTransfer(s)
 							return@forEach
 						}
 						if (s.lastByteAt > 0 && now - s.lastByteAt > STALL_TIMEOUT_MS) {
 							try { s.input?.close() } catch (_: Exception) {}
 							try { s.connection?.disconnect() } catch (_: Exception) {}
 						}
+						// Segments stall one connection at a time: a dead range
+						// must be reconnected even while its siblings flow.
+						s.segmentLinks.forEach { link ->
+							if (now - link.lastByteAt > STALL_TIMEOUT_MS) link.close()
+						}
 					}
 				}
 				if (anyRunning) {
@@ -689,6 +923,8 @@ class MediaStoreDownloadService : Service() {
 			// Paused: persist so the task survives service/process death, then
 			// let the service exit if nothing else is running.
 			DownloadRegistry.live.remove(state.taskId)
+			PartialDownloads.withdraw(state.taskId, complete = false)
+			DiskSpace.release(spaceKey(state))
 			persistState(state, status = "paused")
 			notifyTask(state, "Paused", indeterminate = false, completed = false)
 			updateSummaryNotification()
@@ -697,12 +933,26 @@ class MediaStoreDownloadService : Service() {
 	}
 
 	// One connect+stream attempt. Never throws; returns the outcome, or null
-	// when the attempt ended because the task was paused.
+	// when the attempt ended because the task was paused. A task with a
+	// segment plan runs segmented; either path may hand the attempt to the
+	// other (a fresh download whose server honours ranges, or a segmented one
+	// whose server stopped honouring them).
 	private fun runAttempt(state: DownloadState): Outcome? {
+		var outcome = if (state.segmentPlan != null) runSegmentedAttempt(state) else runSingleStreamAttempt(state)
+		if (outcome === switchToSegmented) outcome = runSegmentedAttempt(state)
+		if (outcome === switchToSingle) outcome = runSingleStreamAttempt(state)
+		// A hand-off never reaches the retry loop as a failure of its own.
+		if (outcome === switchToSegmented || outcome === switchToSingle) {
+			outcome = Outcome.Failed("transfer mode changed", retryable = true)
+		}
+		return outcome
+	}
+
+	private fun runSingleStreamAttempt(state: DownloadState): Outcome? {
 		var uri: Uri? = state.uri
 		var connection: HttpURLConnection? = null
 		var input: InputStream? = null
-		var out: BufferedOutputStream? = null
+		var buffer: ByteBuffer? = null
 		var outPfd: ParcelFileDescriptor? = null
 		var outChannel: FileChannel? = null
 		var outcome: Outcome? = null
@@ -736,9 +986,16 @@ class MediaStoreDownloadService : Service() {
 				val reason = if (state.isSaf && !hasTreeGrant(state.treeUri)) "saf_grant_lost" else "destination missing or unreadable"
 				return Outcome.Failed(reason)
 			}
-			state.downloaded = if (onDisk >= 0L) onDisk else 0L
+			state.downloaded = if (onDisk >= 0L && !state.untrustedPartial) onDisk else 0L
+			state.checksums?.let { sums ->
+				if (state.downloaded > 0L) state.downloaded = checkedResumeOffset(uri, sums, state.downloaded)
+			}
 
 			val url = URL(state.url)
+			// A fresh start asks for `bytes=0-`: the same body either way, but
+			// a 206 answer proves the server honours ranges and reveals the
+			// size, which is all segmented mode needs to take over.
+			val probeRanges = state.downloaded == 0L && segmentationAllowed(state)
 			connection = (url.openConnection() as HttpURLConnection).apply {
 				instanceFollowRedirects = true
 				connectTimeout = 60_000
@@ -749,8 +1006,9 @@ class MediaStoreDownloadService : Service() {
 					setRequestProperty("Range", "bytes=${state.downloaded}-")
 					// Strong ETag preferred; weak ETags ("W/...") are not valid
 					// range validators. Fall back to Last-Modified.
-					val validator = state.etag?.takeIf { !it.startsWith("W/") } ?: state.lastModified
-					validator?.let { setRequestProperty("If-Range", it) }
+					rangeValidator(state)?.let { setRequestProperty("If-Range", it) }
+				} else if (probeRanges) {
+					setRequestProperty("Range", "bytes=0-")
 				}
 			}
 			// Assign BEFORE connect() so pause/cancel can disconnect a
@@ -774,6 +1032,11 @@ class MediaStoreDownloadService : Service() {
 				// fully downloaded. Treat as complete.
 				settled = true
 				return Outcome.Complete
+			} else if (probeRanges && resp == 416) {
+				// The probe itself was refused (empty file, picky origin): ask
+				// again without it.
+				state.segmentationRefused = true
+				throw IOException("range probe refused")
 			} else if (resp != HttpURLConnection.HTTP_OK && resp != HttpURLConnection.HTTP_PARTIAL) {
 				// Only a full (200) or partial (206) body is a download; 204/205
 				// and friends must not be recorded as phantom completions.
@@ -815,10 +1078,26 @@ class MediaStoreDownloadService : Service() {
 			// Only update validators if present
 			connection.getHeaderField("ETag")?.let { state.etag = it }
 			connection.getHeaderField("Last-Modified")?.let { state.lastModified = it }
+			if (probeRanges && resp == HttpURLConnection.HTTP_PARTIAL) {
+				val range = parseContentRange(connection.getHeaderField("Content-Range"))
+				if (range != null && range.first == 0L && range.third >= SEGMENTED_MIN_BYTES) {
+					state.total = range.third
+					val plan = SegmentPlan.initial(range.third, INITIAL_CONNECTIONS.coerceAtMost(maxConnections(this)))
+					state.segmentPlan = plan
+					// Nothing is written yet, so the fresh plan is trivially durable.
+					state.durableSegments = plan.encode()
+					persistState(state, status = "running")
+					settled = true
+					return switchToSegmented
+				}
+			}
 			persistState(state, status = "running")
 
-			input = BufferedInputStream(connection.inputStream)
+			// No BufferedInputStream: every read asks for a whole transfer
+			// buffer, so another buffer in front only adds a copy.
+			input = connection.inputStream
 			state.input = input
+			val source = Channels.newChannel(input)
 
 			// Unified output: a single seekable "rw" descriptor for fresh starts
 			// and resumes alike. Truncating to `downloaded` handles every case —
@@ -827,69 +1106,68 @@ class MediaStoreDownloadService : Service() {
 			val pfd = contentResolver.openFileDescriptor(uri, "rw")
 				?: throw IOException("Cannot open destination for writing")
 			outPfd = pfd
-			val fos = FileOutputStream(pfd.fileDescriptor)
-			outChannel = fos.channel
+			outChannel = FileOutputStream(pfd.fileDescriptor).channel
+			val partial = PartialDownloads.publish(state.taskId, state.url, uri, state.total)
+			// Before the truncate: a reader must never be promised bytes that
+			// are about to go.
+			partial.trackPrefix(state.downloaded)
 			outChannel.truncate(state.downloaded)
-			outChannel.position(state.downloaded)
-			out = BufferedOutputStream(fos)
+			state.untrustedPartial = false
+			admitTransfer(state, pfd.fileDescriptor, preallocate = false)?.let {
+				settled = true
+				return it
+			}
+			// A restart from 0 can start hashing even an old untracked task.
+			if (state.checksums == null && state.downloaded == 0L) state.checksums = ChunkChecksums.empty()
+			val sums = state.checksums
+			sums?.rewindTo(state.downloaded)
+			state.durableChecksums = sums?.encode()
+			val sink = ChannelSink(outChannel, syncIntervalBytes(this)) {
+				// Called right after the fsync, before this read's bytes are hashed.
+				if (sums != null) {
+					state.durableChecksums = sums.encode()
+					persistState(state, status = "running")
+				}
+			}
 
 			val registryLive = DownloadRegistry.live.getOrPut(state.taskId) {
-				DownloadRegistry.Live(state.downloaded, state.total)
+				DownloadRegistry.Live(state.downloaded, state.total, ownerProfileId = state.ownerProfileId)
+					.also { ProgressFrames.wake() }
 			}
 			registryLive.bytes = state.downloaded
 			registryLive.total = state.total
 
-			val buffer = ByteArray(256 * 1024)
-			var bytesRead: Int
-			var eof = false
+			val transfer = DirectBufferPool.acquire()
+			buffer = transfer
 			var lastUpdate = System.currentTimeMillis()
 			state.lastByteAt = System.currentTimeMillis()
 			notifyTask(state, "Downloading", indeterminate = state.total <= 0, completed = false)
 			updateSummaryNotification()
-				if (state.downloaded == 0L) {
-					ChannelBridge.emit(mapOf(
-						"type" to "progress",
-						"taskId" to state.taskId,
-						"url" to state.url,
-					"bytes" to state.downloaded,
-					"total" to state.total,
-					"fileName" to state.fileName,
-					"subDir" to state.subDir,
-					"ownerProfileId" to state.ownerProfileId,
-				))
-			}
 
-			while (true) {
-				if (state.canceled) throw InterruptedException("canceled")
-				if (state.paused) break
-				bytesRead = input.read(buffer)
-				if (bytesRead == -1) { eof = true; break }
-				out.write(buffer, 0, bytesRead)
-				state.downloaded += bytesRead
+			val eof = TransferLoops.stream(
+				source, transfer, sink, sums, state.downloaded,
+				proceed = {
+					if (state.canceled) throw InterruptedException("canceled")
+					!state.paused
+				},
+				throttle = { n -> bandwidth.acquire(n) { state.paused || state.canceled } },
+			) { position ->
+				state.downloaded = position
+				partial.advanced(position)
 				val now = System.currentTimeMillis()
 				state.lastByteAt = now
 				if (now - lastUpdate > 500) {
-					registryLive.bytes = state.downloaded
-					registryLive.total = state.total
-					notifyTask(state, "Downloading", indeterminate = state.total <= 0, completed = false)
-					ChannelBridge.emit(mapOf(
-							"type" to "progress",
-							"taskId" to state.taskId,
-							"url" to state.url,
-						"bytes" to state.downloaded,
-						"total" to state.total,
-						"fileName" to state.fileName,
-						"subDir" to state.subDir,
-						"ownerProfileId" to state.ownerProfileId,
-					))
+					reportProgress(state, registryLive)
 					lastUpdate = now
 				}
 			}
-			// Make the bytes durable before declaring any state: flush the
-			// buffer, then fsync the descriptor so a process kill right after a
-			// pause/complete cannot lose the tail.
-			out.flush()
-			try { pfd.fileDescriptor.sync() } catch (_: Exception) {}
+			// Make the bytes durable before declaring any state: fsync the
+			// descriptor so a process kill right after a pause/complete cannot
+			// lose the tail.
+			try {
+				pfd.fileDescriptor.sync()
+				sums?.let { state.durableChecksums = it.encode() }
+			} catch (_: Exception) {}
 
 			outcome = if (eof) {
 				if (state.total > 0L && state.downloaded != state.total) {
@@ -923,19 +1201,455 @@ class MediaStoreDownloadService : Service() {
 		} finally {
 			// Close EVERYTHING before the outcome is applied — cancel deletes
 			// the destination and must never race a still-open output fd.
-			try { out?.flush() } catch (_: Exception) {}
 			try { outPfd?.fileDescriptor?.sync() } catch (_: Exception) {}
-			try { out?.close() } catch (_: Exception) {}
 			try { outChannel?.close() } catch (_: Exception) {}
 			try { outPfd?.close() } catch (_: Exception) {}
 			try { input?.close() } catch (_: Exception) {}
 			try { connection?.disconnect() } catch (_: Exception) {}
 			state.input = null
 			state.connection = null
+			buffer?.let { DirectBufferPool.release(it) }
 		}
 		return outcome
 	}
 
+	private fun spaceKey(state: DownloadState) = "download:${state.taskId}"
+
+	// What the task still has to write beyond its reservation, for other
+	// transfers' admission checks. Nothing while paused or of unknown size.
+	private fun expectSpace(state: DownloadState) {
+		val remaining = if (state.total > 0L && !state.paused && !state.canceled) {
+			state.total - maxOf(state.downloaded, state.reserved)
+		} else 0L
+		DiskSpace.expect(spaceKey(state), remaining)
+	}
+
+	// Free-space admission once the size is known and the destination is
+	// open: the rest of the file has to fit next to every other transfer's
+	// remaining bytes. A segmented transfer then reserves the whole file —
+	// positioned writes land in allocated blocks instead of growing it piece
+	// by piece. A single stream can't: its resume offset is the file's size.
+	// Null when the transfer may go ahead.
+	private fun admitTransfer(state: DownloadState, fd: FileDescriptor, preallocate: Boolean): Outcome.Failed? {
+		if (state.total <= 0L) return null
+		val need = (state.total - maxOf(state.downloaded, state.reserved)).coerceAtLeast(0L)
+		if (!DiskSpace.admits(fd, spaceKey(state), need)) return Outcome.Failed("not enough free storage")
+		if (preallocate && state.reserved < state.total) {
+			try {
+				if (DiskSpace.reserve(fd, 0L, state.total)) state.reserved = state.total
+			} catch (e: IOException) {
+				return Outcome.Failed(e.message ?: "not enough free storage")
+			}
+		}
+		expectSpace(state)
+		return null
+	}
+
+	// The same admission when a task is handed to the queue, so a resumed or
+	// re-queued task of known size that can't fit is refused up front instead
+	// of holding a slot until its attempt opens the file: what it still needs
+	// against the volume's free space less every other running and queued
+	// transfer's remaining bytes. No opinion while the size or destination is
+	// unknown (a fresh task); [admitTransfer] checks again either way.
+	private fun admitQueued(state: DownloadState): Boolean {
+		val uri = state.uri ?: return true
+		if (state.total <= 0L) return true
+		return try {
+			contentResolver.openFileDescriptor(uri, "r")?.use { pfd ->
+				// A restored task starts at 0 until its attempt looks; count
+				// what is already on disk so neither this check nor the
+				// queue's expectation asks for the whole file again.
+				if (state.downloaded == 0L && !state.untrustedPartial) {
+					state.downloaded = state.segmentPlan?.downloaded()
+						?: pfd.statSize.coerceIn(0L, state.total)
+				}
+				val need = (state.total - maxOf(state.downloaded, state.reserved)).coerceAtLeast(0L)
+				DiskSpace.admits(pfd.fileDescriptor, spaceKey(state), need)
+			} ?: true
+		} catch (_: Exception) {
+			true
+		}
+	}
+
+	private fun segmentationAllowed(state: DownloadState): Boolean =
+		!state.segmentationRefused && maxConnections(this) > 1
+
+	private fun rangeValidator(state: DownloadState): String? =
+		state.etag?.takeIf { !it.startsWith("W/") } ?: state.lastModified
+
+	private fun reportProgress(state: DownloadState, registryLive: DownloadRegistry.Live) {
+		val now = System.currentTimeMillis()
+		if (state.rateSampleAt > 0L && now > state.rateSampleAt) {
+			val instant = ((state.downloaded - state.rateSampleBytes) * 1000 / (now - state.rateSampleAt))
+				.coerceAtLeast(0L)
+			state.rateBps = if (state.rateBps == 0L) instant else (state.rateBps * 3 + instant) / 4
+		}
+		state.rateSampleAt = now
+		state.rateSampleBytes = state.downloaded
+		registryLive.bytes = state.downloaded
+		registryLive.total = state.total
+		registryLive.rateBps = state.rateBps
+		expectSpace(state)
+		DownloadRegistry.throttled = isThrottled()
+		notifyTask(state, "Downloading", indeterminate = state.total <= 0, completed = false)
+	}
+
+	// ---- Segmented transfer --------------------------------------------------
+
+	// One segmented attempt: this thread coordinates (progress, checkpoints,
+	// connection count) while worker threads each stream one byte range into
+	// the shared FileChannel with positioned writes. Same contract as the
+	// single-stream attempt — never throws, null means paused — plus
+	// [switchToSingle] when the server stops honouring ranges.
+	private fun runSegmentedAttempt(state: DownloadState): Outcome? {
+		val plan = state.segmentPlan ?: return switchToSingle
+		val uri = state.uri
+		if (uri == null) {
+			state.segmentPlan = null
+			state.durableSegments = null
+			return switchToSingle
+		}
+		if (!jobAuthorizationValid(state)) return Outcome.Canceled
+		if (state.canceled) return Outcome.Canceled
+		if (state.paused) return null
+		state.lastByteAt = System.currentTimeMillis()
+		if (existingSize(uri) < 0L) {
+			val reason = if (state.isSaf && !hasTreeGrant(state.treeUri)) "saf_grant_lost" else "destination missing or unreadable"
+			return Outcome.Failed(reason)
+		}
+		if (state.segmentTailsUnchecked) {
+			state.checksums?.let { sums -> checkSegmentTails(uri, plan, sums) }
+			state.segmentTailsUnchecked = false
+		}
+		state.total = plan.total
+		state.downloaded = plan.downloaded()
+
+		var outPfd: ParcelFileDescriptor? = null
+		var channel: FileChannel? = null
+		val partial = PartialDownloads.publish(state.taskId, state.url, uri, plan.total)
+		partial.trackPlan(plan)
+		val run = SegmentRun(INITIAL_CONNECTIONS.coerceAtMost(maxConnections(this)), partial)
+		try {
+			// "rw" never truncates: bytes of every segment stay where they are,
+			// and positioned writes past EOF simply extend the file.
+			val pfd = contentResolver.openFileDescriptor(uri, "rw")
+				?: return Outcome.Failed("Cannot open destination for writing")
+			outPfd = pfd
+			val out = FileOutputStream(pfd.fileDescriptor).channel
+			channel = out
+			admitTransfer(state, pfd.fileDescriptor, preallocate = true)?.let { return it }
+			// Workers never sync on their own: a sync is only worth something
+			// with the plan snapshot taken before it, which is the
+			// coordinator's checkpoint.
+			val sink = ChannelSink(out, 0L)
+			val syncInterval = syncIntervalBytes(this)
+
+			val registryLive = DownloadRegistry.live.getOrPut(state.taskId) {
+				DownloadRegistry.Live(state.downloaded, state.total, ownerProfileId = state.ownerProfileId)
+					.also { ProgressFrames.wake() }
+			}
+			notifyTask(state, "Downloading", indeterminate = false, completed = false)
+			updateSummaryNotification()
+
+			val governor = ConnectionGovernor(1, maxConnections(this), run.target)
+			var lastUpdate = System.currentTimeMillis()
+			var lastAdapt = lastUpdate
+			var lastCheckpoint = lastUpdate
+			var bytesAtLastAdapt = 0L
+			var bytesAtLastCheckpoint = 0L
+			while (!state.canceled && !state.paused && !run.stopping) {
+				val wanted = partial.takeWanted()
+				if (wanted >= 0L && plan.prefer(wanted)) {
+					// The player is blocked there: one more connection, which
+					// the claim below points at it.
+					run.target = (run.target + 1).coerceAtMost(maxConnections(this))
+				}
+				while (run.active.get() < run.target) {
+					val segment = plan.claim(SEGMENT_MIN_SPLIT_BYTES) ?: break
+					run.active.incrementAndGet()
+					val worker = Thread { segmentWorker(state, plan, sink, run, segment) }
+					run.workers.add(worker)
+					worker.start()
+				}
+				if (run.active.get() == 0) break
+				try { Thread.sleep(250) } catch (_: InterruptedException) { break }
+
+				val now = System.currentTimeMillis()
+				if (now - lastUpdate > 500) {
+					state.downloaded = plan.downloaded()
+					reportProgress(state, registryLive)
+					lastUpdate = now
+				}
+				if (now - lastAdapt >= SEGMENT_ADAPT_INTERVAL_MS) {
+					val bytes = run.bytes.get()
+					val bps = (bytes - bytesAtLastAdapt) * 1000.0 / (now - lastAdapt)
+					run.target = governor.onSample(bps)
+					bytesAtLastAdapt = bytes
+					lastAdapt = now
+				}
+				val written = run.bytes.get()
+				if (now - lastCheckpoint >= SEGMENT_CHECKPOINT_INTERVAL_MS ||
+					(syncInterval > 0L && written - bytesAtLastCheckpoint >= syncInterval)
+				) {
+					// Snapshot BEFORE the fsync: every byte the snapshot counts
+					// was written before force() began, so it is now durable.
+					// Plan and checksums are taken together (workers commit and
+					// hash under the plan's lock) so they describe the same bytes.
+					val (snapshot, sums) = synchronized(plan) { plan.encode() to state.checksums?.encode() }
+					sink.sync()
+					state.durableSegments = snapshot
+					state.durableChecksums = sums
+					persistState(state, status = "running")
+					lastCheckpoint = now
+					bytesAtLastCheckpoint = written
+				}
+			}
+		} catch (e: Exception) {
+			if (run.fatal == null && !state.canceled && !state.paused) {
+				run.fatal = Outcome.Failed(e.message ?: "storage error")
+			}
+		} finally {
+			// Every worker must be gone before the channel closes — and before
+			// cancel deletes the file under them.
+			run.stopping = true
+			state.segmentLinks.forEach { it.close() }
+			synchronized(run.workers) { run.workers.toList() }.forEach { worker ->
+				try { worker.join() } catch (_: InterruptedException) {}
+			}
+			state.segmentLinks.clear()
+			try {
+				val (snapshot, sums) = synchronized(plan) { plan.encode() to state.checksums?.encode() }
+				channel?.force(false)
+				state.durableSegments = snapshot
+				state.durableChecksums = sums
+			} catch (_: Exception) {}
+			try { channel?.close() } catch (_: Exception) {}
+			try { outPfd?.close() } catch (_: Exception) {}
+			state.downloaded = plan.downloaded()
+		}
+
+		return when {
+			state.canceled -> Outcome.Canceled
+			state.paused -> null
+			run.fatal != null -> run.fatal
+			run.fallback -> abandonSegmentation(state, plan)
+			plan.isComplete() -> {
+				state.downloaded = plan.total
+				Outcome.Complete
+			}
+			else -> Outcome.Failed("segment connections failed", retryable = true)
+		}
+	}
+
+	// One connection's life: stream the claimed range, then claim more work
+	// (an unowned segment or the back half of the largest one) until none is
+	// left, the coordinator lowers the connection count, or the range keeps
+	// failing.
+	private fun segmentWorker(
+		state: DownloadState,
+		plan: SegmentPlan,
+		sink: ChannelSink,
+		run: SegmentRun,
+		first: SegmentPlan.Segment,
+	) {
+		var segment: SegmentPlan.Segment? = first
+		var retired = false
+		val buffer = DirectBufferPool.acquire()
+		var failures = 0
+		try {
+			work@ while (!run.stopping) {
+				val seg = segment ?: plan.claim(SEGMENT_MIN_SPLIT_BYTES) ?: break
+				segment = seg
+				val link = SegmentLink()
+				state.segmentLinks.add(link)
+				var input: InputStream? = null
+				try {
+					val connection = openSegment(state, plan, seg, link)
+					input = connection.inputStream
+					TransferLoops.segment(
+						Channels.newChannel(input), buffer, sink, plan, seg, state.checksums,
+						proceed = {
+							val active = run.active.get()
+							when {
+								run.stopping -> false
+								active > run.target && run.active.compareAndSet(active, active - 1) -> {
+									retired = true
+									false
+								}
+								else -> true
+							}
+						},
+						throttle = { n -> bandwidth.acquire(n) { run.stopping || state.paused || state.canceled } },
+					) { count ->
+						run.partial.advanced()
+						run.bytes.addAndGet(count.toLong())
+						val now = System.currentTimeMillis()
+						link.lastByteAt = now
+						state.lastByteAt = now
+						failures = 0
+					}
+					if (retired) break@work
+				} catch (e: TransferLoops.StorageException) {
+					// The WRITE side failing is terminal for the whole attempt.
+					run.fatal = Outcome.Failed(e.message ?: "storage error")
+					run.stopping = true
+					break@work
+				} catch (e: RangeUnsupportedException) {
+					run.fallback = true
+					run.stopping = true
+					break@work
+				} catch (e: HttpCodeException) {
+					// Same split as the single stream: 4xx means the link itself
+					// is dead, and every other range would hear the same.
+					if (!(e.code == 408 || e.code == 429 || e.code >= 500)) {
+						run.fatal = Outcome.Failed(e.message ?: "http error", httpCode = e.code)
+						run.stopping = true
+						break@work
+					}
+				} catch (_: Exception) {
+					// Dropped/stalled connection: retried below.
+				} finally {
+					try { input?.close() } catch (_: Exception) {}
+					link.close()
+					state.segmentLinks.remove(link)
+				}
+				if (run.stopping) break
+				if (seg.done) {
+					plan.release(seg)
+					segment = null
+					continue
+				}
+				if (++failures >= SEGMENT_MAX_CONSECUTIVE_FAILURES) {
+					// Hand the failure to the attempt loop (and its backoff and
+					// retry budget) rather than letting the coordinator respawn a
+					// worker for the same range straight away.
+					run.stopping = true
+					break
+				}
+				val sleepUntil = System.currentTimeMillis() + SEGMENT_RETRY_BACKOFF_MS * failures
+				while (System.currentTimeMillis() < sleepUntil && !run.stopping) {
+					try { Thread.sleep(100) } catch (_: InterruptedException) { break }
+				}
+			}
+		} finally {
+			segment?.let { plan.release(it) }
+			DirectBufferPool.release(buffer)
+			if (!retired) run.active.decrementAndGet()
+		}
+	}
+
+	private fun openSegment(
+		state: DownloadState,
+		plan: SegmentPlan,
+		segment: SegmentPlan.Segment,
+		link: SegmentLink,
+	): HttpURLConnection {
+		val start = segment.next
+		val connection = (URL(state.url).openConnection() as HttpURLConnection).apply {
+			instanceFollowRedirects = true
+			connectTimeout = 60_000
+			readTimeout = 0 // stall watchdog handles dead streams
+			doInput = true
+			state.headers.forEach { (k, v) -> setRequestProperty(k, v) }
+			setRequestProperty("Range", "bytes=$start-${segment.end - 1}")
+			rangeValidator(state)?.let { setRequestProperty("If-Range", it) }
+		}
+		// Before connect(), so pause/cancel/watchdog can abort the handshake.
+		link.connection = connection
+		if (state.canceled || state.paused) throw IOException("interrupted")
+		connection.connect()
+		val resp = connection.responseCode
+		if (resp == HttpURLConnection.HTTP_OK) {
+			throw RangeUnsupportedException("server answered a range request with the full body")
+		}
+		if (resp != HttpURLConnection.HTTP_PARTIAL) throw HttpCodeException(resp, state.url)
+		val range = parseContentRange(connection.getHeaderField("Content-Range"))
+		if (range == null || range.first != start || (range.third > 0L && range.third != plan.total)) {
+			throw RangeUnsupportedException("unexpected Content-Range for bytes=$start-")
+		}
+		return connection
+	}
+
+	// Fall back to one stream from the end of the gap-free prefix: truncate
+	// the out-of-order tail so the single-stream path's on-disk-size rule
+	// holds again, and never try segments for this task again this process.
+	private fun abandonSegmentation(state: DownloadState, plan: SegmentPlan): Outcome {
+		val prefix = plan.contiguousPrefix()
+		val uri = state.uri ?: return switchToSingle
+		try {
+			contentResolver.openFileDescriptor(uri, "rw")?.use { pfd ->
+				FileOutputStream(pfd.fileDescriptor).channel.use { channel ->
+					channel.truncate(prefix)
+					channel.force(false)
+				}
+			} ?: return Outcome.Failed("Cannot open destination for writing")
+		} catch (e: Exception) {
+			return Outcome.Failed(e.message ?: "storage error")
+		}
+		state.segmentationRefused = true
+		state.untrustedPartial = false
+		state.reserved = 0L
+		state.segmentPlan = null
+		state.durableSegments = null
+		state.downloaded = prefix
+		persistState(state, status = "running")
+		return switchToSingle
+	}
+
+	// Where a checksummed single stream continues. If this process hashed
+	// every byte on disk it goes straight on; otherwise (restart, torn write)
+	// from the end of the last checksummed chunk — after re-reading just that
+	// chunk, so a damaged tail costs one chunk instead of a whole-file pass.
+	private fun checkedResumeOffset(uri: Uri, sums: ChunkChecksums, onDisk: Long): Long {
+		if (sums.hashedPrefix() == onDisk && onDisk % ChunkChecksums.CHUNK_BYTES != 0L) return onDisk
+		var chunks = minOf(sums.completeChunks().toLong(), onDisk / ChunkChecksums.CHUNK_BYTES).toInt()
+		if (chunks > 0 && !chunkMatches(uri, chunks - 1, sums)) chunks--
+		val offset = ChunkChecksums.chunkStart(chunks)
+		sums.rewindTo(offset)
+		return offset
+	}
+
+	// The segmented form of [checkedResumeOffset], once per restored plan:
+	// every segment re-reads its last checksummed chunk, and one that doesn't
+	// match goes back to that chunk's start. A chunk with no checksum counts
+	// as a mismatch, as it does for a single stream.
+	private fun checkSegmentTails(uri: Uri, plan: SegmentPlan, sums: ChunkChecksums) {
+		for (index in plan.tailChunks()) {
+			if (chunkMatches(uri, index, sums)) continue
+			val dropped = plan.rewindChunk(index) ?: continue
+			sums.forget(ChunkChecksums.chunkStart(index), dropped)
+		}
+	}
+
+	private fun chunkMatches(uri: Uri, index: Int, sums: ChunkChecksums): Boolean {
+		val expected = sums.crcOf(index) ?: return false
+		val buffer = DirectBufferPool.acquire()
+		try {
+			contentResolver.openFileDescriptor(uri, "r")?.use { pfd ->
+				FileInputStream(pfd.fileDescriptor).channel.use { channel ->
+					val crc = Crc32c.create()
+					var position = ChunkChecksums.chunkStart(index)
+					val end = position + ChunkChecksums.CHUNK_BYTES
+					while (position < end) {
+						buffer.clear()
+						buffer.limit(minOf(buffer.capacity().toLong(), end - position).toInt())
+						val n = channel.read(buffer, position)
+						if (n <= 0) return false
+						buffer.flip()
+						crc.update(buffer)
+						position += n
+					}
+					return crc.value() == expected
+				}
+			}
+			return false
+		} catch (_: Exception) {
+			return false
+		} finally {
+			DirectBufferPool.release(buffer)
+		}
+	}
+
 	// ---- Destination creation ------------------------------------------------
 
 	private fun createDestination(state: DownloadState): Uri {
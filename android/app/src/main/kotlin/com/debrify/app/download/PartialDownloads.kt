@@ -0,0 +1,141 @@
+package com.debrify.app.download
+
+import android.net.Uri
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Downloads the player may read from while they are still being written, so
+ * watching a file that is downloading doesn't fetch its bytes a second time.
+ * Looked up by URL: the player is handed the same link the download runs on.
+ *
+ * A [Partial] answers one question — how many bytes from a position are in
+ * the file — from the bookkeeping the service already keeps: the written
+ * prefix of a single stream, or the [SegmentPlan] of a segmented one. Both
+ * count only bytes already handed to the file, which a reader on its own
+ * descriptor sees straight away (the page cache; fsync is a crash concern,
+ * not a visibility one).
+ */
+object PartialDownloads {
+	class Partial internal constructor(
+		val taskId: String,
+		val url: String,
+		val uri: Uri,
+	) {
+		@Volatile var total: Long = -1L
+			internal set
+
+		// One of the two describes the file: the plan while segmented.
+		@Volatile private var prefix: Long = 0L
+		@Volatile private var plan: SegmentPlan? = null
+		// Cleared once the task stops writing (paused, failed, done): waiting
+		// can't produce more bytes.
+		@Volatile private var growing = true
+		@Volatile private var complete = false
+		private val wanted = AtomicLong(-1L)
+		private val signal = Object()
+		@Volatile private var waiters = 0
+
+		/** Bytes readable at [position] without a gap. */
+		fun available(position: Long): Long {
+			if (position < 0L) return 0L
+			if (complete) return (total - position).coerceAtLeast(0L)
+			val p = plan
+			return p?.availableFrom(position) ?: (prefix - position).coerceAtLeast(0L)
+		}
+
+		/**
+		 * A reader is blocked at [position]. A segmented download points a
+		 * connection at it; a single stream arrives in order regardless.
+		 */
+		fun prioritize(position: Long) {
+			if (plan != null) wanted.set(position)
+		}
+
+		/**
+		 * Wait up to [timeoutMs] for bytes at [position] and return how many
+		 * are there — 0 when the wait is over, or when it is pointless: the
+		 * task stopped, or a single stream is further behind than it can
+		 * cover in the time.
+		 */
+		fun await(position: Long, timeoutMs: Long): Long {
+			if (plan == null && !complete) {
+				val rate = DownloadRegistry.live[taskId]?.rateBps ?: 0L
+				if (position - prefix > rate * timeoutMs / 1000) return available(position)
+			}
+			val deadline = System.currentTimeMillis() + timeoutMs
+			synchronized(signal) {
+				waiters++
+				try {
+					while (true) {
+						val n = available(position)
+						if (n > 0L || !growing) return n
+						val left = deadline - System.currentTimeMillis()
+						if (left <= 0L) return 0L
+						signal.wait(left)
+					}
+				} finally {
+					waiters--
+				}
+			}
+		}
+
+		/** Single stream: `[0, bytes)` is in the file. */
+		internal fun trackPrefix(bytes: Long) {
+			plan = null
+			prefix = bytes
+			advanced()
+		}
+
+		internal fun trackPlan(segments: SegmentPlan) {
+			plan = segments
+			advanced()
+		}
+
+		/** More bytes landed; wakes readers, if any are waiting. */
+		internal fun advanced(bytes: Long = -1L) {
+			if (bytes >= 0L) prefix = bytes
+			if (waiters > 0) synchronized(signal) { signal.notifyAll() }
+		}
+
+		/** Position a reader is waiting on, at most once; -1 for none. */
+		internal fun takeWanted(): Long = wanted.getAndSet(-1L)
+
+		internal fun stop(done: Boolean) {
+			complete = done
+			growing = false
+			synchronized(signal) { signal.notifyAll() }
+		}
+
+		internal fun resume() {
+			growing = true
+		}
+	}
+
+	private val byTask = ConcurrentHashMap<String, Partial>()
+
+	/** The in-progress download of [url] with a known size, if any. */
+	fun find(url: String): Partial? =
+		byTask.values.firstOrNull { it.url == url && it.total > 0L }
+
+	/** A transfer into [uri] is starting; readers may join from here. */
+	internal fun publish(taskId: String, url: String, uri: Uri, total: Long): Partial {
+		val existing = byTask[taskId]
+		val partial = if (existing != null && existing.url == url && existing.uri == uri) {
+			existing
+		} else {
+			Partial(taskId, url, uri).also { byTask[taskId] = it }
+		}
+		partial.total = total
+		partial.resume()
+		return partial
+	}
+
+	/**
+	 * The task stopped writing. Readers already attached keep the bytes they
+	 * can see — all of them when [complete] — and go elsewhere for the rest.
+	 */
+	internal fun withdraw(taskId: String, complete: Boolean) {
+		byTask.remove(taskId)?.stop(complete)
+	}
+}
@@ -0,0 +1,201 @@
+package com.debrify.app.download
+
+import android.os.Handler
+import android.os.Looper
+import com.debrify.app.recording.RecordingRegistry
+import java.nio.ByteBuffer
+
+/**
+ * Builds the coalesced progress frame: every live task in one byte array,
+ * struct-of-arrays, instead of one boxed map per task per tick. Layout (big
+ * endian, what Dart's ByteData reads by default):
+ *
+ *     int8  version
+ *     int8  hasTable      1 when the ID table follows the arrays
+ *     int32 generation    bumped whenever the set of task IDs changes
+ *     int64 timestampMs
+ *     int32 n
+ *     int8  kind[n]       [KIND_DOWNLOAD] | [KIND_RECORDING]
+ *     int64 bytes[n]
+ *     int64 total[n]      -1 when unknown (always, for recordings)
+ *     int64 rate[n]       bytes/s
+ *     int8  flags[n]      [FLAG_THROTTLED]
+ *     ID table            n × (int16 length, UTF-8 task ID, int16 length,
+ *                         UTF-8 owner profile ID)
+ *
+ * The ID table is only sent when the generation changes (or after [reset]):
+ * a frame without one reuses the listener's last table, index for index.
+ * Pure JVM; [ProgressFrames] does the sampling and scheduling.
+ */
+internal class ProgressFrameEncoder {
+	companion object {
+		const val VERSION: Byte = 1
+		const val KIND_DOWNLOAD: Byte = 0
+		const val KIND_RECORDING: Byte = 1
+		const val FLAG_THROTTLED = 1
+	}
+
+	class Sample(
+		val taskId: String,
+		val ownerProfileId: String,
+		val kind: Byte,
+		val bytes: Long,
+		val total: Long,
+		val rateBps: Long,
+		val flags: Int,
+	)
+
+	private var lastIds: List<String> = emptyList()
+	private var generation = 0
+	private var tableSent = false
+
+	/** The listener changed: its next frame must carry the ID table. */
+	fun reset() {
+		tableSent = false
+	}
+
+	/** [samples] must be in a stable order (the service sorts by task ID). */
+	fun encode(samples: List<Sample>, nowMs: Long): ByteArray {
+		val ids = samples.map { it.taskId }
+		if (ids != lastIds) {
+			lastIds = ids
+			generation++
+			tableSent = false
+		}
+		val withTable = !tableSent
+		val idBytes = if (withTable) samples.map { it.taskId.toByteArray(Charsets.UTF_8) } else emptyList()
+		val ownerBytes = if (withTable) samples.map { it.ownerProfileId.toByteArray(Charsets.UTF_8) } else emptyList()
+		val n = samples.size
+		var size = 1 + 1 + 4 + 8 + 4 + n * (1 + 8 + 8 + 8 + 1)
+		if (withTable) {
+			size += idBytes.sumOf { 2 + it.size } + ownerBytes.sumOf { 2 + it.size }
+		}
+		val out = ByteBuffer.allocate(size)
+		out.put(VERSION)
+		out.put(if (withTable) 1 else 0)
+		out.putInt(generation)
+		out.putLong(nowMs)
+		out.putInt(n)
+		for (s in samples) out.put(s.kind)
+		for (s in samples) out.putLong(s.bytes)
+		for (s in samples) out.putLong(s.total)
+		for (s in samples) out.putLong(s.rateBps)
+		for (s in samples) out.put(s.flags.toByte())
+		if (withTable) {
+			for (i in 0 until n) {
+				out.putShort(idBytes[i].size.toShort())
+				out.put(idBytes[i])
+				out.putShort(ownerBytes[i].size.toShort())
+				out.put(ownerBytes[i])
+			}
+			tableSent = true
+		}
+		return out.array()
+	}
+}
+
+/**
+ * One progress tick for all live downloads ([DownloadRegistry.live]) and
+ * engine recordings ([RecordingRegistry.live]), replacing a boxed map per
+ * task per 500 ms on the event channel.
+ *
+ * Runs on the main thread and only while a Dart listener is attached —
+ * detached, nothing is sampled at all. Attached, it ticks every [FAST_MS]
+ * while bytes are moving, backs off to [SLOW_MS] while they aren't, and
+ * stops when nothing is live; services [wake] it when a task goes live.
+ * Lifecycle events (started, complete, error, ...) keep going through
+ * [ChannelBridge.emit] and its detached-listener buffer.
+ */
+object ProgressFrames {
+	private const val FAST_MS = 500L
+	private const val SLOW_MS = 2_000L
+
+	private val mainHandler = Handler(Looper.getMainLooper())
+	private val encoder = ProgressFrameEncoder()
+	private var listening = false
+	private var scheduled = false
+	private var intervalMs = FAST_MS
+	private var lastProgress: Map<String, Triple<Long, Long, Int>> = emptyMap()
+	private var sentEmpty = true
+	// Recordings carry no rate of their own: derived from successive ticks.
+	private val recordingSamples = HashMap<String, Pair<Long, Long>>()
+	private val recordingListener: () -> Unit = { wake() }
+
+	/** Called by [ChannelBridge] on the main thread as listeners come and go. */
+	internal fun setListening(attached: Boolean) {
+		if (attached == listening) return
+		listening = attached
+		if (attached) {
+			encoder.reset()
+			sentEmpty = false
+			RecordingRegistry.addListener(recordingListener)
+			wake()
+		} else {
+			RecordingRegistry.removeListener(recordingListener)
+			mainHandler.removeCallbacks(tick)
+			scheduled = false
+			recordingSamples.clear()
+		}
+	}
+
+	/** A task went live (or its membership changed): tick soon. Any thread. */
+	fun wake() {
+		mainHandler.post {
+			if (!listening) return@post
+			intervalMs = FAST_MS
+			if (scheduled) mainHandler.removeCallbacks(tick)
+			scheduled = true
+			mainHandler.post(tick)
+		}
+	}
+
+	private val tick: Runnable = Runnable {
+		scheduled = false
+		if (!listening) return@Runnable
+		val now = System.currentTimeMillis()
+		val samples = collect(now)
+		val progress = samples.associate { it.taskId to Triple(it.bytes, it.rateBps, it.flags) }
+		val changed = progress != lastProgress
+		lastProgress = progress
+		if (samples.isEmpty()) {
+			// One empty frame tells Dart everything stopped; then go idle.
+			if (!sentEmpty) ChannelBridge.emitFrame(encoder.encode(samples, now))
+			sentEmpty = true
+			return@Runnable
+		}
+		sentEmpty = false
+		if (changed) {
+			ChannelBridge.emitFrame(encoder.encode(samples, now))
+			intervalMs = FAST_MS
+		} else {
+			intervalMs = (intervalMs * 2).coerceAtMost(SLOW_MS)
+		}
+		scheduled = true
+		mainHandler.postDelayed(tick, intervalMs)
+	}
+
+	private fun collect(now: Long): List<ProgressFrameEncoder.Sample> {
+		val out = ArrayList<ProgressFrameEncoder.Sample>()
+		val throttled = if (DownloadRegistry.throttled) ProgressFrameEncoder.FLAG_THROTTLED else 0
+		for ((taskId, live) in DownloadRegistry.live) {
+			out.add(ProgressFrameEncoder.Sample(
+				taskId, live.ownerProfileId, ProgressFrameEncoder.KIND_DOWNLOAD,
+				live.bytes, live.total, live.rateBps, throttled,
+			))
+		}
+		recordingSamples.keys.retainAll(RecordingRegistry.live.keys)
+		for ((taskId, live) in RecordingRegistry.live) {
+			val bytes = live.bytes
+			val previous = recordingSamples.put(taskId, bytes to now)
+			val rate = if (previous != null && now > previous.second) {
+				((bytes - previous.first) * 1000 / (now - previous.second)).coerceAtLeast(0L)
+			} else 0L
+			out.add(ProgressFrameEncoder.Sample(
+				taskId, live.ownerProfileId, ProgressFrameEncoder.KIND_RECORDING,
+				bytes, -1L, rate, 0,
+			))
+		}
+		out.sortBy { it.taskId }
+		return out
+	}
+}
@@ -0,0 +1,305 @@
+package com.debrify.app.download
+
+/**
+ * Byte-range bookkeeping for a segmented (multi-connection) download.
+ *
+ * The file `[0, total)` is covered by disjoint segments, each owned by at most
+ * one connection at a time. A segment's `next` is the first byte not yet
+ * written; everything in `[start, next)` is on disk. Workers never write past
+ * `end`, so a segment can be split while it is being downloaded — the owner
+ * just stops earlier, and the back half goes to whichever connection asks
+ * next. That is how the connection count grows without restarting anything.
+ *
+ * Segment boundaries fall on [ALIGN_BYTES] multiples (the checksum chunk
+ * size, see [ChunkChecksums]), so every chunk is written front to back by a
+ * single owner and can be hashed on the write path.
+ *
+ * Pure JVM (no Android types) and synchronized throughout: the service's
+ * segment workers and its coordinator all touch one instance.
+ */
+internal class SegmentPlan private constructor(
+	val total: Long,
+	private val segments: MutableList<Segment>,
+) {
+	class Segment(
+		val start: Long,
+		@Volatile var end: Long, // exclusive
+		@Volatile var next: Long,
+	) {
+		var owned: Boolean = false
+
+		val remaining: Long get() = (end - next).coerceAtLeast(0L)
+		val done: Boolean get() = next >= end
+	}
+
+	companion object {
+		const val ALIGN_BYTES = ChunkChecksums.CHUNK_BYTES
+
+		/** [count] roughly equal segments over `[0, total)`. */
+		fun initial(total: Long, count: Int): SegmentPlan {
+			require(total > 0L) { "total must be positive" }
+			val n = count.coerceIn(1, 64).toLong().coerceAtMost(total).toInt()
+			val size = (total / n).let { if (it >= ALIGN_BYTES) it - it % ALIGN_BYTES else it }
+			val list = ArrayList<Segment>(n)
+			var start = 0L
+			for (i in 0 until n) {
+				val end = if (i == n - 1) total else start + size
+				list.add(Segment(start, end, start))
+				start = end
+			}
+			return SegmentPlan(total, list)
+		}
+
+		/**
+		 * Inverse of [encode]. Returns null for anything that does not describe
+		 * an exact, gap-free cover of `[0, total)` — a plan that doesn't add up
+		 * can't be trusted to say which bytes are on disk, so the caller must
+		 * start over instead.
+		 */
+		fun decode(total: Long, encoded: String?): SegmentPlan? {
+			if (encoded.isNullOrBlank() || total <= 0L) return null
+			return try {
+				val list = encoded.split(',').map { triple ->
+					val parts = triple.split('-')
+					if (parts.size != 3) return null
+					Segment(parts[0].toLong(), parts[1].toLong(), parts[2].toLong())
+				}.sortedBy { it.start }
+				var expected = 0L
+				for (s in list) {
+					if (s.start != expected || s.end <= s.start) return null
+					if (s.next < s.start || s.next > s.end) return null
+					expected = s.end
+				}
+				if (expected != total) return null
+				SegmentPlan(total, list.toMutableList())
+			} catch (_: NumberFormatException) {
+				null
+			}
+		}
+	}
+
+	/** `start-end-next` triples, comma separated. Compact enough to persist
+	 *  with every checkpoint. */
+	@Synchronized
+	fun encode(): String = segments.joinToString(",") { "${it.start}-${it.end}-${it.next}" }
+
+	/** Bytes written across all segments. */
+	@Synchronized
+	fun downloaded(): Long = segments.sumOf { it.next - it.start }
+
+	@Synchronized
+	fun isComplete(): Boolean = segments.all { it.done }
+
+	/**
+	 * End of the gap-free run of bytes from offset 0 — what a single-stream
+	 * download can safely continue from if segmentation has to be abandoned.
+	 */
+	@Synchronized
+	fun contiguousPrefix(): Long {
+		for (s in segments) {
+			if (!s.done) return s.next
+		}
+		return total
+	}
+
+	/**
+	 * How many bytes starting at [position] are on disk without a gap — what
+	 * a reader of the partial file may read there right now. Runs across
+	 * segment boundaries only through finished segments.
+	 */
+	@Synchronized
+	fun availableFrom(position: Long): Long {
+		var index = segments.indexOfFirst { position >= it.start && position < it.end }
+		if (index < 0) return 0L
+		var seg = segments[index]
+		if (position >= seg.next) return 0L
+		var available = seg.next - position
+		while (seg.done && ++index < segments.size) {
+			seg = segments[index]
+			available += seg.next - seg.start
+		}
+		return available
+	}
+
+	// A byte a reader is waiting for; see [prefer].
+	private var preferred = -1L
+
+	/**
+	 * Have the next [claim] start at (the chunk boundary at or below)
+	 * [position], ahead of all other work. False when there is nothing to
+	 * do: the byte is on disk, or its segment's owner reaches it within a
+	 * chunk anyway.
+	 */
+	@Synchronized
+	fun prefer(position: Long): Boolean {
+		val seg = segments.firstOrNull { position >= it.start && position < it.end } ?: return false
+		if (position < seg.next) return false
+		if (seg.owned && position - position % ALIGN_BYTES <= seg.next) return false
+		preferred = position
+		return true
+	}
+
+	/**
+	 * Hand out work: the segment a reader is waiting on ([prefer]) first,
+	 * then an unowned unfinished segment if there is one, else the back half
+	 * of the largest owned segment that still has at least 2 × [minSplitBytes]
+	 * to go. Null when nothing is worth another connection.
+	 */
+	@Synchronized
+	fun claim(minSplitBytes: Long): Segment? {
+		claimPreferred()?.let { return it }
+		segments.firstOrNull { !it.owned && !it.done }?.let {
+			it.owned = true
+			return it
+		}
+		val victim = segments
+			.filter { it.owned && !it.done }
+			.maxByOrNull { it.remaining }
+			?: return null
+		if (victim.remaining < minSplitBytes * 2) return null
+		val mid = (victim.next + victim.remaining / 2).let { it - it % ALIGN_BYTES }
+		if (mid <= victim.next) return null
+		val tail = Segment(mid, victim.end, mid)
+		victim.end = mid
+		tail.owned = true
+		segments.add(segments.indexOf(victim) + 1, tail)
+		return tail
+	}
+
+	private fun claimPreferred(): Segment? {
+		val position = preferred
+		if (position < 0L) return null
+		preferred = -1L
+		val seg = segments.firstOrNull { position >= it.start && position < it.end } ?: return null
+		if (position < seg.next) return null
+		val cut = position - position % ALIGN_BYTES
+		if (cut <= seg.next) {
+			if (seg.owned) return null
+			seg.owned = true
+			return seg
+		}
+		// Split even an unowned segment: its front can wait for a later claim.
+		val tail = Segment(cut, seg.end, cut)
+		seg.end = cut
+		tail.owned = true
+		segments.add(segments.indexOf(seg) + 1, tail)
+		return tail
+	}
+
+	@Synchronized
+	fun release(segment: Segment) {
+		segment.owned = false
+	}
+
+	/** How many of [available] freshly read bytes still belong to [segment]. */
+	@Synchronized
+	fun writable(segment: Segment, available: Int): Int =
+		minOf(available.toLong(), segment.remaining).toInt()
+
+	/**
+	 * Record [count] bytes written at [segment]'s `next`. Clamped to `end`: a
+	 * split that landed between [writable] and the write means the owner wrote
+	 * a few bytes that now belong to the tail — the same bytes the tail's own
+	 * connection will write, so only the accounting needs care. Returns how
+	 * many of the bytes were accepted.
+	 */
+	@Synchronized
+	fun commit(segment: Segment, count: Int): Int {
+		val accepted = minOf(count.toLong(), segment.remaining).toInt()
+		segment.next += accepted
+		return accepted
+	}
+
+	/**
+	 * Move every unfinished segment's `next` back to the chunk boundary at or
+	 * below it (never before its `start`). A restored plan has no checksum
+	 * state for a half-written chunk, so that chunk is fetched again whole —
+	 * at most [ALIGN_BYTES] per segment.
+	 */
+	@Synchronized
+	fun rewindToChunks() {
+		for (s in segments) {
+			if (!s.done) s.next = maxOf(s.start, s.next - s.next % ALIGN_BYTES)
+		}
+	}
+
+	/**
+	 * Index of the last complete chunk each segment has written, for the
+	 * resume check that re-reads it. Segments with no complete chunk yet
+	 * have nothing to check.
+	 */
+	@Synchronized
+	fun tailChunks(): List<Int> = segments.mapNotNull { s ->
+		val last = (s.next / ALIGN_BYTES).toInt() - 1
+		if (last >= 0 && ChunkChecksums.chunkStart(last) >= s.start) last else null
+	}
+
+	/**
+	 * Chunk [index] failed its check: move the segment holding it back to the
+	 * chunk's start, so it is fetched again along with anything written after
+	 * it. Returns the segment's old `next` (the end of what was dropped), or
+	 * null if no segment had written that chunk.
+	 */
+	@Synchronized
+	fun rewindChunk(index: Int): Long? {
+		val at = ChunkChecksums.chunkStart(index)
+		val seg = segments.firstOrNull { at >= it.start && at < it.end } ?: return null
+		if (seg.next <= at) return null
+		val dropped = seg.next
+		seg.next = at
+		return dropped
+	}
+}
+
+/**
+ * Decides how many connections a segmented download should use, from the
+ * aggregate throughput the coordinator samples. Debrid CDNs throttle per
+ * connection, so a new connection that lifts the total is worth keeping; one
+ * that doesn't (the line, not the CDN, is now the limit) is given back.
+ *
+ * Probing: with headroom, every sample adds one connection and the next sample
+ * judges it. A probe that failed to raise the total by [MIN_GAIN] is reverted
+ * and growth pauses for [HOLD_SAMPLES] samples, after which it probes again —
+ * CDN throttles and home links both change over a long download.
+ */
+internal class ConnectionGovernor(
+	private val min: Int,
+	private val max: Int,
+	initial: Int,
+) {
+	companion object {
+		private const val MIN_GAIN = 1.15
+		private const val HOLD_SAMPLES = 10
+	}
+
+	var target: Int = initial.coerceIn(min, max)
+		private set
+	private var baselineBps = 0.0
+	private var probing = false
+	private var holdRemaining = 0
+
+	/** Feed one throughput sample (bytes/second across all connections);
+	 *  returns the connection count to run with until the next sample. */
+	fun onSample(aggregateBps: Double): Int {
+		if (probing) {
+			probing = false
+			if (aggregateBps < baselineBps * MIN_GAIN) {
+				target = (target - 1).coerceAtLeast(min)
+				holdRemaining = HOLD_SAMPLES
+			}
+			baselineBps = aggregateBps
+			return target
+		}
+		if (holdRemaining > 0) {
+			holdRemaining--
+			baselineBps = aggregateBps
+			return target
+		}
+		if (target < max && aggregateBps > 0.0) {
+			baselineBps = aggregateBps
+			target++
+			probing = true
+		}
+		return target
+	}
+}
@@ -0,0 +1,101 @@
+package com.debrify.app.download
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.ReadableByteChannel
+
+/**
+ * The byte-moving core of [MediaStoreDownloadService]'s transfers: read a
+ * connection into a pooled direct buffer, write it where it belongs through
+ * a [ChannelSink], hash it into the [ChunkChecksums]. Everything around it —
+ * connections, retries, progress, persistence — stays in the service; this
+ * part is pure JVM so TransferBenchmarkTest measures the code that ships.
+ *
+ * [proceed] is asked before every read and ends the loop when false (pause,
+ * cancel, a retiring segment worker); [throttle] is the bandwidth limiter,
+ * called with each read's size before the bytes are written.
+ */
+internal object TransferLoops {
+	/** The write side failed: no reconnect can fix storage. */
+	class StorageException(cause: IOException) : Exception(cause.message, cause)
+
+	/**
+	 * Stream [source] into [sink] from [position] on. [advanced] gets the new
+	 * end of the written bytes after every read. True at end of stream, false
+	 * when [proceed] stopped it.
+	 */
+	fun stream(
+		source: ReadableByteChannel,
+		buffer: ByteBuffer,
+		sink: ChannelSink,
+		sums: ChunkChecksums?,
+		position: Long,
+		proceed: () -> Boolean,
+		throttle: (Int) -> Unit,
+		advanced: (Long) -> Unit,
+	): Boolean {
+		var at = position
+		while (proceed()) {
+			buffer.clear()
+			val n = source.read(buffer)
+			if (n == -1) return true
+			if (n == 0) continue
+			throttle(n)
+			buffer.flip()
+			sink.writeAt(buffer, at)
+			if (sums != null) {
+				buffer.rewind()
+				sums.record(at, buffer)
+			}
+			at += n
+			advanced(at)
+		}
+		return false
+	}
+
+	/**
+	 * Stream [source] into [segment] of [plan] until the segment is done, the
+	 * source ends or [proceed] stops it. Bytes past the segment's end (it was
+	 * split under us) are dropped. [advanced] gets each read's committed
+	 * count. Throws [StorageException] when the write fails; a read failure
+	 * propagates as is, for the caller to reconnect.
+	 */
+	fun segment(
+		source: ReadableByteChannel,
+		buffer: ByteBuffer,
+		sink: ChannelSink,
+		plan: SegmentPlan,
+		segment: SegmentPlan.Segment,
+		sums: ChunkChecksums?,
+		proceed: () -> Boolean,
+		throttle: (Int) -> Unit,
+		advanced: (Int) -> Unit,
+	) {
+		while (!segment.done && proceed()) {
+			buffer.clear()
+			val n = source.read(buffer)
+			if (n == -1) return
+			if (n == 0) continue
+			throttle(n)
+			val count = plan.writable(segment, n)
+			if (count <= 0) return
+			buffer.flip()
+			buffer.limit(count)
+			val position = segment.next
+			try {
+				sink.writeAt(buffer, position)
+			} catch (e: IOException) {
+				throw StorageException(e)
+			}
+			synchronized(plan) {
+				val accepted = plan.commit(segment, count)
+				if (sums != null) {
+					buffer.rewind()
+					buffer.limit(accepted)
+					sums.record(position, buffer)
+				}
+			}
+			advanced(count)
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.debrify.app.recording
+
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * One connection's worth of [LiveRecordingService]'s byte capture, without
+ * the service around it (reconnects, pre-roll, notifications), so
+ * TransferBenchmarkTest times the loop that ships.
+ */
+internal object CaptureLoop {
+	enum class End {
+		/** The stream ended or [copy]'s `proceed` stopped it. */
+		ENDED,
+
+		/** The first bytes were an HLS playlist; nothing was taken. */
+		PLAYLIST,
+
+		/** `take` refused the bytes: storage failed. */
+		REFUSED,
+	}
+
+	/** The recording and its seek index, fed the same bytes. */
+	class Sink(private val out: OutputStream, private val index: RecordingIndex.Writer) {
+		@Throws(IOException::class)
+		fun write(data: ByteArray, offset: Int, length: Int) {
+			out.write(data, offset, length)
+			index.append(data, offset, length)
+		}
+	}
+
+	/**
+	 * Read [input] into [buffer] and hand every non-empty read to [take],
+	 * until the stream ends, [proceed] says stop or [take] returns false.
+	 * With [sniff], a stream whose first bytes are `#EXTM3U` is a playlist:
+	 * copying it would append manifest text into a ".ts", so it is left for
+	 * the caller to record segment by segment.
+	 */
+	fun copy(
+		input: InputStream,
+		buffer: ByteArray,
+		sniff: Boolean,
+		proceed: () -> Boolean,
+		take: (Int) -> Boolean,
+	): End {
+		var first = sniff
+		while (proceed()) {
+			val n = input.read(buffer)
+			if (n == -1) break
+			if (n == 0) continue
+			if (first && n >= 7 &&
+				buffer[0] == '#'.code.toByte() &&
+				String(buffer, 0, 7) == "#EXTM3U"
+			) {
+				return End.PLAYLIST
+			}
+			first = false
+			if (!take(n)) return End.REFUSED
+		}
+		return End.ENDED
+	}
+}
@@ -0,0 +1,463 @@
+package com.debrify.app.recording
+
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/** A stream this engine can't turn into a single .ts; [note] says why. */
+internal class UnrecordableStreamException(val note: String) : Exception(note)
+
+/**
+ * The parts of an HLS playlist a capture needs (RFC 8216). Anything that
+ * would make the concatenated segments something other than one playable
+ * MPEG-TS — fMP4 init sections, SAMPLE-AES, byte ranges, audio carried in
+ * its own rendition — is refused at parse time rather than recorded wrong.
+ */
+internal sealed class HlsPlaylist {
+	class Variant(val url: URL, val bandwidth: Long, val separateAudio: Boolean)
+
+	class Master(val variants: List<Variant>) : HlsPlaylist() {
+		/** The best variant that carries its own audio. */
+		fun pick(): Variant {
+			return variants.filter { !it.separateAudio }.maxByOrNull { it.bandwidth }
+				?: throw UnrecordableStreamException("stream carries its audio separately")
+		}
+	}
+
+	class Key(val url: URL, val iv: ByteArray?)
+
+	class Segment(val sequence: Long, val url: URL, val key: Key?, val discontinuity: Boolean)
+
+	class Media(
+		val targetDurationMs: Long,
+		val segments: List<Segment>,
+		val endList: Boolean,
+	) : HlsPlaylist() {
+		val firstSequence: Long get() = segments.firstOrNull()?.sequence ?: -1L
+		val lastSequence: Long get() = segments.lastOrNull()?.sequence ?: -1L
+	}
+
+	companion object {
+		private val ATTRIBUTE = Regex("([A-Z0-9-]+)=(\"[^\"]*\"|[^,]*)")
+
+		fun parse(text: String, base: URL): HlsPlaylist {
+			val lines = text.lineSequence().map { it.trim() }.filter { it.isNotEmpty() }.toList()
+			if (lines.firstOrNull()?.startsWith("#EXTM3U") != true) {
+				throw IOException("not a playlist")
+			}
+			return if (lines.any { it.startsWith("#EXT-X-STREAM-INF:") }) {
+				parseMaster(lines, base)
+			} else {
+				parseMedia(lines, base)
+			}
+		}
+
+		private fun parseMaster(lines: List<String>, base: URL): Master {
+			// Audio groups whose renditions point at their own playlists: a
+			// variant in one of them has video-only segments.
+			val externalAudio = lines
+				.filter { it.startsWith("#EXT-X-MEDIA:") }
+				.map { attributes(it) }
+				.filter { it["TYPE"] == "AUDIO" && it["URI"] != null }
+				.mapNotNull { it["GROUP-ID"] }
+				.toSet()
+			val variants = mutableListOf<Variant>()
+			var pending: Map<String, String>? = null
+			for (line in lines) {
+				when {
+					line.startsWith("#EXT-X-STREAM-INF:") -> pending = attributes(line)
+					line.startsWith("#") -> {}
+					pending != null -> {
+						variants += Variant(
+							url = URL(base, line),
+							bandwidth = pending["BANDWIDTH"]?.toLongOrNull() ?: 0L,
+							separateAudio = pending["AUDIO"] in externalAudio,
+						)
+						pending = null
+					}
+				}
+			}
+			if (variants.isEmpty()) throw IOException("master playlist without variants")
+			return Master(variants)
+		}
+
+		private fun parseMedia(lines: List<String>, base: URL): Media {
+			var targetDurationMs = 0L
+			var sequence = 0L
+			var key: Key? = null
+			var discontinuity = false
+			var endList = false
+			val segments = mutableListOf<Segment>()
+			for (line in lines) {
+				when {
+					line.startsWith("#EXT-X-TARGETDURATION:") ->
+						targetDurationMs = (line.substringAfter(':').toDoubleOrNull() ?: 0.0).times(1000).toLong()
+					line.startsWith("#EXT-X-MEDIA-SEQUENCE:") ->
+						sequence = line.substringAfter(':').toLongOrNull() ?: 0L
+					line == "#EXT-X-DISCONTINUITY" -> discontinuity = true
+					line == "#EXT-X-ENDLIST" -> endList = true
+					line.startsWith("#EXT-X-MAP:") ->
+						throw UnrecordableStreamException("stream uses fMP4 segments")
+					line.startsWith("#EXT-X-BYTERANGE:") ->
+						throw UnrecordableStreamException("stream uses byte-range segments")
+					line.startsWith("#EXT-X-KEY:") -> {
+						val attrs = attributes(line)
+						key = when (attrs["METHOD"]) {
+							"NONE" -> null
+							"AES-128" -> Key(
+								url = URL(base, attrs["URI"] ?: throw IOException("AES-128 key without URI")),
+								iv = attrs["IV"]?.let { parseIv(it) },
+							)
+							else -> throw UnrecordableStreamException("stream is DRM-protected")
+						}
+					}
+					line.startsWith("#") -> {}
+					else -> {
+						segments += Segment(sequence, URL(base, line), key, discontinuity)
+						sequence++
+						discontinuity = false
+					}
+				}
+			}
+			return Media(targetDurationMs.coerceAtLeast(1_000L), segments, endList)
+		}
+
+		private fun attributes(line: String): Map<String, String> =
+			ATTRIBUTE.findAll(line.substringAfter(':')).associate { match ->
+				match.groupValues[1] to match.groupValues[2].removeSurrounding("\"")
+			}
+
+		/** An `IV` attribute's 16 bytes; a shorter hex value is zero-padded. */
+		fun parseIv(value: String): ByteArray {
+			val hex = value.removePrefix("0x").removePrefix("0X").padStart(32, '0')
+			if (hex.length != 32) throw IOException("bad IV $value")
+			return ByteArray(16) { i -> hex.substring(i * 2, i * 2 + 2).toInt(16).toByte() }
+		}
+
+		/** The IV a key without one uses: the sequence number, big-endian, in 16 bytes. */
+		fun sequenceIv(sequence: Long): ByteArray =
+			ByteArray(16) { i -> if (i < 8) 0 else (sequence ushr ((15 - i) * 8)).toByte() }
+
+		/** [data] of [segment] deciphered with its AES-128 [key]'s bytes. */
+		fun decrypt(segment: Segment, key: ByteArray, data: ByteArray): ByteArray {
+			val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding")
+			cipher.init(
+				Cipher.DECRYPT_MODE,
+				SecretKeySpec(key, "AES"),
+				IvParameterSpec(segment.key?.iv ?: sequenceIv(segment.sequence)),
+			)
+			return cipher.doFinal(data)
+		}
+
+		/**
+		 * Set the adaptation-field discontinuity_indicator on the first packet
+		 * of each PID that carries one, so players reset their clocks at a
+		 * spliced-in segment instead of treating its timestamps as a jump.
+		 * Data that isn't packet-aligned TS is left alone.
+		 */
+		fun markDiscontinuity(ts: ByteArray) {
+			val marked = HashSet<Int>()
+			var at = 0
+			while (at + 188 <= ts.size && ts[at] == 0x47.toByte()) {
+				val pid = ((ts[at + 1].toInt() and 0x1f) shl 8) or (ts[at + 2].toInt() and 0xff)
+				val hasAdaptation = ts[at + 3].toInt() and 0x20 != 0
+				if (hasAdaptation && ts[at + 4] > 0 && marked.add(pid)) {
+					ts[at + 5] = (ts[at + 5].toInt() or 0x80).toByte()
+				}
+				at += 188
+			}
+		}
+	}
+}
+
+/**
+ * Records an HLS stream into one MPEG-TS: polls the media playlist at its
+ * target-duration cadence, fetches up to [prefetch] segments at once, and
+ * appends them strictly in media-sequence order, each exactly once.
+ *
+ * The position is the next media sequence to append, and it survives
+ * everything short of the stream restarting its numbering: a failed
+ * playlist fetch re-resolves from the channel URL and carries on from there,
+ * and a segment that fails is fetched again, a few times, while it is
+ * still in the playlist window. Only segments that have left the window (or
+ * kept failing) are lost; the next appended segment is then marked as a
+ * discontinuity, as is one that follows an `#EXT-X-DISCONTINUITY`.
+ *
+ * [open] returns a connected 2xx response and hands each connection to the
+ * tracker first, so [cancel] can break blocked reads. [write] failing is a
+ * storage failure and ends the capture.
+ */
+internal class HlsCapture(
+	private val open: (url: URL, track: (HttpURLConnection) -> Unit) -> HttpURLConnection,
+	private val write: (ByteArray) -> Unit,
+	private val keepGoing: () -> Boolean,
+	private val prefetch: Int = 3,
+) {
+	companion object {
+		/** Segments behind the live edge a capture starts at, as players do. */
+		private const val LIVE_EDGE_SEGMENTS = 3
+		private const val SEGMENT_ATTEMPTS = 3
+		private const val MAX_PLAYLIST_FAILURES = 10
+		private const val PLAYLIST_RETRY_MS = 2_000L
+		// Without a new segment for this many target durations the playlist
+		// counts as failed: its node may be serving a frozen copy.
+		private const val STALE_TARGET_DURATIONS = 6
+		private const val KEY_CACHE_SIZE = 8
+	}
+
+	class Result(
+		val segments: Int,
+		val lost: Long,
+		val discontinuities: Int,
+		val note: String?,
+		val storageFailed: Boolean,
+	)
+
+	private class Pending(val segment: HlsPlaylist.Segment, val task: Future<ByteArray>)
+
+	private class StorageException(cause: IOException) : Exception(cause)
+
+	private val connections = ConcurrentHashMap.newKeySet<HttpURLConnection>()
+	private val keys = object : LinkedHashMap<String, ByteArray>(KEY_CACHE_SIZE, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ByteArray>?) =
+			size > KEY_CACHE_SIZE
+	}
+	@Volatile private var cancelled = false
+
+	/** Stop now: disconnects every open request. */
+	fun cancel() {
+		cancelled = true
+		connections.forEach { try { it.disconnect() } catch (_: Exception) {} }
+	}
+
+	private fun running() = !cancelled && keepGoing()
+
+	fun run(channelUrl: URL): Result {
+		val pool = Executors.newFixedThreadPool(prefetch) { r ->
+			Thread(r, "hls-segment").apply { isDaemon = true }
+		}
+		val pending = TreeMap<Long, Pending>()
+		val attempts = HashMap<Long, Int>()
+		var mediaUrl: URL? = null
+		var playlist: HlsPlaylist.Media? = null
+		var nextSequence = -1L
+		var markNext = false
+		var segments = 0
+		var lost = 0L
+		var discontinuities = 0
+		var playlistFailures = 0
+		var lastNote: String? = null
+		var nextPollAt = 0L
+		var lastProgressAt = System.currentTimeMillis()
+		var checkedFormat = false
+
+		fun result(note: String?, storageFailed: Boolean = false) =
+			Result(segments, lost, discontinuities, note, storageFailed)
+
+		try {
+			while (running()) {
+				val now = System.currentTimeMillis()
+				if (now >= nextPollAt) {
+					val loaded = try {
+						val url = mediaUrl ?: resolveMedia(channelUrl).also { mediaUrl = it }
+						HlsPlaylist.parse(fetchText(url), url) as? HlsPlaylist.Media
+							?: throw IOException("variant is a master playlist")
+					} catch (e: UnrecordableStreamException) {
+						return result(e.note)
+					} catch (e: Exception) {
+						if (!running()) break
+						lastNote = e.message
+						null
+					}
+					val target = loaded?.targetDurationMs ?: playlist?.targetDurationMs ?: PLAYLIST_RETRY_MS
+					val stale = loaded != null && loaded.lastSequence < nextSequence &&
+						now - lastProgressAt > STALE_TARGET_DURATIONS * target
+					if (loaded == null || stale) {
+						if (stale) lastNote = "playlist stopped advancing"
+						if (++playlistFailures >= MAX_PLAYLIST_FAILURES) {
+							return result(lastNote?.let { "stream ended: $it" } ?: "stream ended")
+						}
+						// A node can fail alone; the channel URL may hand out another.
+						mediaUrl = null
+						lastProgressAt = now
+						nextPollAt = now + PLAYLIST_RETRY_MS
+						continue
+					}
+					// Only a playlist with something new clears the failures: one
+					// that merely answers is what a frozen node does too.
+					if (loaded.lastSequence >= nextSequence) playlistFailures = 0
+					val changed = playlist?.lastSequence != loaded.lastSequence
+					playlist = loaded
+					if (loaded.segments.isNotEmpty()) {
+						when {
+							nextSequence < 0L -> nextSequence = if (loaded.endList) {
+								loaded.firstSequence
+							} else {
+								maxOf(loaded.firstSequence, loaded.lastSequence - LIVE_EDGE_SEGMENTS + 1)
+							}
+							// A whole window behind us: the encoder restarted
+							// its numbering, not a lagging node.
+							loaded.lastSequence + loaded.segments.size < nextSequence -> {
+								pending.values.forEach { it.task.cancel(true) }
+								pending.clear()
+								attempts.clear()
+								nextSequence = maxOf(loaded.firstSequence, loaded.lastSequence - LIVE_EDGE_SEGMENTS + 1)
+								markNext = true
+							}
+							loaded.firstSequence > nextSequence -> {
+								lost += loaded.firstSequence - nextSequence
+								pending.headMap(loaded.firstSequence).values.forEach { it.task.cancel(true) }
+								pending.headMap(loaded.firstSequence).clear()
+								nextSequence = loaded.firstSequence
+								markNext = true
+							}
+						}
+					}
+					// RFC 8216 §6.3.4: an unchanged playlist is reloaded after
+					// half the target duration, a changed one after a whole.
+					nextPollAt = now + if (changed) loaded.targetDurationMs else loaded.targetDurationMs / 2
+				}
+
+				val current = playlist
+				if (current != null) {
+					for (segment in current.segments) {
+						if (pending.size >= prefetch) break
+						if (segment.sequence < nextSequence || pending.containsKey(segment.sequence)) continue
+						pending[segment.sequence] = Pending(segment, pool.submit<ByteArray> { fetchSegment(segment) })
+					}
+				}
+
+				val head = pending.firstEntry()?.value
+				if (head == null || head.segment.sequence != nextSequence) {
+					if (current != null && current.endList && nextSequence > current.lastSequence) {
+						return result(null)
+					}
+					sleepUntil(nextPollAt)
+					continue
+				}
+				val data = try {
+					await(head.task, nextPollAt) ?: continue
+				} catch (e: ExecutionException) {
+					null.also { lastNote = e.cause?.message }
+				}
+				pending.remove(nextSequence)
+				if (data == null) {
+					val tries = (attempts[nextSequence] ?: 0) + 1
+					attempts[nextSequence] = tries
+					if (tries < SEGMENT_ATTEMPTS) continue
+					// Resubmitted by the loop while the window still has it;
+					// past the attempts it is skipped like a lost one.
+					lost++
+					attempts.remove(nextSequence)
+					nextSequence++
+					markNext = true
+					continue
+				}
+				attempts.remove(nextSequence)
+				if (!checkedFormat) {
+					if (data.isNotEmpty() && data[0] != 0x47.toByte()) {
+						return result("stream segments aren't MPEG-TS")
+					}
+					checkedFormat = true
+				}
+				if ((markNext && segments > 0) || (head.segment.discontinuity && segments > 0)) {
+					HlsPlaylist.markDiscontinuity(data)
+					discontinuities++
+				}
+				markNext = false
+				try {
+					write(data)
+				} catch (e: IOException) {
+					throw StorageException(e)
+				}
+				segments++
+				nextSequence++
+				lastProgressAt = System.currentTimeMillis()
+			}
+			return result(null)
+		} catch (e: StorageException) {
+			return result("storage full", storageFailed = true)
+		} finally {
+			pool.shutdownNow()
+			cancel()
+		}
+	}
+
+	// The media playlist for [channelUrl], through its master if it has one.
+	private fun resolveMedia(channelUrl: URL): URL {
+		val text = fetchText(channelUrl)
+		return when (val root = HlsPlaylist.parse(text, channelUrl)) {
+			is HlsPlaylist.Master -> root.pick().url
+			is HlsPlaylist.Media -> channelUrl
+		}
+	}
+
+	private fun fetchText(url: URL): String = String(fetch(url), Charsets.UTF_8)
+
+	private fun fetch(url: URL): ByteArray {
+		val connection = open(url) { connections.add(it) }
+		try {
+			if (cancelled) throw IOException("cancelled")
+			val length = connection.contentLengthLong
+			val bytes = ByteArrayOutputStream(if (length in 1..Int.MAX_VALUE) length.toInt() else 64 * 1024)
+			connection.inputStream.use { it.copyTo(bytes, 64 * 1024) }
+			if (length > 0L && bytes.size().toLong() != length) {
+				throw IOException("short body: ${bytes.size()} of $length")
+			}
+			return bytes.toByteArray()
+		} finally {
+			connections.remove(connection)
+			try { connection.disconnect() } catch (_: Exception) {}
+		}
+	}
+
+	private fun fetchSegment(segment: HlsPlaylist.Segment): ByteArray {
+		val data = fetch(segment.url)
+		val key = segment.key ?: return data
+		return HlsPlaylist.decrypt(segment, keyBytes(key.url), data)
+	}
+
+	// Keys rotate by URL; a rotated-away key is never asked for again, so a
+	// handful of recent ones covers every segment still in the window.
+	private fun keyBytes(url: URL): ByteArray {
+		val name = url.toString()
+		synchronized(keys) { keys[name] }?.let { return it }
+		val key = fetch(url)
+		if (key.size != 16) throw IOException("AES-128 key of ${key.size} bytes")
+		synchronized(keys) { keys[name] = key }
+		return key
+	}
+
+	// The task's bytes, or null if it is still running at [deadline].
+	private fun await(task: Future<ByteArray>, deadline: Long): ByteArray? {
+		while (running()) {
+			try {
+				return task.get(200, TimeUnit.MILLISECONDS)
+			} catch (_: TimeoutException) {
+				if (System.currentTimeMillis() >= deadline) return null
+			}
+		}
+		return null
+	}
+
+	private fun sleepUntil(deadline: Long) {
+		while (running() && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(minOf(200L, deadline - System.currentTimeMillis()).coerceAtLeast(1L))
+			} catch (_: InterruptedException) {
+				return
+			}
+		}
+	}
+}
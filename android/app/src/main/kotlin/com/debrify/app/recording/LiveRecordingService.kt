@@ -17,15 +17,13 @@ import android.os.IBinder
 import android.os.Looper
 import android.os.ParcelFileDescriptor
 import android.os.PowerManager
-import android.os.StatFs
 import android.provider.MediaStore
 import androidx.core.app.NotificationCompat
 import androidx.core.app.TaskStackBuilder
-import java.io.BufferedInputStream
+import com.debrify.app.download.DiskSpace
 import java.io.BufferedOutputStream
 import java.io.FileOutputStream
 import java.io.IOException
-import java.io.InputStream
 import java.net.HttpURLConnection
 import java.net.URL
 import java.util.concurrent.ConcurrentHashMap
@@ -72,6 +70,14 @@ class LiveRecordingService : Service() {
 		const val EXTRA_CONNECTION_RESOURCE_ID = "extra_connection_resource_id"
 		const val EXTRA_PROFILE_AUTH_REVISION = "extra_profile_auth_revision"
 		const val EXTRA_RESOURCE_AUTH_REVISION = "extra_resource_auth_revision"
+		/** Parallel arrays: EPG programme starts (wall ms) and titles, for chapters. */
+		const val EXTRA_PROGRAMME_STARTS = "extra_programme_starts"
+		const val EXTRA_PROGRAMME_TITLES = "extra_programme_titles"
+		/** Scheduled start, for the boundary telemetry; 0 for manual starts. */
+		const val EXTRA_BOUNDARY_MS = "extra_boundary_ms"
+		/** Pre-roll until this wall-clock time: connect and buffer, write
+		 *  nothing. 0 (the default) writes from the first byte. */
+		const val EXTRA_COMMIT_AT_MS = "extra_commit_at_ms"
 
 		const val RELATIVE_PATH = "Download/Debrify/Recordings"
 		const val MIME_TYPE = "video/mp2t"
@@ -119,6 +125,15 @@ class LiveRecordingService : Service() {
 
 		private const val MIN_FREE_BYTES = 200L * 1024 * 1024
 
+		// Preallocation. The bitrate is measured over the first
+		// RESERVE_SAMPLE_MS of data, then the rest of the capture (to endAtMs,
+		// plus a tenth for bitrate swings) is reserved and rechecked every
+		// RESERVE_CHECK_INTERVAL_MS; shortfalls below RESERVE_MIN_BYTES aren't
+		// worth a call.
+		private const val RESERVE_SAMPLE_MS = 15_000L
+		private const val RESERVE_CHECK_INTERVAL_MS = 60_000L
+		private const val RESERVE_MIN_BYTES = 16L * 1024 * 1024
+
 		/** Sent when the channel declares no User-Agent of its own. Providers
 		 *  routinely block default library UAs (the app's mpv path learned
 		 *  this the hard way — Lavf was rejected outright); mirror Dart's
@@ -129,11 +144,19 @@ class LiveRecordingService : Service() {
 		private const val STALL_TIMEOUT_MS = 60_000L
 		private const val STALL_CHECK_INTERVAL_MS = 10_000L
 		private const val MAX_CONSECUTIVE_RECONNECTS = 3
+
+		/** A scheduled pre-roll holds at most this much stream in memory —
+		 *  a long GOP of a high-bitrate channel. */
+		private const val PREROLL_BUFFER_BYTES = 16 * 1024 * 1024
 		private const val RECONNECT_BACKOFF_MS = 2_000L
 
 		/** Redirect hops followed per connect attempt. Panels chain at most a
 		 *  couple (portal -> node -> edge); more than this is a loop. */
 		private const val MAX_REDIRECTS = 5
+		/** Playlist, segment and key requests of an HLS capture: each is a
+		 *  bounded fetch, so a dead one times out and is retried rather than
+		 *  left to the stall watchdog. */
+		private const val HLS_READ_TIMEOUT_MS = 20_000
 
 		/** The only channel headers that survive a hop to another origin.
 		 *
@@ -271,6 +294,9 @@ class LiveRecordingService : Service() {
 			connectionResourceId: String? = null,
 			profileAuthorizationRevision: Long? = null,
 			resourceAuthorizationRevision: Long? = null,
+			programmes: List<RecordingIndex.Programme> = emptyList(),
+			boundaryMs: Long = 0L,
+			commitAtMs: Long = 0L,
 		): Intent = Intent(context, LiveRecordingService::class.java).apply {
 			val active = com.debrify.app.profiles.ProfilePreferenceProjection
 				.activeJobContext(context)
@@ -286,6 +312,12 @@ class LiveRecordingService : Service() {
 			putExtra(EXTRA_PROFILE_AUTH_REVISION, profileAuthorizationRevision ?: active.authorizationRevision)
 			connectionResourceId?.let { putExtra(EXTRA_CONNECTION_RESOURCE_ID, it) }
 			resourceAuthorizationRevision?.let { putExtra(EXTRA_RESOURCE_AUTH_REVISION, it) }
+			if (programmes.isNotEmpty()) {
+				putExtra(EXTRA_PROGRAMME_STARTS, programmes.map { it.startMs }.toLongArray())
+				putExtra(EXTRA_PROGRAMME_TITLES, programmes.map { it.title }.toTypedArray())
+			}
+			if (boundaryMs > 0L) putExtra(EXTRA_BOUNDARY_MS, boundaryMs)
+			if (commitAtMs > 0L) putExtra(EXTRA_COMMIT_AT_MS, commitAtMs)
 		}
 	}
 
@@ -301,15 +333,24 @@ class LiveRecordingService : Service() {
 		val connectionResourceId: String?,
 		val profileAuthorizationRevision: Long,
 		val resourceAuthorizationRevision: Long?,
+		val programmes: List<RecordingIndex.Programme>,
+		val boundaryMs: Long,
+		val commitAtMs: Long,
 	) {
 		var uri: Uri? = null
 		@Volatile var bytes: Long = 0L
 		@Volatile var stopRequested: Boolean = false
 		@Volatile var connection: HttpURLConnection? = null
-		@Volatile var input: InputStream? = null
+		@Volatile var input: SharedUpstream.Subscription? = null
+		@Volatile var hls: HlsCapture? = null
 		@Volatile var lastByteAt: Long = 0L
 		val running = AtomicBoolean(false)
 		val finished = AtomicBoolean(false)
+		// Capture-thread only: see [reserveAhead].
+		var firstByteAt: Long = 0L
+		var reservedEnd: Long = 0L
+		var nextReserveAt: Long = 0L
+		var reserveUnsupported: Boolean = false
 
 		val timeUp: Boolean get() = System.currentTimeMillis() >= endAtMs
 	}
@@ -483,6 +524,9 @@ class LiveRecordingService : Service() {
 			connectionResourceId = connectionResourceId,
 			profileAuthorizationRevision = profileAuthRevision,
 			resourceAuthorizationRevision = resourceAuthRevision,
+			programmes = programmesOf(intent),
+			boundaryMs = intent.getLongExtra(EXTRA_BOUNDARY_MS, 0L),
+			commitAtMs = intent.getLongExtra(EXTRA_COMMIT_AT_MS, 0L),
 		)
 		states[taskId] = state
 		updateSummaryNotification()
@@ -497,11 +541,19 @@ class LiveRecordingService : Service() {
 		}.start()
 	}
 
+	private fun programmesOf(intent: Intent): List<RecordingIndex.Programme> {
+		val starts = intent.getLongArrayExtra(EXTRA_PROGRAMME_STARTS) ?: return emptyList()
+		val titles = intent.getStringArrayExtra(EXTRA_PROGRAMME_TITLES) ?: return emptyList()
+		return starts.indices.filter { it < titles.size }
+			.map { RecordingIndex.Programme(starts[it], titles[it]) }
+	}
+
 	/** Ask a capture to end and force its blocked read out NOW. */
 	private fun requestStop(state: RecordingState) {
 		state.stopRequested = true
 		try { state.connection?.disconnect() } catch (_: Exception) {}
 		try { state.input?.close() } catch (_: Exception) {}
+		state.hls?.cancel()
 	}
 
 	private fun jobAuthorizationValid(state: RecordingState): Boolean =
@@ -536,7 +588,14 @@ class LiveRecordingService : Service() {
 	 * Never throws.
 	 */
 	private fun runCapture(state: RecordingState): Outcome {
-		if (freeSpaceBytes() in 0 until MIN_FREE_BYTES) {
+		// Space other running transfers (downloads included) are still going
+		// to fill isn't free for this one. Short of the floor, recordings the
+		// user marked auto-delete go first.
+		val free = RecordingBudget.freeBytes()
+		val shortfall = MIN_FREE_BYTES - (free - DiskSpace.expectedByOthers(spaceKey(state)))
+		if (free >= 0L && shortfall > 0L &&
+			RecordingBudget.reclaim(this, shortfall, null) < shortfall
+		) {
 			return Outcome.Failed("not enough free storage")
 		}
 
@@ -589,6 +648,7 @@ class LiveRecordingService : Service() {
 			channelName = state.channelName,
 			fileName = state.fileName,
 			startedAtMs = state.startedAtMs,
+			ownerProfileId = state.ownerProfileId,
 		)
 		// Atomic move from pending claim to live entry — a lookup in
 		// MainActivity can never see this url in NEITHER map. (Failures
@@ -600,6 +660,8 @@ class LiveRecordingService : Service() {
 		var outPfd: ParcelFileDescriptor? = null
 		var outFd: java.io.FileDescriptor? = null
 		var out: BufferedOutputStream? = null
+		// Built from the bytes as they are written; the player seeks by it.
+		val index = RecordingIndex.Writer(RecordingIndex.fileFor(this, uri), state.programmes)
 		var endedNote: String? = null
 		var storageFailed = false
 		try {
@@ -623,171 +685,134 @@ class LiveRecordingService : Service() {
 			// "stream ended", which is indistinguishable from a channel that
 			// simply stopped — and leaves a user with nothing to act on.
 			var lastFailureNote: String? = null
-			notifyTask(state, "Recording", completed = false)
+			var hlsUrl: URL? = null
+			// Chunks the hub dropped while this capture's writes lagged.
+			var sharedGaps = 0L
+			// Scheduled pre-roll: the connection is up before the boundary,
+			// and what it sends waits in memory until then.
+			val preroll = if (state.commitAtMs > System.currentTimeMillis()) {
+				PrerollBuffer(PREROLL_BUFFER_BYTES)
+			} else {
+				null
+			}
+			var committed = preroll == null
+			// Bytes received, written or not: the playlist sniff is for the first.
+			var received = 0L
+			notifyTask(state, if (committed) "Recording" else "Waiting for the start…", completed = false)
+
+			// Write to the destination; false when storage failed (terminal).
+			val sink = CaptureLoop.Sink(out, index)
+			val sinkFd: java.io.FileDescriptor = outFd
+			fun write(data: ByteArray, offset: Int, length: Int): Boolean {
+				if (state.bytes == 0L && preroll == null) {
+					logStartBoundary(state, System.currentTimeMillis(), "cold")
+				}
+				try {
+					sink.write(data, offset, length)
+				} catch (e: IOException) {
+					// The WRITE side failing (disk full, row revoked) is
+					// terminal — no reconnect can fix storage.
+					storageFailed = true
+					endedNote = "storage full"
+					return false
+				}
+				state.bytes += length
+				live.bytes = state.bytes
+				val now = System.currentTimeMillis()
+				state.lastByteAt = now
+				reserveAhead(state, sinkFd, now)
+				maybeNotifyProgress(state, now)
+				return true
+			}
 
 			capture@ while (!state.stopRequested && !state.timeUp) {
 				if (!jobAuthorizationValid(state)) {
 					state.stopRequested = true
 					break
 				}
-				var connection: HttpURLConnection? = null
-				var input: InputStream? = null
+				var input: SharedUpstream.Subscription? = null
 				var gotBytesThisAttempt = false
 				try {
 					// Fresh liveness stamp per attempt so the watchdog covers the
 					// connect phase without killing the reconnect for the
 					// previous attempt's silence.
 					state.lastByteAt = System.currentTimeMillis()
-					// Redirects are followed BY HAND. HttpURLConnection's own
-					// follower refuses to cross protocols (http -> https and
-					// back), and IPTV panels routinely bounce a live URL onto
-					// an https edge node — that lands here as a bare 302 that
-					// the old strict-200 check turned into a dead attempt.
-					// Re-resolved on every attempt, never cached: the hop
-					// usually points at a load-balanced node with a short life.
-					var target = state.url
-					var hops = 0
-					val startOrigin = try {
-						originOf(URL(state.url))
-					} catch (e: Exception) {
-						null
-					}
-					// Sticky: once a hop has left the origin the channel was
-					// configured for, the channel's headers are filtered down
-					// to [CROSS_ORIGIN_SAFE_HEADERS] for the rest of the chain
-					// — a bounce back to the original host doesn't restore
-					// them. If the target genuinely needed one, the attempt
-					// fails with a status the user can now read.
-					var offOrigin = false
-					while (true) {
-						val restrictHeaders = offOrigin
-						val targetUrl = URL(target)
-						connection = (targetUrl.openConnection() as HttpURLConnection).apply {
-							instanceFollowRedirects = false
-							connectTimeout = 30_000
-							readTimeout = 0 // stall watchdog owns dead-stream detection
-							doInput = true
-							state.headers.forEach { (k, v) ->
-								val name = k.lowercase()
-								if (!restrictHeaders) {
-									setRequestProperty(k, v)
-									return@forEach
-								}
-								if (!CROSS_ORIGIN_SAFE_HEADERS.contains(name)) {
-									return@forEach
-								}
-								// Safe-listed by NAME; the value still has to
-								// earn its way across (see the set's doc).
-								when (name) {
-									// Rewritten below, unconditionally.
-									"user-agent" -> return@forEach
-									"referer" -> crossOriginReferer(v, targetUrl)
-										?.let { setRequestProperty(k, it) }
-									"origin" -> crossOriginOrigin(v)
-										?.let { setRequestProperty(k, it) }
-									else -> setRequestProperty(k, v)
-								}
-							}
-							// Off origin the channel's own UA is replaced, not
-							// forwarded: a UA is free-form, so it can carry a
-							// token that no validation could recognise. The
-							// generic one still satisfies panels that merely
-							// require a browser-shaped UA.
-							if (restrictHeaders ||
-								state.headers.keys.none { it.equals("User-Agent", ignoreCase = true) }
-							) {
-								setRequestProperty("User-Agent", DEFAULT_USER_AGENT)
-							}
-						}
-						state.connection = connection
-						if (state.stopRequested) break@capture
-						connection.connect()
-						val resp = connection.responseCode
-						if (resp in 300..399) {
-							val location = connection.getHeaderField("Location")
-							if (location.isNullOrBlank() || hops >= MAX_REDIRECTS) {
-								lastFailureNote = "server redirected (HTTP $resp) with nowhere to go"
-								throw IOException("HTTP $resp without a usable Location")
-							}
-							// Resolves relative Locations against the current
-							// URL; absolute ones replace it outright.
-							val next = URL(URL(target), location)
-							if (next.protocol != "http" && next.protocol != "https") {
-								lastFailureNote = "server redirected to an unsupported address"
-								throw IOException("redirect to ${next.protocol}")
-							}
-							// Leaving the configured origin — including an
-							// https -> http downgrade on the same host, which
-							// changes the origin string too — restricts the
-							// headers for the rest of the chain.
-							if (startOrigin == null || originOf(next) != startOrigin) {
-								offOrigin = true
-							}
-							try { connection.disconnect() } catch (_: Exception) {}
-							connection = null
-							state.connection = null
-							target = next.toString()
-							hops++
-							continue
-						}
-						// 206 is legal here: some panels answer a plain live
-						// request with Partial Content, which the old
-						// equality check rejected outright.
-						if (resp !in 200..299) {
-							lastFailureNote = "server said HTTP $resp"
-							throw IOException("HTTP $resp for live stream")
+					// Redirects are re-resolved on every attempt, never cached:
+					// the hop usually points at a load-balanced node with a
+					// short life. No read timeout — the stall watchdog owns
+					// dead-stream detection.
+					//
+					// Opened through the shared hub: a player watching this
+					// channel reads the same connection, so the provider sees
+					// one. Joining a running hub opens nothing.
+					var landed: URL? = null
+					input = SharedUpstream.subscribe(SharedUpstream.Key.of(state.url, state.headers)) {
+						openFollowingRedirects(state, state.url, readTimeoutMs = 0) {
+							state.connection = it
+						}?.let { opened ->
+							landed = opened.url
+							httpUpstream(opened)
 						}
-						// Accepted — an earlier attempt's status is now history.
-						// Clearing only once bytes arrive would let a first
-						// attempt's 404 outlive several clean 2xx opens that
-						// merely EOF'd, and that stale status is what the user
-						// would be told to act on.
-						lastFailureNote = null
-						break
-					}
-					input = BufferedInputStream(connection!!.inputStream)
+					} ?: break@capture
+					// The connection is the hub's now; a stop leaves the hub.
+					state.connection = null
 					state.input = input
-
-					while (!state.stopRequested && !state.timeUp) {
-						val n = input.read(buffer)
-						if (n == -1) break
-						if (n > 0) {
-							// First bytes of the whole capture: if the server is
-							// handing us an HLS PLAYLIST (extensionless URL that
-							// lied), recording it would loop-append manifest text
-							// into a ".ts" and report it saved. Fail instead.
-							if (state.bytes == 0L && n >= 7 &&
-								buffer[0] == '#'.code.toByte() &&
-								String(buffer, 0, 7) == "#EXTM3U"
-							) {
-								endedNote = "stream is a playlist (HLS), not recordable"
-								break@capture
-							}
-							try {
-								out.write(buffer, 0, n)
-							} catch (e: IOException) {
-								// The WRITE side failing (disk full, row revoked)
-								// is terminal — no reconnect can fix storage.
-								storageFailed = true
-								endedNote = "storage full"
-								break@capture
-							}
-							state.bytes += n
-							live.bytes = state.bytes
-							gotBytesThisAttempt = true
-							val now = System.currentTimeMillis()
-							state.lastByteAt = now
-							maybeNotifyProgress(state, now)
+					// Accepted — an earlier attempt's status is now history.
+					// Clearing only once bytes arrive would let a first
+					// attempt's 404 outlive several clean 2xx opens that
+					// merely EOF'd, and that stale status is what the user
+					// would be told to act on.
+					lastFailureNote = null
+
+					// First bytes of the whole capture: if the server is handing
+					// us an HLS PLAYLIST (an .m3u8, or an extensionless URL that
+					// lied), record its segments instead, from where the
+					// redirects landed.
+					val end = CaptureLoop.copy(
+						input, buffer,
+						sniff = received == 0L,
+						proceed = { !state.stopRequested && !state.timeUp },
+					) { n ->
+						received += n
+						gotBytesThisAttempt = true
+						if (committed) return@copy write(buffer, 0, n)
+						val held = preroll!!
+						held.feed(buffer, 0, n)
+						val now = System.currentTimeMillis()
+						state.lastByteAt = now
+						if (now < state.commitAtMs) return@copy true
+						// The boundary: the file starts at the last keyframe
+						// before it.
+						committed = true
+						logStartBoundary(
+							state,
+							if (held.aligned) held.keyframeWallMs else now,
+							if (held.aligned) "pre-roll" else "pre-roll, unaligned",
+						)
+						var ok = true
+						held.drainTo { data, offset, length -> ok = ok && write(data, offset, length) }
+						if (ok) notifyTask(state, "Recording", completed = false)
+						ok
+					}
+					when (end) {
+						CaptureLoop.End.PLAYLIST -> {
+							// A joiner has no redirect of its own to go by.
+							hlsUrl = landed ?: URL(state.url)
+							break@capture
 						}
+						CaptureLoop.End.REFUSED -> break@capture
+						CaptureLoop.End.ENDED -> {}
 					}
 					// Clean EOF from a live server = a drop like any other; fall
 					// through to the reconnect accounting below.
 				} catch (e: Exception) {
 					if (state.stopRequested || state.timeUp) break@capture
+					if (e is RefusedException) lastFailureNote = e.note
 					// Read/connect failure: fall through to reconnect accounting.
 				} finally {
+					sharedGaps += input?.gaps ?: 0L
 					try { input?.close() } catch (_: Exception) {}
-					try { connection?.disconnect() } catch (_: Exception) {}
+					try { state.connection?.disconnect() } catch (_: Exception) {}
 					state.input = null
 					state.connection = null
 				}
@@ -813,12 +838,39 @@ class LiveRecordingService : Service() {
 					try { Thread.sleep(200) } catch (_: InterruptedException) { break }
 				}
 			}
+
+			if (hlsUrl != null) {
+				// A live playlist already reaches back past the boundary;
+				// starting it early would only record the pre-roll.
+				while (System.currentTimeMillis() < state.commitAtMs &&
+					!state.stopRequested && !state.timeUp
+				) {
+					state.lastByteAt = System.currentTimeMillis()
+					try { Thread.sleep(200) } catch (_: InterruptedException) { break }
+				}
+				logStartBoundary(state, System.currentTimeMillis(), "hls")
+				val result = captureHls(state, hlsUrl, out, outFd, live, index)
+				storageFailed = result.storageFailed
+				endedNote = listOfNotNull(
+					result.note,
+					result.lost.takeIf { it > 0L }?.let { "$it segments missed" },
+				).joinToString("; ").ifEmpty { null }
+			}
+			if (sharedGaps > 0L) {
+				endedNote = listOfNotNull(endedNote, "$sharedGaps gaps while storage lagged")
+					.joinToString("; ")
+			}
 		} finally {
 			// Bytes must be durable before ANY terminal state is applied.
 			try { out?.flush() } catch (_: Exception) {}
+			// Hand back the reserved blocks nothing was written to.
+			if (state.reservedEnd > state.bytes) {
+				try { outFd?.let { android.system.Os.ftruncate(it, state.bytes) } } catch (_: Exception) {}
+			}
 			try { outFd?.sync() } catch (_: Exception) {}
 			try { out?.close() } catch (_: Exception) {}
 			try { outPfd?.close() } catch (_: Exception) {}
+			index.close()
 		}
 
 		if (state.timeUp && endedNote == null && !state.stopRequested) {
@@ -834,6 +886,207 @@ class LiveRecordingService : Service() {
 		}
 	}
 
+	/**
+	 * Record the HLS stream at [playlistUrl] into [out] with [HlsCapture],
+	 * with the same liveness, space and progress bookkeeping as the byte
+	 * copy. Segment and key requests go through [openFollowingRedirects], so
+	 * the channel's headers reach them under the same origin rules.
+	 */
+	private fun captureHls(
+		state: RecordingState,
+		playlistUrl: URL,
+		out: BufferedOutputStream,
+		outFd: java.io.FileDescriptor,
+		live: RecordingRegistry.Live,
+		index: RecordingIndex.Writer,
+	): HlsCapture.Result {
+		val engine = HlsCapture(
+			open = { url, track ->
+				openFollowingRedirects(state, url.toString(), HLS_READ_TIMEOUT_MS, track)
+					?: throw IOException("stopped")
+			},
+			write = { data ->
+				out.write(data)
+				index.append(data, 0, data.size)
+				state.bytes += data.size
+				live.bytes = state.bytes
+				val now = System.currentTimeMillis()
+				state.lastByteAt = now
+				reserveAhead(state, outFd, now)
+				maybeNotifyProgress(state, now)
+			},
+			// Revoked authorization arrives as a stop, from the watchdog.
+			keepGoing = { !state.stopRequested && !state.timeUp },
+		)
+		state.hls = engine
+		try {
+			// A stop that landed before the engine was visible to it.
+			if (state.stopRequested) engine.cancel()
+			return engine.run(playlistUrl)
+		} finally {
+			state.hls = null
+		}
+	}
+
+	/**
+	 * Start-boundary telemetry for scheduled captures: how far the file's
+	 * first frame landed from the programme's scheduled start — negative is
+	 * before it, which is what the pre-roll aims for.
+	 */
+	private fun logStartBoundary(state: RecordingState, firstFrameWallMs: Long, how: String) {
+		if (state.boundaryMs <= 0L) return
+		android.util.Log.i(
+			"LiveRecording",
+			"start boundary: ${firstFrameWallMs - state.boundaryMs} ms ($how, " +
+				"woke ${state.boundaryMs - state.startedAtMs} ms ahead)",
+		)
+	}
+
+	/** [connection]'s body as the shared hub reads it. */
+	private fun httpUpstream(connection: HttpURLConnection): SharedUpstream.Upstream {
+		val body = connection.inputStream
+		return object : SharedUpstream.Upstream {
+			override fun read(buffer: ByteArray, offset: Int, length: Int): Int =
+				body.read(buffer, offset, length)
+
+			override fun close() {
+				try { body.close() } catch (_: Exception) {}
+				try { connection.disconnect() } catch (_: Exception) {}
+			}
+
+			override fun cancel() {
+				try { connection.disconnect() } catch (_: Exception) {}
+			}
+		}
+	}
+
+	/** A response the capture can't use; [note] is what the user is told. */
+	private class RefusedException(val note: String, message: String) : IOException(message)
+
+	/**
+	 * Open [url] with [state]'s channel headers and return the accepted (2xx)
+	 * response, or null when the capture was stopped first. Every connection
+	 * is handed to [track] before it connects, so a stop can break it; on a
+	 * throw nothing is left open.
+	 *
+	 * Redirects are followed BY HAND. HttpURLConnection's own follower refuses
+	 * to cross protocols (http -> https and back), and IPTV panels routinely
+	 * bounce a live URL onto an https edge node — that lands here as a bare
+	 * 302 that the old strict-200 check turned into a dead attempt.
+	 *
+	 * @throws RefusedException when the server answered with nothing usable.
+	 */
+	private fun openFollowingRedirects(
+		state: RecordingState,
+		url: String,
+		readTimeoutMs: Int,
+		track: (HttpURLConnection) -> Unit,
+	): HttpURLConnection? {
+		var target = url
+		var hops = 0
+		val startOrigin = try {
+			originOf(URL(state.url))
+		} catch (e: Exception) {
+			null
+		}
+		// Sticky: once a hop has left the origin the channel was configured
+		// for, the channel's headers are filtered down to
+		// [CROSS_ORIGIN_SAFE_HEADERS] for the rest of the chain — a bounce
+		// back to the original host doesn't restore them. If the target
+		// genuinely needed one, the attempt fails with a status the user can
+		// now read. A playlist's segment or key on another host starts off
+		// origin.
+		var offOrigin = url != state.url && (startOrigin == null || originOf(URL(url)) != startOrigin)
+		while (true) {
+			val restrictHeaders = offOrigin
+			val targetUrl = URL(target)
+			val connection = (targetUrl.openConnection() as HttpURLConnection).apply {
+				instanceFollowRedirects = false
+				connectTimeout = 30_000
+				readTimeout = readTimeoutMs
+				doInput = true
+				state.headers.forEach { (k, v) ->
+					val name = k.lowercase()
+					if (!restrictHeaders) {
+						setRequestProperty(k, v)
+						return@forEach
+					}
+					if (!CROSS_ORIGIN_SAFE_HEADERS.contains(name)) {
+						return@forEach
+					}
+					// Safe-listed by NAME; the value still has to earn its
+					// way across (see the set's doc).
+					when (name) {
+						// Rewritten below, unconditionally.
+						"user-agent" -> return@forEach
+						"referer" -> crossOriginReferer(v, targetUrl)
+							?.let { setRequestProperty(k, it) }
+						"origin" -> crossOriginOrigin(v)
+							?.let { setRequestProperty(k, it) }
+						else -> setRequestProperty(k, v)
+					}
+				}
+				// Off origin the channel's own UA is replaced, not forwarded:
+				// a UA is free-form, so it can carry a token that no
+				// validation could recognise. The generic one still satisfies
+				// panels that merely require a browser-shaped UA.
+				if (restrictHeaders ||
+					state.headers.keys.none { it.equals("User-Agent", ignoreCase = true) }
+				) {
+					setRequestProperty("User-Agent", DEFAULT_USER_AGENT)
+				}
+			}
+			track(connection)
+			try {
+				if (state.stopRequested) {
+					try { connection.disconnect() } catch (_: Exception) {}
+					return null
+				}
+				connection.connect()
+				val resp = connection.responseCode
+				if (resp in 300..399) {
+					val location = connection.getHeaderField("Location")
+					if (location.isNullOrBlank() || hops >= MAX_REDIRECTS) {
+						throw RefusedException(
+							"server redirected (HTTP $resp) with nowhere to go",
+							"HTTP $resp without a usable Location",
+						)
+					}
+					// Resolves relative Locations against the current URL;
+					// absolute ones replace it outright.
+					val next = URL(URL(target), location)
+					if (next.protocol != "http" && next.protocol != "https") {
+						throw RefusedException(
+							"server redirected to an unsupported address",
+							"redirect to ${next.protocol}",
+						)
+					}
+					// Leaving the configured origin — including an https ->
+					// http downgrade on the same host, which changes the
+					// origin string too — restricts the headers for the rest
+					// of the chain.
+					if (startOrigin == null || originOf(next) != startOrigin) {
+						offOrigin = true
+					}
+					try { connection.disconnect() } catch (_: Exception) {}
+					target = next.toString()
+					hops++
+					continue
+				}
+				// 206 is legal here: some panels answer a plain live request
+				// with Partial Content, which the old equality check rejected
+				// outright.
+				if (resp !in 200..299) {
+					throw RefusedException("server said HTTP $resp", "HTTP $resp for $target")
+				}
+				return connection
+			} catch (e: Exception) {
+				try { connection.disconnect() } catch (_: Exception) {}
+				throw e
+			}
+		}
+	}
+
 	// The ONLY place a capture reaches a terminal state.
 	private fun finishTask(state: RecordingState, outcome: Outcome) {
 		if (!state.finished.compareAndSet(false, true)) return
@@ -846,6 +1099,24 @@ class LiveRecordingService : Service() {
 				// reconcile retry it on every later pass.
 				val published = uri != null && RecordingTaskStore.publishRow(this, uri)
 				persist(state, status = "done", published = published)
+				if (state.firstByteAt > 0L) {
+					RecordingBudget.observed(
+						this,
+						state.url,
+						state.bytes,
+						System.currentTimeMillis() - state.firstByteAt,
+					)
+				}
+				if (published && uri != null) {
+					RecordingLibraryIndex.recorded(
+						this,
+						uri,
+						state.fileName,
+						state.bytes,
+						System.currentTimeMillis() - state.startedAtMs,
+						state.channelName,
+					)
+				}
 				val sizeText = fmtBytes(state.bytes)
 				val suffix = outcome.note?.let { " ($it)" } ?: ""
 				notifyTask(
@@ -869,6 +1140,7 @@ class LiveRecordingService : Service() {
 		}
 		states.remove(state.taskId)
 		notifyThrottle.remove(state.taskId)
+		DiskSpace.release(spaceKey(state))
 		RecordingRegistry.live.remove(state.taskId)
 		// Covers captures that failed BEFORE the worker reached its registry
 		// insert (preflight, destination creation) — their claim must not keep
@@ -977,9 +1249,16 @@ class LiveRecordingService : Service() {
 						}
 						val stalled = s.lastByteAt > 0 && now - s.lastByteAt > STALL_TIMEOUT_MS
 						if (stalled || s.timeUp) {
-							try { s.input?.close() } catch (_: Exception) {}
+							// A stall is the connection's, so it ends for every
+							// reader of the hub; time-up only for this one.
+							try {
+								if (stalled) s.input?.abort() else s.input?.close()
+							} catch (_: Exception) {}
 							try { s.connection?.disconnect() } catch (_: Exception) {}
 						}
+						// An HLS capture polls through silence on its own;
+						// only its end time cuts it short.
+						if (s.timeUp) s.hls?.cancel()
 					}
 				}
 				if (anyRunning) {
@@ -991,11 +1270,61 @@ class LiveRecordingService : Service() {
 		}, STALL_CHECK_INTERVAL_MS)
 	}
 
-	private fun freeSpaceBytes(): Long = try {
-		@Suppress("DEPRECATION")
-		val stat = StatFs(Environment.getExternalStorageDirectory().path)
-		stat.availableBytes
-	} catch (_: Exception) { -1L }
+	private fun spaceKey(state: RecordingState) = "recording:${state.taskId}"
+
+	/**
+	 * Reserve the rest of the capture once its bitrate is known, so a long
+	 * recording lands in allocated blocks rather than growing a few hundred
+	 * KiB at a time, and a volume that can't hold it is known now rather
+	 * than hours in. Never more than the volume can spare next to other
+	 * transfers; what doesn't fit stays registered as expected, so later
+	 * admissions see it. The file is cut back to [RecordingState.bytes] when
+	 * the capture ends (or by reconcile, after a crash).
+	 */
+	private fun reserveAhead(state: RecordingState, fd: java.io.FileDescriptor, now: Long) {
+		if (state.firstByteAt == 0L) {
+			state.firstByteAt = now
+			state.nextReserveAt = now + RESERVE_SAMPLE_MS
+		}
+		if (now < state.nextReserveAt) return
+		state.nextReserveAt = now + RESERVE_CHECK_INTERVAL_MS
+		val rate = state.bytes * 1000 / (now - state.firstByteAt).coerceAtLeast(1L)
+		val projected = state.bytes + rate * (state.endAtMs - now).coerceAtLeast(0L) / 1000 * 11 / 10
+		val start = maxOf(state.bytes, state.reservedEnd)
+		val want = projected - start
+		var free = DiskSpace.available(fd)
+		// The quota: a capture heading past what the volume can spare makes
+		// room from the auto-delete recordings now, not at ENOSPC.
+		if (free >= 0L) {
+			val shortfall = want - (free - DiskSpace.expectedByOthers(spaceKey(state)) - MIN_FREE_BYTES)
+			if (shortfall > 0L && RecordingBudget.reclaim(this, shortfall, state.uri) > 0L) {
+				free = DiskSpace.available(fd)
+			}
+		}
+		if (state.reserveUnsupported) return
+		if (want < RESERVE_MIN_BYTES) {
+			DiskSpace.expect(spaceKey(state), want)
+			return
+		}
+		val length = if (free < 0L) {
+			want
+		} else {
+			minOf(want, free - DiskSpace.expectedByOthers(spaceKey(state)) - MIN_FREE_BYTES)
+		}
+		if (length >= RESERVE_MIN_BYTES) {
+			try {
+				if (DiskSpace.reserve(fd, start, length)) {
+					state.reservedEnd = start + length
+				} else {
+					state.reserveUnsupported = true
+				}
+			} catch (_: IOException) {
+				// Lost a race for the space; the writes themselves report a
+				// real shortage.
+			}
+		}
+		DiskSpace.expect(spaceKey(state), projected - maxOf(state.bytes, state.reservedEnd))
+	}
 
 	// ---- Notifications ------------------------------------------------------
 
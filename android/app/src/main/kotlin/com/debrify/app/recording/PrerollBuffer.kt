@@ -0,0 +1,67 @@
+package com.debrify.app.recording
+
+/**
+ * A scheduled capture's stream before its start boundary: held in memory,
+ * never written, and cut back at every keyframe so that what it holds when
+ * the boundary passes starts on the last keyframe before it — the file then
+ * opens on a decodable picture instead of a second of grey.
+ *
+ * Bounded by [capacity]: a stream with no keyframes the scanner can see (or
+ * a GOP longer than the buffer) keeps only its newest bytes, unaligned.
+ * Single-threaded: the capture thread owns it.
+ */
+internal class PrerollBuffer(private val capacity: Int) {
+	private var buffer = ByteArray(minOf(capacity, 1024 * 1024))
+	private var size = 0
+
+	/** Stream offset of buffer[0]. */
+	private var start = 0L
+
+	/** Stream offset of the newest keyframe seen, or -1 before the first. */
+	private var keyframeAt = -1L
+
+	private val scanner = TsKeyframeScanner { _, offset ->
+		keyframeAt = offset
+		keyframeWallMs = System.currentTimeMillis()
+	}
+
+	/** When the newest keyframe arrived, or 0 before the first. */
+	var keyframeWallMs = 0L
+		private set
+
+	/** Whether [drainTo] will start on a keyframe. */
+	val aligned: Boolean get() = keyframeAt >= start
+
+	val bytes: Int get() = size
+
+	fun feed(data: ByteArray, offset: Int, length: Int) {
+		if (length <= 0) return
+		ensure(size + length)
+		System.arraycopy(data, offset, buffer, size, length)
+		size += length
+		scanner.feed(data, offset, length)
+		// Everything before the newest keyframe is a GOP nobody will play.
+		if (keyframeAt > start) drop((keyframeAt - start).toInt())
+		if (size > capacity) drop(size - capacity)
+	}
+
+	/** Hand what's held to [write] and empty the buffer. */
+	fun drainTo(write: (ByteArray, Int, Int) -> Unit) {
+		if (size > 0) write(buffer, 0, size)
+		start += size
+		size = 0
+	}
+
+	private fun drop(count: Int) {
+		System.arraycopy(buffer, count, buffer, 0, size - count)
+		size -= count
+		start += count
+	}
+
+	private fun ensure(needed: Int) {
+		if (needed <= buffer.size) return
+		var grown = buffer.size
+		while (grown < needed) grown = if (grown * 2 >= capacity) maxOf(needed, capacity) else grown * 2
+		buffer = buffer.copyOf(grown)
+	}
+}
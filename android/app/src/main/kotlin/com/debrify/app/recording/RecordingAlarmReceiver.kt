@@ -11,7 +11,10 @@ import androidx.core.app.NotificationCompat
 import androidx.core.content.ContextCompat
 
 /**
- * Fires at a schedule's start time and hands it to [LiveRecordingService].
+ * Fires ahead of a schedule's start time and hands it to
+ * [LiveRecordingService], which connects and buffers through the pre-roll
+ * (see [prerollMs]) and writes from the boundary — the programme's first
+ * seconds aren't lost to redirects and a cold connect.
  *
  * EVERY scheduled start goes through an alarm fire — including "late joins"
  * (schedules already inside their window when [registerAll] runs, e.g. the
@@ -25,6 +28,8 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 
 	companion object {
 		const val EXTRA_SCHEDULE_ID = "extra_schedule_id"
+		/** Fire at the boundary itself, with no pre-roll (see [onReceive]). */
+		private const val EXTRA_AT_BOUNDARY = "extra_at_boundary"
 
 		/** Don't bother starting a recording with less than this left. */
 		private const val MIN_REMAINING_MS = 60_000L
@@ -36,15 +41,34 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 		 *  the exemption-carrying alarm path. */
 		private const val LATE_JOIN_DELAY_MS = 5_000L
 
+		/** Writing starts this far before the boundary: EPG starts drift. */
+		private const val BOUNDARY_MARGIN_MS = 3_000L
+
+		const val PREROLL_DEFAULT_SECONDS = 30L
+
+		/** The user-set wake-up lead (Settings → IPTV → Recording), read at
+		 *  every arm. Device-wide, like the recording limit. 0 turns it off. */
+		fun prerollMs(context: Context): Long =
+			com.debrify.app.profiles.ProfilePreferenceProjection.getDeviceLong(
+				context,
+				"recording_preroll_seconds",
+				PREROLL_DEFAULT_SECONDS,
+			).coerceIn(0L, 120L) * 1000L
+
 		fun exactAlarmsGranted(context: Context): Boolean {
 			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true
 			val am = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
 			return try { am.canScheduleExactAlarms() } catch (_: Exception) { false }
 		}
 
-		private fun alarmPendingIntent(context: Context, scheduleId: String): PendingIntent {
+		private fun alarmPendingIntent(
+			context: Context,
+			scheduleId: String,
+			atBoundary: Boolean = false,
+		): PendingIntent {
 			val intent = Intent(context, RecordingAlarmReceiver::class.java).apply {
 				putExtra(EXTRA_SCHEDULE_ID, scheduleId)
+				if (atBoundary) putExtra(EXTRA_AT_BOUNDARY, true)
 			}
 			return PendingIntent.getBroadcast(
 				context,
@@ -62,9 +86,8 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 		 * alarm and no broadcast can reach us).
 		 */
 		fun registerAll(context: Context) {
-			val am = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
 			val now = System.currentTimeMillis()
-			val exact = exactAlarmsGranted(context)
+			val preroll = prerollMs(context)
 			for ((id, schedule) in RecordingScheduleStore.all(context)) {
 				if (schedule.endMs - MIN_REMAINING_MS <= now) {
 					// Fully missed: nothing recordable remains.
@@ -72,36 +95,39 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 					cancelAlarm(context, id)
 					continue
 				}
-				val triggerAt = if (schedule.startMs <= now) {
-					now + LATE_JOIN_DELAY_MS
-				} else {
-					schedule.startMs
-				}
-				val pi = alarmPendingIntent(context, id)
-				// New schedules are only ACCEPTED while the exact-alarm grant is
-				// held (MainActivity / the TV guide refuse otherwise), so the
-				// setWindow branch exists solely for schedules stranded by a
-				// LATER revocation. An inexact fire cannot legally start the
-				// service from the background — but it costs nothing, sometimes
-				// lands while the app is foreground, and onReceive re-stores the
-				// schedule on failure so the next app open (or the permission
-				// coming back, see RecordingBootReceiver) can still record the
-				// remainder.
-				try {
-					when {
-						exact && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ->
-							am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi)
-						exact ->
-							am.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pi)
-						else ->
-							am.setWindow(AlarmManager.RTC_WAKEUP, triggerAt, 10L * 60 * 1000, pi)
-					}
-				} catch (_: Exception) {
-					// SecurityException from a revoked grant mid-flight.
-					try {
+				val wakeAt = schedule.startMs - preroll
+				val triggerAt = if (wakeAt <= now) now + LATE_JOIN_DELAY_MS else wakeAt
+				arm(context, id, triggerAt)
+			}
+		}
+
+		private fun arm(context: Context, scheduleId: String, triggerAt: Long, atBoundary: Boolean = false) {
+			val am = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+			val exact = exactAlarmsGranted(context)
+			val pi = alarmPendingIntent(context, scheduleId, atBoundary)
+			// New schedules are only ACCEPTED while the exact-alarm grant is
+			// held (MainActivity / the TV guide refuse otherwise), so the
+			// setWindow branch exists solely for schedules stranded by a
+			// LATER revocation. An inexact fire cannot legally start the
+			// service from the background — but it costs nothing, sometimes
+			// lands while the app is foreground, and onReceive re-stores the
+			// schedule on failure so the next app open (or the permission
+			// coming back, see RecordingBootReceiver) can still record the
+			// remainder.
+			try {
+				when {
+					exact && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ->
+						am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi)
+					exact ->
+						am.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pi)
+					else ->
 						am.setWindow(AlarmManager.RTC_WAKEUP, triggerAt, 10L * 60 * 1000, pi)
-					} catch (_: Exception) {}
 				}
+			} catch (_: Exception) {
+				// SecurityException from a revoked grant mid-flight.
+				try {
+					am.setWindow(AlarmManager.RTC_WAKEUP, triggerAt, 10L * 60 * 1000, pi)
+				} catch (_: Exception) {}
 			}
 		}
 
@@ -121,11 +147,21 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 	override fun onReceive(context: Context, intent: Intent) {
 		val scheduleId = intent.getStringExtra(EXTRA_SCHEDULE_ID) ?: return
 		val schedule = RecordingScheduleStore.get(context, scheduleId) ?: return
+		val now = System.currentTimeMillis()
+		val atBoundary = intent.getBooleanExtra(EXTRA_AT_BOUNDARY, false)
+		// Back-to-back programmes on a full recording limit: the one before
+		// still holds the slot the pre-roll wants. Come back at the boundary
+		// itself, when it may have been freed, rather than be refused now.
+		if (!atBoundary && schedule.startMs > now &&
+			RecordingRegistry.live.size >= LiveRecordingService.maxConcurrent(context)
+		) {
+			arm(context, scheduleId, schedule.startMs, atBoundary = true)
+			return
+		}
 		// One-shot: fired is fired, whatever happens next. Deleting first also
 		// makes a double-delivered alarm harmless (second load finds nothing).
 		RecordingScheduleStore.remove(context, scheduleId)
 
-		val now = System.currentTimeMillis()
 		if (schedule.endMs - MIN_REMAINING_MS <= now) return // missed
 
 		val stamp = java.text.SimpleDateFormat("yyyyMMdd_HHmm", java.util.Locale.US)
@@ -150,6 +186,11 @@ class RecordingAlarmReceiver : BroadcastReceiver() {
 			connectionResourceId = schedule.connectionResourceId,
 			profileAuthorizationRevision = schedule.profileAuthorizationRevision,
 			resourceAuthorizationRevision = schedule.resourceAuthorizationRevision,
+			programmes = schedule.programmeTitle.takeIf { it.isNotBlank() }
+				?.let { listOf(RecordingIndex.Programme(schedule.startMs, it)) }
+				.orEmpty(),
+			boundaryMs = schedule.startMs,
+			commitAtMs = (schedule.startMs - BOUNDARY_MARGIN_MS).takeIf { it > now } ?: 0L,
 		)
 		try {
 			ContextCompat.startForegroundService(context, start)
@@ -0,0 +1,139 @@
+package com.debrify.app.recording
+
+import android.content.Context
+import android.net.Uri
+import android.os.Environment
+import android.os.StatFs
+import android.text.format.Formatter
+import android.util.Log
+import com.debrify.app.download.DiskSpace
+
+/**
+ * The recordings' share of the volume: what the pending schedules are going
+ * to write, and what the user has said may go to make room.
+ *
+ * Each channel's bitrate is learnt from its finished captures (an average
+ * leaning on the latest, kept in prefs). The schedules' forecast is kept by
+ * [RecordingScheduleStore] as they come and go (see [ScheduleForecast]), so
+ * [check] costs a StatFs and some arithmetic — nothing is listed or
+ * measured on disk.
+ *
+ * [check] answers at schedule time: fits, fits once auto-delete recordings
+ * go, or doesn't fit. [reclaim] is the quota itself: a capture that is
+ * about to run past what the volume can spare (next to other transfers and
+ * [DiskSpace.HEADROOM_BYTES]) deletes the oldest recordings marked
+ * auto-delete in [RecordingLibraryIndex] until its shortfall is covered.
+ */
+object RecordingBudget {
+	private const val PREFS = "debrify_recording_budget"
+
+	/** Until a channel has been recorded: ~6 Mbit/s, an HD live channel. */
+	const val DEFAULT_RATE_BYTES_PER_SEC = 750_000L
+
+	/** Captures shorter than this say more about the connect than the channel. */
+	private const val MIN_SAMPLE_MS = 60_000L
+
+	private val lock = Any()
+
+	// Learnt bytes/s by channel url; null until first use.
+	private var rates: HashMap<String, Long>? = null
+
+	class Verdict(
+		/** Bytes the candidate is forecast to write. */
+		val needBytes: Long,
+		/** Free space left once everything already expected has written;
+		 *  [Long.MAX_VALUE] when the volume can't be measured. */
+		val spareBytes: Long,
+		/** Bytes held by recordings marked auto-delete. */
+		val reclaimableBytes: Long,
+	) {
+		val fits: Boolean get() = spareBytes >= needBytes
+		val fitsWithReclaim: Boolean get() = fits || spareBytes + reclaimableBytes >= needBytes
+	}
+
+	fun rate(context: Context, url: String): Long =
+		synchronized(lock) { rates(context)[url] } ?: DEFAULT_RATE_BYTES_PER_SEC
+
+	/** A capture of [url] wrote [bytes] over [durationMs]: fold it into the
+	 *  channel's rate, and the schedules' forecast with it. */
+	fun observed(context: Context, url: String, bytes: Long, durationMs: Long) {
+		if (durationMs < MIN_SAMPLE_MS || bytes <= 0L) return
+		val sample = bytes * 1000 / durationMs
+		val rate = synchronized(lock) {
+			val rates = rates(context)
+			// Half the weight on the newest: a channel that moved to HD is
+			// believed within a couple of recordings.
+			val learnt = rates[url]?.let { (it + sample) / 2 } ?: sample
+			rates[url] = learnt
+			context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+				.edit().putLong(url, learnt).apply()
+			learnt
+		}
+		// Outside our lock: the store's forecast reads rates under its own.
+		RecordingScheduleStore.rateChanged(url, rate)
+	}
+
+	/** Whether a schedule of [url] over `[startMs, endMs)` fits next to
+	 *  everything already scheduled or being written. */
+	fun check(context: Context, url: String, startMs: Long, endMs: Long): Verdict {
+		val need = ScheduleForecast.bytesFor((endMs - startMs).coerceAtLeast(0L), rate(context, url))
+		val free = freeBytes()
+		if (free < 0L) return Verdict(need, Long.MAX_VALUE, 0L)
+		val spare = free - DiskSpace.expectedByOthers("") - DiskSpace.HEADROOM_BYTES -
+			RecordingScheduleStore.forecastBytes(context)
+		val reclaimable = RecordingLibraryIndex.autoDeletable(context).sumOf { it.bytes }
+		return Verdict(need, spare, reclaimable)
+	}
+
+	/**
+	 * Delete the oldest auto-delete recordings until [need] bytes are freed,
+	 * never [keep] (the capture asking) or a file still being captured.
+	 * Returns the bytes freed. Call from a worker thread.
+	 */
+	fun reclaim(context: Context, need: Long, keep: Uri?): Long {
+		if (need <= 0L) return 0L
+		val candidates = RecordingLibraryIndex.autoDeletable(context)
+		if (candidates.isEmpty()) return 0L
+		val entries = RecordingTaskStore.all(context)
+		val live = entries.values
+			.filter { it.status == "recording" }
+			.mapNotNullTo(HashSet()) { it.uri }
+		var freed = 0L
+		for (row in candidates) {
+			if (freed >= need) break
+			val uri = row.uri
+			if (uri == keep || uri.toString() in live) continue
+			if (!RecordingTaskStore.deleteDestination(context, uri)) continue
+			for ((taskId, entry) in entries) {
+				if (entry.uri == uri.toString()) RecordingTaskStore.remove(context, taskId)
+			}
+			TeeUnpublishedStore.remove(context, uri)
+			freed += row.bytes
+			Log.i("LiveRecording", "storage budget: deleted ${row.name} (${row.bytes} B, auto-delete)")
+		}
+		if (freed > 0L) RecordingRegistry.notifyChanged()
+		return freed
+	}
+
+	/** Bytes an unprivileged writer may still use on the recordings' volume;
+	 *  -1 when unknown. */
+	fun freeBytes(): Long = try {
+		@Suppress("DEPRECATION")
+		val stat = StatFs(Environment.getExternalStorageDirectory().path)
+		stat.availableBytes
+	} catch (_: Exception) { -1L }
+
+	/** "4.2 GB"-style, for the schedule-time warnings. */
+	fun describe(context: Context, bytes: Long): String =
+		Formatter.formatShortFileSize(context, bytes.coerceAtLeast(0L))
+
+	private fun rates(context: Context): HashMap<String, Long> {
+		rates?.let { return it }
+		val loaded = HashMap<String, Long>()
+		for ((url, value) in context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).all) {
+			if (value is Long && value > 0L) loaded[url] = value
+		}
+		rates = loaded
+		return loaded
+	}
+}
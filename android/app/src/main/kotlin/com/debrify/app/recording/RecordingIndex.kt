@@ -0,0 +1,245 @@
+package com.debrify.app.recording
+
+import android.content.Context
+import android.net.Uri
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.security.MessageDigest
+
+/**
+ * The seek index of one recorded .ts: keyframe media times and the byte
+ * offsets they start at, plus the EPG programmes the recording spans as
+ * chapters. Written beside the capture by [Writer] as the bytes go to
+ * storage, read by the player when it opens the recording, so a seek is a
+ * lookup instead of a binary search through hours of stream on slow flash.
+ *
+ * The sidecar lives in app-private storage keyed by the recording's URI —
+ * never next to the .ts in Download/, where every user-visible file is the
+ * user's to see. It is append-only: a capture killed mid-way leaves a valid
+ * prefix, and the reader stops at a torn record.
+ */
+class RecordingIndex private constructor(
+	private val mediaMs: LongArray,
+	private val offsets: LongArray,
+	val durationMs: Long,
+	val chapters: List<Chapter>,
+) {
+	/** A programme boundary, in the recording's media time. */
+	data class Chapter(val mediaMs: Long, val title: String)
+
+	/** An EPG programme by wall-clock start, as a capture is handed it. */
+	data class Programme(val startMs: Long, val title: String)
+
+	/** Where a reader can start: a keyframe's media time and offset. */
+	data class Point(val mediaMs: Long, val offset: Long)
+
+	val size: Int get() = mediaMs.size
+
+	/** The keyframe at or before [ms], or the first one; null when empty. */
+	fun pointAtOrBefore(ms: Long): Point? {
+		if (mediaMs.isEmpty()) return null
+		val i = floorIndex(ms).coerceAtLeast(0)
+		return Point(mediaMs[i], offsets[i])
+	}
+
+	/** The first keyframe after [ms], or null past the last. */
+	fun pointAfter(ms: Long): Point? {
+		val i = floorIndex(ms) + 1
+		return if (i < mediaMs.size) Point(mediaMs[i], offsets[i]) else null
+	}
+
+	/** The chapter playing at [ms], or null before the first. */
+	fun chapterAt(ms: Long): Chapter? = chapters.lastOrNull { it.mediaMs <= ms }
+
+	// Index of the last entry at or before [ms]; -1 when all are after it.
+	private fun floorIndex(ms: Long): Int {
+		var lo = 0
+		var hi = mediaMs.size - 1
+		var found = -1
+		while (lo <= hi) {
+			val mid = (lo + hi) ushr 1
+			if (mediaMs[mid] <= ms) {
+				found = mid
+				lo = mid + 1
+			} else {
+				hi = mid - 1
+			}
+		}
+		return found
+	}
+
+	companion object {
+		/** At most one keyframe entry per this much media time. */
+		const val SPACING_MS = 1_000L
+
+		private const val DIR = "recording-index"
+		private const val MAGIC = 0x44424958 // "DBIX"
+		private const val VERSION = 1
+		private const val TAG_KEYFRAME = 'K'.code
+		private const val TAG_CHAPTER = 'C'.code
+		private const val TAG_END = 'E'.code
+
+		/** Flush after this many keyframes: a kill loses at most this much. */
+		private const val FLUSH_EVERY = 16
+
+		fun fileFor(context: Context, recording: Uri): File {
+			val digest = MessageDigest.getInstance("SHA-1").digest(recording.toString().toByteArray())
+			val name = digest.joinToString("") { "%02x".format(it) }
+			return File(File(context.filesDir, DIR), "$name.idx")
+		}
+
+		/** The index of [recording], or null when none was built (or it's unreadable). */
+		fun load(context: Context, recording: Uri): RecordingIndex? {
+			val file = fileFor(context, recording)
+			return if (file.exists()) read(file) else null
+		}
+
+		fun delete(context: Context, recording: Uri) {
+			runCatching { fileFor(context, recording).delete() }
+		}
+
+		fun read(file: File): RecordingIndex? {
+			val ms = ArrayList<Long>()
+			val at = ArrayList<Long>()
+			val chapters = ArrayList<Chapter>()
+			var endMs = -1L
+			try {
+				DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+					if (input.readInt() != MAGIC || input.readInt() != VERSION) return null
+					while (true) {
+						val tag = try {
+							input.readUnsignedByte()
+						} catch (_: EOFException) {
+							break
+						}
+						when (tag) {
+							TAG_KEYFRAME -> {
+								val m = input.readLong()
+								val o = input.readLong()
+								ms.add(m)
+								at.add(o)
+							}
+							TAG_CHAPTER -> chapters.add(Chapter(input.readLong(), input.readUTF()))
+							TAG_END -> {
+								endMs = input.readLong()
+								input.readLong()
+							}
+							else -> break
+						}
+					}
+				}
+			} catch (_: EOFException) {
+				// A torn last record: everything before it stands.
+			} catch (_: IOException) {
+				return null
+			}
+			if (ms.isEmpty()) return null
+			val duration = maxOf(endMs, ms.last())
+			return RecordingIndex(
+				ms.toLongArray(),
+				at.toLongArray(),
+				duration,
+				chapters.filter { it.mediaMs < duration }.sortedBy { it.mediaMs },
+			)
+		}
+	}
+
+	/**
+	 * Builds [file] from the bytes of a recording as they are written, in
+	 * order, from one thread. Never fails the recording: the first I/O error
+	 * drops the sidecar and every later call does nothing — the player then
+	 * seeks the way it always did.
+	 *
+	 * [programmes] become chapters once the first keyframe ties wall-clock
+	 * time to media time: the one on air at that moment starts at 0, later
+	 * ones at their start.
+	 */
+	class Writer(private val file: File, programmes: List<Programme>) : Closeable {
+		private var out: DataOutputStream? = null
+		private var pending: List<Programme> = programmes.sortedBy { it.startMs }
+		private var lastMs = Long.MIN_VALUE
+		private var unflushed = 0
+		private val scanner = TsKeyframeScanner { mediaMs, offset -> onKeyframe(mediaMs, offset) }
+
+		init {
+			try {
+				file.parentFile?.mkdirs()
+				out = DataOutputStream(BufferedOutputStream(FileOutputStream(file))).apply {
+					writeInt(MAGIC)
+					writeInt(VERSION)
+				}
+			} catch (e: IOException) {
+				abandon()
+			}
+		}
+
+		/** Feed the next [length] bytes written to the recording. */
+		fun append(data: ByteArray, offset: Int, length: Int) {
+			if (out == null || length <= 0) return
+			scanner.feed(data, offset, length)
+		}
+
+		private fun onKeyframe(mediaMs: Long, offset: Long) {
+			val sink = out ?: return
+			try {
+				if (lastMs == Long.MIN_VALUE) writeChapters(sink, System.currentTimeMillis() - mediaMs)
+				if (lastMs != Long.MIN_VALUE && mediaMs - lastMs < SPACING_MS) return
+				lastMs = mediaMs
+				sink.writeByte(TAG_KEYFRAME)
+				sink.writeLong(mediaMs)
+				sink.writeLong(offset)
+				if (++unflushed >= FLUSH_EVERY) {
+					sink.flush()
+					unflushed = 0
+				}
+			} catch (e: IOException) {
+				abandon()
+			}
+		}
+
+		// [wallAtZeroMs] is the wall-clock time media time 0 went by.
+		private fun writeChapters(sink: DataOutputStream, wallAtZeroMs: Long) {
+			val onAir = pending.lastOrNull { it.startMs <= wallAtZeroMs }
+			for (programme in pending) {
+				if (programme.startMs < wallAtZeroMs && programme !== onAir) continue
+				sink.writeByte(TAG_CHAPTER)
+				sink.writeLong((programme.startMs - wallAtZeroMs).coerceAtLeast(0L))
+				sink.writeUTF(programme.title.take(200))
+			}
+			pending = emptyList()
+		}
+
+		private fun abandon() {
+			runCatching { out?.close() }
+			out = null
+			file.delete()
+		}
+
+		/** Seal the index with the recording's end. */
+		override fun close() {
+			val sink = out ?: return
+			try {
+				sink.writeByte(TAG_END)
+				sink.writeLong(scanner.latestMediaMs)
+				sink.writeLong(scanner.position)
+				sink.close()
+				out = null
+			} catch (e: IOException) {
+				abandon()
+			}
+		}
+
+		/** Close and throw the sidecar away: the recording it indexed is gone. */
+		fun discard() {
+			abandon()
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.debrify.app.recording
+
+import android.content.ContentUris
+import android.content.Context
+import android.net.Uri
+import android.os.Build
+import android.provider.MediaStore
+import org.json.JSONObject
+import com.debrify.app.download.KeyedJournal
+
+/**
+ * What the recordings folder holds, kept between launches so the Recordings
+ * hub doesn't rediscover it on every open: one row per MediaStore row under
+ * [LiveRecordingService.RELATIVE_PATH], with what the writers knew when they
+ * finished it (duration, channel) — a tee recording has no task entry to
+ * carry those — and whether the user lets [RecordingBudget] delete it when
+ * a capture needs the room.
+ *
+ * [revalidate] brings it in step with MediaStore in one light query: row
+ * ids and their modification stamp (GENERATION_MODIFIED on R+, the row's
+ * date before). Only rows that are new or whose stamp moved are read in
+ * full; rows MediaStore no longer lists are dropped. A changed
+ * MediaStore.getVersion means the provider's database was rebuilt and its
+ * ids reused, so the index starts over.
+ *
+ * Q+ only: pre-Q recordings are a plain directory, listed directly.
+ */
+object RecordingLibraryIndex {
+	private const val JOURNAL = "recording_library"
+	private const val PREFS = "debrify_recording_library"
+	private const val KEY_VERSION = "mediastore_version"
+
+	/** Ids per full-row query: well under SQLite's bound-argument limit. */
+	private const val REFRESH_CHUNK = 500
+
+	private val lock = Any()
+
+	data class Row(
+		val id: Long,
+		val name: String,
+		val bytes: Long,
+		val modifiedMs: Long,
+		/** GENERATION_MODIFIED on R+, DATE_MODIFIED (s) on Q. */
+		val stamp: Long,
+		val durationMs: Long? = null,
+		val channelName: String? = null,
+		val autoDelete: Boolean = false,
+	) {
+		val uri: Uri get() = ContentUris.withAppendedId(MediaStore.Downloads.EXTERNAL_CONTENT_URI, id)
+	}
+
+	/** What [revalidate] must do to bring an index in step with a listing. */
+	internal data class Plan(val refresh: List<Long>, val drop: List<Long>)
+
+	// Decoded journal rows; null until first use.
+	private var rows: HashMap<Long, Row>? = null
+
+	/**
+	 * A writer finished [uri]: remember what only it knows. The row's size
+	 * and name are re-read on the next [revalidate] anyway — its stamp moved
+	 * when it was published.
+	 */
+	fun recorded(
+		context: Context,
+		uri: Uri,
+		name: String,
+		bytes: Long,
+		durationMs: Long?,
+		channelName: String?,
+	) {
+		if (uri.scheme != "content") return
+		val id = runCatching { ContentUris.parseId(uri) }.getOrNull()?.takeIf { it >= 0 } ?: return
+		synchronized(lock) {
+			val rows = rows(context)
+			val row = Row(
+				id = id,
+				name = name,
+				bytes = bytes,
+				modifiedMs = System.currentTimeMillis(),
+				stamp = -1L,
+				durationMs = durationMs,
+				channelName = channelName?.takeIf { it.isNotEmpty() },
+			)
+			rows[id] = row
+			journal(context).put(id.toString(), toJson(row).toString())
+		}
+	}
+
+	/** Mark [uri] as one [RecordingBudget] may delete. False when it isn't
+	 *  indexed (pre-Q, or not yet seen by [revalidate]). */
+	fun setAutoDelete(context: Context, uri: Uri, autoDelete: Boolean): Boolean {
+		if (uri.scheme != "content") return false
+		val id = runCatching { ContentUris.parseId(uri) }.getOrNull() ?: return false
+		synchronized(lock) {
+			val rows = rows(context)
+			val row = rows[id] ?: return false
+			if (row.autoDelete == autoDelete) return true
+			val marked = row.copy(autoDelete = autoDelete)
+			rows[id] = marked
+			journal(context).put(id.toString(), toJson(marked).toString())
+			return true
+		}
+	}
+
+	/** Rows marked auto-delete, oldest first: [RecordingBudget]'s pruning order. */
+	fun autoDeletable(context: Context): List<Row> =
+		synchronized(lock) { rows(context).values.filter { it.autoDelete } }
+			.sortedBy { it.modifiedMs }
+
+	fun forget(context: Context, uri: Uri) {
+		if (uri.scheme != "content") return
+		val id = runCatching { ContentUris.parseId(uri) }.getOrNull() ?: return
+		synchronized(lock) {
+			if (rows(context).remove(id) != null) journal(context).remove(id.toString())
+		}
+	}
+
+	/**
+	 * Bring the index in step with MediaStore and return its rows, or null
+	 * when the provider couldn't answer — callers must then neither prune by
+	 * it nor treat it as complete. Call from a worker thread.
+	 */
+	fun revalidate(context: Context): List<Row>? {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return null
+		synchronized(lock) {
+			val rows = rows(context)
+			val journal = journal(context)
+			val prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+			val version = runCatching { MediaStore.getVersion(context) }.getOrNull() ?: return null
+			if (prefs.getString(KEY_VERSION, null) != version && rows.isNotEmpty()) {
+				rows.clear()
+				journal.clear()
+			}
+			val listing = listStamps(context) ?: return null
+			val plan = plan(rows, listing)
+			for (id in plan.drop) {
+				rows.remove(id)
+				journal.remove(id.toString())
+			}
+			for (chunk in plan.refresh.chunked(REFRESH_CHUNK)) {
+				val fresh = readRows(context, chunk) ?: return null
+				for (row in fresh) {
+					// Keep what the writer told us; the rest is MediaStore's.
+					val known = rows[row.id]
+					val merged = row.copy(
+						durationMs = known?.durationMs,
+						channelName = known?.channelName,
+						autoDelete = known?.autoDelete ?: false,
+					)
+					rows[row.id] = merged
+					journal.put(row.id.toString(), toJson(merged).toString())
+				}
+			}
+			prefs.edit().putString(KEY_VERSION, version).apply()
+			return ArrayList(rows.values)
+		}
+	}
+
+	/** Rows to re-read (new, or stamped differently) and rows to drop. */
+	internal fun plan(indexed: Map<Long, Row>, listing: Map<Long, Long>): Plan {
+		val refresh = ArrayList<Long>()
+		for ((id, stamp) in listing) {
+			val row = indexed[id]
+			if (row == null || row.stamp != stamp) refresh.add(id)
+		}
+		val drop = indexed.keys.filter { it !in listing }
+		return Plan(refresh, drop)
+	}
+
+	private fun stampColumn(): String =
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+			MediaStore.MediaColumns.GENERATION_MODIFIED
+		} else {
+			MediaStore.MediaColumns.DATE_MODIFIED
+		}
+
+	private fun listStamps(context: Context): Map<Long, Long>? = try {
+		context.contentResolver.query(
+			MediaStore.Downloads.EXTERNAL_CONTENT_URI,
+			arrayOf(MediaStore.Downloads._ID, stampColumn()),
+			"${MediaStore.Downloads.RELATIVE_PATH} LIKE ?",
+			arrayOf("${LiveRecordingService.RELATIVE_PATH}%"),
+			null,
+		)?.use { cursor ->
+			val out = HashMap<Long, Long>(cursor.count * 2)
+			while (cursor.moveToNext()) out[cursor.getLong(0)] = cursor.getLong(1)
+			out
+		}
+	} catch (_: Exception) {
+		null
+	}
+
+	private fun readRows(context: Context, ids: List<Long>): List<Row>? = try {
+		context.contentResolver.query(
+			MediaStore.Downloads.EXTERNAL_CONTENT_URI,
+			arrayOf(
+				MediaStore.Downloads._ID,
+				MediaStore.Downloads.DISPLAY_NAME,
+				MediaStore.Downloads.SIZE,
+				MediaStore.Downloads.DATE_MODIFIED,
+				stampColumn(),
+			),
+			"${MediaStore.Downloads._ID} IN (${ids.joinToString(",") { "?" }})",
+			ids.map { it.toString() }.toTypedArray(),
+			null,
+		)?.use { cursor ->
+			val out = ArrayList<Row>(cursor.count)
+			while (cursor.moveToNext()) {
+				out.add(
+					Row(
+						id = cursor.getLong(0),
+						name = cursor.getString(1) ?: "recording.ts",
+						bytes = cursor.getLong(2),
+						// DATE_MODIFIED is in SECONDS.
+						modifiedMs = cursor.getLong(3) * 1000L,
+						stamp = cursor.getLong(4),
+					),
+				)
+			}
+			out
+		}
+	} catch (_: Exception) {
+		null
+	}
+
+	private fun journal(context: Context) = KeyedJournal.open(context, JOURNAL, null, null)
+
+	private fun rows(context: Context): HashMap<Long, Row> {
+		rows?.let { return it }
+		val loaded = HashMap<Long, Row>()
+		val journal = journal(context)
+		for ((key, raw) in journal.snapshot()) {
+			val row = runCatching { fromJson(key.toLong(), JSONObject(raw)) }.getOrNull()
+			if (row == null) journal.remove(key) else loaded[row.id] = row
+		}
+		rows = loaded
+		return loaded
+	}
+
+	private fun toJson(row: Row): JSONObject = JSONObject().apply {
+		put("name", row.name)
+		put("bytes", row.bytes)
+		put("modifiedMs", row.modifiedMs)
+		put("stamp", row.stamp)
+		row.durationMs?.let { put("durationMs", it) }
+		row.channelName?.let { put("channelName", it) }
+		if (row.autoDelete) put("autoDelete", true)
+	}
+
+	private fun fromJson(id: Long, o: JSONObject): Row = Row(
+		id = id,
+		name = o.getString("name"),
+		bytes = o.optLong("bytes", 0L),
+		modifiedMs = o.optLong("modifiedMs", 0L),
+		stamp = o.optLong("stamp", -1L),
+		durationMs = if (o.has("durationMs")) o.getLong("durationMs") else null,
+		channelName = o.optString("channelName", "").takeIf { it.isNotEmpty() },
+		autoDelete = o.optBoolean("autoDelete", false),
+	)
+}
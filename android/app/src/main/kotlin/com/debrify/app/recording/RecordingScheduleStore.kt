@@ -2,6 +2,7 @@ package com.debrify.app.recording
 
 import android.content.Context
 import org.json.JSONObject
+import com.debrify.app.download.KeyedJournal
 import com.debrify.app.security.DeviceSecretCipherPlugin
 
 /**
@@ -31,12 +32,31 @@ data class RecordingSchedule(
 object RecordingScheduleStore {
 	private const val PREFS = "debrify_recording_schedules"
 	private const val KEY = "schedules_v1"
+	private const val JOURNAL = "recording_schedules"
 	private val lock = com.debrify.app.profiles.NativeProfileMigrationGate.lock
 
-	fun hasStoredState(context: Context): Boolean =
-		!prefs(context).getString(KEY, null).isNullOrBlank()
+	// Decoded rows, valid while the stored row is unchanged (DownloadTaskStore).
+	private val decoded = HashMap<String, Pair<String, RecordingSchedule>>()
 
-	fun get(context: Context, id: String): RecordingSchedule? = all(context)[id]
+	// The schedules by window for the conflict checks: built from [all] on
+	// first use, then kept in step by put/remove so a check never re-reads
+	// the journal or opens a sealed payload.
+	private var intervals: ScheduleIntervalTree? = null
+
+	// What they are going to write ([RecordingBudget]), kept the same way.
+	private var forecast: ScheduleForecast? = null
+
+	fun hasStoredState(context: Context): Boolean {
+		val journal = journal(context)
+		return !journal.isEmpty() || journal.legacyUnreadable || !journal.isReadable()
+	}
+
+	fun get(context: Context, id: String): RecordingSchedule? {
+		synchronized(lock) {
+			val row = journal(context).get(id) ?: return null
+			return decode(context, id, row)
+		}
+	}
 
 	fun put(context: Context, schedule: RecordingSchedule) {
 		synchronized(lock) {
@@ -67,33 +87,28 @@ object RecordingScheduleStore {
 					),
 				)
 			} else schedule
-			val map = loadJson(context)
-			map.put(schedule.id, toJson(stored))
-			save(context, map)
+			journal(context).put(schedule.id, toJson(stored).toString())
+			intervals?.put(stored)
+			forecast?.put(stored)
 		}
 	}
 
 	fun remove(context: Context, id: String) {
 		synchronized(lock) {
-			val map = loadJson(context)
-			if (map.has(id)) {
-				map.remove(id)
-				save(context, map)
-			}
+			journal(context).remove(id)
+			decoded.remove(id)
+			intervals?.remove(id)
+			forecast?.remove(id)
 		}
 	}
 
 	fun all(context: Context): Map<String, RecordingSchedule> {
 		synchronized(lock) {
-			val map = loadJson(context)
+			val rows = journal(context).snapshot()
+			decoded.keys.retainAll(rows.keys)
 			val out = HashMap<String, RecordingSchedule>()
-			map.keys().forEach { id ->
-				val source = runCatching { map.getJSONObject(id) }.getOrNull() ?: return@forEach
-				out[id] = try {
-					fromJson(context, id, source)
-				} catch (_: Exception) {
-					fromJsonWithoutExecution(id, source)
-				}
+			for ((id, row) in rows) {
+				out[id] = decode(context, id, row) ?: continue
 			}
 			return out
 		}
@@ -104,18 +119,12 @@ object RecordingScheduleStore {
 	 * captured authorization revision before an alarm can execute. */
 	fun migrateLegacyAuthority(context: Context, ownerProfileId: String, revision: Long) {
 		synchronized(lock) {
-			val source = loadJsonStrict(context)
+			val source = loadStrict(context)
 			val schedules = ArrayList<Pair<String, RecordingSchedule>>()
-			source.keys().forEach { scheduleId ->
-				schedules.add(
-					scheduleId to fromJson(
-						context,
-						scheduleId,
-						source.getJSONObject(scheduleId),
-					),
-				)
+			for ((scheduleId, row) in source) {
+				schedules.add(scheduleId to fromJson(context, scheduleId, JSONObject(row)))
 			}
-			val migrated = JSONObject()
+			val migrated = LinkedHashMap<String, String>()
 			for ((scheduleId, schedule) in schedules) {
 				val rebound = schedule.copy(
 					ownerProfileId = ownerProfileId,
@@ -131,16 +140,20 @@ object RecordingScheduleStore {
 						rebound.headers,
 					),
 				)
-				migrated.put(scheduleId, toJson(secured))
+				migrated[scheduleId] = toJson(secured).toString()
 			}
 			saveDurably(context, migrated)
+			intervals = null
+			forecast = null
 		}
 	}
 
 	/** An existing schedule for the same channel-url + start time, if any —
 	 *  the UI warns instead of silently double-recording one programme. */
 	fun findDuplicate(context: Context, url: String, startMs: Long): RecordingSchedule? =
-		all(context).values.firstOrNull { it.url == url && it.startMs == startMs }
+		synchronized(lock) {
+			intervals(context).startingAt(startMs).firstOrNull { it.url == url }
+		}
 
 	/**
 	 * Peak number of stored schedules simultaneously active anywhere inside
@@ -148,56 +161,66 @@ object RecordingScheduleStore {
 	 * another starts never overlaps it. The candidate itself is NOT counted —
 	 * callers compare `peak + 1 > limit`.
 	 */
-	fun peakOverlap(context: Context, startMs: Long, endMs: Long): Int {
-		val events = ArrayList<Pair<Long, Int>>()
-		for (s in all(context).values) {
-			val from = maxOf(s.startMs, startMs)
-			val to = minOf(s.endMs, endMs)
-			if (to <= from) continue
-			events.add(from to 1)
-			events.add(to to -1)
-		}
-		// Ends before starts at the same instant.
-		events.sortWith(compareBy({ it.first }, { it.second }))
-		var current = 0
-		var peak = 0
-		for ((_, delta) in events) {
-			current += delta
-			if (current > peak) peak = current
-		}
-		return peak
-	}
+	fun peakOverlap(context: Context, startMs: Long, endMs: Long): Int =
+		synchronized(lock) { intervals(context).peakOverlap(startMs, endMs) }
 
 	/** Display labels of schedules overlapping `[startMs, endMs)`, for the
 	 *  conflict warning. */
 	fun overlappingTitles(context: Context, startMs: Long, endMs: Long): List<String> =
-		all(context).values
-			.filter { it.startMs < endMs && startMs < it.endMs }
-			.sortedBy { it.startMs }
+		synchronized(lock) { intervals(context).overlapping(startMs, endMs) }
 			.map { it.programmeTitle.ifEmpty { it.channelName } }
 			.distinct()
 
-	private fun prefs(context: Context) =
-		context.applicationContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+	/** Bytes the stored schedules are forecast to write, at each channel's
+	 *  learnt bitrate (see [RecordingBudget]). */
+	fun forecastBytes(context: Context): Long =
+		synchronized(lock) { forecast(context).bytes }
+
+	/** [RecordingBudget] re-learnt [url]'s bitrate. Never call holding its lock. */
+	internal fun rateChanged(url: String, rate: Long) {
+		synchronized(lock) { forecast?.rateChanged(url, rate) }
+	}
+
+	private fun forecast(context: Context): ScheduleForecast {
+		forecast?.let { return it }
+		val app = context.applicationContext
+		val built = ScheduleForecast { url -> RecordingBudget.rate(app, url) }
+		for (schedule in all(context).values) built.put(schedule)
+		forecast = built
+		return built
+	}
+
+	private fun intervals(context: Context): ScheduleIntervalTree {
+		intervals?.let { return it }
+		val tree = ScheduleIntervalTree()
+		for (schedule in all(context).values) tree.put(schedule)
+		intervals = tree
+		return tree
+	}
+
+	private fun journal(context: Context) = KeyedJournal.open(context, JOURNAL, PREFS, KEY)
 
-	private fun loadJson(context: Context): JSONObject {
+	private fun decode(context: Context, id: String, row: String): RecordingSchedule? {
+		decoded[id]?.let { (cachedRow, schedule) -> if (cachedRow == row) return schedule }
+		val source = runCatching { JSONObject(row) }.getOrNull() ?: return null
 		return try {
-			JSONObject(prefs(context).getString(KEY, null) ?: "{}")
+			fromJson(context, id, source).also { decoded[id] = row to it }
 		} catch (_: Exception) {
-			JSONObject()
+			fromJsonWithoutExecution(id, source)
 		}
 	}
 
-	private fun loadJsonStrict(context: Context): JSONObject =
-		JSONObject(prefs(context).getString(KEY, null) ?: "{}")
-
-	private fun save(context: Context, map: JSONObject) {
-		prefs(context).edit().putString(KEY, map.toString()).apply()
+	private fun loadStrict(context: Context): Map<String, String> {
+		val journal = journal(context)
+		if (journal.legacyUnreadable || !journal.isReadable()) throw IllegalStateException("Stored recording schedules are unreadable")
+		return journal.snapshot()
 	}
 
-	private fun saveDurably(context: Context, map: JSONObject) {
-		if (!prefs(context).edit().putString(KEY, map.toString()).commit()) {
-			throw IllegalStateException("Could not commit migrated recording schedules")
+	private fun saveDurably(context: Context, rows: Map<String, String>) {
+		try {
+			journal(context).replaceAll(rows)
+		} catch (e: java.io.IOException) {
+			throw IllegalStateException("Could not commit migrated recording schedules", e)
 		}
 	}
 
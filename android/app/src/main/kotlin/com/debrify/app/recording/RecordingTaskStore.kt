@@ -8,13 +8,15 @@ import android.os.Handler
 import android.os.Looper
 import android.provider.MediaStore
 import org.json.JSONObject
+import com.debrify.app.download.DiskSpace
+import com.debrify.app.download.KeyedJournal
 import com.debrify.app.security.DeviceSecretCipherPlugin
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
 
 /**
  * Durable record of every live-recording task, mirroring DownloadTaskStore's
- * idiom (prefs-backed JSON map, synchronized, corrupt entries dropped).
+ * idiom (journal-backed JSON rows, synchronized, corrupt entries dropped).
  *
  * Unlike downloads, a live capture can never be RESUMED after process death —
  * the stream kept broadcasting while we were dead, so the gap is unbounded.
@@ -50,10 +52,16 @@ data class RecordingEntry(
 object RecordingTaskStore {
 	private const val PREFS = "debrify_recording_service"
 	private const val KEY = "tasks_v1"
+	private const val JOURNAL = "recording_tasks"
 	private val lock = com.debrify.app.profiles.NativeProfileMigrationGate.lock
 
-	fun hasStoredState(context: Context): Boolean =
-		!prefs(context).getString(KEY, null).isNullOrBlank()
+	// Decoded rows, valid while the stored row is unchanged (DownloadTaskStore).
+	private val decoded = HashMap<String, Pair<String, RecordingEntry>>()
+
+	fun hasStoredState(context: Context): Boolean {
+		val journal = journal(context)
+		return !journal.isEmpty() || journal.legacyUnreadable || !journal.isReadable()
+	}
 
 	/** Prune age for terminal entries with NO surviving file to index —
 	 *  `failed` rows and `done` rows without a uri. `done` entries WITH a
@@ -73,7 +81,12 @@ object RecordingTaskStore {
 	private const val EXISTENCE_SWEEP_INTERVAL_MS = 5L * 60 * 1000
 	@Volatile private var lastExistenceSweepMs = 0L
 
-	fun get(context: Context, taskId: String): RecordingEntry? = all(context)[taskId]
+	fun get(context: Context, taskId: String): RecordingEntry? {
+		synchronized(lock) {
+			val row = journal(context).get(taskId) ?: return null
+			return decode(taskId, row)
+		}
+	}
 
 	fun put(context: Context, entry: RecordingEntry) {
 		synchronized(lock) {
@@ -91,38 +104,29 @@ object RecordingTaskStore {
 					allowRevisionDrift = true,
 				)
 			) throw SecurityException("Recording profile authorization changed")
-			val map = loadJson(context)
 			val secured = if (!committed) {
 				entry.copy(sealedExecutionPayload = null)
 			} else if (entry.sealedExecutionPayload == null) {
 				entry.copy(sealedExecutionPayload = sealExecutionPayload(entry))
 			} else entry
-			map.put(entry.taskId, toJson(secured))
-			save(context, map)
+			journal(context).put(entry.taskId, toJson(secured).toString())
 		}
 	}
 
 	fun remove(context: Context, taskId: String) {
 		synchronized(lock) {
-			val map = loadJson(context)
-			if (map.has(taskId)) {
-				map.remove(taskId)
-				save(context, map)
-			}
+			journal(context).remove(taskId)
+			decoded.remove(taskId)
 		}
 	}
 
 	fun all(context: Context): Map<String, RecordingEntry> {
 		synchronized(lock) {
-			val map = loadJson(context)
+			val rows = journal(context).snapshot()
+			decoded.keys.retainAll(rows.keys)
 			val out = HashMap<String, RecordingEntry>()
-			map.keys().forEach { id ->
-				val source = runCatching { map.getJSONObject(id) }.getOrNull() ?: return@forEach
-				out[id] = try {
-					fromJson(id, source)
-				} catch (_: Exception) {
-					fromJsonWithoutExecution(id, source)
-				}
+			for ((id, row) in rows) {
+				out[id] = decode(id, row) ?: continue
 			}
 			return out
 		}
@@ -132,12 +136,12 @@ object RecordingTaskStore {
 	 * remain intact; interrupted captures are finalized by reconciliation. */
 	fun migrateLegacyAuthority(context: Context, ownerProfileId: String, revision: Long) {
 		synchronized(lock) {
-			val source = loadJsonStrict(context)
+			val source = loadStrict(context)
 			val entries = ArrayList<Pair<String, RecordingEntry>>()
-			source.keys().forEach { taskId ->
-				entries.add(taskId to fromJson(taskId, source.getJSONObject(taskId)))
+			for ((taskId, row) in source) {
+				entries.add(taskId to fromJson(taskId, JSONObject(row)))
 			}
-			val migrated = JSONObject()
+			val migrated = LinkedHashMap<String, String>()
 			for ((taskId, entry) in entries) {
 				val rebound = entry.copy(
 					ownerProfileId = ownerProfileId,
@@ -145,7 +149,7 @@ object RecordingTaskStore {
 					sealedExecutionPayload = null,
 				)
 				val secured = rebound.copy(sealedExecutionPayload = sealExecutionPayload(rebound))
-				migrated.put(taskId, toJson(secured))
+				migrated[taskId] = toJson(secured).toString()
 			}
 			saveDurably(context, migrated)
 		}
@@ -156,7 +160,8 @@ object RecordingTaskStore {
 	 * ones. Safe to call from any thread; each call is one pass over the store.
 	 *
 	 * A dead `recording` entry's row already holds every byte that was synced —
-	 * publishing it (IS_PENDING=0) is the whole crash story. A dead entry whose
+	 * publishing it (IS_PENDING=0) is the whole crash story, once the space
+	 * reserved past the last write is cut off. A dead entry whose
 	 * row has no bytes (or no row at all) has nothing worth keeping: delete the
 	 * row, mark failed.
 	 */
@@ -171,7 +176,7 @@ object RecordingTaskStore {
 					if (RecordingRegistry.live.containsKey(taskId)) continue
 					if (now - entry.updatedAt < DEAD_MIN_AGE_MS) continue
 					val uri = entry.uri?.let { Uri.parse(it) }
-					val size = uri?.let { fileSize(context, it) } ?: -1L
+					val size = uri?.let { trimUnwrittenTail(context, it) } ?: -1L
 					if (uri != null && size > 0L) {
 						val published = publishRow(context, uri)
 						put(
@@ -244,6 +249,23 @@ object RecordingTaskStore {
 		}
 	}
 
+	/**
+	 * Drop published `done` entries whose MediaStore row is missing from
+	 * [listed] — the ids a [RecordingLibraryIndex] pass just saw — and which
+	 * the provider confirms gone. A row moved out of the recordings folder is
+	 * unlisted but still exists, so the listing alone never prunes.
+	 */
+	fun pruneUnlisted(context: Context, listed: Set<Long>) {
+		for ((taskId, entry) in all(context)) {
+			if (entry.status != "done" || !entry.published) continue
+			val uri = entry.uri?.let { Uri.parse(it) } ?: continue
+			if (uri.scheme != "content") continue
+			val id = runCatching { android.content.ContentUris.parseId(uri) }.getOrNull() ?: continue
+			if (id in listed) continue
+			if (destinationExists(context, uri) == false) remove(context, taskId)
+		}
+	}
+
 	/**
 	 * Tri-state destination existence: true/false only when the answer is
 	 * AUTHORITATIVE (the provider answered, or the file API did), null when
@@ -300,6 +322,28 @@ object RecordingTaskStore {
 		} catch (_: Exception) { -1L }
 	}
 
+	/** [fileSize] after cutting off preallocated space the capture never
+	 *  reached (see [DiskSpace.trimZeroTail]). Real TS packets open with
+	 *  0x47, so only the zero padding of an already-cut last packet can go
+	 *  with it. */
+	fun trimUnwrittenTail(context: Context, uri: Uri): Long {
+		return try {
+			val pfd = if (uri.scheme == "file") {
+				android.os.ParcelFileDescriptor.open(
+					java.io.File(uri.path!!),
+					android.os.ParcelFileDescriptor.MODE_READ_WRITE,
+				)
+			} else {
+				context.contentResolver.openFileDescriptor(uri, "rw")
+			}
+			pfd?.use { DiskSpace.trimZeroTail(it.fileDescriptor) }
+				?.takeIf { it >= 0L }
+				?: fileSize(context, uri)
+		} catch (_: Exception) {
+			fileSize(context, uri)
+		}
+	}
+
 	/** Make the finished recording user-visible. MediaStore rows get their
 	 *  IS_PENDING cleared; legacy `file://` destinations (pre-Q) are already
 	 *  visible on disk — a media scan just tells gallery-ish apps about them,
@@ -327,6 +371,8 @@ object RecordingTaskStore {
 
 	/** Remove a recording destination, whichever kind it is. */
 	fun deleteDestination(context: Context, uri: Uri): Boolean {
+		RecordingIndex.delete(context, uri)
+		RecordingLibraryIndex.forget(context, uri)
 		if (uri.scheme == "file") {
 			return runCatching {
 				val file = java.io.File(uri.path!!)
@@ -341,27 +387,29 @@ object RecordingTaskStore {
 		}.getOrDefault(false)
 	}
 
-	private fun prefs(context: Context) =
-		context.applicationContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+	private fun journal(context: Context) = KeyedJournal.open(context, JOURNAL, PREFS, KEY)
 
-	private fun loadJson(context: Context): JSONObject {
+	private fun decode(taskId: String, row: String): RecordingEntry? {
+		decoded[taskId]?.let { (cachedRow, entry) -> if (cachedRow == row) return entry }
+		val source = runCatching { JSONObject(row) }.getOrNull() ?: return null
 		return try {
-			JSONObject(prefs(context).getString(KEY, null) ?: "{}")
+			fromJson(taskId, source).also { decoded[taskId] = row to it }
 		} catch (_: Exception) {
-			JSONObject()
+			fromJsonWithoutExecution(taskId, source)
 		}
 	}
 
-	private fun loadJsonStrict(context: Context): JSONObject =
-		JSONObject(prefs(context).getString(KEY, null) ?: "{}")
-
-	private fun save(context: Context, map: JSONObject) {
-		prefs(context).edit().putString(KEY, map.toString()).apply()
+	private fun loadStrict(context: Context): Map<String, String> {
+		val journal = journal(context)
+		if (journal.legacyUnreadable || !journal.isReadable()) throw IllegalStateException("Stored recording tasks are unreadable")
+		return journal.snapshot()
 	}
 
-	private fun saveDurably(context: Context, map: JSONObject) {
-		if (!prefs(context).edit().putString(KEY, map.toString()).commit()) {
-			throw IllegalStateException("Could not commit migrated recording tasks")
+	private fun saveDurably(context: Context, rows: Map<String, String>) {
+		try {
+			journal(context).replaceAll(rows)
+		} catch (e: java.io.IOException) {
+			throw IllegalStateException("Could not commit migrated recording tasks", e)
 		}
 	}
 
@@ -487,6 +535,7 @@ object RecordingRegistry {
 		val channelName: String,
 		val fileName: String,
 		val startedAtMs: Long,
+		val ownerProfileId: String = "legacy-admin-v1",
 	) {
 		@Volatile var bytes: Long = 0L
 	}
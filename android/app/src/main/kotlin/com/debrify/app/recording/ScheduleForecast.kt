@@ -0,0 +1,58 @@
+package com.debrify.app.recording
+
+/**
+ * Bytes the stored schedules are going to write: each schedule's window at
+ * its channel's bitrate ([rateOf], bytes/s), summed. Kept in step as
+ * schedules come and go and as a channel's rate is re-learnt, so an answer
+ * never walks the schedules — a channel's share is its total scheduled
+ * time at its one rate, swapped out whole when either changes.
+ *
+ * Not thread-safe: [RecordingScheduleStore] calls it under its lock.
+ */
+internal class ScheduleForecast(private val rateOf: (String) -> Long) {
+	// id → (channel url, window ms), for the remove that only has an id.
+	private val windows = HashMap<String, Pair<String, Long>>()
+	private val scheduledMs = HashMap<String, Long>()
+	private val rates = HashMap<String, Long>()
+
+	var bytes = 0L
+		private set
+
+	fun put(schedule: RecordingSchedule) {
+		remove(schedule.id)
+		val url = schedule.url
+		val ms = (schedule.endMs - schedule.startMs).coerceAtLeast(0L)
+		windows[schedule.id] = url to ms
+		val rate = rates.getOrPut(url) { rateOf(url) }
+		val before = scheduledMs[url] ?: 0L
+		scheduledMs[url] = before + ms
+		bytes += bytesFor(before + ms, rate) - bytesFor(before, rate)
+	}
+
+	fun remove(id: String) {
+		val (url, ms) = windows.remove(id) ?: return
+		val rate = rates.getValue(url)
+		val before = scheduledMs.getValue(url)
+		bytes -= bytesFor(before, rate) - bytesFor(before - ms, rate)
+		if (before - ms > 0L) {
+			scheduledMs[url] = before - ms
+		} else {
+			scheduledMs.remove(url)
+			rates.remove(url)
+		}
+	}
+
+	/** [url]'s bitrate was re-learnt; channels with nothing scheduled are
+	 *  picked up from [rateOf] when they are. */
+	fun rateChanged(url: String, rate: Long) {
+		val ms = scheduledMs[url] ?: return
+		bytes += bytesFor(ms, rate) - bytesFor(ms, rates.getValue(url))
+		rates[url] = rate
+	}
+
+	companion object {
+		/** What [ms] of a channel writes at [rate] bytes/s, without overflowing
+		 *  on a day-long window. */
+		fun bytesFor(ms: Long, rate: Long): Long = ms / 1000 * rate + ms % 1000 * rate / 1000
+	}
+}
@@ -0,0 +1,167 @@
+package com.debrify.app.recording
+
+import kotlin.random.Random
+
+/**
+ * The stored schedules by time window, for the conflict checks the EPG pane
+ * runs on every programme it focuses. A treap ordered by (start, id), each
+ * node carrying the latest end in its subtree, so a window query visits only
+ * the branches that can reach into it: O(log n + k) for k hits.
+ *
+ * Kept in step with the journal by [RecordingScheduleStore] under its lock;
+ * not thread-safe on its own.
+ */
+internal class ScheduleIntervalTree {
+	private class Node(val schedule: RecordingSchedule, val priority: Int) {
+		var left: Node? = null
+		var right: Node? = null
+		var maxEnd: Long = schedule.endMs
+	}
+
+	private var root: Node? = null
+	private val byId = HashMap<String, RecordingSchedule>()
+	private val random = Random(System.nanoTime())
+
+	val size: Int get() = byId.size
+
+	/** Add [schedule], replacing the stored one with its id. */
+	fun put(schedule: RecordingSchedule) {
+		byId.put(schedule.id, schedule)?.let { root = delete(root, it) }
+		root = insert(root, Node(schedule, random.nextInt()))
+	}
+
+	fun remove(id: String) {
+		val old = byId.remove(id) ?: return
+		root = delete(root, old)
+	}
+
+	/** Schedules overlapping the half-open `[startMs, endMs)`, by start. */
+	fun overlapping(startMs: Long, endMs: Long): List<RecordingSchedule> {
+		val out = ArrayList<RecordingSchedule>()
+		collect(root, startMs, endMs, out)
+		return out
+	}
+
+	/** Schedules starting exactly at [startMs]. */
+	fun startingAt(startMs: Long): List<RecordingSchedule> {
+		val out = ArrayList<RecordingSchedule>()
+		collectStarts(root, startMs, out)
+		return out
+	}
+
+	/**
+	 * Peak number of schedules active at once inside `[startMs, endMs)`: a
+	 * sweep over just the overlapping ones, ends before starts at the same
+	 * instant.
+	 */
+	fun peakOverlap(startMs: Long, endMs: Long): Int {
+		val hits = overlapping(startMs, endMs)
+		if (hits.isEmpty()) return 0
+		val events = ArrayList<Pair<Long, Int>>(hits.size * 2)
+		for (s in hits) {
+			val from = maxOf(s.startMs, startMs)
+			val to = minOf(s.endMs, endMs)
+			if (to <= from) continue
+			events.add(from to 1)
+			events.add(to to -1)
+		}
+		events.sortWith(compareBy({ it.first }, { it.second }))
+		var current = 0
+		var peak = 0
+		for ((_, delta) in events) {
+			current += delta
+			if (current > peak) peak = current
+		}
+		return peak
+	}
+
+	private fun compare(a: RecordingSchedule, b: RecordingSchedule): Int {
+		val byStart = a.startMs.compareTo(b.startMs)
+		return if (byStart != 0) byStart else a.id.compareTo(b.id)
+	}
+
+	private fun update(node: Node) {
+		var max = node.schedule.endMs
+		node.left?.let { if (it.maxEnd > max) max = it.maxEnd }
+		node.right?.let { if (it.maxEnd > max) max = it.maxEnd }
+		node.maxEnd = max
+	}
+
+	private fun rotateRight(node: Node): Node {
+		val left = node.left!!
+		node.left = left.right
+		left.right = node
+		update(node)
+		update(left)
+		return left
+	}
+
+	private fun rotateLeft(node: Node): Node {
+		val right = node.right!!
+		node.right = right.left
+		right.left = node
+		update(node)
+		update(right)
+		return right
+	}
+
+	private fun insert(node: Node?, added: Node): Node {
+		if (node == null) return added
+		var top: Node = node
+		if (compare(added.schedule, node.schedule) < 0) {
+			node.left = insert(node.left, added)
+			if (node.left!!.priority > node.priority) top = rotateRight(node)
+		} else {
+			node.right = insert(node.right, added)
+			if (node.right!!.priority > node.priority) top = rotateLeft(node)
+		}
+		update(top)
+		return top
+	}
+
+	private fun delete(node: Node?, schedule: RecordingSchedule): Node? {
+		if (node == null) return null
+		val c = compare(schedule, node.schedule)
+		when {
+			c < 0 -> node.left = delete(node.left, schedule)
+			c > 0 -> node.right = delete(node.right, schedule)
+			else -> return merge(node.left, node.right)
+		}
+		update(node)
+		return node
+	}
+
+	private fun merge(a: Node?, b: Node?): Node? {
+		if (a == null) return b
+		if (b == null) return a
+		return if (a.priority > b.priority) {
+			a.right = merge(a.right, b)
+			update(a)
+			a
+		} else {
+			b.left = merge(a, b.left)
+			update(b)
+			b
+		}
+	}
+
+	// In order, so hits come out by start. A subtree whose latest end is at
+	// or before the window can't reach it; right of a node starting at or
+	// after the window's end, nothing starts in time.
+	private fun collect(node: Node?, startMs: Long, endMs: Long, out: MutableList<RecordingSchedule>) {
+		if (node == null || node.maxEnd <= startMs) return
+		collect(node.left, startMs, endMs, out)
+		val s = node.schedule
+		if (s.startMs >= endMs) return
+		if (s.endMs > startMs) out.add(s)
+		collect(node.right, startMs, endMs, out)
+	}
+
+	private fun collectStarts(node: Node?, startMs: Long, out: MutableList<RecordingSchedule>) {
+		if (node == null) return
+		val start = node.schedule.startMs
+		if (start >= startMs) collectStarts(node.left, startMs, out)
+		if (start == startMs) out.add(node.schedule)
+		if (start <= startMs) collectStarts(node.right, startMs, out)
+	}
+}
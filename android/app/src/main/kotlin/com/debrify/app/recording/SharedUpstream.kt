@@ -0,0 +1,318 @@
+package com.debrify.app.recording
+
+import java.io.IOException
+import java.io.InputStream
+import java.io.InterruptedIOException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * One provider connection per live stream, however many readers want it.
+ *
+ * Most IPTV accounts allow a single connection: watching a channel while the
+ * engine records it used to open two, and the second kicked the first.
+ * Readers of the same stream — the same URL with the same headers — now
+ * [subscribe] to one hub instead. The first one opens the connection; a
+ * thread reads it and copies every chunk into each subscriber's own bounded
+ * buffer. A reader that falls behind fills its buffer and loses the chunks
+ * that don't fit, counted as [Subscription.gaps]; the network read and the
+ * other readers never wait for it.
+ *
+ * A subscriber that joins a running hub starts at the live edge, usually
+ * mid-packet — the TS reader on the other end resyncs on the next sync
+ * byte. Only progressive streams are shared: a hub whose first bytes were
+ * a playlist takes no joiners once they have been read, since a joiner
+ * would get the tail of one text body.
+ *
+ * The hub ends with its connection: end of stream, a read error, or the
+ * last subscriber leaving. Subscribers drain what they have buffered and
+ * then see the end (or the error); each reconnects the way it always has,
+ * and the first to come back opens the next hub for the others to join.
+ */
+internal object SharedUpstream {
+	/** Per-subscriber buffer when the caller names none. */
+	const val DEFAULT_BUFFER_BYTES = 8 * 1024 * 1024
+	private const val CHUNK_BYTES = 64 * 1024
+	private val PLAYLIST_MAGIC = "#EXTM3U".toByteArray(Charsets.US_ASCII)
+
+	/** An open connection, as the hub reads it. */
+	interface Upstream {
+		/** Bytes read into [buffer], or -1 at the end of the stream. */
+		fun read(buffer: ByteArray, offset: Int, length: Int): Int
+
+		/** Called once, on the hub's thread, when the hub ends. */
+		fun close()
+
+		/** Break a read blocked on another thread; may do nothing. */
+		fun cancel() {}
+	}
+
+	/** Which readers may share: the URL, and the headers by lowercase name. */
+	data class Key(val url: String, val headers: Map<String, String>) {
+		companion object {
+			// Added per request by a layer, not declared by the channel.
+			private val PER_REQUEST = setOf("icy-metadata")
+
+			/**
+			 * The key for [url] requested with [headers]: the one builder
+			 * every reader uses — the player, the engine, the zap warmer —
+			 * so the same channel keys the same however each reader got
+			 * its headers. The player passes its request's headers with
+			 * the channel's on top (ExoPlayer adds `Icy-MetaData` to a
+			 * progressive open), the engine the channel's alone.
+			 */
+			fun of(url: String, headers: Map<String, String>): Key =
+				Key(
+					url,
+					headers.entries
+						.associate { (k, v) -> k.lowercase() to v }
+						.filterKeys { it !in PER_REQUEST }
+						.toSortedMap(),
+				)
+		}
+	}
+
+	private val hubs = HashMap<Key, Hub>()
+
+	/**
+	 * Join the stream for [key], or start it with [open] when no hub can
+	 * take a joiner. [open] runs on the calling thread, so its failures reach
+	 * the caller as they always did; it returns null when the caller was
+	 * stopped meanwhile, and so does this.
+	 */
+	fun subscribe(
+		key: Key,
+		bufferBytes: Int = DEFAULT_BUFFER_BYTES,
+		open: () -> Upstream?,
+	): Subscription? {
+		val hub: Hub
+		synchronized(hubs) {
+			hubs[key]?.let { running ->
+				running.join(bufferBytes)?.let { return it }
+			}
+			hub = Hub(key)
+			hubs[key] = hub
+		}
+		// Opened outside the map's lock: a slow connect must not hold up
+		// readers of other streams. Joiners meanwhile get the stream from
+		// its first byte.
+		val subscription = hub.join(bufferBytes)!!
+		val upstream = try {
+			open()
+		} catch (e: Exception) {
+			hub.end(e as? IOException ?: IOException(e.message, e))
+			throw e
+		}
+		if (upstream == null) {
+			hub.end(null)
+			return null
+		}
+		subscription.opened = true
+		hub.start(upstream)
+		return subscription
+	}
+
+	/** Live hubs and their subscriber counts, for diagnostics. */
+	fun snapshot(): Map<Key, Int> = synchronized(hubs) {
+		hubs.mapValues { it.value.subscribers.size }
+	}
+
+	class Hub internal constructor(private val key: Key) {
+		val subscribers = CopyOnWriteArrayList<Subscription>()
+
+		@Volatile private var upstream: Upstream? = null
+		@Volatile private var ended = false
+		private var delivered = 0L
+		private var playlist = false
+
+		/** A new subscription, or null when this hub can't take one. */
+		fun join(bufferBytes: Int): Subscription? = synchronized(this) {
+			if (ended || (delivered > 0 && playlist)) return null
+			Subscription(this, bufferBytes).also { subscribers.add(it) }
+		}
+
+		fun start(connection: Upstream) {
+			synchronized(this) {
+				if (ended) {
+					connection.cancel()
+					connection.close()
+					return
+				}
+				upstream = connection
+			}
+			Thread({ pump(connection) }, "shared-upstream").apply {
+				isDaemon = true
+				start()
+			}
+		}
+
+		private fun pump(connection: Upstream) {
+			val chunk = ByteArray(CHUNK_BYTES)
+			var failure: IOException? = null
+			try {
+				while (!ended) {
+					val n = connection.read(chunk, 0, chunk.size)
+					if (n < 0) break
+					if (n == 0) continue
+					synchronized(this) {
+						if (delivered == 0L && n >= PLAYLIST_MAGIC.size) {
+							playlist = chunk.copyOf(PLAYLIST_MAGIC.size).contentEquals(PLAYLIST_MAGIC)
+						}
+						delivered += n
+					}
+					for (subscriber in subscribers) subscriber.offer(chunk, n)
+				}
+			} catch (e: IOException) {
+				failure = e
+			} finally {
+				try { connection.close() } catch (_: Exception) {}
+			}
+			end(if (ended) null else failure)
+		}
+
+		fun leave(subscription: Subscription) {
+			subscribers.remove(subscription)
+			val last = synchronized(this) { subscribers.isEmpty() && !ended }
+			if (last) end(null)
+		}
+
+		/** End the hub for everyone; [failure] is what they read next. */
+		fun end(failure: IOException?) {
+			val connection = synchronized(this) {
+				if (ended) return
+				ended = true
+				upstream
+			}
+			synchronized(hubs) { hubs.remove(key, this) }
+			for (subscriber in subscribers) subscriber.finish(failure)
+			// The pump closes it once the blocked read lets go.
+			connection?.cancel()
+		}
+	}
+
+	/**
+	 * One reader's view of a shared stream: an [InputStream] over its own
+	 * buffer. [close] leaves the hub — the connection closes only when the
+	 * last reader leaves; [abort] ends it for everyone.
+	 */
+	class Subscription internal constructor(
+		private val hub: Hub,
+		bufferBytes: Int,
+	) : InputStream() {
+		private val lock = ReentrantLock()
+		private val moreData = lock.newCondition()
+		private val ring = ByteArray(bufferBytes)
+		private var head = 0
+		private var count = 0
+		private var closed = false
+		private var finished = false
+		private var failure: IOException? = null
+		private var gapOpen = false
+
+		/** This reader opened the connection; false when it joined one. */
+		@Volatile var opened = false
+			internal set
+
+		@Volatile var gaps = 0L
+			private set
+
+		@Volatile var droppedBytes = 0L
+			private set
+
+		// Hub thread. Never blocks on the reader: what doesn't fit is dropped.
+		internal fun offer(data: ByteArray, length: Int) {
+			lock.withLock {
+				if (closed) return
+				if (ring.size - count < length) {
+					// One gap per run of dropped chunks, however long the run.
+					if (!gapOpen) gaps++
+					gapOpen = true
+					droppedBytes += length
+					return
+				}
+				gapOpen = false
+				var tail = (head + count) % ring.size
+				var at = 0
+				while (at < length) {
+					val n = minOf(length - at, ring.size - tail)
+					System.arraycopy(data, at, ring, tail, n)
+					at += n
+					tail = (tail + n) % ring.size
+				}
+				count += length
+				moreData.signalAll()
+			}
+		}
+
+		internal fun finish(error: IOException?) {
+			lock.withLock {
+				finished = true
+				failure = error
+				moreData.signalAll()
+			}
+		}
+
+		override fun read(): Int {
+			val one = ByteArray(1)
+			return if (read(one, 0, 1) < 0) -1 else one[0].toInt() and 0xff
+		}
+
+		/**
+		 * Buffered bytes, waiting for the hub when there are none. -1 once
+		 * the hub ended cleanly (or this was closed) and the buffer is empty.
+		 *
+		 * @throws IOException the hub's read failure, after the buffer drains.
+		 */
+		override fun read(b: ByteArray, off: Int, len: Int): Int {
+			if (len == 0) return 0
+			lock.withLock {
+				while (count == 0 && !finished && !closed) {
+					try {
+						moreData.await(250, TimeUnit.MILLISECONDS)
+					} catch (e: InterruptedException) {
+						Thread.currentThread().interrupt()
+						throw InterruptedIOException("shared read interrupted")
+					}
+				}
+				if (closed) return -1
+				if (count == 0) {
+					failure?.let { throw IOException(it.message, it) }
+					return -1
+				}
+				var copied = 0
+				val wanted = minOf(len, count)
+				while (copied < wanted) {
+					val n = minOf(wanted - copied, ring.size - head)
+					System.arraycopy(ring, head, b, off + copied, n)
+					copied += n
+					head = (head + n) % ring.size
+				}
+				count -= copied
+				return copied
+			}
+		}
+
+		override fun available(): Int = lock.withLock { count }
+
+		/** Nothing buffered and nothing more coming: [read] would return -1
+		 *  or throw. */
+		val ended: Boolean get() = lock.withLock { count == 0 && (finished || closed) }
+
+		override fun close() {
+			lock.withLock {
+				if (closed) return
+				closed = true
+				moreData.signalAll()
+			}
+			hub.leave(this)
+		}
+
+		/** The stream is dead for everyone (a stall): end the hub. */
+		fun abort() {
+			hub.end(IOException("shared stream aborted"))
+			close()
+		}
+	}
+}
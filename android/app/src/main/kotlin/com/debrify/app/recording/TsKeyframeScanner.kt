@@ -0,0 +1,140 @@
+package com.debrify.app.recording
+
+/**
+ * Finds the keyframes in an MPEG-TS byte stream as it goes by, for the
+ * readers that have to seek in one: the timeshift window and recording
+ * sidecar indexes.
+ *
+ * [feed] takes the stream in whatever pieces it arrives in; [onKeyframe]
+ * hears the media time and absolute offset of every packet that starts a
+ * keyframe (or, for streams that never flag one, every PES start). Media
+ * time is the PTS of one elementary stream — video, or audio when no video
+ * PID shows up — unwrapped past its 33 bits and stitched across splices,
+ * in ms from the first PTS seen.
+ *
+ * Single-threaded: the caller's writer thread owns it.
+ */
+internal class TsKeyframeScanner(
+	private val onKeyframe: (mediaMs: Long, offset: Long) -> Unit,
+) {
+	companion object {
+		const val TS_PACKET = 188
+		private const val PTS_WRAP = 1L shl 33
+
+		/** A PTS step bigger than this (or backwards) is a splice, not time. */
+		private const val MAX_PTS_STEP_MS = 10_000L
+
+		/** Packets to wait for a video PID before indexing audio instead. */
+		private const val VIDEO_GRACE_PACKETS = 4_096
+	}
+
+	private val carry = ByteArray(TS_PACKET)
+	private var carried = 0
+	private var scanned = 0L
+	private var packets = 0
+	private var indexPid = -1
+	private var indexingVideo = false
+	private var sawRandomAccess = false
+	private var lastRawPts = -1L
+	private var ptsBase = 0L
+	private var mediaBaseMs = 0L
+	private var lastWallMs = 0L
+
+	/** Newest media time seen on the indexed stream, or -1 before the first. */
+	var latestMediaMs = -1L
+		private set
+
+	/** Bytes fed so far: the offset the next one will have. */
+	val position: Long get() = scanned + carried
+
+	// Walks the bytes packet by packet, carrying a partial packet over to the
+	// next feed. Bytes that aren't on a sync byte are skipped one at a time
+	// until the stream is back in step.
+	fun feed(data: ByteArray, offset: Int, length: Int) {
+		var at = offset
+		val end = offset + length
+		while (at < end) {
+			if (carried == 0 && data[at] != 0x47.toByte()) {
+				at++
+				scanned++
+				continue
+			}
+			val n = minOf(TS_PACKET - carried, end - at)
+			System.arraycopy(data, at, carry, carried, n)
+			carried += n
+			at += n
+			if (carried == TS_PACKET) {
+				packet(carry, scanned)
+				scanned += TS_PACKET
+				carried = 0
+			}
+		}
+	}
+
+	private fun packet(p: ByteArray, offset: Long) {
+		packets++
+		val unitStart = p[1].toInt() and 0x40 != 0
+		if (!unitStart) return
+		val pid = ((p[1].toInt() and 0x1f) shl 8) or (p[2].toInt() and 0xff)
+		val control = (p[3].toInt() shr 4) and 0x3
+		var payload = 4
+		var randomAccess = false
+		if (control and 0x2 != 0) {
+			val adaptation = p[4].toInt() and 0xff
+			if (adaptation > 0) randomAccess = p[5].toInt() and 0x40 != 0
+			payload = 5 + adaptation
+		}
+		if (control and 0x1 == 0 || payload + 14 > TS_PACKET) return
+		// PES start code, then the stream id.
+		if (p[payload].toInt() != 0 || p[payload + 1].toInt() != 0 || p[payload + 2].toInt() != 1) return
+		val streamId = p[payload + 3].toInt() and 0xff
+		val video = streamId in 0xE0..0xEF
+		val audio = streamId in 0xC0..0xDF
+		if (indexPid < 0 || (!indexingVideo && video)) {
+			if (video || (audio && packets > VIDEO_GRACE_PACKETS)) {
+				indexPid = pid
+				indexingVideo = video
+			}
+		}
+		if (pid != indexPid) return
+		if (p[payload + 7].toInt() and 0x80 == 0) return // no PTS
+		val b = payload + 9
+		val raw = ((p[b].toLong() and 0x0e) shl 29) or
+			((p[b + 1].toLong() and 0xff) shl 22) or
+			((p[b + 2].toLong() and 0xfe) shl 14) or
+			((p[b + 3].toLong() and 0xff) shl 7) or
+			((p[b + 4].toLong() and 0xfe) shr 1)
+		if (randomAccess) sawRandomAccess = true
+		val mediaMs = mediaTime(raw)
+		// Streams that flag keyframes get only keyframes; the rest get every
+		// PES start and the decoder waits for the next keyframe itself.
+		if (sawRandomAccess && !randomAccess) return
+		onKeyframe(mediaMs, offset)
+	}
+
+	// Unwraps the 33-bit PTS and stitches splices: a jump too big to be
+	// elapsed time continues media time from wall-clock time instead.
+	private fun mediaTime(raw: Long): Long {
+		val now = System.currentTimeMillis()
+		if (lastRawPts < 0) {
+			ptsBase = raw
+			mediaBaseMs = 0L
+		} else {
+			var step = raw - lastRawPts
+			if (step < -PTS_WRAP / 2) step += PTS_WRAP
+			val stepMs = step / 90
+			if (stepMs < 0 || stepMs > MAX_PTS_STEP_MS) {
+				ptsBase = raw
+				mediaBaseMs = latestMediaMs + (now - lastWallMs).coerceIn(0L, MAX_PTS_STEP_MS)
+			} else if (raw < lastRawPts) {
+				// Wrapped: keep the base continuous.
+				ptsBase -= PTS_WRAP
+			}
+		}
+		lastRawPts = raw
+		lastWallMs = now
+		val mediaMs = mediaBaseMs + (raw - ptsBase) / 90
+		latestMediaMs = maxOf(latestMediaMs, mediaMs)
+		return mediaMs
+	}
+}
@@ -23,8 +23,13 @@ import android.view.WindowManager
 import android.view.inputmethod.EditorInfo
 import androidx.core.content.ContextCompat
 import androidx.core.widget.TextViewCompat
+import com.debrify.app.download.LocalCopies
+import com.debrify.app.download.PartialDownloads
+import com.debrify.app.download.PlaybackContention
 import com.debrify.app.recording.LiveRecordingService
 import com.debrify.app.recording.RecordingAlarmReceiver
+import com.debrify.app.recording.RecordingBudget
+import com.debrify.app.recording.RecordingIndex
 import com.debrify.app.recording.RecordingRegistry
 import com.debrify.app.recording.RecordingSchedule
 import com.debrify.app.recording.RecordingScheduleStore
@@ -57,6 +62,7 @@ import androidx.media3.exoplayer.DefaultRenderersFactory
 import androidx.media3.exoplayer.DecoderReuseEvaluation
 import androidx.media3.exoplayer.ExoPlaybackException
 import androidx.media3.exoplayer.ExoPlayer
+import androidx.media3.exoplayer.LoadControl
 import androidx.media3.exoplayer.analytics.AnalyticsListener
 import androidx.media3.exoplayer.audio.AudioSink
 import androidx.media3.exoplayer.audio.DefaultAudioSink
@@ -151,6 +157,13 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     private var upNextVisible = false
     private var upNextTargetIndex: Int? = null
     private var upNextDismissedForIndex = -1
+    // The next item already preloaded for the current one (see
+    // maybePreloadNext), so the pulses near the end don't repeat it.
+    private var nextPreloadIndex: Int? = null
+    // Downloaded-copy lookups run here, off the main thread (see
+    // withLocalCopy); bumped per item so a late answer can't start the last one.
+    private val localCopyScope = CoroutineScope(Dispatchers.Main + SupervisorJob())
+    private var localCopyGeneration = 0
     private val upNextHandler = Handler(Looper.getMainLooper())
     private val seasonTabs = mutableListOf<android.widget.TextView>()
     private val movieTabs = mutableListOf<MovieTab>()
@@ -175,6 +188,32 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     private var iptvRecordButton: AppCompatButton? = null
     // Tees the live progressive stream to a MediaStore file while playing.
     private val iptvRecordingController by lazy { IptvRecordingController(this) }
+    private val iptvTimeshift by lazy { IptvTimeshift(java.io.File(cacheDir, "timeshift")) }
+
+    /** What the timeshift spooler reads the channel through: the player's
+     *  own factory below the disk window. Set in setupPlayer when enabled. */
+    private var iptvTimeshiftUpstream: androidx.media3.datasource.DataSource.Factory? = null
+
+    /** The player's IPTV sources, tee included: a tee recording started
+     *  mid-playback fetches the keys the player has cached through them. */
+    private var iptvRecordingSources: androidx.media3.datasource.DataSource.Factory? = null
+
+    /** The channel on screen when it is progressive: the one URL the player
+     *  reads through the shared upstream hub (see SharedUpstreamDataSource). */
+    @Volatile private var iptvSharedUpstreamUrl: String? = null
+
+    /** Keeps the zap neighbours of the channel on screen warm (see
+     *  warmIptvZapNeighbours); null unless the setting is on. */
+    @Volatile private var iptvZapWarmer: IptvZapWarmer? = null
+    /** Races a Stremio channel's top candidates (see raceIptvStremioCandidates). */
+    private var iptvCandidateRacer: IptvCandidateRacer? = null
+    /** The tune on screen has shown its first frame: a rebuffer from here
+     *  on is the channel struggling, not the tune itself. */
+    private var iptvZapWarmArmed = false
+    /** The playing channel rebuffered or failed with lanes up: no warming
+     *  until the next tune, so pre-warming can't keep degrading it. */
+    private var iptvZapWarmSuspended = false
+    private val iptvZapWarmRunnable = Runnable { warmIptvZapNeighbours() }
     private var iptvUpPressActive = false
     private var iptvUpLongPressHandled = false
     private var originalControlDockOrder: List<View> = emptyList()
@@ -203,6 +242,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
 
     // Player
     private var player: ExoPlayer? = null
+    private var recordingIndexCache: Pair<Uri, RecordingIndex?>? = null
     private var trackSelector: DefaultTrackSelector? = null
     private var subtitleListener: Player.Listener? = null
 
@@ -701,6 +741,11 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             renderTimeMs: Long,
         ) {
             iptvTuneDiagnostics.onFirstFrame()
+            if (isIptvMode && !iptvZapWarmArmed) {
+                iptvZapWarmArmed = true
+                iptvBrowseHandler.removeCallbacks(iptvZapWarmRunnable)
+                iptvBrowseHandler.postDelayed(iptvZapWarmRunnable, IPTV_ZAP_WARM_SETTLE_MS)
+            }
         }
 
         override fun onLoadCompleted(
@@ -957,9 +1002,10 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
 
     // Stremio-addon IPTV channels: their `url` is a stremio-tv:// key, not a
     // stream — Flutter resolves it into an ordered candidate URL list on
-    // demand, and playback walks the candidates serially on error until one
-    // plays or the list runs out (then the channel goes quiet, like a dead
-    // M3U stream). Token guards stale async resolves after a channel switch.
+    // demand, the top few are raced for the fastest start, and playback walks
+    // the ranked candidates serially on error until one plays or the list
+    // runs out (then the channel goes quiet, like a dead M3U stream). Token
+    // guards stale async resolves and races after a channel switch.
     private var iptvStremioToken = 0
     private var iptvStremioChannelKey: String? = null
     private var iptvStremioCandidates: List<IptvStremioCandidate> = emptyList()
@@ -969,6 +1015,8 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     // ever erroring, and the ladder only advances on error — this converts a
     // never-READY candidate into a failure. Cancelled by STATE_READY.
     private var iptvStremioStallRunnable: Runnable? = null
+    // The start-up race in flight, if any; a zap cancels it.
+    private var iptvStremioRace: IptvCandidateRacer.Race? = null
 
     // Stremio Sources state
     private var stremioSources = mutableListOf<StremioSource>()
@@ -983,6 +1031,18 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     // untouched — the invariant that keeps this feature regression-free.
     private var networkPatience = "standard"
     private var networkBuffer = "standard"
+    /** The "big"/"huge" presets' read-ahead to disk (see VodDiskCache);
+     *  null for "standard", IPTV, or a volume that can't spare the cache. */
+    private var vodPrefetcher: VodDiskCache.Prefetcher? = null
+    /** How far the next item is buffered ahead of its turn (Settings →
+     *  Playback, "next episode preload"); 0 turns it off. */
+    private var nextPreloadMs = 30_000L
+    /** Holds the next item prepared (see NextItemPreloader); null for IPTV,
+     *  merged YouTube streams, or with the preload off. */
+    private var nextItemPreloader: NextItemPreloader? = null
+    /** The player's playback thread, owned here so the preloader can share
+     *  its looper. */
+    private var playbackThread: android.os.HandlerThread? = null
     /** 'auto' | 'hardware' | 'software' — see StorageService.iptvDecoderModes.
      *  Only ever non-auto when the user picked a decoder in Playback settings
      *  (a frozen picture with running audio is a box decoder defect). */
@@ -1220,8 +1280,14 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         override fun run() {
             sendProgress(completed = false)
             maybeShowUpNext()
+            maybePreloadNext()
             player?.let {
                 iptvTuneDiagnostics.onProgress(it.currentPosition, it.isPlaying)
+                vodPrefetcher?.let { prefetcher ->
+                    it.currentMediaItem?.localConfiguration?.let { config ->
+                        prefetcher.update(config.uri, config.mimeType, it.bufferedPosition, it.duration)
+                    }
+                }
                 // playWhenReady, not isPlaying: a buffering wedge reports
                 // isPlaying=false but still wants playback; a user pause is
                 // exactly what must NOT read as a stall.
@@ -1367,6 +1433,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
                 }
                 Player.STATE_BUFFERING -> {
                     iptvTuneDiagnostics.onBufferingStart(player?.currentPosition ?: 0L)
+                    if (iptvZapWarmArmed) suspendIptvZapWarming("rebuffer")
                     if (hasEverBeenReady) {
                         showBufferingIndicatorDebounced()
                     }
@@ -1514,6 +1581,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             if (isPlaying) {
                 holdScreenForPlayback()
             }
+            publishPlaybackContention()
             // Startup-channel memory — armed by real playback only, never by a
             // tune, so a dead stream cannot become "the last channel watched".
             if (isPlaying) noteLiveChannelPlaying()
@@ -1521,6 +1589,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
 
         override fun onPlayerError(error: PlaybackException) {
             iptvTuneDiagnostics.onError(error)
+            if (isIptvMode) suspendIptvZapWarming("error")
             // Stale-delivery gate for EVERY IPTV recovery path below: a
             // queued onPlayerError whose media item was already superseded
             // (a zap's or the watchdog's prepare() cleared the error) reports
@@ -1599,6 +1668,8 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         }
 
         override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+            // Next episode may be a local file where this one streamed.
+            publishPlaybackContention()
             // A different media item means a different timeline AND usually a
             // different release — audio features captured from the old one
             // would mis-anchor (or mis-match) subtitle timing on the new one.
@@ -2310,23 +2381,71 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             dataSourceFactory
         }
 
+        // Two separate googlevideo streams (video-only + audio): see the load
+        // control below. Their merge reads by time, not one file's bytes, so
+        // the disk read-ahead sits them out.
+        val isYouTubeMerge = payload?.items?.any {
+            !it.hdVideoUrl.isNullOrEmpty() && !it.audioUrl.isNullOrEmpty()
+        } == true
+
         // IPTV: tee the played bytes to a recording file on demand. Inert unless
         // the user starts a recording (see IptvRecordingController); wraps the
         // fully-resolved factory so recorded bytes carry the channel's headers.
         val recordingDataSourceFactory = if (isIptvMode) {
-            // A write error (disk full, row revoked) ends the recording on the
-            // loader thread; without this the dock would keep saying "Stop".
-            iptvRecordingController.onAborted = {
+            // A write error (disk full, row revoked) or an HLS stream whose
+            // segments can't make a .ts ends the recording on the loader
+            // thread; without this the dock would keep saying "Stop".
+            iptvRecordingController.onAborted = { reason ->
                 updateRecordButtonState()
                 Toast.makeText(
                     this,
-                    "Recording stopped — couldn't keep writing to storage",
+                    "Recording stopped — $reason",
                     Toast.LENGTH_LONG,
                 ).show()
             }
-            RecordingDataSource.Factory(finalDataSourceFactory, iptvRecordingController)
+            // Below the tee: the channel on screen reads through the hub an
+            // engine recording of the same channel also reads, so the
+            // provider sees one connection for both.
+            // A zap to a neighbour the warmer holds starts on its lane
+            // instead. Lanes open below the header resolver: they carry
+            // their own channel's headers, not the one on screen.
+            iptvZapWarmer?.stop()
+            iptvZapWarmer = if (iptvZapPrewarmNeighbours > 0) {
+                IptvZapWarmer(dataSourceFactory).apply {
+                    onClaimed = { _, bytes, aligned ->
+                        runOnUiThread { iptvTuneDiagnostics.onWarmStart(bytes, aligned) }
+                    }
+                }
+            } else null
+            // Stremio candidate probes open there too, with the channel's
+            // headers passed per probe.
+            iptvCandidateRacer = IptvCandidateRacer(dataSourceFactory)
+            val sharedDataSourceFactory = SharedUpstreamDataSource.Factory(
+                finalDataSourceFactory,
+                shareable = { uri -> uri.toString() == iptvSharedUpstreamUrl },
+                warmStart = { uri -> iptvZapWarmer?.claim(uri) },
+                channelHeaders = { currentIptvHttpHeaders },
+            )
+            RecordingDataSource.Factory(sharedDataSourceFactory, iptvRecordingController)
+                .also { iptvRecordingSources = it }
         } else {
-            finalDataSourceFactory
+            // VOD: a file that is also downloading right now plays from the
+            // bytes already on disk (see PartialDownloadDataSource). The
+            // "big"/"huge" presets read ahead to a disk cache beneath it
+            // rather than into the heap (see the load-control note below);
+            // "standard" stays stock.
+            val diskCache = if (networkBuffer != "standard" && !isYouTubeMerge) {
+                VodDiskCache.get(this)
+            } else null
+            val vodUpstream = if (diskCache != null) {
+                VodDiskCache.Factory(diskCache, finalDataSourceFactory, writes = false).also {
+                    val aheadMs = if (networkBuffer == "huge") 15 * 60_000L else 5 * 60_000L
+                    vodPrefetcher = VodDiskCache.Prefetcher(diskCache, it, aheadMs)
+                }
+            } else {
+                finalDataSourceFactory
+            }
+            PartialDownloadDataSource.Factory(this, vodUpstream)
         }
 
         // Create media source factory that uses the data source. IPTV gets
@@ -2364,11 +2483,20 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
                     (if (iptvStrictTsActive) strictTs else aggressiveTs)
                         .createExtractors(uri, responseHeaders)
             }
+            // Timeshift: the player reads live channels from a window on
+            // disk that a spooler fills through the factory below it.
+            val playerDataSourceFactory = if (iptvTimeshiftEnabled) {
+                iptvTimeshiftUpstream = recordingDataSourceFactory
+                TimeshiftDataSource.Factory(recordingDataSourceFactory, iptvTimeshift)
+            } else {
+                recordingDataSourceFactory
+            }
             DefaultMediaSourceFactory(this, iptvExtractors)
-                .setDataSourceFactory(recordingDataSourceFactory)
+                .setDataSourceFactory(playerDataSourceFactory)
                 .setLoadErrorHandlingPolicy(IptvLiveLoadErrorPolicy())
         } else {
-            DefaultMediaSourceFactory(this)
+            // Local recordings seek by the index their writer left.
+            DefaultMediaSourceFactory(this, IndexedTsExtractor.Factory(this))
                 .setDataSourceFactory(recordingDataSourceFactory)
         }
 
@@ -2385,30 +2513,30 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // IPTV buffering: media3 1.8.0's stock DefaultLoadControl already
         // resumes 2s after a rebuffer (the plan's audit assumed the old 5s
         // default — codex review round 2 corrected it against the 1.8.0
-        // constants). Stock is the right call: no override.
+        // constants). Stock durations are the right call: no override.
 
         // For YouTube (merged video-only + audio) ONLY, start after buffering
         // ~1s instead of ExoPlayer's conservative 2.5s default — otherwise the
         // two separate googlevideo streams take 20-30s to fill the buffer before
         // the first frame. All other content keeps ExoPlayer's defaults so this
         // can't regress torrent/IPTV/debrid playback.
-        val isYouTubeMerge = payload?.items?.any {
-            !it.hdVideoUrl.isNullOrEmpty() && !it.audioUrl.isNullOrEmpty()
-        } == true
+        // Every player allocates from the process's MediaBufferPool — the
+        // overrides below, and everything else at stock durations — so the
+        // pool's budget covers live TV beside a recording and the timeshift
+        // window too, and the segments one playback filled are the ones the
+        // next one reuses.
+        var loadControl: LoadControl? = null
         if (isYouTubeMerge) {
-            playerBuilder.setLoadControl(
-                DefaultLoadControl.Builder()
-                    .setBufferDurationsMs(
-                        15_000, // minBufferMs (default 50000)
-                        50_000, // maxBufferMs (default 50000)
-                        1_000,  // bufferForPlaybackMs (default 2500)
-                        2_000,  // bufferForPlaybackAfterRebufferMs (default 5000)
-                    )
-                    .setPrioritizeTimeOverSizeThresholds(true)
-                    .build()
+            loadControl = MediaBufferPool.get(this).PooledLoadControl(
+                15_000, // minBufferMs (default 50000)
+                50_000, // maxBufferMs (default 50000)
+                1_000,  // bufferForPlaybackMs (default 2500)
+                2_000,  // bufferForPlaybackAfterRebufferMs (default 5000)
+                prioritizeTime = true,
             )
-        } else if (!isIptvMode && networkBuffer != "standard") {
-            // Stream buffer preset: wider read-ahead rides over origin
+        } else if (!isIptvMode && networkBuffer != "standard" && vodPrefetcher == null) {
+            // The heap fallback, for a volume with no room for the disk
+            // cache. Stream buffer preset: wider read-ahead rides over origin
             // stalls. Start thresholds stay stock (only min/max grow), so
             // start latency is unchanged; the byte target is the real memory
             // guard (mirrors the mpv side's demuxer-max-bytes) — loading
@@ -2431,28 +2559,57 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             // stock's own byte targets are what the device already
             // survives. Long math throughout: largeMemoryClass is an Int MB
             // count, and `mb / 2 * 1024 * 1024` overflows Int from a 4
-            // GiB heap class up.
-            val activityManager =
-                getSystemService(ACTIVITY_SERVICE) as android.app.ActivityManager
-            val heapBudgetBytes =
-                activityManager.largeMemoryClass.toLong() * 1024L * 1024L / 4L
+            // GiB heap class up. The quarter is the pool's budget, and a
+            // hard one: it also holds for whatever else is playing.
+            val pool = MediaBufferPool.get(this)
             val requestedBytes = (if (hugeBuffer) 192L else 96L) * 1024L * 1024L
-            val targetBytes = minOf(requestedBytes, heapBudgetBytes)
+            val targetBytes = minOf(requestedBytes, pool.budgetBytes)
             if (targetBytes >= 48L * 1024L * 1024L) {
-                playerBuilder.setLoadControl(
-                    DefaultLoadControl.Builder()
-                        .setBufferDurationsMs(
-                            if (hugeBuffer) 300_000 else 120_000, // minBufferMs
-                            if (hugeBuffer) 300_000 else 120_000, // maxBufferMs
-                            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
-                            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
-                        )
-                        .setTargetBufferBytes(targetBytes.toInt())
-                        .build()
+                loadControl = pool.PooledLoadControl(
+                    if (hugeBuffer) 300_000 else 120_000, // minBufferMs
+                    if (hugeBuffer) 300_000 else 120_000, // maxBufferMs
+                    DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+                    DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+                    targetBytes = targetBytes,
                 )
             }
         }
 
+        val control = loadControl ?: MediaBufferPool.get(this).PooledLoadControl(
+            DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+        )
+        playerBuilder.setLoadControl(control)
+
+        // Next-item preload: VOD only, and not merged YouTube streams (two
+        // sources built per item). The preloader shares the player's load
+        // control and its playback looper. It gets the base renderers: the
+        // offset wrapper tracks the text renderers it creates, and the
+        // preloader only needs their capabilities.
+        nextItemPreloader?.release()
+        nextItemPreloader = null
+        if (!isIptvMode && !isYouTubeMerge && nextPreloadMs > 0L) {
+            val thread = playbackThread ?: android.os.HandlerThread(
+                "ExoPlayer:Playback",
+                android.os.Process.THREAD_PRIORITY_AUDIO,
+            ).also {
+                it.start()
+                playbackThread = it
+            }
+            playerBuilder.setPlaybackLooper(thread.looper)
+            nextItemPreloader = NextItemPreloader(
+                this,
+                mediaSourceFactory,
+                baseRenderersFactory,
+                trackSelector!!.parameters,
+                control,
+                thread.looper,
+                nextPreloadMs,
+            )
+        }
+
         player = playerBuilder.build()
 
         player?.addListener(playbackListener)
@@ -3370,6 +3527,8 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         lastRealPositionMs = 0L
         hideBufferingIndicator()
         hideUpNextCard()
+        nextPreloadIndex = null
+        localCopyGeneration++
         resetSkipSegmentState()
 
         // Cancel any ongoing PikPak retry before starting new item
@@ -3398,11 +3557,24 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         }
 
         android.util.Log.d("AndroidTvPlayer", "playItem - URL available, starting playback")
-        startPlayback(item)
+        withLocalCopy(item) { localCopy -> startPlayback(item, localCopy) }
     }
 
     private fun resolveAndPlay(index: Int, item: PlaybackItem) {
         android.util.Log.d("AndroidTvPlayer", "resolveAndPlay - index: $index, resumeId: ${item.resumeId}, id: ${item.id}")
+        // A finished download of this title plays without resolving a stream.
+        // The item keeps its blank URL so a later replay resolves again if the
+        // file is gone by then.
+        withLocalCopy(item) { localCopy ->
+            if (localCopy != null) {
+                startPlayback(item, localCopy)
+            } else {
+                resolveStreamAndPlay(index, item)
+            }
+        }
+    }
+
+    private fun resolveStreamAndPlay(index: Int, item: PlaybackItem) {
         setResolvingState(true)
 
         // Request stream from Flutter with async callback
@@ -3420,11 +3592,12 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             val updatedItem = item.copy(url = url, provider = provider ?: item.provider)
             payload?.items?.set(index, updatedItem)
             android.util.Log.d("AndroidTvPlayer", "resolveAndPlay - starting playback with resolved URL, provider: $provider")
-            startPlayback(payload!!.items[index])
+            val resolved = payload!!.items[index]
+            withLocalCopy(resolved) { localCopy -> startPlayback(resolved, localCopy) }
         }
     }
 
-    private fun startPlayback(item: PlaybackItem) {
+    private fun startPlayback(item: PlaybackItem, localCopy: Uri?) {
         // Last gate before ExoPlayer actually starts. playItem's check happens
         // before URL resolution, and that round trip can outlast the countdown
         // — without rechecking here, a resolve that was already in flight would
@@ -3434,6 +3607,13 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             return
         }
 
+        // A local file needs none of the provider-specific retry handling.
+        if (localCopy != null) {
+            android.util.Log.d("AndroidTvPlayer", "startPlayback - playing downloaded copy $localCopy")
+            playMediaDirect(item, localCopy)
+            return
+        }
+
         // Check if this is a PikPak provider - use retry logic for cold storage handling
         val isPikPak = PROVIDER_PIKPAK.equals(item.provider, ignoreCase = true) ||
             item.url.contains("mypikpak.com")
@@ -3481,37 +3661,85 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         offsetRenderersFactory?.setOffsetUs(0L)
     }
 
-    private fun playMediaDirect(item: PlaybackItem) {
+    /**
+     * Look up [item]'s [findLocalCopy] off the main thread — the journal read
+     * and the file's size check are disk and provider I/O — and hand it to
+     * [then] back on it. Dropped when another item started meanwhile.
+     */
+    private fun withLocalCopy(item: PlaybackItem, then: (Uri?) -> Unit) {
+        val generation = localCopyGeneration
+        val lookup = localCopyLookup(item)
+        if (lookup == null) {
+            then(null)
+            return
+        }
+        localCopyScope.launch {
+            val localCopy = withContext(Dispatchers.IO) { findLocalCopy(lookup) }
+            if (generation != localCopyGeneration || isFinishing || isDestroyed) return@launch
+            then(localCopy)
+        }
+    }
+
+    /**
+     * What identifies a completed download of [item] for the active profile:
+     * its link when it has one, else its IMDb identity (per-item for movie
+     * collections, the shared id with season/episode for series). Null when
+     * it has neither. Reads the payload, so main thread only.
+     */
+    private fun localCopyLookup(item: PlaybackItem): Pair<String?, String?>? {
+        val model = payload ?: return null
+        val isSeries = model.contentType.lowercase(Locale.US) == "series"
+        val imdbId = if (isSeries) {
+            model.imdbId
+        } else {
+            model.perItemImdbIds[item.index] ?: model.imdbId?.takeIf { model.items.size == 1 }
+        }
+        val contentId = LocalCopies.contentId(
+            imdbId,
+            if (isSeries) item.season else null,
+            if (isSeries) item.episode else null,
+        )
+        val url = item.url.takeIf { it.startsWith("http://") || it.startsWith("https://") }
+        if (url == null && contentId == null) return null
+        return url to contentId
+    }
+
+    /** The download [localCopyLookup] names, if it's still whole. Blocking I/O. */
+    private fun findLocalCopy(lookup: Pair<String?, String?>): Uri? {
+        val (url, contentId) = lookup
+        return try {
+            LocalCopies.find(this, url, contentId)
+        } catch (e: Exception) {
+            android.util.Log.w("AndroidTvPlayer", "Local copy lookup failed", e)
+            null
+        }
+    }
+
+    private fun playMediaDirect(item: PlaybackItem, localCopy: Uri? = null) {
         // Clear subtitle state when switching content
         resetSubtitleState()
 
-        val metadata = MediaMetadata.Builder()
-            .setTitle(item.title)
-            .setArtist(item.seasonEpisodeLabel())
-            .setDescription(item.description ?: payload?.subtitle ?: payload?.title)
-            .build()
-
-        val mediaItem = MediaItem.Builder()
-            .setUri(item.url)
-            .setMediaMetadata(metadata)
-            .build()
+        val mediaItem = playbackMediaItem(item, localCopy)
 
         // High-res YouTube: video and audio are separate streams. Merge a
         // video-only track with its audio track. If anything goes wrong we fall
         // back to [item.url], a muxed stream that already contains audio, so we
         // never end up with silent video.
-        val mergedSource = buildMergedSourceOrNull(item, mediaItem)
+        val mergedSource = if (localCopy == null) buildMergedSourceOrNull(item, mediaItem) else null
+        // The item maybePreloadNext already prepared starts on its buffer.
+        val preloaded = if (mergedSource == null) nextItemPreloader?.take(mediaItem) else null
 
         player?.apply {
-            if (mergedSource != null) {
-                setMediaSource(mergedSource)
-            } else {
-                setMediaItem(mediaItem)
+            when {
+                mergedSource != null -> setMediaSource(mergedSource)
+                preloaded != null -> setMediaSource(preloaded)
+                else -> setMediaItem(mediaItem)
             }
             prepare()
             playWhenReady = true
             play()
         }
+        nextItemPreloader?.started()
 
         // Detect if ExoPlayer auto-selects an embedded subtitle via TrackSelector preferences
         player?.addListener(object : Player.Listener {
@@ -3537,6 +3765,21 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         fetchStremioSubtitles(item)
     }
 
+    // Resume and subtitles are keyed by resumeId and IMDb id, not the URI,
+    // so a local copy keeps both. Also what NextItemPreloader is given, so a
+    // preloaded item matches the one playMediaDirect asks for.
+    private fun playbackMediaItem(item: PlaybackItem, localCopy: Uri?): MediaItem {
+        val metadata = MediaMetadata.Builder()
+            .setTitle(item.title)
+            .setArtist(item.seasonEpisodeLabel())
+            .setDescription(item.description ?: payload?.subtitle ?: payload?.title)
+            .build()
+        return MediaItem.Builder()
+            .setUri(localCopy ?: Uri.parse(item.url))
+            .setMediaMetadata(metadata)
+            .build()
+    }
+
     // Build a MergingMediaSource (video-only + audio) for high-res YouTube,
     // or null when the item has no separate audio track / on any error.
     private fun buildMergedSourceOrNull(
@@ -5249,6 +5492,35 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             return super.dispatchKeyEvent(event)
         }
 
+        // Timeshift: the remote's rewind/fast-forward keys move inside the
+        // window on disk. LEFT/RIGHT stay channel zaps on live TV. First
+        // press only — each move re-prepares the player.
+        if (isIptvMode && iptvTimeshift.isActive &&
+            iptvChannels.getOrNull(currentIptvIndex)?.isLive == true &&
+            (keyCode == KeyEvent.KEYCODE_MEDIA_REWIND ||
+                keyCode == KeyEvent.KEYCODE_MEDIA_FAST_FORWARD)
+        ) {
+            if (event.action == KeyEvent.ACTION_DOWN && event.repeatCount == 0) {
+                seekIptvTimeshift(
+                    if (keyCode == KeyEvent.KEYCODE_MEDIA_REWIND) -SEEK_STEP_MS else SEEK_STEP_MS,
+                )
+            }
+            return true
+        }
+
+        // A recording with programme chapters: next/previous jump between
+        // them. Everything else leaves the keys to the media session.
+        if (!isIptvMode &&
+            (keyCode == KeyEvent.KEYCODE_MEDIA_NEXT ||
+                keyCode == KeyEvent.KEYCODE_MEDIA_PREVIOUS) &&
+            currentRecordingIndex()?.chapters?.isNotEmpty() == true
+        ) {
+            if (event.action == KeyEvent.ACTION_DOWN && event.repeatCount == 0) {
+                jumpRecordingChapter(if (keyCode == KeyEvent.KEYCODE_MEDIA_NEXT) 1 else -1)
+            }
+            return true
+        }
+
         // IPTV: dedicated channel keys zap regardless of overlay state —
         // live-TV muscle memory on remotes that have them. First press only
         // (repeatCount gate, same as the LEFT/RIGHT zap path): a held key's
@@ -6495,6 +6767,25 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         if (::playerView.isInitialized) playerView.keepScreenOn = false
     }
 
+    /**
+     * Tell the download scheduler whether we are streaming from the network
+     * right now, so queued downloads back off to the playback limit instead of
+     * competing with the stream. Local files and content URIs don't count.
+     * Every http(s) source does, loopback included: the torrent and proxy
+     * servers behind it pull over the same link.
+     */
+    private fun publishPlaybackContention() {
+        val p = player
+        val uri = p?.currentMediaItem?.localConfiguration?.uri
+        val scheme = uri?.scheme
+        val streaming = p != null && p.isPlaying &&
+            (scheme.equals("http", ignoreCase = true) || scheme.equals("https", ignoreCase = true)) &&
+            // Served from an in-progress download: throttling that download
+            // would only starve this playback.
+            PartialDownloads.find(uri.toString()) == null
+        PlaybackContention.set(this, streaming)
+    }
+
     /** Re-take both holds when playback resumes. Idempotent. */
     private fun holdScreenForPlayback() {
         window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON)
@@ -6782,6 +7073,75 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         return true
     }
 
+    // Called periodically from the progress loop. Within NEXT_PRELOAD_LEAD_MS
+    // of the end, resolves the next item's stream now instead of behind the
+    // loading screen once this one ends, queues the head of its file on
+    // the disk read-ahead (the "big"/"huge" presets) so it starts from disk,
+    // and has NextItemPreloader buffer its first nextPreloadMs in memory.
+    // The read-ahead writes it only once this file is on disk to its end.
+    // Shuffle sits it out: its pick isn't known until it is made.
+    private fun maybePreloadNext() {
+        if (isIptvMode || isStremioTvMode || continuousShuffleEnabled) return
+        val p = player ?: return
+        if (p.playbackState != Player.STATE_READY) return
+        val duration = p.duration
+        if (duration <= UP_NEXT_MIN_DURATION_MS) return
+        if (duration - p.currentPosition > NEXT_PRELOAD_LEAD_MS) return
+        val model = payload ?: return
+        val nextIndex = getNextPlayableIndex(currentIndex) ?: return
+        if (nextIndex == nextPreloadIndex) return
+        nextPreloadIndex = nextIndex
+        val item = model.items.getOrNull(nextIndex) ?: return
+        // Merged YouTube streams and downloaded copies start fast already.
+        if (!item.audioUrl.isNullOrEmpty()) return
+        withLocalCopy(item) { localCopy ->
+            if (localCopy == null && nextPreloadIndex == nextIndex) preloadNext(nextIndex, item)
+        }
+    }
+
+    private fun preloadNext(nextIndex: Int, item: PlaybackItem) {
+        if (item.url.isNotBlank()) {
+            preloadNextHead(item.url)
+            preloadNextItem(nextIndex, item)
+            return
+        }
+        val forIndex = currentIndex
+        requestStreamFromFlutter(item, nextIndex) { url, provider ->
+            if (url.isNullOrEmpty() || isFinishing || isDestroyed) return@requestStreamFromFlutter
+            // Moved on meanwhile: the new item preloads its own next.
+            if (currentIndex != forIndex || nextPreloadIndex != nextIndex) return@requestStreamFromFlutter
+            val items = payload?.items ?: return@requestStreamFromFlutter
+            val target = items.getOrNull(nextIndex)
+            if (target == null || target.resumeId != item.resumeId || target.url.isNotBlank()) {
+                return@requestStreamFromFlutter
+            }
+            android.util.Log.d("AndroidTvPlayer", "maybePreloadNext - resolved index $nextIndex ahead of the end")
+            val resolved = item.copy(url = url, provider = provider ?: item.provider)
+            items[nextIndex] = resolved
+            preloadNextHead(url)
+            preloadNextItem(nextIndex, resolved)
+        }
+    }
+
+    // Prepare the next item in memory (see NextItemPreloader), from its
+    // start — one resuming mid-way would seek past it — and only on the
+    // direct path: PikPak items start through their retry logic instead.
+    private fun preloadNextItem(nextIndex: Int, item: PlaybackItem) {
+        val preloader = nextItemPreloader ?: return
+        if (item.resumePositionMs > 0L || !item.hdVideoUrl.isNullOrEmpty()) return
+        if (PROVIDER_PIKPAK.equals(item.provider, ignoreCase = true) ||
+            item.url.contains("mypikpak.com")
+        ) {
+            return
+        }
+        preloader.preload(nextIndex, playbackMediaItem(item, null))
+    }
+
+    private fun preloadNextHead(url: String) {
+        val headMs = if (networkBuffer == "huge") 60_000L else 30_000L
+        vodPrefetcher?.preload(Uri.parse(url), null, headMs)
+    }
+
     // Called periodically from the progress loop. Shows the Up Next card when
     // the current episode is near its end and a playable next item exists.
     private fun maybeShowUpNext() {
@@ -7329,6 +7689,32 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         )
     }
 
+    /**
+     * Live pause/rewind from a window on disk (see [IptvTimeshift]). Off by
+     * default: it writes the channel to storage for as long as it plays.
+     * Dart owns the setting; fixed per activity launch.
+     */
+    private val iptvTimeshiftEnabled: Boolean by lazy {
+        com.debrify.app.profiles.ProfilePreferenceProjection.getBoolean(
+            this,
+            "iptv_timeshift_enabled",
+            false,
+        )
+    }
+
+    /**
+     * How many channels either side of a live channel [IptvZapWarmer] keeps
+     * connected (0 = off, the default: each is a provider connection, and
+     * most accounts allow one). Dart owns the setting; fixed per launch.
+     */
+    private val iptvZapPrewarmNeighbours: Int by lazy {
+        com.debrify.app.profiles.ProfilePreferenceProjection.getLong(
+            this,
+            "iptv_zap_prewarm_neighbours",
+            0L,
+        ).toInt().coerceIn(0, 2)
+    }
+
     /** Repaints the Record button whenever an engine capture starts or ends —
      *  including from the notification's Stop, which the activity never sees. */
     private val recordingRegistryListener: () -> Unit = {
@@ -7356,6 +7742,15 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         return iptvHlsForcedUrls.contains(url) || isSegmentedStreamUrl(url)
     }
 
+    /** The TEE records progressive streams and HLS (its segments are the
+     *  player's own requests); DASH and SmoothStreaming stay out. */
+    private fun isCurrentIptvTeeRecordable(): Boolean {
+        val url = currentIptvStreamUrl ?: return false
+        if (iptvHlsForcedUrls.contains(url) || !isSegmentedStreamUrl(url)) return true
+        val path = url.substringBefore('?').substringBefore('#').lowercase()
+        return path.endsWith(".m3u8") || path.endsWith(".m3u")
+    }
+
     /**
      * Xtream panels serve every live channel in both containers — the `.ts`
      * twin of a `/live/user/pass/id.m3u8` URL is the same channel as one
@@ -7374,6 +7769,48 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         return "$host/live/$user/$pass/$id.ts"
     }
 
+    /**
+     * Spool [streamUrl] for timeshift when it is a live progressive channel,
+     * and end any session otherwise. A same-URL re-tune keeps its window.
+     */
+    private fun syncIptvTimeshift(entry: IptvChannelEntry, streamUrl: String) {
+        val upstream = iptvTimeshiftUpstream
+        val eligible = upstream != null && entry.isLive &&
+            (streamUrl.startsWith("http://", ignoreCase = true) ||
+                streamUrl.startsWith("https://", ignoreCase = true)) &&
+            !iptvHlsForcedUrls.contains(streamUrl) && !isSegmentedStreamUrl(streamUrl)
+        if (!eligible || !iptvTimeshift.start(streamUrl, upstream!!)) {
+            iptvTimeshift.stop()
+        }
+    }
+
+    /**
+     * Rewind ([deltaMs] < 0) or skip forward inside the timeshift window. The
+     * item is re-prepared and opens at the indexed keyframe — from disk.
+     */
+    private fun seekIptvTimeshift(deltaMs: Long) {
+        val exo = player ?: return
+        val entry = iptvChannels.getOrNull(currentIptvIndex) ?: return
+        val url = currentIptvStreamUrl ?: return
+        val behind = iptvTimeshift.seekBy(deltaMs, exo.currentPosition)
+        if (behind == null) {
+            Toast.makeText(this, "Nothing buffered to rewind into yet", Toast.LENGTH_SHORT).show()
+            return
+        }
+        val wasPlaying = exo.playWhenReady
+        exo.setMediaItem(MediaItem.Builder().setUri(url).setMediaMetadata(
+            MediaMetadata.Builder().setTitle(entry.name).setArtist(entry.group ?: "IPTV").build(),
+        ).build())
+        exo.prepare()
+        exo.playWhenReady = wasPlaying
+        val seconds = behind / 1000
+        Toast.makeText(
+            this,
+            if (seconds < 2) "Live" else "%d:%02d behind live".format(seconds / 60, seconds % 60),
+            Toast.LENGTH_SHORT,
+        ).show()
+    }
+
     /** The URL the ENGINE would capture for [url], or null when it can't:
      *  the URL itself when progressive, its Xtream `.ts` twin when that
      *  rescues an `.m3u8` channel, nothing for true segmented streams or
@@ -7430,7 +7867,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             val url = currentIptvStreamUrl ?: return false
             return engineRecordableUrl(url) != null
         }
-        return IptvRecordingController.isSupported && !isCurrentIptvSegmented()
+        return IptvRecordingController.isSupported && isCurrentIptvTeeRecordable()
     }
 
     /** Reflect record availability + active state on the button. */
@@ -7459,24 +7896,26 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             return
         }
         if (iptvRecordingController.isActive) {
-            val result = iptvRecordingController.stop()
+            iptvRecordingController.stop { result ->
+                if (isDestroyed) return@stop
+                Toast.makeText(
+                    this,
+                    if (result.published) {
+                        "Recording saved to Downloads/Debrify/Recordings"
+                    } else {
+                        "Recording stopped, but couldn't be added to Downloads"
+                    },
+                    Toast.LENGTH_LONG,
+                ).show()
+            }
             updateRecordButtonState()
-            Toast.makeText(
-                this,
-                if (result.published) {
-                    "Recording saved to Downloads/Debrify/Recordings"
-                } else {
-                    "Recording stopped, but couldn't be added to Downloads"
-                },
-                Toast.LENGTH_LONG,
-            ).show()
             return
         }
         if (!IptvRecordingController.isSupported) {
             Toast.makeText(this, "Recording needs Android 10 or newer", Toast.LENGTH_SHORT).show()
             return
         }
-        if (isCurrentIptvSegmented()) {
+        if (!isCurrentIptvTeeRecordable()) {
             Toast.makeText(this, "Recording isn't supported for this stream", Toast.LENGTH_SHORT).show()
             return
         }
@@ -7484,7 +7923,18 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         if (url.isNullOrEmpty()) return
         val entry = iptvChannels.getOrNull(currentIptvIndex)
         val fileName = "${sanitizeRecordingName(entry?.name ?: "recording")}_${recordingTimestamp()}.ts"
-        if (iptvRecordingController.start(url, fileName, "video/mp2t")) {
+        // An HLS channel is mid-playback: the tee starts from the playlists
+        // the player holds, since it won't load the multivariant one again.
+        val started = iptvRecordingController.start(
+            url,
+            fileName,
+            "video/mp2t",
+            iptvRecordingProgrammes(entry),
+            channelName = entry?.name,
+            manifest = player?.currentManifest as? androidx.media3.exoplayer.hls.HlsManifest,
+            keySource = iptvRecordingSources,
+        )
+        if (started) {
             updateRecordButtonState()
             Toast.makeText(this, "Recording started", Toast.LENGTH_SHORT).show()
         } else {
@@ -7601,6 +8051,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
                     connectionResourceId = resource?.connectionResourceId,
                     profileAuthorizationRevision = owner.authorizationRevision,
                     resourceAuthorizationRevision = resource?.connectionResourceRevision,
+                    programmes = iptvRecordingProgrammes(entry),
                 ),
             )
             Toast.makeText(
@@ -7613,6 +8064,61 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         }
     }
 
+    /**
+     * The sidecar index of the local recording playing, or null when it's
+     * not one (or none was built). Read once per item.
+     */
+    private fun currentRecordingIndex(): RecordingIndex? {
+        val uri = player?.currentMediaItem?.localConfiguration?.uri ?: return null
+        recordingIndexCache?.let { (cachedUri, index) -> if (cachedUri == uri) return index }
+        val index = if (uri.scheme == "content" || uri.scheme == "file") {
+            RecordingIndex.load(this, uri)
+        } else {
+            null
+        }
+        recordingIndexCache = uri to index
+        return index
+    }
+
+    // Back jumps to the start of the chapter playing unless that's under a
+    // few seconds ago, then to the one before — the track-skip convention.
+    private fun jumpRecordingChapter(direction: Int) {
+        val player = player ?: return
+        val chapters = currentRecordingIndex()?.chapters ?: return
+        val position = player.currentPosition
+        val target = if (direction > 0) {
+            chapters.firstOrNull { it.mediaMs > position + 1_000L }
+        } else {
+            val playing = chapters.indexOfLast { it.mediaMs <= position }
+            when {
+                playing < 0 -> chapters.first()
+                position - chapters[playing].mediaMs > CHAPTER_RESTART_MS -> chapters[playing]
+                else -> chapters.getOrNull(playing - 1) ?: chapters[playing]
+            }
+        }
+        if (target == null) {
+            Toast.makeText(this, "Last programme", Toast.LENGTH_SHORT).show()
+            return
+        }
+        player.seekTo(target.mediaMs)
+        Toast.makeText(this, target.title, Toast.LENGTH_SHORT).show()
+    }
+
+    /** What the guide knows of [entry]'s schedule, as recording chapters:
+     *  the full day when its EPG pane was loaded, else now and next. */
+    private fun iptvRecordingProgrammes(entry: IptvChannelEntry?): List<RecordingIndex.Programme> {
+        if (entry == null) return emptyList()
+        val out = ArrayList<RecordingIndex.Programme>()
+        if (iptvEpgEntry === entry) {
+            iptvEpgPrograms.mapTo(out) { RecordingIndex.Programme(it.startMs, it.title) }
+        }
+        entry.epgNowTitle?.takeIf { entry.epgNowStartMs > 0 }
+            ?.let { out.add(RecordingIndex.Programme(entry.epgNowStartMs, it)) }
+        entry.epgNextTitle?.takeIf { entry.epgNextStartMs > 0 }
+            ?.let { out.add(RecordingIndex.Programme(entry.epgNextStartMs, it)) }
+        return out.distinctBy { it.startMs }
+    }
+
     /** Confirm-and-schedule for a FUTURE programme picked in the EPG guide.
      *  Everything stays native: the schedule store and alarms need no Dart. */
     private fun promptScheduleRecording(entry: IptvChannelEntry, program: IptvEpgProgram) {
@@ -7679,9 +8185,25 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         } else {
             ""
         }
+        val budget = RecordingBudget.check(this, recordUrl, program.startMs, program.stopMs)
+        val needText = RecordingBudget.describe(this, budget.needBytes)
+        if (!budget.fitsWithReclaim) {
+            Toast.makeText(
+                this,
+                "Not enough storage — this needs about $needText",
+                Toast.LENGTH_LONG,
+            ).show()
+            return
+        }
+        val storageNote = if (budget.fits) {
+            ""
+        } else {
+            "\n\nNeeds about $needText — older auto-delete recordings will be " +
+                "removed to make room."
+        }
         androidx.appcompat.app.AlertDialog.Builder(this)
             .setTitle(if (conflictNote.isEmpty()) "Record programme" else "Recording conflict")
-            .setMessage("${program.title}\n${entry.name} · $range$conflictNote")
+            .setMessage("${program.title}\n${entry.name} · $range$conflictNote$storageNote")
             .setPositiveButton("Record") { _, _ ->
                 maybeAskNotificationPermission()
                 val owner = com.debrify.app.profiles.ProfilePreferenceProjection
@@ -7733,15 +8255,16 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
      *  publish is worth saying out loud, since the file is invisible. */
     private fun finalizeIptvRecordingIfActive() {
         if (!iptvRecordingController.isActive) return
-        val result = iptvRecordingController.stop()
-        updateRecordButtonState()
-        if (result.wasRecording && !result.published && !isFinishing) {
-            Toast.makeText(
-                this,
-                "Recording stopped, but couldn't be added to Downloads",
-                Toast.LENGTH_LONG,
-            ).show()
+        iptvRecordingController.stop { result ->
+            if (result.wasRecording && !result.published && !isFinishing && !isDestroyed) {
+                Toast.makeText(
+                    this,
+                    "Recording stopped, but couldn't be added to Downloads",
+                    Toast.LENGTH_LONG,
+                ).show()
+            }
         }
+        updateRecordButtonState()
     }
 
     private fun sanitizeRecordingName(raw: String): String {
@@ -7800,7 +8323,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
 
     /** Live IPTV uses a balanced dock:
      *  Audio · Subs · Aspect | CH- · Play/Pause · CH+ | Guide · Jump · Record · Night.
-     *  Record is present only for progressive streams (disabled for HLS). The
+     *  Record is disabled for streams the active recorder can't capture. The
      *  XML order remains the standard cinema/VOD order; only the live
      *  presentation is rearranged, so movies and episodes keep their old UX. */
     private fun arrangeLiveIptvControlDock() {
@@ -10363,6 +10886,47 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         )
     }
 
+    /**
+     * Warm the live channels up to [iptvZapPrewarmNeighbours] steps either
+     * side of the one on screen, in zap order (wrapping the way
+     * zapIptvChannel does), so CH +/- lands on a lane. Runs once the tune
+     * has played [IPTV_ZAP_WARM_SETTLE_MS]; the lanes never race a tune.
+     */
+    private fun warmIptvZapNeighbours() {
+        val warmer = iptvZapWarmer ?: return
+        if (iptvZapWarmSuspended || isFinishing || isDestroyed) return
+        val current = iptvChannels.getOrNull(currentIptvIndex)
+        if (current == null || !current.isLive || player?.isPlaying != true) return
+        val size = iptvChannels.size
+        val targets = LinkedHashMap<String, IptvZapWarmer.Target>()
+        for (step in 1..iptvZapPrewarmNeighbours) {
+            for (delta in intArrayOf(step, -step)) {
+                val at = currentIptvIndex + delta
+                val entry = if (iptvZapPagingActive) {
+                    iptvChannels.getOrNull(at)
+                } else {
+                    iptvChannels[((at % size) + size) % size]
+                } ?: continue
+                // The hub shares progressive streams only — the same test
+                // that decides whether the player reads through it.
+                if (entry === current || !entry.isLive || isStremioIptvUrl(entry.url)) continue
+                if (engineRecordableUrl(entry.url) != entry.url) continue
+                targets.putIfAbsent(entry.url, IptvZapWarmer.Target(entry.url, entry.httpHeaders))
+            }
+        }
+        warmer.warm(targets.values.toList())
+        if (targets.isNotEmpty()) iptvTuneDiagnostics.note("zap-warm lanes=${targets.size}")
+    }
+
+    private fun suspendIptvZapWarming(reason: String) {
+        iptvBrowseHandler.removeCallbacks(iptvZapWarmRunnable)
+        val warmer = iptvZapWarmer ?: return
+        if (iptvZapWarmSuspended) return
+        iptvZapWarmSuspended = true
+        if (warmer.laneCount > 0) iptvTuneDiagnostics.note("zap-warm suspended reason=$reason")
+        warmer.stop()
+    }
+
     /** True when LEFT/RIGHT should zap instead of seek: an IPTV session with
      *  a live channel playing, at least one other channel to go to, and the
      *  controls fully hidden — with the dock (or the sources badge) up,
@@ -12087,6 +12651,16 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // and without this, zapping AWAY from the surrendered channel would
         // black-flash forever after (codex round 2, finding 17).
         playerView.setKeepContentOnPlayerReset(true)
+        iptvSharedUpstreamUrl = streamUrl.takeIf { entry.isLive && engineRecordableUrl(it) == it }
+        // Only this tune's own lane is still of use; the new neighbours warm
+        // once it has settled (see iptvDiagAnalyticsListener).
+        iptvBrowseHandler.removeCallbacks(iptvZapWarmRunnable)
+        iptvZapWarmArmed = false
+        if (!iptvLiveRetuneInFlight) iptvZapWarmSuspended = false
+        iptvZapWarmer?.retain(streamUrl)
+        // A tune always starts at live; only a timeshift seek sets a start.
+        syncIptvTimeshift(entry, streamUrl)
+        iptvTimeshift.goLive()
 
         val mediaItem = MediaItem.Builder()
             .setUri(streamUrl)
@@ -12122,8 +12696,8 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // nothing about on-demand playback and can't save a resume position.
         restartProgressUpdates()
 
-        // Reflect the new stream's HLS-ness on the record button (progressive →
-        // enabled, HLS → disabled).
+        // Reflect the new stream's type on the record button (progressive or
+        // HLS → enabled, DASH/Smooth → disabled under the tee).
         updateRecordButtonState()
     }
 
@@ -12188,13 +12762,15 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             "AndroidTvPlayer",
             "Unrecognized format for ${entry.name} — retrying as HLS"
         )
-        // The stream is HLS, so any tee-recorded bytes are an unusable
-        // playlist/segment mix — discard them and lock the button off.
-        if (iptvRecordingController.isActive) {
+        // The tee spots a playlist by its first bytes and follows it as HLS,
+        // so a recording normally carries on across this retry. Only bytes
+        // already written as progressive — a stream that wasn't a playlist
+        // yet failed to sniff — are unusable; discard those.
+        if (iptvRecordingController.isActive && iptvRecordingController.bytesWritten > 0L) {
             iptvRecordingController.abortAndDelete()
             Toast.makeText(
                 this,
-                "Recording stopped — this channel is HLS",
+                "Recording stopped — this stream couldn't be recorded",
                 Toast.LENGTH_LONG,
             ).show()
         }
@@ -12214,8 +12790,9 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     /**
      * Start playback for an IPTV channel. Plain channels play their URL
      * directly; Stremio-addon channels first resolve their candidate stream
-     * URLs through the Flutter bridge (cached on the Dart side), then play
-     * candidate 0 — [tryNextIptvStremioCandidate] walks the rest on error.
+     * URLs through the Flutter bridge (cached on the Dart side), race the
+     * top few ([raceIptvStremioCandidates]) and play the winner —
+     * [tryNextIptvStremioCandidate] walks the rest of the ranking on error.
      */
     private fun beginIptvPlayback(entry: IptvChannelEntry) {
         // The channel change starts HERE, so the outgoing channel's recording
@@ -12231,6 +12808,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         iptvStremioCandidateIndex = 0
         iptvStremioWinnerReported = false
         cancelIptvStremioStallWatchdog()
+        cancelIptvStremioRace()
         clearIptvStremioSources()
 
         // The outgoing stream's URL must not be attributable from here on: a
@@ -12252,7 +12830,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // previous channel playing under the new channel's UI state.
         player?.stop()
 
-        requestIptvStreamUrls(entry.url, entry.name) { candidates, message ->
+        requestIptvStreamUrls(entry.url, entry.name) { candidates, message, provenWinner ->
             runOnUiThread {
                 if (token != iptvStremioToken || isFinishing) return@runOnUiThread
                 if (candidates.isEmpty()) {
@@ -12264,16 +12842,53 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
                     ).show()
                     return@runOnUiThread
                 }
-                iptvStremioChannelKey = entry.url
-                iptvStremioCandidates = candidates
-                iptvStremioCandidateIndex = 0
-                populateIptvStremioSources()
-                setIptvMediaItem(entry, candidates[0].url)
-                armIptvStremioStallWatchdog()
+                // A link that played lately goes straight on: a race would
+                // only delay it.
+                if (provenWinner || candidates.size < 2) {
+                    startIptvStremioLadder(entry, candidates)
+                } else {
+                    raceIptvStremioCandidates(entry, candidates, token)
+                }
+            }
+        }
+    }
+
+    /**
+     * Probe the channel's top candidates at once and start the ladder on
+     * their ranking (see [IptvCandidateRacer]): a dead or crawling first
+     * link then costs one short race instead of a stall watchdog each.
+     * Links the race couldn't use stay on the ladder, after the rest.
+     */
+    private fun raceIptvStremioCandidates(
+        entry: IptvChannelEntry,
+        candidates: List<IptvStremioCandidate>,
+        token: Int,
+    ) {
+        val racer = iptvCandidateRacer ?: return startIptvStremioLadder(entry, candidates)
+        iptvStremioRace = racer.race(candidates.map { it.url }, entry.httpHeaders) { order ->
+            runOnUiThread {
+                if (token != iptvStremioToken || isFinishing) return@runOnUiThread
+                iptvStremioRace = null
+                startIptvStremioLadder(entry, order.map { candidates[it] })
             }
         }
     }
 
+    private fun cancelIptvStremioRace() {
+        iptvStremioRace?.cancel()
+        iptvStremioRace = null
+    }
+
+    /** Play [candidates] in order from the first, as the channel's ladder. */
+    private fun startIptvStremioLadder(entry: IptvChannelEntry, candidates: List<IptvStremioCandidate>) {
+        iptvStremioChannelKey = entry.url
+        iptvStremioCandidates = candidates
+        iptvStremioCandidateIndex = 0
+        populateIptvStremioSources()
+        setIptvMediaItem(entry, candidates[0].url)
+        armIptvStremioStallWatchdog()
+    }
+
     /**
      * Mirror the channel's candidate links into the existing Stremio sources
      * panel (as direct streams, 1:1 with [iptvStremioCandidates] so the two
@@ -12433,12 +13048,13 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     /**
      * Ask Flutter to resolve a stremio-tv:// channel key into labeled stream
      * links. On an empty result the callback's second argument carries a
-     * user-facing reason ("Couldn't reach <addon>…") when Flutter knows one.
+     * user-facing reason ("Couldn't reach <addon>…") when Flutter knows one;
+     * the third is true when the first link is one that played lately.
      */
     private fun requestIptvStreamUrls(
         channelUrl: String,
         channelName: String?,
-        callback: (List<IptvStremioCandidate>, String?) -> Unit,
+        callback: (List<IptvStremioCandidate>, String?, Boolean) -> Unit,
     ) {
         try {
             val args = hashMapOf<String, Any?>(
@@ -12447,7 +13063,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             )
             val channel = MainActivity.getAndroidTvPlayerChannel()
             if (channel == null) {
-                callback(emptyList(), null)
+                callback(emptyList(), null, false)
                 return
             }
             channel.invokeMethod(
@@ -12463,22 +13079,22 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
                             IptvStremioCandidate(u, label)
                         } ?: emptyList()
                         val message = (map?.get("message") as? String)?.takeIf { it.isNotBlank() }
-                        callback(candidates, message)
+                        callback(candidates, message, map?.get("provenWinner") == true)
                     }
 
                     override fun error(errorCode: String, errorMessage: String?, errorDetails: Any?) {
                         android.util.Log.e("AndroidTvPlayer", "requestIptvStreamUrls error: $errorCode - $errorMessage")
-                        callback(emptyList(), null)
+                        callback(emptyList(), null, false)
                     }
 
                     override fun notImplemented() {
-                        callback(emptyList(), null)
+                        callback(emptyList(), null, false)
                     }
                 }
             )
         } catch (e: Exception) {
             android.util.Log.e("AndroidTvPlayer", "requestIptvStreamUrls exception: ${e.message}", e)
-            callback(emptyList(), null)
+            callback(emptyList(), null, false)
         }
     }
 
@@ -15414,6 +16030,12 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             // inherit stale tuning.
             networkPatience = obj.optString("networkPatience", "standard")
             networkBuffer = obj.optString("networkBuffer", "standard")
+            nextPreloadMs = when (obj.optString("nextPreload", "standard")) {
+                "off" -> 0L
+                "short" -> 15_000L
+                "long" -> 60_000L
+                else -> 30_000L
+            }
             iptvDecoderMode = obj.optString("iptvDecoder", "auto")
 
             // Series source tabs: pack/episode split + per-tab "Load more"
@@ -15631,6 +16253,9 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
     }
 
     override fun onDestroy() {
+        PlaybackContention.set(this, false)
+        iptvZapWarmer?.stop()
+        cancelIptvStremioRace()
         iptvTuneDiagnostics.onSessionEnd()
         clearIptvTwinTrial()
         iptvLiveRecovery.cancel()
@@ -15646,6 +16271,8 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // The sleep timer belongs to this playback session — a pending one must
         // not outlive the player and fire against a dead surface.
         cancelSleepTimer()
+        // The spool tees into a recording: stop feeding it first.
+        iptvTimeshift.stop()
         // Finalize any in-progress TEE recording so its MediaStore row isn't
         // left pending (invisible) when the player is torn down. Engine
         // captures deliberately ignore player teardown.
@@ -15698,6 +16325,7 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         skipSegmentFetchJob?.cancel()
         skipSegmentFetchJob = null
         skipSegmentScope.cancel()
+        localCopyScope.cancel()
         skipSegmentCache.clear()
 
         // Clear all handlers
@@ -15712,6 +16340,11 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         // processing dead audio and degrades other apps' equalizers.
         com.debrify.app.audio.AudioEffectSession.closeCurrent(this)
 
+        vodPrefetcher?.release()
+        vodPrefetcher = null
+        nextItemPreloader?.release()
+        nextItemPreloader = null
+
         // Clear player and listeners
         player?.let {
             sendProgress(completed = false)
@@ -15720,6 +16353,9 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
             it.release()
         }
         player = null
+        MediaBufferPool.get(this).trimIdle()
+        playbackThread?.quitSafely()
+        playbackThread = null
         subtitleListener = null
         trackSelector = null
         offsetRenderersFactory = null
@@ -16440,8 +17076,11 @@ class AndroidTvTorrentPlayerActivity : AppCompatActivity() {
         private const val UP_NEXT_THRESHOLD_MS = 25_000L   // show card when this much remains
         private const val UP_NEXT_MIN_DURATION_MS = 5 * 60_000L  // skip for short clips
         private const val UP_NEXT_TICK_MS = 500L
+        private const val NEXT_PRELOAD_LEAD_MS = 3 * 60_000L
+        private const val IPTV_ZAP_WARM_SETTLE_MS = 5_000L
         private const val CONTROLS_AUTO_HIDE_DELAY_MS = 4000L
         private const val SEEK_STEP_MS = 10_000L
+        private const val CHAPTER_RESTART_MS = 3_000L  // "previous" past this restarts the chapter
         private const val SEEK_LONG_PRESS_THRESHOLD = 3
         private const val BACK_PRESS_INTERVAL_MS = 2000L  // 2 seconds
         private const val SEARCH_SUBTITLE_LABEL = "Search Movie/Show Subtitles"
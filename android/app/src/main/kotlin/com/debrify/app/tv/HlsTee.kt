@@ -0,0 +1,236 @@
+package com.debrify.app.tv
+
+import com.debrify.app.recording.HlsPlaylist
+import com.debrify.app.recording.UnrecordableStreamException
+import java.io.ByteArrayOutputStream
+import java.net.URL
+import java.util.TreeMap
+
+/**
+ * Turns the HLS requests the player already makes into one MPEG-TS, for
+ * [IptvRecordingController]. It is fed what [RecordingDataSource] sees —
+ * playlists, keys and segments, in whatever order the loaders finish — and
+ * hands back the segment bytes to append, in media-sequence order, each
+ * sequence exactly once.
+ *
+ * Only segments of a media playlist reached from the recorded URL count:
+ * the URL itself when it is a media playlist, or a variant of it that
+ * carries its own audio. Variants share their media sequence, so an ABR
+ * switch or a re-fetch after an error lands on a sequence already written
+ * and is dropped; the first segment after a switch is marked as a
+ * discontinuity, as is one after `#EXT-X-DISCONTINUITY` or a gap.
+ *
+ * A segment that finished out of order waits in a small reorder buffer.
+ * The one missing ahead of it is given up on once it has left every
+ * playlist window or [reorderWindow] later ones are waiting — the player
+ * has moved past it — and the gap is counted in [lost].
+ *
+ * A recording started mid-playback is [seed]ed with the playlists the
+ * player already holds: it only re-fetches the variant's media playlist,
+ * never the master again. Its current AES key is cached by the player too,
+ * so a segment whose key hasn't been seen waits for it — [missingKeys] is
+ * what the controller fetches — until it leaves every window.
+ *
+ * Not thread-safe; the controller calls it under its lock.
+ */
+internal class HlsTee(
+    private val rootUrl: String,
+    private val reorderWindow: Int = 3,
+) {
+    companion object {
+        /** A segment or key bigger than this isn't one; stop collecting it. */
+        const val MAX_BODY_BYTES = 64 * 1024 * 1024
+        private const val KEY_CACHE_SIZE = 8
+    }
+
+    private class Ready(val data: ByteArray, val discontinuity: Boolean, val variant: String)
+
+    /** Media playlists that record, by URL, with their latest window. */
+    private val windows = HashMap<String, List<HlsPlaylist.Segment>>()
+    private val variants = HashSet<String>()
+    private val segments = HashMap<String, Pair<String, HlsPlaylist.Segment>>()
+    private val keyUrls = HashSet<String>()
+    private val keys = object : LinkedHashMap<String, ByteArray>(KEY_CACHE_SIZE, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ByteArray>?) =
+            size > KEY_CACHE_SIZE
+    }
+    private val partials = HashMap<String, ByteArrayOutputStream>()
+    // Whole segments, by URL, waiting for their key to load.
+    private val awaitingKey = LinkedHashMap<String, ByteArray>()
+    // The window [seed] filed under the media playlist's own URL, when that
+    // isn't one the player requests; the first real refresh replaces it.
+    private var seededWindow: String? = null
+    private val ready = TreeMap<Long, Ready>()
+    private var nextSequence = -1L
+    private var lastVariant: String? = null
+    private var markNext = false
+    private var appended = 0
+
+    /** Sequences skipped over: gone from the window before they loaded. */
+    var lost = 0L
+        private set
+
+    fun isPlaylist(url: String): Boolean = url == rootUrl || url in variants
+
+    fun isSegment(url: String): Boolean = url in segments
+
+    fun isKey(url: String): Boolean = url in keyUrls
+
+    /**
+     * A playlist fetched from [url] (after redirects, [base]) finished
+     * loading. Returns segments that became appendable because the window
+     * moved past a gap.
+     *
+     * @throws UnrecordableStreamException when the stream can't make one TS.
+     */
+    fun onPlaylist(url: String, base: URL, text: String): List<ByteArray> =
+        onParsed(url, HlsPlaylist.parse(text, base))
+
+    /**
+     * The playlists the player held when the recording started: the
+     * multivariant one at the recorded URL ([master], null when that URL is
+     * itself the media playlist) and the media playlist it plays, loaded
+     * from [mediaUrl].
+     *
+     * @throws UnrecordableStreamException when the stream can't make one TS.
+     */
+    fun seed(master: HlsPlaylist.Master?, mediaUrl: String, media: HlsPlaylist.Media) {
+        val url = if (master == null) rootUrl else mediaUrl
+        master?.let { onParsed(rootUrl, it) }
+        if (!isPlaylist(url)) seededWindow = url
+        onParsed(url, media)
+    }
+
+    /** Key URLs the current windows use that haven't loaded. */
+    fun missingKeys(): List<String> = keyUrls.filter { it !in keys }
+
+    private fun onParsed(url: String, playlist: HlsPlaylist): List<ByteArray> {
+        when (playlist) {
+            is HlsPlaylist.Master -> {
+                if (url != rootUrl) return emptyList()
+                val own = playlist.variants.filter { !it.separateAudio }
+                if (own.isEmpty()) {
+                    throw UnrecordableStreamException("stream carries its audio separately")
+                }
+                own.forEach { variants += it.url.toString() }
+            }
+            is HlsPlaylist.Media -> {
+                seededWindow?.let { seeded ->
+                    if (seeded != url) windows.remove(seeded)
+                    seededWindow = null
+                }
+                windows[url] = playlist.segments
+                segments.clear()
+                keyUrls.clear()
+                for ((variant, window) in windows) {
+                    for (segment in window) {
+                        segments[segment.url.toString()] = variant to segment
+                        segment.key?.let { keyUrls += it.url.toString() }
+                    }
+                }
+                // A load abandoned mid-way is never resumed once its segment
+                // has left every window, and a key that never came is
+                // waited for no longer.
+                partials.keys.retainAll(segments.keys)
+                awaitingKey.keys.retainAll(segments.keys)
+            }
+        }
+        return drain()
+    }
+
+    /** The AES-128 key at [url] finished loading. Returns the segments now
+     *  appendable: those that were waiting for it. */
+    fun onKey(url: String, bytes: ByteArray): List<ByteArray> {
+        if (bytes.size != 16) return emptyList()
+        keys[url] = bytes
+        val unlocked = awaitingKey.keys.filter { segments[it]?.second?.key?.url?.toString() == url }
+        for (segmentUrl in unlocked) {
+            val data = awaitingKey.remove(segmentUrl) ?: continue
+            val (variant, segment) = segments[segmentUrl] ?: continue
+            file(variant, segment, data)
+        }
+        return drain()
+    }
+
+    /**
+     * [bytes] of the segment at [url], read from [position]. A load the
+     * player abandoned is kept so a resumed one ([position] where it
+     * stopped) completes it. Returns the segments now appendable, in order.
+     *
+     * @throws UnrecordableStreamException when segments aren't MPEG-TS.
+     */
+    fun onSegment(url: String, position: Long, bytes: ByteArray, complete: Boolean): List<ByteArray> {
+        val (variant, segment) = segments[url] ?: return emptyList()
+        if (segment.sequence < nextSequence || ready.containsKey(segment.sequence)) {
+            partials.remove(url)
+            return emptyList()
+        }
+        val body = when {
+            position == 0L -> ByteArrayOutputStream(bytes.size).also { partials[url] = it }
+            partials[url]?.size()?.toLong() == position -> partials.getValue(url)
+            // A resumed load whose start we never saw: useless.
+            else -> return emptyList()
+        }
+        body.write(bytes)
+        if (!complete) return emptyList()
+        partials.remove(url)
+        val data = body.toByteArray()
+        val key = segment.key
+        if (key != null && key.url.toString() !in keys) {
+            // Loaded before the recording saw its key (one the player had
+            // cached): held until [onKey] brings it.
+            awaitingKey[url] = data
+            return emptyList()
+        }
+        file(variant, segment, data)
+        return drain()
+    }
+
+    // Deciphers [data] of [segment] if it needs it and queues it in order.
+    private fun file(variant: String, segment: HlsPlaylist.Segment, data: ByteArray) {
+        if (segment.sequence < nextSequence || ready.containsKey(segment.sequence)) return
+        val plain = segment.key?.let { key ->
+            try {
+                HlsPlaylist.decrypt(segment, keys.getValue(key.url.toString()), data)
+            } catch (e: Exception) {
+                return
+            }
+        } ?: data
+        if (nextSequence < 0L) nextSequence = segment.sequence
+        ready[segment.sequence] = Ready(plain, segment.discontinuity, variant)
+    }
+
+    private fun drain(): List<ByteArray> {
+        val out = mutableListOf<ByteArray>()
+        while (ready.isNotEmpty()) {
+            val first = ready.firstKey()
+            if (first != nextSequence) {
+                if (first < nextSequence) {
+                    ready.pollFirstEntry()
+                    continue
+                }
+                if (ready.size <= reorderWindow && !leftWindows(nextSequence)) break
+                lost += first - nextSequence
+                nextSequence = first
+                markNext = true
+            }
+            val next = ready.pollFirstEntry().value
+            if (appended == 0 && next.data.isNotEmpty() && next.data[0] != 0x47.toByte()) {
+                throw UnrecordableStreamException("stream segments aren't MPEG-TS")
+            }
+            if (appended > 0 && (markNext || next.discontinuity || next.variant != lastVariant)) {
+                HlsPlaylist.markDiscontinuity(next.data)
+            }
+            markNext = false
+            lastVariant = next.variant
+            appended++
+            nextSequence++
+            out += next.data
+        }
+        return out
+    }
+
+    // True once no recording playlist still lists [sequence].
+    private fun leftWindows(sequence: Long): Boolean =
+        windows.values.all { window -> (window.firstOrNull()?.sequence ?: Long.MAX_VALUE) > sequence }
+}
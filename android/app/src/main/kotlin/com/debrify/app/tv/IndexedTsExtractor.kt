@@ -0,0 +1,111 @@
+package com.debrify.app.tv
+
+import android.content.Context
+import android.net.Uri
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.extractor.DefaultExtractorsFactory
+import androidx.media3.extractor.Extractor
+import androidx.media3.extractor.ExtractorInput
+import androidx.media3.extractor.ExtractorOutput
+import androidx.media3.extractor.ExtractorsFactory
+import androidx.media3.extractor.ForwardingExtractorInput
+import androidx.media3.extractor.PositionHolder
+import androidx.media3.extractor.SeekMap
+import androidx.media3.extractor.SeekPoint
+import androidx.media3.extractor.TrackOutput
+import androidx.media3.extractor.ts.TsExtractor
+import com.debrify.app.recording.RecordingIndex
+
+/**
+ * A [TsExtractor] that seeks by a recording's sidecar [RecordingIndex]
+ * instead of by binary search.
+ *
+ * Stock TS seeking reads PCRs at guessed offsets until it homes in — a
+ * handful of random reads per seek, each slow on cheap flash or SD. Here the
+ * delegate is shown an input of unknown length, so it never measures the
+ * duration or builds its searcher (it would declare the stream unseekable);
+ * that seek map is swapped for one answered from the index, and a seek
+ * reopens at the indexed keyframe, where the delegate resets its timestamp
+ * adjuster to the keyframe's time.
+ */
+@OptIn(UnstableApi::class)
+class IndexedTsExtractor(
+    private val delegate: TsExtractor,
+    private val index: RecordingIndex,
+) : Extractor {
+
+    private class IndexSeekMap(private val index: RecordingIndex) : SeekMap {
+        override fun isSeekable(): Boolean = true
+
+        override fun getDurationUs(): Long = index.durationMs * 1000
+
+        override fun getSeekPoints(timeUs: Long): SeekMap.SeekPoints {
+            val ms = timeUs / 1000
+            val at = index.pointAtOrBefore(ms) ?: return SeekMap.SeekPoints(SeekPoint.START)
+            val before = SeekPoint(at.mediaMs * 1000, at.offset)
+            val after = index.pointAfter(ms)
+                ?: return SeekMap.SeekPoints(before)
+            return SeekMap.SeekPoints(before, SeekPoint(after.mediaMs * 1000, after.offset))
+        }
+    }
+
+    /** Hides the input's length: see the class doc. */
+    private class UnknownLength(input: ExtractorInput) : ForwardingExtractorInput(input) {
+        override fun getLength(): Long = C.LENGTH_UNSET.toLong()
+    }
+
+    private var input: ExtractorInput? = null
+    private var wrapped: UnknownLength? = null
+
+    override fun sniff(input: ExtractorInput): Boolean = delegate.sniff(input)
+
+    override fun init(output: ExtractorOutput) {
+        delegate.init(object : ExtractorOutput {
+            override fun track(id: Int, type: Int): TrackOutput = output.track(id, type)
+
+            override fun endTracks() = output.endTracks()
+
+            override fun seekMap(seekMap: SeekMap) = output.seekMap(IndexSeekMap(index))
+        })
+    }
+
+    override fun read(input: ExtractorInput, seekPosition: PositionHolder): Int {
+        // The same input object for a whole load; a new one after each seek.
+        val hidden = if (this.input === input) wrapped!! else UnknownLength(input).also {
+            this.input = input
+            wrapped = it
+        }
+        return delegate.read(hidden, seekPosition)
+    }
+
+    override fun seek(position: Long, timeUs: Long) = delegate.seek(position, timeUs)
+
+    override fun release() = delegate.release()
+
+    /**
+     * The default extractors, with the TS one seeking by the recording's
+     * index when a recording writer built one for the URI being opened.
+     */
+    @OptIn(UnstableApi::class)
+    class Factory(private val context: Context) : ExtractorsFactory {
+        private val base = DefaultExtractorsFactory()
+
+        override fun createExtractors(): Array<Extractor> = base.createExtractors()
+
+        override fun createExtractors(
+            uri: Uri,
+            responseHeaders: Map<String, List<String>>,
+        ): Array<Extractor> {
+            val extractors = base.createExtractors(uri, responseHeaders)
+            // Recordings are local: content:// rows or legacy file:// paths.
+            if (uri.scheme != "content" && uri.scheme != "file") return extractors
+            val index = RecordingIndex.load(context, uri) ?: return extractors
+            return Array(extractors.size) { i ->
+                val extractor = extractors[i]
+                if (extractor is TsExtractor) IndexedTsExtractor(extractor, index) else extractor
+            }
+        }
+    }
+}
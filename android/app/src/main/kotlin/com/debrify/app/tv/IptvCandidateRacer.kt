@@ -0,0 +1,254 @@
+package com.debrify.app.tv
+
+import android.os.SystemClock
+import android.util.Log
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Start-up race for a Stremio channel's candidate links: the first [RACED]
+ * are opened at once, each read for [WINDOW_MS] past its first byte, and
+ * ranked by how soon they would hand the player a keyframe's worth of
+ * media ([START_BYTES]) — time to first byte plus that much at the rate the
+ * window measured. The serial ladder then walks the ranking, so a dead or
+ * crawling first link costs one race instead of a stall watchdog each.
+ *
+ * The first bytes must sniff as a container the player can open; an HTML
+ * error page or a JSON "expired" body served with 200 counts as failed.
+ * Losers — and anything still connecting at [DEADLINE_MS] — are closed
+ * before the ranking is delivered, so the winner's own connection never
+ * shares the provider with them. The probe bytes are thrown away: the
+ * player reconnects to the winner.
+ */
+@OptIn(UnstableApi::class)
+class IptvCandidateRacer(private val upstreamFactory: DataSource.Factory) {
+
+    /** What a candidate's first bytes look like. */
+    internal enum class Container { TS, MP4, MATROSKA, FLV, MANIFEST }
+
+    /** One finished probe: [bytes] arrived over [readMs] after the first. */
+    internal class Probe(
+        val index: Int,
+        val ttfbMs: Long,
+        val bytes: Long,
+        val readMs: Long,
+        val container: Container?,
+    )
+
+    /** A race in flight; [cancel] drops it without a ranking. */
+    inner class Race internal constructor(
+        private val urls: List<String>,
+        private val headers: Map<String, String>,
+        private val candidateCount: Int,
+        private val onRanked: (order: List<Int>) -> Unit,
+    ) {
+        private val settled = CountDownLatch(urls.size)
+
+        // Guarded by this.
+        private val sources = arrayOfNulls<DataSource>(urls.size)
+        private val probes = arrayOfNulls<Probe>(urls.size)
+        private val failed = HashSet<Int>()
+        private var decided = false
+
+        fun cancel() {
+            closeAll()
+        }
+
+        internal fun start() {
+            urls.indices.forEach { i ->
+                Thread({ probe(i) }, "iptv-race").apply {
+                    isDaemon = true
+                    start()
+                }
+            }
+            Thread({ decide() }, "iptv-race").apply {
+                isDaemon = true
+                start()
+            }
+        }
+
+        private fun decide() {
+            val startedAt = SystemClock.elapsedRealtime()
+            try {
+                settled.await(DEADLINE_MS, TimeUnit.MILLISECONDS)
+            } catch (_: InterruptedException) {
+                // Decide on what's in.
+            }
+            val (finished, lost) = synchronized(this) {
+                if (decided) return
+                probes.filterNotNull() to failed.toSet()
+            }
+            if (!closeAll()) return
+            val order = order(finished, lost, urls.size, candidateCount)
+            val winner = finished.firstOrNull { it.index == order.first() && it.container != null }
+            val outcome = if (winner == null) {
+                "none usable"
+            } else {
+                val kbps = if (winner.readMs > 0L) winner.bytes * 8 / winner.readMs else 0L
+                "winner #${winner.index + 1} (${winner.container}, " +
+                    "ttfb ${winner.ttfbMs} ms, $kbps kbit/s)"
+            }
+            Log.d(TAG, "raced ${urls.size} in ${SystemClock.elapsedRealtime() - startedAt} ms, $outcome")
+            onRanked(order)
+        }
+
+        // Ends the race, closing every probe still open. False when it had
+        // already ended.
+        private fun closeAll(): Boolean {
+            val open = synchronized(this) {
+                if (decided) return false
+                decided = true
+                sources.filterNotNull().also { sources.fill(null) }
+            }
+            // Unblocks a probe stuck in connect or read; it counts as failed.
+            open.forEach { runCatching { it.close() } }
+            return true
+        }
+
+        private fun ended(): Boolean = synchronized(this) { decided }
+
+        private fun probe(i: Int) {
+            val source = upstreamFactory.createDataSource()
+            try {
+                synchronized(this) {
+                    if (decided) return
+                    sources[i] = source
+                }
+                val openedAt = SystemClock.elapsedRealtime()
+                source.open(
+                    DataSpec.Builder()
+                        .setUri(urls[i])
+                        .setHttpRequestHeaders(headers)
+                        .build()
+                )
+                // A close racing open() may not reach a connection that
+                // didn't exist yet; one opened after the race ended is
+                // closed here instead of being read.
+                if (ended()) return
+                val head = ByteArray(HEAD_BYTES)
+                var headLength = 0
+                val chunk = ByteArray(CHUNK_BYTES)
+                var firstAt = 0L
+                var lastAt = 0L
+                var bytes = 0L
+                while (true) {
+                    if (ended()) return
+                    val read = source.read(chunk, 0, chunk.size)
+                    if (read == C.RESULT_END_OF_INPUT) break
+                    if (read <= 0) continue
+                    val now = SystemClock.elapsedRealtime()
+                    if (headLength == 0) firstAt = now else bytes += read
+                    lastAt = now
+                    val copied = minOf(read, head.size - headLength)
+                    System.arraycopy(chunk, 0, head, headLength, copied)
+                    headLength += copied
+                    if (now - firstAt >= WINDOW_MS || bytes >= MAX_PROBE_BYTES) break
+                }
+                val probe = if (headLength > 0) {
+                    Probe(i, firstAt - openedAt, bytes, lastAt - firstAt, sniff(head, headLength))
+                } else null
+                synchronized(this) {
+                    if (probe != null) probes[i] = probe else failed.add(i)
+                }
+            } catch (_: Exception) {
+                // Refused, timed out, or closed by the race ending.
+                synchronized(this) { failed.add(i) }
+            } finally {
+                synchronized(this) { if (sources[i] === source) sources[i] = null }
+                runCatching { source.close() }
+                settled.countDown()
+            }
+        }
+    }
+
+    /**
+     * Race the first [RACED] of [urls] with [headers] on every request.
+     * [onRanked] gets every index of [urls] once, best first, on a race
+     * thread — unless the race is cancelled first.
+     */
+    fun race(
+        urls: List<String>,
+        headers: Map<String, String>,
+        onRanked: (order: List<Int>) -> Unit,
+    ): Race = Race(urls.take(RACED), headers, urls.size, onRanked).also { it.start() }
+
+    internal companion object {
+        private const val TAG = "IptvCandidateRacer"
+
+        const val RACED = 3
+
+        /** The whole race: what a slow link may cost the start before the
+         *  ranking goes ahead without it. */
+        const val DEADLINE_MS = 3_500L
+
+        /** How long each link is read past its first byte. */
+        const val WINDOW_MS = 1_000L
+
+        /** Roughly a keyframe interval of an HD channel. */
+        const val START_BYTES = 1024L * 1024
+
+        const val HEAD_BYTES = 1024
+        const val CHUNK_BYTES = 64 * 1024
+        const val MAX_PROBE_BYTES = 4L * 1024 * 1024
+
+        private const val TS_PACKET = 188
+        private const val TS_SYNC = 0x47.toByte()
+
+        /** The container [head] starts as, or null when it isn't one. */
+        fun sniff(head: ByteArray, length: Int): Container? {
+            fun at(offset: Int, text: String) = offset + text.length <= length &&
+                text.indices.all { head[offset + it] == text[it].code.toByte() }
+            if (length <= 0) return null
+            // A sync byte every packet, on as many packets as the head holds;
+            // a stream may join mid-packet, so the first can start anywhere.
+            for (offset in 0 until minOf(TS_PACKET, length)) {
+                if (offset > 0 && offset + TS_PACKET >= length) break
+                if ((offset until length step TS_PACKET).all { head[it] == TS_SYNC }) return Container.TS
+            }
+            if (at(4, "ftyp") || at(4, "styp") || at(4, "moof")) return Container.MP4
+            if (length >= 4 && head[0] == 0x1A.toByte() && head[1] == 0x45.toByte() &&
+                head[2] == 0xDF.toByte() && head[3] == 0xA3.toByte()
+            ) {
+                return Container.MATROSKA
+            }
+            if (at(0, "FLV")) return Container.FLV
+            val bom = if (at(0, "\u00EF\u00BB\u00BF")) 3 else 0
+            val text = String(head, bom, length - bom, Charsets.ISO_8859_1).trimStart()
+            if (text.startsWith("#EXTM3U") || text.contains("<MPD")) return Container.MANIFEST
+            return null
+        }
+
+        /**
+         * Estimated time for [probe] to hand the player [START_BYTES]. A
+         * manifest is two round trips — itself, then its first segment —
+         * since its own length says nothing about the media's rate.
+         */
+        fun startMs(probe: Probe): Long = when {
+            probe.container == Container.MANIFEST -> 2 * probe.ttfbMs
+            probe.readMs <= 0L || probe.bytes <= 0L -> probe.ttfbMs
+            else -> probe.ttfbMs + START_BYTES * probe.readMs / probe.bytes
+        }
+
+        /**
+         * All [candidateCount] indices, best first: the usable probes by
+         * [startMs] (ties keep the addon's order), then the raced links
+         * still connecting at the deadline, then the ones not raced, then
+         * the ones that failed — last, not dropped, since a wrong sniff
+         * must not cost a link that plays.
+         */
+        fun order(finished: List<Probe>, failed: Set<Int>, raced: Int, candidateCount: Int): List<Int> {
+            val usable = finished.filter { it.container != null }
+                .sortedWith(compareBy({ startMs(it) }, { it.index }))
+                .map { it.index }
+            val rejected = finished.filter { it.container == null }.map { it.index }
+            val pending = (0 until raced).filter { it !in usable && it !in rejected && it !in failed }
+            return usable + pending + (raced until candidateCount) +
+                (0 until raced).filter { it in failed || it in rejected }
+        }
+    }
+}
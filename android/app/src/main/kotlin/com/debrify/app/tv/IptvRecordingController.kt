@@ -8,22 +8,42 @@ import android.os.Handler
 import android.os.Looper
 import android.os.ParcelFileDescriptor
 import android.provider.MediaStore
-import java.io.BufferedOutputStream
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.exoplayer.hls.HlsManifest
+import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist
+import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist
+import com.debrify.app.recording.HlsPlaylist
+import com.debrify.app.recording.RecordingIndex
+import com.debrify.app.recording.RecordingLibraryIndex
+import com.debrify.app.recording.UnrecordableStreamException
 import java.io.FileOutputStream
-import java.io.IOException
-import java.io.OutputStream
+import java.net.URL
+import java.util.concurrent.Executors
 
 /**
  * Owns the destination and state of a single in-progress IPTV recording on the
  * native (ExoPlayer) TV player.
  *
  * The recording is produced by [RecordingDataSource], which tees the bytes
- * ExoPlayer already reads for playback into the [OutputStream] this controller
- * holds. Only the MAIN stream is captured: [shouldRecord] matches the request's
+ * ExoPlayer already reads for playback into the [TeeWriter] this controller
+ * holds — a ring drained by its own thread, so the loader thread only ever
+ * copies and never waits on storage. Only the MAIN stream is captured: [teeRole] matches the request's
  * URI against the channel URL passed to [start], so playlist/subtitle/key
  * requests that share the same [androidx.media3.datasource.DataSource.Factory]
  * are never written.
  *
+ * When that URL turns out to serve an HLS playlist, the recording follows
+ * it instead: [HlsTee] learns the variant playlists, segments and keys from
+ * the player's own requests, and the segments are appended in playlist
+ * order — still no second connection. A recording started while the
+ * channel already plays is seeded with the player's current [HlsManifest],
+ * and the key the player has cached is fetched once more through the
+ * player's own sources.
+ *
  * Destination mirrors the app's existing storage idiom
  * (MediaStoreDownloadService.createViaMediaStore): a `MediaStore.Downloads`
  * pending row under `Download/Debrify/Recordings`, made visible by clearing
@@ -38,7 +58,8 @@ import java.io.OutputStream
  *
  * Every method is safe to call from ExoPlayer's loader thread and the UI thread;
  * mutation is guarded by [lock] and [active] is volatile for the read-hot
- * [shouldRecord] path.
+ * [teeRole] path. Nothing waits on storage under [lock]: an ended
+ * recording is drained, closed and published on a finisher thread.
  */
 class IptvRecordingController(private val context: Context) {
 
@@ -48,6 +69,17 @@ class IptvRecordingController(private val context: Context) {
             get() = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
     }
 
+    /** What a request's bytes are to the active recording. */
+    enum class TeeRole {
+        /** Not part of the recording. */
+        NONE,
+        /** The recorded URL: a progressive stream, or a playlist wearing its name. */
+        STREAM,
+        PLAYLIST,
+        SEGMENT,
+        KEY,
+    }
+
     private val lock = Any()
 
     @Volatile
@@ -56,10 +88,21 @@ class IptvRecordingController(private val context: Context) {
     /** The channel stream URL currently being recorded (match key). */
     private var targetUri: Uri? = null
 
+    /** Follows [targetUri] as HLS once it has answered with a playlist. */
+    private var hls: HlsTee? = null
+
     /** The MediaStore row (content://) we are writing into. */
     private var mediaStoreUri: Uri? = null
     private var pfd: ParcelFileDescriptor? = null
-    private var output: OutputStream? = null
+    private var writer: TeeWriter? = null
+
+    /** The recording's seek index, fed from the writer thread. */
+    private var index: RecordingIndex.Writer? = null
+
+    /** For the library index when the recording is published. */
+    private var displayName: String? = null
+    private var channelName: String? = null
+    private var startedAtMs = 0L
 
     /**
      * Finished rows whose IS_PENDING could not be cleared. Held — not
@@ -73,13 +116,20 @@ class IptvRecordingController(private val context: Context) {
 
     private val mainHandler = Handler(Looper.getMainLooper())
 
+    /** Finishes ended recordings in order, off the main thread and outside
+     *  [lock] (see endLocked). */
+    private val finisher = Executors.newSingleThreadExecutor { task ->
+        Thread(task, "iptv-rec-finish").apply { isDaemon = true }
+    }
+
     /**
      * Invoked on the MAIN thread when a recording ends by itself — a write
-     * error, never a user stop. Without it the UI would keep offering "Stop"
-     * for a recording that is already over, and the next press would silently
-     * start a second one.
+     * error or an HLS stream whose segments can't make a .ts, never a user
+     * stop — with why, for the user. Without it the UI would keep offering
+     * "Stop" for a recording that is already over, and the next press would
+     * silently start a second one.
      */
-    var onAborted: (() -> Unit)? = null
+    var onAborted: ((reason: String) -> Unit)? = null
 
     /** Bytes written so far for the active recording (0 when idle). */
     var bytesWritten: Long = 0L
@@ -89,10 +139,25 @@ class IptvRecordingController(private val context: Context) {
         get() = active
 
     /**
-     * Begin recording [streamUrl] to a new MediaStore row named [displayName].
-     * Returns true on success. Never throws.
+     * Begin recording [streamUrl] to a new MediaStore row named [displayName];
+     * [programmes] become the recording's chapters, and [channelName] goes
+     * to the library index with the finished file. Returns true on success.
+     * Never throws.
+     *
+     * [manifest] is what the player has loaded of [streamUrl] when it is HLS
+     * already playing; [keySource] makes sources the way the player does
+     * (headers and all, through [RecordingDataSource]) for fetching keys.
      */
-    fun start(streamUrl: String, displayName: String, mimeType: String): Boolean {
+    @OptIn(UnstableApi::class)
+    fun start(
+        streamUrl: String,
+        displayName: String,
+        mimeType: String,
+        programmes: List<RecordingIndex.Programme> = emptyList(),
+        channelName: String? = null,
+        manifest: HlsManifest? = null,
+        keySource: DataSource.Factory? = null,
+    ): Boolean {
         synchronized(lock) {
             if (active) return false
             // Pre-Q: no MediaStore.Downloads class to reference at all. Bail
@@ -113,7 +178,7 @@ class IptvRecordingController(private val context: Context) {
                     ?: return false
                 // Publish each resource to the fields the instant it exists, so
                 // a throw from ANY later step (openFileDescriptor, the stream
-                // constructors) hands cleanupLocked something to close and a
+                // constructors) hands endLocked something to close and a
                 // row to delete. Assigning only after the last step would leak
                 // the pending row and the fd on exactly those failures.
                 mediaStoreUri = uri
@@ -124,48 +189,223 @@ class IptvRecordingController(private val context: Context) {
                 com.debrify.app.recording.TeeUnpublishedStore.add(context, uri)
                 val descriptor = context.contentResolver.openFileDescriptor(uri, "rw")
                 if (descriptor == null) {
-                    cleanupLocked(deleteRow = true)
+                    endLocked(deleteRow = true)
                     return false
                 }
                 pfd = descriptor
-                output = BufferedOutputStream(FileOutputStream(descriptor.fileDescriptor))
+                val built = RecordingIndex.Writer(RecordingIndex.fileFor(context, uri), programmes)
+                index = built
+                writer = newWriterLocked(FileOutputStream(descriptor.fileDescriptor), built)
                 targetUri = Uri.parse(streamUrl)
+                val tee = HlsTee(streamUrl)
+                manifest?.let { seed(tee, it) }
+                hls = tee
                 bytesWritten = 0L
+                this.displayName = displayName
+                this.channelName = channelName
+                startedAtMs = System.currentTimeMillis()
                 active = true
+                val missing = tee.missingKeys()
+                if (keySource != null && missing.isNotEmpty()) fetchKeys(keySource, missing)
                 true
             } catch (e: Exception) {
-                cleanupLocked(deleteRow = true)
+                endLocked(deleteRow = true)
                 false
             }
         }
     }
 
-    /** True when [uri] is the main stream of the active recording. */
-    fun shouldRecord(uri: Uri?): Boolean {
-        if (!active) return false
-        val target = targetUri ?: return false
-        return uri != null && uri.toString() == target.toString()
+    /** Hand [tee] the playlists of [manifest]; caller holds [lock]. */
+    @OptIn(UnstableApi::class)
+    private fun seed(tee: HlsTee, manifest: HlsManifest) {
+        val multivariant = manifest.multivariantPlaylist
+        val media = manifest.mediaPlaylist
+        // A recorded URL that is itself the media playlist gets a stand-in
+        // multivariant playlist without a base URI.
+        val master = if (multivariant.baseUri.isEmpty()) null else masterOf(multivariant)
+        tee.seed(master, media.baseUri, mediaOf(media))
+    }
+
+    @OptIn(UnstableApi::class)
+    private fun masterOf(playlist: HlsMultivariantPlaylist): HlsPlaylist.Master {
+        // Audio groups with renditions of their own, as HlsPlaylist reads them.
+        val externalAudio = playlist.audios.filter { it.url != null }.map { it.groupId }.toSet()
+        return HlsPlaylist.Master(
+            playlist.variants.map { variant ->
+                HlsPlaylist.Variant(
+                    url = URL(variant.url.toString()),
+                    bandwidth = variant.format.bitrate.coerceAtLeast(0).toLong(),
+                    separateAudio = variant.audioGroupId in externalAudio,
+                )
+            }
+        )
+    }
+
+    // The same refusals HlsPlaylist.parse makes, on the player's parse.
+    @OptIn(UnstableApi::class)
+    private fun mediaOf(playlist: HlsMediaPlaylist): HlsPlaylist.Media {
+        val base = URL(playlist.baseUri)
+        var discontinuity = -1
+        val segments = playlist.segments.mapIndexed { i, segment ->
+            if (segment.initializationSegment != null) {
+                throw UnrecordableStreamException("stream uses fMP4 segments")
+            }
+            if (segment.byteRangeLength != C.LENGTH_UNSET.toLong()) {
+                throw UnrecordableStreamException("stream uses byte-range segments")
+            }
+            if (segment.drmInitData != null) throw UnrecordableStreamException("stream is DRM-protected")
+            val sequence = playlist.mediaSequence + i
+            val key = segment.fullSegmentEncryptionKeyUri?.let { uri ->
+                HlsPlaylist.Key(URL(base, uri), segment.encryptionIV?.let { HlsPlaylist.parseIv(it) })
+            }
+            val marked = discontinuity >= 0 && segment.relativeDiscontinuitySequence != discontinuity
+            discontinuity = segment.relativeDiscontinuitySequence
+            HlsPlaylist.Segment(sequence, URL(base, segment.url), key, marked)
+        }
+        return HlsPlaylist.Media(
+            (playlist.targetDurationUs / 1000L).coerceAtLeast(1_000L),
+            segments,
+            playlist.hasEndTag,
+        )
+    }
+
+    /**
+     * Load [urls] through [source] on a thread of their own. Each is a key
+     * the player cached before the recording began; [RecordingDataSource]
+     * hands it to [onKey] like any key the player loads itself.
+     */
+    @OptIn(UnstableApi::class)
+    private fun fetchKeys(source: DataSource.Factory, urls: List<String>) {
+        Thread({
+            val scratch = ByteArray(64)
+            for (url in urls) {
+                val key = source.createDataSource()
+                try {
+                    key.open(DataSpec(Uri.parse(url)))
+                    while (key.read(scratch, 0, scratch.size) != C.RESULT_END_OF_INPUT) {
+                        // The tee keeps what it reads.
+                    }
+                } catch (e: Exception) {
+                    android.util.Log.w("IptvRecording", "key fetch failed: ${e.message}")
+                } finally {
+                    runCatching { key.close() }
+                }
+            }
+        }, "iptv-rec-key").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /** What [uri]'s bytes are to the active recording. */
+    fun teeRole(uri: Uri?): TeeRole {
+        if (!active || uri == null) return TeeRole.NONE
+        val url = uri.toString()
+        synchronized(lock) {
+            val target = targetUri ?: return TeeRole.NONE
+            if (url == target.toString()) return TeeRole.STREAM
+            val tee = hls ?: return TeeRole.NONE
+            return when {
+                tee.isSegment(url) -> TeeRole.SEGMENT
+                tee.isPlaylist(url) -> TeeRole.PLAYLIST
+                tee.isKey(url) -> TeeRole.KEY
+                else -> TeeRole.NONE
+            }
+        }
     }
 
     /** Append freshly-read playback bytes. Aborts the recording on write error. */
     fun write(buffer: ByteArray, offset: Int, length: Int) {
         if (length <= 0) return
         synchronized(lock) {
-            val stream = output ?: return
-            try {
-                stream.write(buffer, offset, length)
-                bytesWritten += length
-            } catch (e: IOException) {
-                // Disk full / row revoked: stop cleanly rather than crash playback.
-                cleanupLocked(deleteRow = false)
-                finalizePendingLocked(mediaStoreUri)
-                // The recording is over even though the user never asked — tell
-                // the UI, which is still showing "Stop".
-                mainHandler.post { onAborted?.invoke() }
-            }
+            writeLocked(buffer, offset, length)
+        }
+    }
+
+    /**
+     * A playlist requested as [uri] finished loading from [resolvedUri]
+     * (after redirects, which relative segment URIs resolve against).
+     */
+    fun onPlaylist(uri: Uri, resolvedUri: Uri, text: String) {
+        synchronized(lock) {
+            val tee = hls ?: return
+            appendLocked { tee.onPlaylist(uri.toString(), URL(resolvedUri.toString()), text) }
+        }
+    }
+
+    /** The AES-128 key requested as [uri] finished loading. */
+    fun onKey(uri: Uri, bytes: ByteArray) {
+        synchronized(lock) {
+            val tee = hls ?: return
+            appendLocked { tee.onKey(uri.toString(), bytes) }
+        }
+    }
+
+    /**
+     * [bytes] of the segment requested as [uri], read from [position];
+     * [complete] when the read reached its end rather than being abandoned.
+     */
+    fun onSegment(uri: Uri, position: Long, bytes: ByteArray, complete: Boolean) {
+        synchronized(lock) {
+            val tee = hls ?: return
+            appendLocked { tee.onSegment(uri.toString(), position, bytes, complete) }
         }
     }
 
+    /** Write what [step] made appendable; a stream [HlsTee] refuses ends the
+     *  recording. Caller holds [lock]. */
+    private fun appendLocked(step: () -> List<ByteArray>) {
+        val ready = try {
+            step()
+        } catch (e: UnrecordableStreamException) {
+            // Nothing written means nothing worth keeping.
+            endLocked(deleteRow = bytesWritten == 0L)
+            mainHandler.post { onAborted?.invoke(e.note) }
+            return
+        } catch (e: Exception) {
+            // A playlist that doesn't parse is the player's problem, not the
+            // recording's: it will load the next one.
+            return
+        }
+        for (data in ready) {
+            if (!writeLocked(data, 0, data.size)) return
+        }
+    }
+
+    /** Queue bytes for the writer thread; false once the recording has
+     *  ended. Caller holds [lock]. */
+    private fun writeLocked(buffer: ByteArray, offset: Int, length: Int): Boolean {
+        val queue = writer ?: return false
+        queue.offer(buffer, offset, length)
+        bytesWritten += length
+        return true
+    }
+
+    /** Caller holds [lock]. */
+    private fun newWriterLocked(sink: FileOutputStream, index: RecordingIndex.Writer): TeeWriter {
+        lateinit var created: TeeWriter
+        created = TeeWriter(sink, onWritten = index::append, onFailed = {
+            // From the writer thread, which an ending joins — so the lock is
+            // taken on main, never here.
+            mainHandler.post {
+                synchronized(lock) {
+                    // A recording that has since ended or been replaced.
+                    if (writer !== created) return@post
+                    // Disk full / row revoked: stop cleanly rather than crash
+                    // playback.
+                    endLocked(deleteRow = false)
+                }
+                // The recording is over even though the user never asked —
+                // tell the UI, which is still showing "Stop".
+                onAborted?.invoke("couldn't keep writing to storage")
+            }
+        })
+        return created
+    }
+
+    /** The active recording's writer queue depth, latency and gaps. */
+    internal fun writerStats(): TeeWriter.Stats? = synchronized(lock) { writer?.stats() }
+
     /** What [stop] did: the row it wrote (null when nothing was recording),
      *  and whether that row could actually be made user-visible. */
     data class StopResult(val uri: Uri?, val published: Boolean) {
@@ -173,17 +413,20 @@ class IptvRecordingController(private val context: Context) {
     }
 
     /**
-     * Finish the recording and publish it (clear IS_PENDING). Callers must
-     * read [StopResult.published] before telling the user it was saved —
+     * Finish the recording and publish it (clear IS_PENDING). The recording
+     * is over when this returns; draining the writer to storage and
+     * publishing happen after, off the main thread, and [onStopped] gets
+     * the outcome on the main thread. Callers must read
+     * [StopResult.published] before telling the user it was saved —
      * publishing can fail, and an unpublished row is invisible in Downloads.
      */
-    fun stop(): StopResult {
+    fun stop(onStopped: (StopResult) -> Unit = {}) {
         synchronized(lock) {
-            if (!active && mediaStoreUri == null) return StopResult(null, false)
-            val uri = mediaStoreUri
-            cleanupLocked(deleteRow = false)
-            val published = finalizePendingLocked(uri)
-            return StopResult(uri, published)
+            if (!active) {
+                mainHandler.post { onStopped(StopResult(null, false)) }
+                return
+            }
+            endLocked(deleteRow = false, onEnded = onStopped)
         }
     }
 
@@ -222,32 +465,66 @@ class IptvRecordingController(private val context: Context) {
     }
 
     /**
-     * Abort the recording and delete the (unusable) partial row. Used when the
-     * stream turns out to be HLS after playback started, or on fatal error.
+     * Abort the recording and delete the (unusable) partial row. Used when
+     * progressive bytes were already written before the stream turned out to
+     * be HLS, or on fatal error.
      */
     fun abortAndDelete() {
         synchronized(lock) {
-            cleanupLocked(deleteRow = true)
+            endLocked(deleteRow = true)
         }
     }
 
-    /** Close streams and reset state. Caller holds [lock]. */
-    private fun cleanupLocked(deleteRow: Boolean) {
+    /**
+     * End the recording: its state is detached and reset here, under
+     * [lock], so the loader thread's next tee finds it idle at once. The
+     * rest runs on [finisher], outside the lock — draining the writer (up
+     * to its whole spill, to slow storage), closing the index and the row,
+     * then deleting the row ([deleteRow]) or publishing it. [onEnded] gets
+     * the outcome on the main thread. Caller holds [lock].
+     */
+    private fun endLocked(deleteRow: Boolean, onEnded: ((StopResult) -> Unit)? = null) {
+        val queue = writer
+        val built = index
+        val descriptor = pfd
+        val uri = mediaStoreUri
+        val name = displayName
+        val channel = channelName
+        val bytes = bytesWritten
+        val durationMs = System.currentTimeMillis() - startedAtMs
         active = false
-        runCatching { output?.flush() }
-        runCatching { output?.close() }
-        runCatching { pfd?.close() }
-        output = null
+        writer = null
+        index = null
         pfd = null
+        mediaStoreUri = null
         targetUri = null
+        hls = null
         bytesWritten = 0L
-        if (deleteRow) {
-            mediaStoreUri?.let { uri ->
-                runCatching { context.contentResolver.delete(uri, null, null) }
-                // A deleted row must not be "recovered" by the app-start sweep.
-                com.debrify.app.recording.TeeUnpublishedStore.remove(context, uri)
+        displayName = null
+        channelName = null
+        finisher.execute {
+            queue?.let {
+                // A deleted row needs none of what is still queued.
+                runCatching { it.close(drain = !deleteRow) }
+                android.util.Log.i("IptvRecording", "tee writer: ${it.stats()}")
             }
-            mediaStoreUri = null
+            // After the writer's thread is done with it.
+            built?.let { if (deleteRow) it.discard() else it.close() }
+            runCatching { descriptor?.close() }
+            val published = when {
+                uri == null -> false
+                deleteRow -> {
+                    runCatching { context.contentResolver.delete(uri, null, null) }
+                    // A deleted row must not be "recovered" by the app-start sweep.
+                    com.debrify.app.recording.TeeUnpublishedStore.remove(context, uri)
+                    false
+                }
+                else -> finalizePending(uri)
+            }
+            if (published && uri != null && name != null) {
+                RecordingLibraryIndex.recorded(context, uri, name, bytes, durationMs, channel)
+            }
+            onEnded?.let { callback -> mainHandler.post { callback(StopResult(uri, published)) } }
         }
     }
 
@@ -265,19 +542,19 @@ class IptvRecordingController(private val context: Context) {
      * list dies with the activity and finalization often happens in onDestroy
      * itself; the app-start sweep is the retry path that survives that.
      */
-    private fun finalizePendingLocked(uri: Uri?): Boolean {
-        if (uri == null) return false
+    private fun finalizePending(uri: Uri): Boolean {
         val done = ContentValues().apply { put(MediaStore.Downloads.IS_PENDING, 0) }
         val published = runCatching {
             context.contentResolver.update(uri, done, null, null)
         }.getOrDefault(0) > 0
-        if (uri == mediaStoreUri) mediaStoreUri = null
-        if (published) {
-            unpublishedUris.remove(uri)
-            com.debrify.app.recording.TeeUnpublishedStore.remove(context, uri)
-        } else {
-            if (!unpublishedUris.contains(uri)) unpublishedUris.add(uri)
-            com.debrify.app.recording.TeeUnpublishedStore.add(context, uri)
+        synchronized(lock) {
+            if (published) {
+                unpublishedUris.remove(uri)
+                com.debrify.app.recording.TeeUnpublishedStore.remove(context, uri)
+            } else {
+                if (!unpublishedUris.contains(uri)) unpublishedUris.add(uri)
+                com.debrify.app.recording.TeeUnpublishedStore.add(context, uri)
+            }
         }
         return published
     }
@@ -0,0 +1,160 @@
+package com.debrify.app.tv
+
+import android.net.Uri
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import java.io.File
+
+/**
+ * Pause and rewind for a live IPTV channel: while a session is running, a
+ * spooler thread reads the channel into a [TimeshiftBuffer] on disk, and the
+ * player reads from that file through [TimeshiftDataSource] instead of from
+ * the network. Pausing only stops the player; the spool keeps going. A seek
+ * inside the window is a reopen at an indexed keyframe — the file answers
+ * it, never the provider.
+ *
+ * The spooler opens the channel through the same factory the player would
+ * have used — channel headers, tee recording and all — so there is still a
+ * single connection, and a tee recording keeps the bytes the network
+ * delivered even while playback is paused or rewound.
+ *
+ * Progressive MPEG-TS only: HLS segments come and go with the playlist and
+ * have no single byte stream to spool. One session at a time, for the
+ * channel on screen; [start] for another URL ends the previous one.
+ */
+@OptIn(UnstableApi::class)
+class IptvTimeshift(private val dir: File) {
+
+    companion object {
+        /** Never more than this, however much space is free. */
+        private const val MAX_WINDOW_BYTES = 2L * 1024 * 1024 * 1024
+        /** Below this there is nothing worth rewinding into. */
+        private const val MIN_WINDOW_BYTES = 64L * 1024 * 1024
+        /** Of the volume's free space, the share a window may take. */
+        private const val FREE_SPACE_SHARE = 4
+        private const val RECONNECT_MIN_MS = 500L
+        private const val RECONNECT_MAX_MS = 5_000L
+    }
+
+    internal class Session(
+        val url: String,
+        val buffer: TimeshiftBuffer,
+        private val upstreamFactory: DataSource.Factory,
+    ) {
+        @Volatile var stopped = false
+
+        /** Where the next reader open starts: a seek's keyframe, or live. */
+        @Volatile var pendingStart: TimeshiftBuffer.Entry? = null
+
+        /** Media time the open being played started at; the playhead is this
+         *  plus the player's position. */
+        @Volatile var playingFromMs = 0L
+
+        private val thread = Thread({ spool() }, "iptv-timeshift").apply {
+            isDaemon = true
+            start()
+        }
+
+        private fun spool() {
+            val chunk = ByteArray(256 * 1024)
+            var backoff = RECONNECT_MIN_MS
+            while (!stopped) {
+                val source = upstreamFactory.createDataSource()
+                try {
+                    source.open(DataSpec(Uri.parse(url)))
+                    while (!stopped) {
+                        val n = source.read(chunk, 0, chunk.size)
+                        if (n == C.RESULT_END_OF_INPUT) break
+                        if (n > 0) {
+                            buffer.append(chunk, 0, n)
+                            backoff = RECONNECT_MIN_MS
+                        }
+                    }
+                } catch (e: Exception) {
+                    if (stopped) break
+                    android.util.Log.d("IptvTimeshift", "spool dropped: ${e.message}")
+                } finally {
+                    try { source.close() } catch (_: Exception) {}
+                }
+                // The player keeps playing from the window meanwhile; its own
+                // stall handling only sees this if the window runs dry.
+                try { Thread.sleep(backoff) } catch (_: InterruptedException) { break }
+                backoff = minOf(backoff * 2, RECONNECT_MAX_MS)
+            }
+        }
+
+        fun stop() {
+            stopped = true
+            thread.interrupt()
+            buffer.close()
+        }
+    }
+
+    @Volatile
+    private var session: Session? = null
+
+    val isActive: Boolean get() = session != null
+
+    /**
+     * Spool [url] through [upstreamFactory], unless it already is. Returns
+     * false when the cache volume can't hold a useful window.
+     */
+    fun start(url: String, upstreamFactory: DataSource.Factory): Boolean {
+        session?.let { if (it.url == url && !it.stopped) return true }
+        stop()
+        dir.mkdirs()
+        // A previous process's window is dead weight.
+        dir.listFiles()?.forEach { it.delete() }
+        val window = minOf(MAX_WINDOW_BYTES, dir.usableSpace / FREE_SPACE_SHARE)
+        if (window < MIN_WINDOW_BYTES) return false
+        return try {
+            val buffer = TimeshiftBuffer(File(dir, "live.ts"), window)
+            session = Session(url, buffer, upstreamFactory)
+            true
+        } catch (e: Exception) {
+            false
+        }
+    }
+
+    fun stop() {
+        val ended = session ?: return
+        session = null
+        ended.stop()
+    }
+
+    internal fun sessionFor(uri: Uri): Session? = session?.takeIf { it.url == uri.toString() }
+
+    /**
+     * Move the playhead by [deltaMs] (negative rewinds) from [playerPositionMs],
+     * the player's position in the current open. Returns how far behind
+     * live the new start is, or null when there is no window to move in.
+     * The move takes effect when the caller re-prepares the item: the next
+     * open starts at the chosen keyframe.
+     */
+    fun seekBy(deltaMs: Long, playerPositionMs: Long): Long? {
+        val current = session ?: return null
+        val live = current.buffer.latestEntry() ?: return null
+        val oldest = current.buffer.oldestEntry() ?: return null
+        val target = (current.playingFromMs + playerPositionMs + deltaMs)
+            .coerceIn(oldest.mediaMs, live.mediaMs)
+        val entry = current.buffer.entryAtOrBefore(target) ?: return null
+        current.pendingStart = entry
+        return live.mediaMs - entry.mediaMs
+    }
+
+    /** Return to the live edge at the next open. */
+    fun goLive() {
+        session?.pendingStart = null
+    }
+
+    /** How far behind live the playhead is, or 0 without a session. */
+    fun behindLiveMs(playerPositionMs: Long): Long {
+        val current = session ?: return 0L
+        val live = current.buffer.liveMediaMs
+        if (live < 0) return 0L
+        return (live - current.playingFromMs - playerPositionMs).coerceAtLeast(0L)
+    }
+}
@@ -44,6 +44,14 @@ class IptvTuneDiagnostics {
 
     private var tuneStartRealtime = 0L
     private var firstFrameLogged = false
+    private var warmStart = false
+
+    // Live time-to-first-frame over the session, by how the tune started
+    // (see [onWarmStart]): the zap accelerator's before and after.
+    private var warmFrames = 0
+    private var warmTtffTotalMs = 0L
+    private var coldFrames = 0
+    private var coldTtffTotalMs = 0L
     private var readyLogged = false
 
     private var rebufferCount = 0
@@ -73,6 +81,7 @@ class IptvTuneDiagnostics {
         }
         tuneStartRealtime = SystemClock.elapsedRealtime()
         firstFrameLogged = false
+        warmStart = false
         readyLogged = false
         rebufferCount = 0
         inRebuffer = false
@@ -108,11 +117,36 @@ class IptvTuneDiagnostics {
         }
     }
 
+    /** The tune opened on an [IptvZapWarmer] lane: [bytes] already
+     *  buffered, from a keyframe when [aligned]. */
+    fun onWarmStart(bytes: Int, aligned: Boolean) {
+        if (!active) return
+        warmStart = true
+        line("warm-start", "bytes=$bytes aligned=$aligned")
+    }
+
     /** First decoded frame on screen — the number zap speed is judged by. */
     fun onFirstFrame() {
         if (!active || firstFrameLogged) return
         firstFrameLogged = true
-        line("first-frame", "ttff=${sinceTune()}ms")
+        val ttff = sinceTune()
+        if (!live) {
+            line("first-frame", "ttff=${ttff}ms")
+            return
+        }
+        if (warmStart) {
+            warmFrames++
+            warmTtffTotalMs += ttff
+        } else {
+            coldFrames++
+            coldTtffTotalMs += ttff
+        }
+        line(
+            "first-frame",
+            "ttff=${ttff}ms start=${if (warmStart) "warm" else "cold"} " +
+                "avgWarm=${average(warmTtffTotalMs, warmFrames)}/$warmFrames " +
+                "avgCold=${average(coldTtffTotalMs, coldFrames)}/$coldFrames"
+        )
     }
 
     fun onBufferingStart(positionMs: Long) {
@@ -191,6 +225,9 @@ class IptvTuneDiagnostics {
 
     private fun sinceTune(): Long = SystemClock.elapsedRealtime() - tuneStartRealtime
 
+    private fun average(totalMs: Long, count: Int): String =
+        if (count == 0) "-" else "${totalMs / count}ms"
+
     private fun advanceAge(): String =
         "advanceAge=${SystemClock.elapsedRealtime() - lastAdvanceRealtime}ms"
 
@@ -0,0 +1,237 @@
+package com.debrify.app.tv
+
+import android.net.Uri
+import android.util.Log
+import androidx.annotation.OptIn
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import com.debrify.app.recording.PrerollBuffer
+import com.debrify.app.recording.SharedUpstream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Zap accelerator for live IPTV: the channels either side of the one on
+ * screen are kept connected and buffered from their newest keyframe, so a
+ * zap to one of them starts on bytes already here instead of a connect
+ * (DNS, TCP/TLS, redirects) and a wait for the next keyframe.
+ *
+ * Each neighbour is a lane: a [SharedUpstream] subscription — so a lane and
+ * an engine recording of the same channel share one connection — drained
+ * by its own thread into a [PrerollBuffer]. The player's open of that
+ * channel [claim]s the lane whole: the buffered GOP first, then the same
+ * subscription, with no byte lost or repeated between the two.
+ *
+ * Every lane is a provider connection, so this runs only when the user
+ * turned it on. A live push can't be slowed without falling behind the
+ * live edge, so the bandwidth cap is the activity's: lanes start only once
+ * the playing channel has settled, and all of them go the moment it
+ * rebuffers. Progressive channels only (the hub takes no playlist
+ * joiners). [warm], [retain] and [stop] come from the main thread, [claim]
+ * from the player's loader thread.
+ */
+@OptIn(UnstableApi::class)
+class IptvZapWarmer(private val upstreamFactory: DataSource.Factory) {
+
+    private companion object {
+        const val TAG = "IptvZapWarmer"
+
+        /** A GOP of a high-bitrate HD channel, with room to spare. */
+        const val PREROLL_BYTES = 6 * 1024 * 1024
+
+        /** The lane's share of the hub, drained every [POLL_MS]. */
+        const val LANE_BUFFER_BYTES = 2 * 1024 * 1024
+        const val POLL_MS = 40L
+        const val CHUNK_BYTES = 64 * 1024
+    }
+
+    /** A channel to keep warm: its stream URL and the headers it opens with. */
+    class Target(val url: String, val headers: Map<String, String>)
+
+    // By URL; guarded by this.
+    private val lanes = HashMap<String, Lane>()
+
+    /** A claim handed the player warm bytes: the URL, how many, and whether
+     *  they start on a keyframe. Called on the loader thread. */
+    @Volatile var onClaimed: ((url: String, bytes: Int, aligned: Boolean) -> Unit)? = null
+
+    /** Keep exactly [targets] warm: new ones connect, the rest disconnect. */
+    fun warm(targets: List<Target>) {
+        val wanted = targets.mapTo(HashSet()) { it.url }
+        val dropped = ArrayList<Lane>()
+        synchronized(this) {
+            val iterator = lanes.values.iterator()
+            while (iterator.hasNext()) {
+                val lane = iterator.next()
+                if (lane.target.url !in wanted) {
+                    dropped.add(lane)
+                    iterator.remove()
+                }
+            }
+            for (target in targets) {
+                if (target.url !in lanes) lanes[target.url] = Lane(target).also { it.start() }
+            }
+        }
+        dropped.forEach { it.stop() }
+    }
+
+    /** A tune to [url] began: only its lane (if any) is still of use. */
+    fun retain(url: String) {
+        val kept = synchronized(this) { lanes[url]?.target }
+        warm(listOfNotNull(kept))
+    }
+
+    fun stop() = warm(emptyList())
+
+    val laneCount: Int get() = synchronized(this) { lanes.size }
+
+    /** The warm stream for [uri], or null when no lane has one ready. */
+    fun claim(uri: Uri): InputStream? {
+        val lane = synchronized(this) { lanes.remove(uri.toString()) } ?: return null
+        val start = lane.handOff() ?: return null
+        onClaimed?.invoke(lane.target.url, start.headBytes, start.aligned)
+        return start
+    }
+
+    private inner class Lane(val target: Target) {
+        private val preroll = PrerollBuffer(PREROLL_BYTES)
+
+        // Guarded by this lane.
+        private var subscription: SharedUpstream.Subscription? = null
+        private var done = false
+
+        fun start() {
+            Thread({ run() }, "iptv-zap-warm").apply {
+                isDaemon = true
+                priority = Thread.MIN_PRIORITY
+                start()
+            }
+        }
+
+        fun stop() {
+            val live = synchronized(this) {
+                done = true
+                subscription.also { subscription = null }
+            }
+            live?.close()
+        }
+
+        /** The buffered GOP and the live subscription behind it, or null
+         *  while still connecting (the player then connects itself, joining
+         *  this lane's hub if it got that far). */
+        fun handOff(): WarmStart? = synchronized(this) {
+            done = true
+            val live = subscription ?: return null
+            subscription = null
+            val aligned = preroll.aligned
+            val head = ByteArrayOutputStream(preroll.bytes)
+            preroll.drainTo { data, offset, length -> head.write(data, offset, length) }
+            WarmStart(head.toByteArray(), aligned, live)
+        }
+
+        private fun run() {
+            val live = try {
+                SharedUpstream.subscribe(
+                    // The key the player and the engine build for this
+                    // channel, so either joins the lane's connection.
+                    SharedUpstream.Key.of(target.url, target.headers),
+                    LANE_BUFFER_BYTES,
+                ) { open() }
+            } catch (e: Exception) {
+                Log.d(TAG, "warm connect failed: ${e.message}")
+                null
+            } ?: return finish()
+            synchronized(this) {
+                if (done) {
+                    live.close()
+                    return
+                }
+                subscription = live
+            }
+            val chunk = ByteArray(CHUNK_BYTES)
+            while (true) {
+                // Only what's already buffered, so a claim never waits on a
+                // read in flight and takes the stream at a chunk boundary.
+                val read = synchronized(this) {
+                    if (done) return
+                    try {
+                        val available = live.available()
+                        when {
+                            available > 0 -> live.read(chunk, 0, minOf(available, chunk.size))
+                                .also { if (it > 0) preroll.feed(chunk, 0, it) }
+                            live.ended -> -1
+                            else -> 0
+                        }
+                    } catch (_: IOException) {
+                        -1
+                    }
+                }
+                if (read < 0) break
+                if (read == 0) {
+                    try {
+                        Thread.sleep(POLL_MS)
+                    } catch (_: InterruptedException) {
+                        break
+                    }
+                }
+            }
+            finish()
+        }
+
+        // The channel ended or failed while warm: drop the lane, so a zap
+        // to it connects the usual way.
+        private fun finish() {
+            stop()
+            synchronized(this@IptvZapWarmer) {
+                if (lanes[target.url] === this) lanes.remove(target.url)
+            }
+        }
+
+        // Never abandons a connect it started: a player that zapped here
+        // meanwhile may already have joined the hub behind it.
+        private fun open(): SharedUpstream.Upstream {
+            val source = upstreamFactory.createDataSource()
+            source.open(
+                DataSpec.Builder()
+                    .setUri(target.url)
+                    .setHttpRequestHeaders(target.headers)
+                    .build()
+            )
+            return object : SharedUpstream.Upstream {
+                override fun read(buffer: ByteArray, offset: Int, length: Int): Int =
+                    source.read(buffer, offset, length)
+
+                override fun close() = source.close()
+            }
+        }
+    }
+
+    private class WarmStart(
+        private val head: ByteArray,
+        val aligned: Boolean,
+        private val live: SharedUpstream.Subscription,
+    ) : InputStream() {
+        private var at = 0
+
+        val headBytes: Int get() = head.size
+
+        override fun read(): Int {
+            val one = ByteArray(1)
+            return if (read(one, 0, 1) < 0) -1 else one[0].toInt() and 0xff
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (at < head.size) {
+                val n = minOf(len, head.size - at)
+                System.arraycopy(head, at, b, off, n)
+                at += n
+                return n
+            }
+            return live.read(b, off, len)
+        }
+
+        override fun close() = live.close()
+    }
+}
@@ -0,0 +1,201 @@
+package com.debrify.app.tv
+
+import android.app.ActivityManager
+import android.content.Context
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.Timeline
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.DefaultLoadControl
+import androidx.media3.exoplayer.LoadControl
+import androidx.media3.exoplayer.source.MediaSource
+import androidx.media3.exoplayer.upstream.Allocation
+import androidx.media3.exoplayer.upstream.Allocator
+
+/**
+ * The process's media buffer: one pool of fixed [SEGMENT_BYTES] segments
+ * every player's sample queues allocate from, under one hard budget — a
+ * quarter of the large-heap class, the same share setupPlayer's heap preset
+ * was already clamped to (see its Mecool KM2+ note).
+ *
+ * Segments are still `byte[]` (media3's [Allocation] wraps one, so the
+ * buffer can't live off-heap), but they are allocated once and handed from
+ * player to player and seek to seek instead of being dropped by each
+ * player's DefaultAllocator and re-allocated by the next: the heap sees a
+ * flat plateau rather than tens of MB of garbage per seek. Free segments are
+ * kept only while they fit the budget next to those in use, and
+ * [trimIdle] gives them all back once the players are gone.
+ *
+ * [current] and [peak] are the in-use bytes, logged at each [trimIdle].
+ */
+@OptIn(UnstableApi::class)
+class MediaBufferPool internal constructor(val budgetBytes: Long) {
+
+    private val budgetSegments = (budgetBytes / SEGMENT_BYTES).coerceAtLeast(1L)
+    private val free = ArrayDeque<Allocation>()
+    private var inUse = 0L
+    private var peakInUse = 0L
+
+    /** Bytes held by sample queues right now. */
+    val current: Long get() = synchronized(this) { inUse * SEGMENT_BYTES }
+
+    /** The most [current] has been since the last [trimIdle]. */
+    val peak: Long get() = synchronized(this) { peakInUse * SEGMENT_BYTES }
+
+    /** Bytes held for reuse, not by any player. */
+    val retained: Long get() = synchronized(this) { free.size.toLong() * SEGMENT_BYTES }
+
+    /** Whether loading more stays inside the budget. */
+    val hasRoom: Boolean get() = synchronized(this) { inUse < budgetSegments }
+
+    internal fun take(): Allocation = synchronized(this) {
+        inUse++
+        if (inUse > peakInUse) peakInUse = inUse
+        free.removeLastOrNull()
+    } ?: Allocation(ByteArray(SEGMENT_BYTES), 0)
+
+    internal fun give(allocation: Allocation) {
+        synchronized(this) {
+            inUse--
+            if (inUse + free.size < budgetSegments) free.addLast(allocation)
+        }
+    }
+
+    /** Drop the free segments; call once a player is released. */
+    fun trimIdle() {
+        val (peakBytes, dropped) = synchronized(this) {
+            val stats = peakInUse * SEGMENT_BYTES to free.size.toLong() * SEGMENT_BYTES
+            free.clear()
+            peakInUse = inUse
+            stats
+        }
+        if (peakBytes > 0L) {
+            android.util.Log.i(
+                TAG,
+                "peak ${peakBytes shr 20} MiB of ${budgetBytes shr 20} MiB, " +
+                    "freed ${dropped shr 20} MiB, ${current shr 20} MiB still in use",
+            )
+        }
+    }
+
+    /**
+     * One player's view of the pool. Counts only its own segments, which is
+     * what its load control measures against its byte target.
+     */
+    inner class PlayerAllocator : Allocator {
+        private var held = 0
+
+        override fun allocate(): Allocation {
+            synchronized(this) { held++ }
+            return take()
+        }
+
+        override fun release(allocation: Allocation) {
+            synchronized(this) { held-- }
+            give(allocation)
+        }
+
+        override fun release(allocationNode: Allocator.AllocationNode?) {
+            var node = allocationNode
+            while (node != null) {
+                release(node.allocation)
+                node = node.next()
+            }
+        }
+
+        // The pool decides what to keep.
+        override fun trim() = Unit
+
+        override fun getTotalBytesAllocated(): Int =
+            synchronized(this) { held } * SEGMENT_BYTES
+
+        override fun getIndividualAllocationLength(): Int = SEGMENT_BYTES
+    }
+
+    /**
+     * Stock load control over a [PlayerAllocator]: the delegate keeps the
+     * time rules, this adds the byte ones — [targetBytes] for the player
+     * (bypassed below min buffer when [prioritizeTime], as stock does) and
+     * the pool's budget for all of them. Neither refuses a player that
+     * hasn't buffered enough to start, so a busy pool slows a newcomer
+     * rather than wedging it; that overshoot is one load's worth.
+     */
+    inner class PooledLoadControl private constructor(
+        private val delegate: DefaultLoadControl,
+        private val minBufferUs: Long,
+        private val bufferForPlaybackUs: Long,
+        targetBytes: Long,
+        private val prioritizeTime: Boolean,
+    ) : LoadControl by delegate {
+        constructor(
+            minBufferMs: Int,
+            maxBufferMs: Int,
+            bufferForPlaybackMs: Int,
+            bufferForPlaybackAfterRebufferMs: Int,
+            targetBytes: Long = budgetBytes,
+            prioritizeTime: Boolean = false,
+        ) : this(
+            DefaultLoadControl.Builder()
+                .setBufferDurationsMs(
+                    minBufferMs,
+                    maxBufferMs,
+                    bufferForPlaybackMs,
+                    bufferForPlaybackAfterRebufferMs,
+                )
+                // Its own allocator stays empty, so only time stops it.
+                .setPrioritizeTimeOverSizeThresholds(true)
+                .build(),
+            minBufferMs * 1000L,
+            bufferForPlaybackMs * 1000L,
+            targetBytes,
+            prioritizeTime,
+        )
+
+        private val allocator = PlayerAllocator()
+        private val targetBytes = minOf(targetBytes, budgetBytes)
+
+        override fun getAllocator(): Allocator = allocator
+
+        override fun shouldContinueLoading(parameters: LoadControl.Parameters): Boolean {
+            if (!delegate.shouldContinueLoading(parameters)) return false
+            val bufferedUs = parameters.bufferedDurationUs
+            if (bufferedUs < bufferForPlaybackUs) return true
+            if (!hasRoom) return false
+            return (prioritizeTime && bufferedUs < minBufferUs) ||
+                allocator.totalBytesAllocated < targetBytes
+        }
+
+        // A preload (see NextItemPreloader) shares this control with the
+        // player: it waits while the player loads, as stock has it, and
+        // stays inside the same byte target and budget.
+        override fun shouldContinuePreloading(
+            timeline: Timeline,
+            mediaPeriodId: MediaSource.MediaPeriodId,
+            bufferedDurationUs: Long,
+        ): Boolean =
+            delegate.shouldContinuePreloading(timeline, mediaPeriodId, bufferedDurationUs) &&
+                hasRoom && allocator.totalBytesAllocated < targetBytes
+    }
+
+    companion object {
+        private const val TAG = "MediaBufferPool"
+
+        /** media3's own segment size, so extractors see the usual reads. */
+        const val SEGMENT_BYTES = C.DEFAULT_BUFFER_SEGMENT_SIZE
+
+        @Volatile private var pool: MediaBufferPool? = null
+
+        /** The process's pool, budgeted from the device's large-heap class. */
+        fun get(context: Context): MediaBufferPool {
+            pool?.let { return it }
+            synchronized(this) {
+                pool?.let { return it }
+                val activityManager =
+                    context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
+                // Long math: largeMemoryClass is an Int MB count.
+                val budget = activityManager.largeMemoryClass.toLong() * 1024L * 1024L / 4L
+                return MediaBufferPool(budget).also { pool = it }
+            }
+        }
+    }
+}
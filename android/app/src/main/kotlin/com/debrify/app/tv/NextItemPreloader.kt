@@ -0,0 +1,99 @@
+package com.debrify.app.tv
+
+import android.content.Context
+import android.os.Looper
+import androidx.annotation.OptIn
+import androidx.media3.common.MediaItem
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.LoadControl
+import androidx.media3.exoplayer.RenderersFactory
+import androidx.media3.exoplayer.source.MediaSource
+import androidx.media3.exoplayer.source.preload.DefaultPreloadManager
+import androidx.media3.exoplayer.trackselection.DefaultTrackSelector
+
+/**
+ * The item that plays next, prepared and buffered [aheadMs] from its start
+ * while the current one plays, so the switch starts on media already in
+ * memory instead of behind the loading screen.
+ *
+ * A media3 [DefaultPreloadManager] holding one item at a time, built from
+ * the player's own media source factory, renderers and track selection
+ * parameters. It runs on the player's playback looper, because a preloaded
+ * source only plays on the looper it was prepared on. It also shares the
+ * player's [MediaBufferPool.PooledLoadControl]: the preload draws on the
+ * same budget, and waits while the player itself is loading.
+ *
+ * [preload] queues an item, [take] hands its source to the player when that
+ * item starts, and [started] retires what the player has moved on from.
+ * Main thread only.
+ */
+@OptIn(UnstableApi::class)
+class NextItemPreloader(
+    context: Context,
+    mediaSourceFactory: MediaSource.Factory,
+    renderersFactory: RenderersFactory,
+    trackSelectorParameters: DefaultTrackSelector.Parameters,
+    loadControl: LoadControl,
+    playbackLooper: Looper,
+    private val aheadMs: Long,
+) {
+    // The ranking is the item's playlist index; only [nextIndex] loads.
+    // Read by the manager on the playback looper.
+    @Volatile private var nextIndex = -1
+    private var next: MediaItem? = null
+
+    // Handed to the player by [take]. It stays in the manager until the
+    // player has moved on from it, since removing a source releases it.
+    private var playing: MediaItem? = null
+    private val retired = ArrayList<MediaItem>()
+
+    private val manager = DefaultPreloadManager.Builder(context) { rank: Int ->
+        if (rank == nextIndex) DefaultPreloadManager.PreloadStatus.specifiedRangeLoaded(aheadMs) else null
+    }
+        .setMediaSourceFactory(mediaSourceFactory)
+        .setRenderersFactory(renderersFactory)
+        .setTrackSelectorFactory { ctx -> DefaultTrackSelector(ctx, trackSelectorParameters) }
+        .setLoadControl(loadControl)
+        .setPreloadLooper(playbackLooper)
+        .build()
+
+    /** Start loading [item], playlist entry [index], replacing any other
+     *  item still waiting. */
+    fun preload(index: Int, item: MediaItem) {
+        if (next == item) return
+        next?.let { manager.remove(it) }
+        next = item
+        nextIndex = index
+        manager.add(item, index)
+        manager.invalidate()
+    }
+
+    /** [item]'s preloaded source, if it's the one [preload] was given. */
+    fun take(item: MediaItem): MediaSource? {
+        val waiting = next
+        next = null
+        nextIndex = -1
+        playing?.let { retired.add(it) }
+        playing = null
+        if (waiting == null) return null
+        if (waiting != item) {
+            retired.add(waiting)
+            return null
+        }
+        return manager.getMediaSource(item)?.also { playing = item }
+    }
+
+    /** The player has its new media: let go of what it played before. */
+    fun started() {
+        retired.forEach { manager.remove(it) }
+        retired.clear()
+        manager.invalidate()
+    }
+
+    fun release() {
+        next = null
+        playing = null
+        retired.clear()
+        manager.release()
+    }
+}
@@ -0,0 +1,167 @@
+package com.debrify.app.tv
+
+import android.content.Context
+import android.net.Uri
+import android.os.ParcelFileDescriptor
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import com.debrify.app.download.PartialDownloads
+import java.io.FileInputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Plays a file that MediaStoreDownloadService is still downloading from its
+ * destination (MediaStore row or SAF document) instead of streaming it again
+ * from the CDN.
+ *
+ * Ranges already on disk are read straight from the file, so start and seeks
+ * inside downloaded regions are instant. At a range not written yet, a read
+ * asks the download to fetch it next ([PartialDownloads.Partial.prioritize]
+ * — a segmented download points a connection there) and waits up to
+ * [WAIT_MS]. If the bytes still aren't there — a single stream far behind the
+ * seek, a paused or failed task, a file that went away — the rest of this
+ * open is fetched from [upstream], starting at the first byte not served
+ * locally. Nothing the file already holds is fetched twice.
+ *
+ * Anything that isn't an in-progress download (other URLs, downloads of
+ * unknown size) passes through to [upstream] untouched.
+ */
+@OptIn(UnstableApi::class)
+class PartialDownloadDataSource(
+    private val context: Context,
+    private val upstream: DataSource,
+) : DataSource {
+
+    companion object {
+        // Long enough for a new segment connection to connect and deliver
+        // its first bytes; short enough that a stuck download doesn't read as
+        // a stalled player.
+        private const val WAIT_MS = 3_000L
+    }
+
+    private var dataSpec: DataSpec? = null
+    private var partial: PartialDownloads.Partial? = null
+    private var pfd: ParcelFileDescriptor? = null
+    private var channel: FileChannel? = null
+    private var position = 0L
+    private var remaining = 0L
+    private var upstreamOpened = false
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        upstream.addTransferListener(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        this.dataSpec = dataSpec
+        val scheme = dataSpec.uri.scheme
+        val candidate = if (scheme == "http" || scheme == "https") {
+            PartialDownloads.find(dataSpec.uri.toString())
+        } else null
+        val total = candidate?.total ?: -1L
+        if (candidate == null || dataSpec.position >= total) return openUpstream(dataSpec)
+
+        position = dataSpec.position
+        remaining = if (dataSpec.length != C.LENGTH_UNSET.toLong()) {
+            minOf(dataSpec.length, total - position)
+        } else {
+            total - position
+        }
+        if (candidate.available(position) <= 0L) {
+            candidate.prioritize(position)
+            if (candidate.await(position, WAIT_MS) <= 0L) return openUpstream(dataSpec)
+        }
+        val descriptor = try {
+            context.contentResolver.openFileDescriptor(candidate.uri, "r")
+        } catch (_: Exception) {
+            null
+        } ?: return openUpstream(dataSpec)
+        pfd = descriptor
+        channel = FileInputStream(descriptor.fileDescriptor).channel
+        partial = candidate
+        android.util.Log.d(
+            "PartialDownloadDataSource",
+            "Serving ${candidate.taskId} from disk at $position (${candidate.available(position)} bytes ready)"
+        )
+        return remaining
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        if (upstreamOpened) return upstream.read(buffer, offset, length)
+        if (length == 0) return 0
+        if (remaining == 0L) return C.RESULT_END_OF_INPUT
+        val source = partial ?: return C.RESULT_END_OF_INPUT
+        var available = source.available(position)
+        if (available <= 0L) {
+            source.prioritize(position)
+            available = source.await(position, WAIT_MS)
+            if (available <= 0L) return readUpstreamFromHere(buffer, offset, length)
+        }
+        val count = minOf(length.toLong(), available, remaining).toInt()
+        val read = try {
+            channel!!.read(ByteBuffer.wrap(buffer, offset, count), position)
+        } catch (_: IOException) {
+            -1
+        }
+        // Shorter than promised: truncated by a restart, or deleted by a cancel.
+        if (read <= 0) return readUpstreamFromHere(buffer, offset, length)
+        position += read
+        remaining -= read
+        return read
+    }
+
+    override fun getUri(): Uri? = if (upstreamOpened) upstream.uri else dataSpec?.uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> =
+        if (upstreamOpened) upstream.responseHeaders else emptyMap()
+
+    override fun close() {
+        closeFile()
+        partial = null
+        dataSpec = null
+        if (upstreamOpened) {
+            upstreamOpened = false
+            upstream.close()
+        }
+    }
+
+    private fun openUpstream(spec: DataSpec): Long {
+        // Flag first: close() must reach upstream even if open() throws.
+        upstreamOpened = true
+        return upstream.open(spec)
+    }
+
+    private fun readUpstreamFromHere(buffer: ByteArray, offset: Int, length: Int): Int {
+        val spec = dataSpec ?: return C.RESULT_END_OF_INPUT
+        android.util.Log.d(
+            "PartialDownloadDataSource",
+            "Download not at $position yet; fetching the remaining $remaining bytes over the network"
+        )
+        closeFile()
+        partial = null
+        openUpstream(spec.subrange(position - spec.position, remaining))
+        return upstream.read(buffer, offset, length)
+    }
+
+    private fun closeFile() {
+        try { channel?.close() } catch (_: Exception) {}
+        try { pfd?.close() } catch (_: Exception) {}
+        channel = null
+        pfd = null
+    }
+
+    /** Wraps an upstream factory so every source prefers an in-progress download. */
+    @OptIn(UnstableApi::class)
+    class Factory(
+        private val context: Context,
+        private val upstreamFactory: DataSource.Factory,
+    ) : DataSource.Factory {
+        override fun createDataSource(): DataSource =
+            PartialDownloadDataSource(context.applicationContext, upstreamFactory.createDataSource())
+    }
+}
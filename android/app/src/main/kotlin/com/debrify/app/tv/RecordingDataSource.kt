@@ -2,10 +2,12 @@ package com.debrify.app.tv
 
 import android.net.Uri
 import androidx.annotation.OptIn
+import androidx.media3.common.C
 import androidx.media3.common.util.UnstableApi
 import androidx.media3.datasource.DataSource
 import androidx.media3.datasource.DataSpec
 import androidx.media3.datasource.TransferListener
+import java.io.ByteArrayOutputStream
 
 /**
  * A pass-through [DataSource] that tees the bytes ExoPlayer reads for playback
@@ -16,10 +18,13 @@ import androidx.media3.datasource.TransferListener
  * recorded bytes are exactly what the player consumes, so no second network
  * connection, re-auth, or extra bandwidth is involved.
  *
- * Only progressive (single continuous connection) streams produce a clean file
- * this way. HLS — where playback interleaves playlist and segment requests —
- * is gated off at the UI layer, so this data source is never asked to record
- * one.
+ * A progressive stream is written as it is read. HLS — where playback
+ * interleaves playlist and segment requests — is collected per request
+ * instead: the recorded URL's first bytes give a playlist away, and each
+ * playlist, key and segment body goes to the controller whole when its
+ * request closes, so the controller can order segments and drop re-fetches.
+ * A segment load the player abandoned is still handed over, marked
+ * incomplete, so the resumed load can finish it.
  */
 @OptIn(UnstableApi::class)
 class RecordingDataSource(
@@ -30,19 +35,60 @@ class RecordingDataSource(
     /** The URI this source was opened for (pre-redirect), used as the match key. */
     private var openedUri: Uri? = null
 
+    /** Where the open landed after redirects; relative playlist entries
+     *  resolve against it. Read at open — a closed upstream may forget it. */
+    private var resolvedUri: Uri? = null
+    private var role = IptvRecordingController.TeeRole.NONE
+    private var position = 0L
+    private var openedLength = C.LENGTH_UNSET.toLong()
+    private var ended = false
+
+    /** Body of a playlist, key or segment request, or the first bytes of the
+     *  recorded URL while they could still be a playlist. */
+    private var body: ByteArrayOutputStream? = null
+
     override fun addTransferListener(transferListener: TransferListener) {
         upstream.addTransferListener(transferListener)
     }
 
     override fun open(dataSpec: DataSpec): Long {
         openedUri = dataSpec.uri
-        return upstream.open(dataSpec)
+        role = controller.teeRole(dataSpec.uri)
+        position = dataSpec.position
+        ended = false
+        body = if (role == IptvRecordingController.TeeRole.NONE) null else ByteArrayOutputStream()
+        val opened = upstream.open(dataSpec)
+        resolvedUri = upstream.uri
+        openedLength = opened
+        return opened
     }
 
     override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
         val bytesRead = upstream.read(buffer, offset, length)
-        if (bytesRead > 0 && controller.shouldRecord(openedUri)) {
-            controller.write(buffer, offset, bytesRead)
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+            ended = true
+            return bytesRead
+        }
+        if (bytesRead <= 0) return bytesRead
+        val collected = body ?: run {
+            if (role == IptvRecordingController.TeeRole.STREAM) {
+                controller.write(buffer, offset, bytesRead)
+            }
+            return bytesRead
+        }
+        collected.write(buffer, offset, bytesRead)
+        if (role == IptvRecordingController.TeeRole.STREAM && collected.size() >= PLAYLIST_MAGIC.size) {
+            val head = collected.toByteArray()
+            if (head.copyOf(PLAYLIST_MAGIC.size).contentEquals(PLAYLIST_MAGIC)) {
+                role = IptvRecordingController.TeeRole.PLAYLIST
+            } else {
+                // Progressive: from here on bytes go straight through.
+                body = null
+                controller.write(head, 0, head.size)
+            }
+        } else if (collected.size() > HlsTee.MAX_BODY_BYTES) {
+            role = IptvRecordingController.TeeRole.NONE
+            body = null
         }
         return bytesRead
     }
@@ -52,7 +98,30 @@ class RecordingDataSource(
     override fun getResponseHeaders(): Map<String, List<String>> = upstream.responseHeaders
 
     override fun close() {
-        upstream.close()
+        try {
+            upstream.close()
+        } finally {
+            handOver()
+        }
+    }
+
+    private fun handOver() {
+        val collected = body?.toByteArray()
+        val uri = openedUri
+        body = null
+        if (collected == null || uri == null) return
+        val complete = ended || (openedLength != C.LENGTH_UNSET.toLong() && collected.size.toLong() == openedLength)
+        when (role) {
+            // A stream too short to tell: whatever it was, it was read.
+            IptvRecordingController.TeeRole.STREAM -> controller.write(collected, 0, collected.size)
+            IptvRecordingController.TeeRole.PLAYLIST -> if (complete) {
+                controller.onPlaylist(uri, resolvedUri ?: uri, String(collected, Charsets.UTF_8))
+            }
+            IptvRecordingController.TeeRole.KEY -> if (complete) controller.onKey(uri, collected)
+            IptvRecordingController.TeeRole.SEGMENT ->
+                controller.onSegment(uri, position, collected, complete)
+            IptvRecordingController.TeeRole.NONE -> {}
+        }
     }
 
     /** Wraps an upstream factory so every produced source records-on-demand. */
@@ -64,4 +133,8 @@ class RecordingDataSource(
         override fun createDataSource(): DataSource =
             RecordingDataSource(upstreamFactory.createDataSource(), controller)
     }
+
+    private companion object {
+        val PLAYLIST_MAGIC = "#EXTM3U".toByteArray(Charsets.US_ASCII)
+    }
 }
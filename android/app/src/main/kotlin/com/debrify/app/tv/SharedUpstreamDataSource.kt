@@ -0,0 +1,133 @@
+package com.debrify.app.tv
+
+import android.net.Uri
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import com.debrify.app.recording.SharedUpstream
+import java.io.InputStream
+
+/**
+ * Reads the live channel through [SharedUpstream], so the player and a
+ * background engine recording of the same channel share one provider
+ * connection. Whichever of them starts first opens it; the other joins.
+ *
+ * Only opens [shareable] accepts (the channel on screen, when progressive)
+ * from the top go through the hub; everything else — HLS playlists and
+ * segments, ranged reads — is a plain pass-through to a source of its own.
+ * The hub's connection is a source this factory made for it, not the one a
+ * pass-through open uses, so the hub outlives the player's reader when a
+ * recording still holds it.
+ *
+ * [warmStart] goes first: a shareable open an [IptvZapWarmer] lane already
+ * holds warm starts on that lane's buffered keyframe instead of connecting.
+ *
+ * This sits above the resolver that adds the channel's headers, so its
+ * requests don't carry them yet: [channelHeaders] supplies them for the
+ * hub key, which must match the engine's for the same channel.
+ */
+@OptIn(UnstableApi::class)
+class SharedUpstreamDataSource(
+    private val upstreamFactory: DataSource.Factory,
+    private val shareable: (Uri) -> Boolean,
+    private val warmStart: (Uri) -> InputStream? = { null },
+    private val channelHeaders: () -> Map<String, String> = { emptyMap() },
+) : DataSource {
+
+    companion object {
+        /** Ahead of the extractor: a few seconds of a high-bitrate channel. */
+        private const val PLAYER_BUFFER_BYTES = 4 * 1024 * 1024
+    }
+
+    private val listeners = ArrayList<TransferListener>()
+    private var passThrough: DataSource? = null
+    private var subscription: SharedUpstream.Subscription? = null
+    private var warm: InputStream? = null
+    private var uri: Uri? = null
+    private var responseHeaders: Map<String, List<String>> = emptyMap()
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        listeners.add(transferListener)
+    }
+
+    private fun newUpstream(): DataSource =
+        upstreamFactory.createDataSource().also { source -> listeners.forEach(source::addTransferListener) }
+
+    override fun open(dataSpec: DataSpec): Long {
+        uri = dataSpec.uri
+        val fromTheTop = dataSpec.position == 0L && dataSpec.length == C.LENGTH_UNSET.toLong()
+        if (!fromTheTop || !shareable(dataSpec.uri)) {
+            val source = newUpstream()
+            passThrough = source
+            return source.open(dataSpec)
+        }
+        warmStart(dataSpec.uri)?.let {
+            warm = it
+            return C.LENGTH_UNSET.toLong()
+        }
+        val key = SharedUpstream.Key.of(
+            dataSpec.uri.toString(),
+            dataSpec.httpRequestHeaders + channelHeaders(),
+        )
+        subscription = SharedUpstream.subscribe(key, PLAYER_BUFFER_BYTES) {
+            val source = newUpstream()
+            try {
+                source.open(dataSpec)
+            } catch (e: Exception) {
+                source.close()
+                throw e
+            }
+            uri = source.uri ?: dataSpec.uri
+            responseHeaders = source.responseHeaders
+            object : SharedUpstream.Upstream {
+                override fun read(buffer: ByteArray, offset: Int, length: Int): Int =
+                    source.read(buffer, offset, length)
+
+                override fun close() = source.close()
+            }
+        }
+        return C.LENGTH_UNSET.toLong()
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        passThrough?.let { return it.read(buffer, offset, length) }
+        val shared = warm ?: subscription ?: return C.RESULT_END_OF_INPUT
+        val n = shared.read(buffer, offset, length)
+        return if (n < 0) C.RESULT_END_OF_INPUT else n
+    }
+
+    override fun getUri(): Uri? = passThrough?.uri ?: uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> =
+        passThrough?.responseHeaders ?: responseHeaders
+
+    override fun close() {
+        val source = passThrough
+        val shared = warm ?: subscription
+        passThrough = null
+        subscription = null
+        warm = null
+        uri = null
+        responseHeaders = emptyMap()
+        try {
+            source?.close()
+        } finally {
+            shared?.close()
+        }
+    }
+
+    /** Wraps an upstream factory so the shareable channel reads through the hub. */
+    @OptIn(UnstableApi::class)
+    class Factory(
+        private val upstreamFactory: DataSource.Factory,
+        private val shareable: (Uri) -> Boolean,
+        private val warmStart: (Uri) -> InputStream? = { null },
+        private val channelHeaders: () -> Map<String, String> = { emptyMap() },
+    ) : DataSource.Factory {
+        override fun createDataSource(): DataSource =
+            SharedUpstreamDataSource(upstreamFactory, shareable, warmStart, channelHeaders)
+    }
+}
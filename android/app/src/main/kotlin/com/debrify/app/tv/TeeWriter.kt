@@ -0,0 +1,213 @@
+package com.debrify.app.tv
+
+import java.io.IOException
+import java.io.OutputStream
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Moves recorded bytes off ExoPlayer's loader thread. [offer] copies them
+ * into pooled chunks on a bounded single-producer/single-consumer ring; a
+ * dedicated thread drains the ring into [sink]. A slow flash write or a
+ * MediaStore hiccup then backs up the ring instead of stalling media
+ * loading — the stream being watched never waits on storage.
+ *
+ * One producer at a time: [IptvRecordingController] calls [offer] under
+ * its lock, which it holds only for the copy, and [close] — which may wait
+ * out the whole spill — only once the writer is detached, outside it. The
+ * ring itself takes no lock; head and tail are published with ordered
+ * writes.
+ *
+ * When the ring is full, [policy] decides: [Overflow.GROW] queues further
+ * chunks on the producer's side, up to [maxOverflowChunks], and hands them
+ * on in order at later offers as the writer catches up; [Overflow.DROP] — and GROW past its
+ * cap — discards the bytes and counts a gap, so a recording with a hole in
+ * it says so instead of passing for whole.
+ *
+ * A write failure is reported once through [onFailed], from the writer
+ * thread; everything offered after it is discarded. [onWritten] sees each
+ * chunk the sink took, in order, on the writer thread — what is on storage,
+ * gaps and all.
+ */
+internal class TeeWriter(
+    private val sink: OutputStream,
+    private val onFailed: (IOException) -> Unit,
+    private val policy: Overflow = Overflow.GROW,
+    private val chunkBytes: Int = 64 * 1024,
+    ringChunks: Int = 64,
+    private val maxOverflowChunks: Int = 192,
+    private val onWritten: ((ByteArray, Int, Int) -> Unit)? = null,
+) {
+    enum class Overflow { GROW, DROP }
+
+    /** A snapshot of the writer's health, for diagnostics. */
+    data class Stats(
+        val queuedChunks: Int,
+        val peakQueuedChunks: Int,
+        val lastWriteMs: Double,
+        val maxWriteMs: Double,
+        val gaps: Long,
+        val droppedBytes: Long,
+    )
+
+    private class Chunk(val data: ByteArray) {
+        var length = 0
+    }
+
+    private val capacity = Integer.highestOneBit((ringChunks - 1).coerceAtLeast(1)) shl 1
+    private val mask = capacity - 1
+    private val ring = AtomicReferenceArray<Chunk?>(capacity)
+
+    /** Next slot the writer takes; written only by the writer. */
+    private val head = AtomicLong(0L)
+
+    /** Next slot the producer fills; written only by the producer. */
+    private val tail = AtomicLong(0L)
+
+    /** Chunks the writer is done with, back to the producer. */
+    private val pool = ConcurrentLinkedQueue<Chunk>()
+
+    /** Producer-side spill for [Overflow.GROW], in order behind the ring. */
+    private val overflow = ArrayDeque<Chunk>()
+
+    @Volatile private var closing = false
+    @Volatile private var failed = false
+    @Volatile private var peakQueued = 0
+    @Volatile private var lastWriteNanos = 0L
+    @Volatile private var maxWriteNanos = 0L
+    private val gaps = AtomicLong(0L)
+    private val droppedBytes = AtomicLong(0L)
+    private var gapOpen = false
+
+    private val thread = Thread({ drain() }, "iptv-tee-writer").apply {
+        isDaemon = true
+        priority = Thread.NORM_PRIORITY - 1
+        start()
+    }
+
+    /** Queue [length] bytes of [buffer]; never blocks on storage. */
+    fun offer(buffer: ByteArray, offset: Int, length: Int) {
+        if (length <= 0 || closing || failed) return
+        var at = offset
+        val end = offset + length
+        while (at < end) {
+            val chunk = pool.poll() ?: Chunk(ByteArray(chunkBytes))
+            val n = minOf(chunkBytes, end - at)
+            System.arraycopy(buffer, at, chunk.data, 0, n)
+            chunk.length = n
+            at += n
+            enqueue(chunk)
+        }
+        LockSupport.unpark(thread)
+    }
+
+    private fun enqueue(chunk: Chunk) {
+        // Earlier spill goes first; a chunk may not overtake it.
+        while (overflow.isNotEmpty() && publish(overflow.peekFirst())) overflow.pollFirst()
+        if (overflow.isEmpty() && publish(chunk)) {
+            gapOpen = false
+            return
+        }
+        if (policy == Overflow.GROW && overflow.size < maxOverflowChunks) {
+            overflow.addLast(chunk)
+            return
+        }
+        // One gap per run of dropped chunks, however long the run.
+        if (!gapOpen) gaps.incrementAndGet()
+        gapOpen = true
+        droppedBytes.addAndGet(chunk.length.toLong())
+        pool.offer(chunk)
+    }
+
+    private fun publish(chunk: Chunk): Boolean {
+        val t = tail.get()
+        val queued = (t - head.get()).toInt()
+        if (queued >= capacity) return false
+        ring.lazySet((t and mask.toLong()).toInt(), chunk)
+        tail.lazySet(t + 1)
+        if (queued + 1 > peakQueued) peakQueued = queued + 1
+        return true
+    }
+
+    private fun drain() {
+        while (true) {
+            val h = head.get()
+            if (h == tail.get()) {
+                // Closing is set after the last publish: once it is seen, an
+                // empty ring on a second look really is the end.
+                if (closing) {
+                    if (h == tail.get()) return
+                    continue
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50))
+                continue
+            }
+            val slot = (h and mask.toLong()).toInt()
+            val chunk = ring.get(slot) ?: continue
+            ring.lazySet(slot, null)
+            if (!failed) {
+                val started = System.nanoTime()
+                try {
+                    sink.write(chunk.data, 0, chunk.length)
+                    onWritten?.invoke(chunk.data, 0, chunk.length)
+                } catch (e: IOException) {
+                    failed = true
+                    onFailed(e)
+                }
+                val took = System.nanoTime() - started
+                lastWriteNanos = took
+                if (took > maxWriteNanos) maxWriteNanos = took
+            }
+            head.lazySet(h + 1)
+            pool.offer(chunk)
+        }
+    }
+
+    /**
+     * Stop taking bytes, end the writer thread and close [sink]. With
+     * [drain], every queued byte reaches [sink] first and it is flushed;
+     * without, queued bytes are thrown away. Safe from the writer thread itself (a failure
+     * callback that ends the recording), which is then left to wind down.
+     */
+    fun close(drain: Boolean = true) {
+        if (!drain) failed = true
+        if (drain) {
+            // The spill goes onto the ring as the writer frees slots.
+            while (overflow.isNotEmpty() && !failed && Thread.currentThread() != thread) {
+                if (publish(overflow.peekFirst())) {
+                    overflow.pollFirst()
+                    LockSupport.unpark(thread)
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5))
+                }
+            }
+        }
+        overflow.clear()
+        closing = true
+        LockSupport.unpark(thread)
+        if (Thread.currentThread() == thread) return
+        try {
+            thread.join()
+        } catch (_: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        try {
+            if (drain && !failed) sink.flush()
+        } finally {
+            sink.close()
+        }
+    }
+
+    fun stats(): Stats = Stats(
+        queuedChunks = (tail.get() - head.get()).toInt() + overflow.size,
+        peakQueuedChunks = peakQueued,
+        lastWriteMs = lastWriteNanos / 1e6,
+        maxWriteMs = maxWriteNanos / 1e6,
+        gaps = gaps.get(),
+        droppedBytes = droppedBytes.get(),
+    )
+}
@@ -0,0 +1,206 @@
+package com.debrify.app.tv
+
+import com.debrify.app.recording.TsKeyframeScanner
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * The last [capacity] bytes of a live MPEG-TS stream, in a ring file, with an
+ * index of where each keyframe landed ([TsKeyframeScanner] finds them).
+ *
+ * Offsets are ABSOLUTE — bytes since the spool began — so a reader's
+ * position survives the ring wrapping under it; [oldestOffset] is the first
+ * one still on disk. The index maps media time (the stream's PTS, unwrapped
+ * and stitched across discontinuities, in ms) to the offset of the packet
+ * that starts a keyframe, at most one entry per [INDEX_SPACING_MS]. Both the
+ * file and the index are fixed-size: memory doesn't grow with the window,
+ * and the window doesn't grow past the file.
+ *
+ * One writer ([append], the spooler thread) and any number of readers.
+ * Positional channel I/O needs no lock; the counters and index share
+ * [lock], whose [moreData] readers wait on at the live edge.
+ */
+internal class TimeshiftBuffer(
+    private val file: File,
+    val capacity: Long,
+    indexEntries: Int = 16_384,
+) : Closeable {
+    companion object {
+        const val INDEX_SPACING_MS = 1_000L
+    }
+
+    /** A point a reader can start from: its media time and where it is. */
+    data class Entry(val mediaMs: Long, val offset: Long)
+
+    private val lock = ReentrantLock()
+    private val moreData = lock.newCondition()
+    private val raf = RandomAccessFile(file, "rw")
+    private val channel = raf.channel
+
+    private val indexMs = LongArray(indexEntries)
+    private val indexOffset = LongArray(indexEntries)
+    private var indexFirst = 0
+    private var indexCount = 0
+
+    /** Bytes appended since the spool began; guarded by [lock]. */
+    private var written = 0L
+
+    /** Where the append under way will end: the bytes it is overwriting are
+     *  already gone to a reader. Guarded by [lock]. */
+    private var claimed = 0L
+    private var closed = false
+
+    /** Newest media time the scanner has seen; guarded by [lock]. */
+    private var lastMediaMs = -1L
+
+    // The writer's alone; it takes [lock] only to add an entry.
+    private val scanner = TsKeyframeScanner { mediaMs, offset ->
+        lock.withLock {
+            val newest = if (indexCount == 0) Long.MIN_VALUE else indexMs[slotOf(indexCount - 1)]
+            if (newest == Long.MIN_VALUE || mediaMs - newest >= INDEX_SPACING_MS) addIndex(mediaMs, offset)
+        }
+    }
+
+    val liveOffset: Long get() = lock.withLock { written }
+
+    val oldestOffset: Long get() = lock.withLock { maxOf(0L, claimed - capacity) }
+
+    /** Media time of the newest index entry, or -1 before the first. */
+    val liveMediaMs: Long get() = lock.withLock { lastMediaMs }
+
+    /** Add [length] bytes of [data] at the live edge. */
+    fun append(data: ByteArray, offset: Int, length: Int) {
+        if (length <= 0) return
+        var at = offset
+        var position = lock.withLock {
+            claimed = written + length
+            written
+        }
+        val end = offset + length
+        while (at < end) {
+            val slot = position % capacity
+            val n = minOf(capacity - slot, (end - at).toLong()).toInt()
+            val buffer = ByteBuffer.wrap(data, at, n)
+            var into = slot
+            while (buffer.hasRemaining()) into += channel.write(buffer, into)
+            at += n
+            position += n
+        }
+        scanner.feed(data, offset, length)
+        lock.withLock {
+            lastMediaMs = scanner.latestMediaMs
+            written = position
+            dropIndexBefore(maxOf(0L, written - capacity))
+            moreData.signalAll()
+        }
+    }
+
+    /**
+     * Read up to [length] bytes from absolute [position] into [target],
+     * waiting for the live edge when [position] has caught up with it.
+     * Returns -1 once the buffer is closed.
+     *
+     * @throws OverwrittenException when [position] has left the window —
+     *  before the read, or while it was under way.
+     */
+    fun read(position: Long, target: ByteArray, offset: Int, length: Int): Int {
+        val available = lock.withLock {
+            while (!closed && written <= position) {
+                try {
+                    moreData.await(250, TimeUnit.MILLISECONDS)
+                } catch (e: InterruptedException) {
+                    Thread.currentThread().interrupt()
+                    throw InterruptedIOException("timeshift read interrupted")
+                }
+            }
+            if (closed) return -1
+            if (position < claimed - capacity) throw OverwrittenException()
+            written - position
+        }
+        val slot = position % capacity
+        val n = minOf(length.toLong(), available, capacity - slot).toInt()
+        val buffer = ByteBuffer.wrap(target, offset, n)
+        var from = slot
+        while (buffer.hasRemaining()) {
+            val got = channel.read(buffer, from)
+            if (got < 0) throw IOException("timeshift file truncated")
+            from += got
+        }
+        // The writer may have lapped the reader while it copied.
+        if (position < lock.withLock { claimed } - capacity) throw OverwrittenException()
+        return n
+    }
+
+    /** The keyframe at or before [mediaMs], or the oldest one still held. */
+    fun entryAtOrBefore(mediaMs: Long): Entry? = lock.withLock {
+        if (indexCount == 0) return null
+        var lo = 0
+        var hi = indexCount - 1
+        var found = 0
+        while (lo <= hi) {
+            val mid = (lo + hi) ushr 1
+            if (indexMs[slotOf(mid)] <= mediaMs) {
+                found = mid
+                lo = mid + 1
+            } else {
+                hi = mid - 1
+            }
+        }
+        val slot = slotOf(found)
+        Entry(indexMs[slot], indexOffset[slot])
+    }
+
+    /** The newest keyframe: where a reader joining live starts. */
+    fun latestEntry(): Entry? = lock.withLock {
+        if (indexCount == 0) return null
+        val slot = slotOf(indexCount - 1)
+        Entry(indexMs[slot], indexOffset[slot])
+    }
+
+    /** The oldest keyframe still in the window. */
+    fun oldestEntry(): Entry? = lock.withLock {
+        if (indexCount == 0) return null
+        Entry(indexMs[indexFirst], indexOffset[indexFirst])
+    }
+
+    override fun close() {
+        lock.withLock {
+            closed = true
+            moreData.signalAll()
+        }
+        try { channel.close() } catch (_: IOException) {}
+        try { raf.close() } catch (_: IOException) {}
+        file.delete()
+    }
+
+    class OverwrittenException : IOException("timeshift position left the window")
+
+    private fun slotOf(i: Int) = (indexFirst + i) % indexMs.size
+
+    // Caller holds [lock].
+    private fun dropIndexBefore(oldest: Long) {
+        while (indexCount > 0 && indexOffset[indexFirst] < oldest) {
+            indexFirst = (indexFirst + 1) % indexMs.size
+            indexCount--
+        }
+    }
+
+    // Caller holds [lock].
+    private fun addIndex(mediaMs: Long, offset: Long) {
+        if (indexCount == indexMs.size) {
+            indexFirst = (indexFirst + 1) % indexMs.size
+            indexCount--
+        }
+        val slot = slotOf(indexCount)
+        indexMs[slot] = mediaMs
+        indexOffset[slot] = offset
+        indexCount++
+    }
+}
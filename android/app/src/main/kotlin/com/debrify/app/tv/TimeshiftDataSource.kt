@@ -0,0 +1,119 @@
+package com.debrify.app.tv
+
+import android.net.Uri
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import java.io.InterruptedIOException
+
+/**
+ * Serves the channel of a running [IptvTimeshift] session from its window on
+ * disk; every other request (and the channel when no session runs) passes
+ * through to [upstream] untouched.
+ *
+ * An open starts at the session's pending seek, or at the newest keyframe —
+ * the live edge — and reads on from there, waiting at the edge for the
+ * spool like a live connection would. A reader left so far behind that the
+ * ring overwrote its position (a long pause) skips to the oldest keyframe
+ * still held; the TS extractor resyncs on the next packet.
+ */
+@OptIn(UnstableApi::class)
+class TimeshiftDataSource(
+    private val upstream: DataSource,
+    private val timeshift: IptvTimeshift,
+) : DataSource {
+
+    companion object {
+        /** How long an open waits for the spool's first keyframe. */
+        private const val FIRST_KEYFRAME_WAIT_MS = 10_000L
+        /** Spooled without a single index entry: not TS the indexer can
+         *  read, so play it from the top and let the extractor judge. */
+        private const val UNINDEXED_BYTES = 1024L * 1024
+    }
+
+    private var uri: Uri? = null
+    private var session: IptvTimeshift.Session? = null
+    private var position = 0L
+    private var upstreamOpened = false
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        upstream.addTransferListener(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        uri = dataSpec.uri
+        val current = timeshift.sessionFor(dataSpec.uri)
+        if (current == null) {
+            // Flag first: close() must reach upstream even if open() throws.
+            upstreamOpened = true
+            return upstream.open(dataSpec)
+        }
+        val start = current.pendingStart ?: awaitLiveEntry(current)
+        current.pendingStart = null
+        session = current
+        position = start?.offset ?: current.buffer.oldestOffset
+        current.playingFromMs = start?.mediaMs ?: maxOf(0L, current.buffer.liveMediaMs)
+        return C.LENGTH_UNSET.toLong()
+    }
+
+    // A fresh session has spooled nothing yet; starting mid-GOP would only
+    // show the decoder garbage until the next keyframe anyway.
+    private fun awaitLiveEntry(current: IptvTimeshift.Session): TimeshiftBuffer.Entry? {
+        val deadline = System.currentTimeMillis() + FIRST_KEYFRAME_WAIT_MS
+        while (!current.stopped) {
+            current.buffer.latestEntry()?.let { return it }
+            if (current.buffer.liveOffset >= UNINDEXED_BYTES) return null
+            if (System.currentTimeMillis() >= deadline) return null
+            try {
+                Thread.sleep(100)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw InterruptedIOException("timeshift open interrupted")
+            }
+        }
+        return null
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        if (upstreamOpened) return upstream.read(buffer, offset, length)
+        if (length == 0) return 0
+        val window = session?.buffer ?: return C.RESULT_END_OF_INPUT
+        while (true) {
+            try {
+                val n = window.read(position, buffer, offset, length)
+                if (n < 0) return C.RESULT_END_OF_INPUT
+                position += n
+                return n
+            } catch (_: TimeshiftBuffer.OverwrittenException) {
+                position = window.oldestEntry()?.offset ?: window.oldestOffset
+            }
+        }
+    }
+
+    override fun getUri(): Uri? = if (upstreamOpened) upstream.uri else uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> =
+        if (upstreamOpened) upstream.responseHeaders else emptyMap()
+
+    override fun close() {
+        session = null
+        uri = null
+        if (upstreamOpened) {
+            upstreamOpened = false
+            upstream.close()
+        }
+    }
+
+    /** Wraps an upstream factory so the timeshifted channel reads from disk. */
+    @OptIn(UnstableApi::class)
+    class Factory(
+        private val upstreamFactory: DataSource.Factory,
+        private val timeshift: IptvTimeshift,
+    ) : DataSource.Factory {
+        override fun createDataSource(): DataSource =
+            TimeshiftDataSource(upstreamFactory.createDataSource(), timeshift)
+    }
+}
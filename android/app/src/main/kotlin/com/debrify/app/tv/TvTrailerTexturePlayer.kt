@@ -17,7 +17,6 @@ import androidx.media3.common.VideoSize
 import androidx.media3.common.util.UnstableApi
 import androidx.media3.datasource.DefaultDataSource
 import androidx.media3.datasource.DefaultHttpDataSource
-import androidx.media3.exoplayer.DefaultLoadControl
 import androidx.media3.exoplayer.ExoPlayer
 import androidx.media3.exoplayer.source.DefaultMediaSourceFactory
 import androidx.media3.exoplayer.source.MergingMediaSource
@@ -170,16 +169,16 @@ class TvTrailerTexturePlayer(
             // channel is tens of MB of native allocator PER instance — a real
             // OOM contributor on 1-2GB TV boxes. A few seconds is plenty for an
             // ambient loop, and prioritizing time over size keeps the cap
-            // honest for high-bitrate streams.
-            val loadControl = DefaultLoadControl.Builder()
-                .setBufferDurationsMs(
-                    /* minBufferMs = */ 4_000,
-                    /* maxBufferMs = */ 8_000,
-                    /* bufferForPlaybackMs = */ 1_000,
-                    /* bufferForPlaybackAfterRebufferMs = */ 2_000,
-                )
-                .setPrioritizeTimeOverSizeThresholds(true)
-                .build()
+            // honest for high-bitrate streams. Segments come from the shared
+            // MediaBufferPool, so a zap reuses the ones the last preview let
+            // go instead of allocating its buffer afresh.
+            val loadControl = MediaBufferPool.get(context).PooledLoadControl(
+                minBufferMs = 4_000,
+                maxBufferMs = 8_000,
+                bufferForPlaybackMs = 1_000,
+                bufferForPlaybackAfterRebufferMs = 2_000,
+                prioritizeTime = true,
+            )
             val player = ExoPlayer.Builder(context)
                 .setLoadControl(loadControl)
                 .build()
@@ -491,6 +490,7 @@ class TvTrailerTexturePlayer(
     fun releaseAll() {
         detached = true
         players.keys.toList().forEach { dispose(it, deferHeavy = false) }
+        MediaBufferPool.get(context).trimIdle()
         channel.setMethodCallHandler(null)
     }
 
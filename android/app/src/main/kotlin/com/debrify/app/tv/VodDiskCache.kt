@@ -0,0 +1,279 @@
+package com.debrify.app.tv
+
+import android.content.Context
+import android.net.Uri
+import androidx.annotation.OptIn
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.common.util.Util
+import androidx.media3.database.StandaloneDatabaseProvider
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.datasource.cache.CacheKeyFactory
+import androidx.media3.datasource.cache.CacheWriter
+import androidx.media3.datasource.cache.ContentMetadata
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor
+import androidx.media3.datasource.cache.SimpleCache
+import com.debrify.app.download.PartialDownloads
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executors
+
+/**
+ * VOD read-ahead on disk instead of the Java heap: http(s) media the player
+ * reads goes through a bounded LRU [SimpleCache], so backward seeks and
+ * re-watches are served from the disk instead of the debrid CDN, and
+ * [Prefetcher] can fill minutes ahead of playback while the heap buffer
+ * stays stock (see setupPlayer's Mecool KM2+ note for why it must).
+ *
+ * One cache per process (SimpleCache locks its folder), sized once from the
+ * free space of the cache volume: a quarter of it, at most
+ * [MAX_CACHE_BYTES]. Below [MIN_CACHE_BYTES] there is no cache and the
+ * player keeps its old path. Local files, content URIs and live IPTV never
+ * pass through it.
+ */
+@OptIn(UnstableApi::class)
+object VodDiskCache {
+
+    private const val DIR = "vod_media"
+    private const val MAX_CACHE_BYTES = 4L * 1024 * 1024 * 1024
+    private const val MIN_CACHE_BYTES = 256L * 1024 * 1024
+
+    @Volatile private var cache: SimpleCache? = null
+    private var unavailable = false
+
+    /** The process's cache, or null when the volume can't spare one. */
+    fun get(context: Context): Cache? {
+        cache?.let { return it }
+        synchronized(this) {
+            cache?.let { return it }
+            if (unavailable) return null
+            val app = context.applicationContext
+            val dir = File(app.cacheDir, DIR)
+            val budget = minOf(MAX_CACHE_BYTES, app.cacheDir.usableSpace / 4)
+            val database = StandaloneDatabaseProvider(app)
+            if (budget < MIN_CACHE_BYTES) {
+                unavailable = true
+                // Give back what an earlier, roomier launch left behind.
+                if (dir.exists()) runCatching { SimpleCache.delete(dir, database) }
+                return null
+            }
+            return try {
+                SimpleCache(dir, LeastRecentlyUsedCacheEvictor(budget), database)
+                    .also { cache = it }
+            } catch (e: Exception) {
+                android.util.Log.w("VodDiskCache", "cache unavailable: ${e.message}")
+                unavailable = true
+                null
+            }
+        }
+    }
+
+    private fun cacheable(uri: Uri): Boolean = uri.scheme == "http" || uri.scheme == "https"
+
+    /**
+     * [upstream] with http(s) reads going through [cache]. [writes] false
+     * makes the player a reader only: a [Prefetcher] is then the one
+     * writer, because a player's open-ended read would otherwise lock the
+     * whole rest of the file against it.
+     */
+    class Factory(
+        private val cache: Cache,
+        private val upstream: DataSource.Factory,
+        writes: Boolean,
+    ) : DataSource.Factory {
+
+        private val caching = CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstream)
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+            .apply { if (!writes) setCacheWriteDataSinkFactory(null) }
+
+        /** What a [Prefetcher] writes through: the same upstream, always caching. */
+        internal val writer = CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstream)
+
+        override fun createDataSource(): DataSource =
+            Routing(upstream.createDataSource(), caching.createDataSource())
+    }
+
+    // Picks per open: the cache for http(s), the plain upstream for the rest.
+    private class Routing(
+        private val direct: DataSource,
+        private val cached: DataSource,
+    ) : DataSource {
+        private var current: DataSource? = null
+
+        override fun addTransferListener(transferListener: TransferListener) {
+            direct.addTransferListener(transferListener)
+            cached.addTransferListener(transferListener)
+        }
+
+        override fun open(dataSpec: DataSpec): Long {
+            val source = if (cacheable(dataSpec.uri)) cached else direct
+            current = source
+            return source.open(dataSpec)
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int =
+            current?.read(buffer, offset, length) ?: C.RESULT_END_OF_INPUT
+
+        override fun getUri(): Uri? = current?.uri
+
+        override fun getResponseHeaders(): Map<String, List<String>> =
+            current?.responseHeaders ?: emptyMap()
+
+        override fun close() {
+            try {
+                current?.close()
+            } finally {
+                current = null
+            }
+        }
+    }
+
+    /**
+     * Keeps [aheadMs] of playback past what the player has buffered written
+     * to the cache, on one background thread. [update] retargets it from the
+     * player's progress pulse: a fill the player hasn't caught up with is
+     * left to run, anything else is cancelled and restarted where the player
+     * is. Ranges already on disk cost a lookup, not a download.
+     *
+     * Progressive files only, and bytes are mapped from time at the file's
+     * average bitrate — close enough for a window minutes wide.
+     *
+     * [preload] queues the head of the file that plays next. It is written
+     * only once the current file is on disk to its end, and any fill the
+     * current file needs again cancels it, so it never competes with what
+     * is playing.
+     */
+    class Prefetcher(
+        private val cache: Cache,
+        private val factory: Factory,
+        private val aheadMs: Long,
+    ) {
+        private companion object {
+            /** The first fill of a file: enough to learn its length and hold
+             *  the header every seek re-reads. */
+            const val PROBE_BYTES = 2L * 1024 * 1024
+        }
+
+        private class Fill(val key: String, val start: Long, val end: Long, val writer: CacheWriter)
+
+        private class Preload(val uri: Uri, val key: String, val ms: Long)
+
+        private val executor = Executors.newSingleThreadExecutor { r ->
+            Thread(r, "VodPrefetch").apply {
+                isDaemon = true
+                priority = Thread.MIN_PRIORITY
+            }
+        }
+        private var fill: Fill? = null
+        private var preload: Preload? = null
+        private var released = false
+
+        fun update(uri: Uri, mimeType: String?, bufferedMs: Long, durationMs: Long) {
+            if (!prefetchable(uri, mimeType)) return
+            val key = CacheKeyFactory.DEFAULT.buildCacheKey(DataSpec(uri))
+            val length = ContentMetadata.getContentLength(cache.getContentMetadata(key))
+            synchronized(this) {
+                if (released) return
+                val running = fill
+                if (length <= 0L) {
+                    if (running?.key != key) probe(uri, key, PROBE_BYTES)
+                    return
+                }
+                if (durationMs <= 0L) return
+                val from = (length.toDouble() * bufferedMs / durationMs).toLong().coerceIn(0L, length)
+                val to = (length.toDouble() * (bufferedMs + aheadMs) / durationMs).toLong()
+                    .coerceIn(from, length)
+                if (running != null && running.key == key && from >= running.start &&
+                    from < running.end
+                ) {
+                    return
+                }
+                if (to <= from || cache.isCached(key, from, to - from)) {
+                    if (to == length && running == null) startPreload(length, durationMs)
+                    return
+                }
+                val spec = DataSpec.Builder().setUri(uri).setKey(key)
+                    .setPosition(from).setLength(to - from).build()
+                start(Fill(key, from, to, CacheWriter(writerSource(), spec, null, null)))
+            }
+        }
+
+        /**
+         * Write the first [ms] of [uri] once the current file is done, at the
+         * current file's bitrate (the next episode's is unknown until it
+         * plays). Replaces any earlier preload.
+         */
+        fun preload(uri: Uri, mimeType: String?, ms: Long) {
+            if (!prefetchable(uri, mimeType)) return
+            val key = CacheKeyFactory.DEFAULT.buildCacheKey(DataSpec(uri))
+            synchronized(this) {
+                if (released || preload?.key == key) return
+                preload = Preload(uri, key, ms)
+            }
+        }
+
+        fun release() {
+            synchronized(this) {
+                released = true
+                preload = null
+                fill?.writer?.cancel()
+                fill = null
+            }
+            executor.shutdown()
+        }
+
+        // Under the lock, with nothing running.
+        private fun startPreload(currentLength: Long, currentDurationMs: Long) {
+            val next = preload ?: return
+            val bytes = maxOf(
+                PROBE_BYTES,
+                (currentLength.toDouble() * next.ms / currentDurationMs).toLong(),
+            )
+            if (cache.isCached(next.key, 0L, bytes)) {
+                preload = null
+                return
+            }
+            probe(next.uri, next.key, bytes)
+        }
+
+        // Open-ended, so the cache records the file's length; cut off once
+        // [bytes] are down.
+        private fun probe(uri: Uri, key: String, bytes: Long) {
+            val spec = DataSpec.Builder().setUri(uri).setKey(key).build()
+            var writer: CacheWriter? = null
+            writer = CacheWriter(writerSource(), spec, null) { _, bytesCached, _ ->
+                if (bytesCached >= bytes) writer?.cancel()
+            }
+            start(Fill(key, 0L, bytes, writer))
+        }
+
+        private fun prefetchable(uri: Uri, mimeType: String?): Boolean =
+            cacheable(uri) && PartialDownloads.find(uri.toString()) == null &&
+                Util.inferContentTypeForUriAndMimeType(uri, mimeType) == C.CONTENT_TYPE_OTHER
+
+        private fun writerSource(): CacheDataSource = factory.writer.createDataSourceForDownloading()
+
+        // Under the lock.
+        private fun start(started: Fill) {
+            fill?.writer?.cancel()
+            fill = started
+            executor.execute {
+                try {
+                    started.writer.cache()
+                } catch (_: IOException) {
+                    // Cancelled, or the CDN dropped it: the next pulse retries.
+                } finally {
+                    synchronized(this) { if (fill === started) fill = null }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.debrify.app.download
+
+import java.nio.ByteBuffer
+import java.util.zip.CRC32C
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class ChunkChecksumsTest {
+	private val chunk = ChunkChecksums.CHUNK_BYTES.toInt()
+	private val payload = ByteArray(2 * chunk + 12345).also { java.util.Random(3).nextBytes(it) }
+
+	private fun expectedDigest(): String {
+		val crc = CRC32C()
+		crc.update(payload)
+		return "crc32c:" + String.format("%08x", crc.value)
+	}
+
+	private fun feed(sums: ChunkChecksums, from: Int, to: Int, step: Int) {
+		var at = from
+		while (at < to) {
+			val n = minOf(step, to - at)
+			sums.record(at.toLong(), ByteBuffer.wrap(payload, at, n))
+			at += n
+		}
+	}
+
+	@Test
+	fun sequentialStreamYieldsTheWholeFileCrc() {
+		val sums = ChunkChecksums.empty()
+		// An odd read size so reads straddle chunk boundaries.
+		feed(sums, 0, payload.size, 300_001)
+		assertNull("last chunk still open", sums.fileDigest(payload.size.toLong()))
+		sums.seal(payload.size.toLong())
+		assertEquals(expectedDigest(), sums.fileDigest(payload.size.toLong()))
+	}
+
+	@Test
+	fun segmentsWrittenOutOfOrderCombineToTheSameDigest() {
+		val sums = ChunkChecksums.empty()
+		// Two workers split on a chunk boundary, interleaved, tail first.
+		feed(sums, chunk, payload.size, 65_536)
+		feed(sums, 0, chunk, 100_000)
+		sums.seal(payload.size.toLong())
+		assertEquals(expectedDigest(), sums.fileDigest(payload.size.toLong()))
+	}
+
+	@Test
+	fun persistedStateResumesAtTheLastCompleteChunk() {
+		val sums = ChunkChecksums.empty()
+		feed(sums, 0, chunk + 5000, 4096)
+		assertEquals((chunk + 5000).toLong(), sums.hashedPrefix())
+
+		// Only complete chunks survive a restart; the service resumes at the
+		// end of the last one.
+		val restored = ChunkChecksums.decode(sums.encode())!!
+		assertEquals(1, restored.completeChunks())
+		assertEquals(chunk.toLong(), restored.hashedPrefix())
+		restored.rewindTo(chunk.toLong())
+		feed(restored, chunk, payload.size, 65_536)
+		restored.seal(payload.size.toLong())
+		assertEquals(expectedDigest(), restored.fileDigest(payload.size.toLong()))
+	}
+
+	@Test
+	fun aChunkJoinedMidwayIsNeverTrusted() {
+		val sums = ChunkChecksums.empty()
+		feed(sums, 0, chunk, 65_536)
+		// Resumed without rolling state inside chunk 1: it can't be hashed.
+		feed(sums, chunk + 10, payload.size, 65_536)
+		sums.seal(payload.size.toLong())
+		assertNull(sums.fileDigest(payload.size.toLong()))
+		assertNotNull(sums.crcOf(0))
+		assertNull(sums.crcOf(1))
+	}
+
+	@Test
+	fun combineMatchesDirectCrc() {
+		val a = CRC32C().apply { update(payload, 0, 777) }.value.toInt()
+		val b = CRC32C().apply { update(payload, 777, 5000) }.value.toInt()
+		val whole = CRC32C().apply { update(payload, 0, 5777) }.value.toInt()
+		assertEquals(whole, Crc32c.combine(a, b, 5000L))
+	}
+
+	@Test
+	fun foreignEncodingsAreIgnored() {
+		assertNull(ChunkChecksums.decode(null))
+		assertNull(ChunkChecksums.decode("md5:abc"))
+		assertNull(ChunkChecksums.decode("crc32c:1048576:0=1"))
+		assertEquals(0, ChunkChecksums.decode(ChunkChecksums.empty().encode())!!.completeChunks())
+	}
+}
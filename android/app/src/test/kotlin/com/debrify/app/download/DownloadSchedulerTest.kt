@@ -0,0 +1,72 @@
+package com.debrify.app.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DownloadSchedulerTest {
+	@Test
+	fun queueAdmitsUpToTheCapThenByPriority() {
+		val started = mutableListOf<String>()
+		val queue = DownloadQueue(2)
+		assertEquals(0, queue.submit("a", 0) { started.add("a") })
+		assertEquals(0, queue.submit("b", 0) { started.add("b") })
+		assertEquals(1, queue.submit("c", 0) { started.add("c") })
+		assertEquals(1, queue.submit("d", 5) { started.add("d") }) // jumps ahead of c
+		assertEquals(mapOf("d" to 1, "c" to 2), queue.positions())
+
+		queue.finished("a")
+		assertEquals(listOf("a", "b", "d"), started)
+		assertEquals(mapOf("c" to 1), queue.positions())
+	}
+
+	@Test
+	fun resubmittingAnAdmittedTaskSharesItsSlot() {
+		val started = mutableListOf<String>()
+		val queue = DownloadQueue(1)
+		queue.submit("a", 0) { started.add("a1") }
+		// A RESUME racing the previous worker's exit: runs now, same slot.
+		assertEquals(0, queue.submit("a", 0) { started.add("a2") })
+		assertEquals(1, queue.submit("b", 0) { started.add("b") })
+		queue.finished("a")
+		assertEquals(listOf("a1", "a2"), started)
+		queue.finished("a")
+		assertEquals(listOf("a1", "a2", "b"), started)
+	}
+
+	@Test
+	fun withdrawnTasksNeverStartAndRaisingTheCapDrains() {
+		val started = mutableListOf<String>()
+		val queue = DownloadQueue(1)
+		queue.submit("a", 0) { started.add("a") }
+		queue.submit("b", 0) { started.add("b") }
+		queue.submit("c", 0) { started.add("c") }
+		assertTrue(queue.withdraw("b"))
+		assertFalse(queue.withdraw("b"))
+		queue.setMaxConcurrent(3)
+		assertEquals(listOf("a", "c"), started)
+	}
+
+	@Test
+	fun bucketPacesReadsToTheRate() {
+		var now = 0L
+		val bucket = TokenBucket({ 1_000L }, clock = { now })
+		// The first reads ride the burst allowance (250 ms = 250 bytes here)
+		// and use up the present instant.
+		assertTrue(bucket.acquire(250) { false })
+		assertTrue(bucket.acquire(100) { false })
+		// The next read must wait its slot; an abort gets it out early.
+		var polls = 0
+		assertFalse(bucket.acquire(100) { polls++ > 0 })
+		// Time passes: a full second of credit later, reads go straight through.
+		now = 2_000_000_000L
+		assertTrue(bucket.acquire(100) { true })
+	}
+
+	@Test
+	fun unlimitedBucketNeverWaits() {
+		val bucket = TokenBucket({ 0L }, clock = { 0L })
+		repeat(10) { assertTrue(bucket.acquire(Int.MAX_VALUE) { true }) }
+	}
+}
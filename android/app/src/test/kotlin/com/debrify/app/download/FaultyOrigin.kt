@@ -0,0 +1,141 @@
+package com.debrify.app.download
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.URL
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+
+/**
+ * Loopback stand-in for a debrid CDN or IPTV panel that misbehaves on cue.
+ *
+ * `/file` serves [payload] with ranges, a strong ETag and exact
+ * `Content-Range`s (416 past the end). `/live` is an endless stream cycling through [payload]
+ * from wherever the last connection left off, like a channel. Every request
+ * takes the next queued [Fault], if any; [bytesPerSecond] throttles every
+ * connection on its own, the way CDNs cap per connection.
+ */
+internal class FaultyOrigin(private val payload: ByteArray) : AutoCloseable {
+	sealed class Fault {
+		/** Cut the connection after [afterBytes] of body. */
+		class Drop(val afterBytes: Long) : Fault()
+		/** Go silent for [millis] after [afterBytes] of body, then carry on. */
+		class Stall(val afterBytes: Long, val millis: Long) : Fault()
+		/** Answer 200 with the whole body whatever Range asked for. */
+		object IgnoreRange : Fault()
+		/** Answer 206 starting [rewind] bytes before the requested start. */
+		class RewoundRange(val rewind: Long) : Fault()
+	}
+
+	/** One served request: the status and the first body byte sent. */
+	class Served(val status: Int, val start: Long)
+
+	@Volatile var bytesPerSecond: Long = 0L
+	val faults = ConcurrentLinkedQueue<Fault>()
+	val served = CopyOnWriteArrayList<Served>()
+
+	private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+	@Volatile private var livePosition = 0L
+
+	val fileUrl: URL get() = URL("http://127.0.0.1:${server.address.port}/file")
+	val liveUrl: URL get() = URL("http://127.0.0.1:${server.address.port}/live")
+
+	init {
+		server.executor = Executors.newCachedThreadPool { r -> Thread(r).apply { isDaemon = true } }
+		server.createContext("/file") { exchange -> exchange.use { serveFile(it) } }
+		server.createContext("/live") { exchange -> exchange.use { serveLive(it) } }
+		server.start()
+	}
+
+	override fun close() {
+		server.stop(0)
+		(server.executor as java.util.concurrent.ExecutorService).shutdownNow()
+	}
+
+	private fun serveFile(exchange: HttpExchange) {
+		val fault = faults.poll()
+		val size = payload.size.toLong()
+		exchange.responseHeaders.add("ETag", "\"bench\"")
+		exchange.responseHeaders.add("Accept-Ranges", "bytes")
+		val requested = parseRangeStart(exchange.requestHeaders.getFirst("Range"))
+		when {
+			requested == null || fault is Fault.IgnoreRange -> {
+				served.add(Served(200, 0L))
+				exchange.sendResponseHeaders(200, size)
+				sendBody(exchange, 0L, size, fault)
+			}
+			requested >= size -> {
+				exchange.responseHeaders.add("Content-Range", "bytes */$size")
+				served.add(Served(416, -1L))
+				exchange.sendResponseHeaders(416, -1L)
+			}
+			else -> {
+				val start = if (fault is Fault.RewoundRange) maxOf(0L, requested - fault.rewind) else requested
+				exchange.responseHeaders.add("Content-Range", "bytes $start-${size - 1}/$size")
+				served.add(Served(206, start))
+				exchange.sendResponseHeaders(206, size - start)
+				sendBody(exchange, start, size, fault)
+			}
+		}
+	}
+
+	private fun serveLive(exchange: HttpExchange) {
+		val fault = faults.poll()
+		served.add(Served(200, livePosition))
+		// A length no capture reaches rather than chunked: the JDK's chunked
+		// decoder allocates per read, which would drown what is measured.
+		exchange.sendResponseHeaders(200, 1L shl 40)
+		sendBody(exchange, -1L, Long.MAX_VALUE, fault)
+	}
+
+	// [start] -1 streams the live cycle; otherwise the file range to [end].
+	private fun sendBody(exchange: HttpExchange, start: Long, end: Long, fault: Fault?) {
+		val body = exchange.responseBody
+		val slice = 64 * 1024
+		var sent = 0L
+		var position = start
+		val began = System.nanoTime()
+		try {
+			while (start < 0L || position < end) {
+				if (fault is Fault.Drop && sent >= fault.afterBytes) {
+					// Unflushed and short of Content-Length: the server closes
+					// the socket and the client sees a truncated body.
+					throw IOException("injected drop")
+				}
+				if (fault is Fault.Stall && sent >= fault.afterBytes && sent < fault.afterBytes + slice) {
+					body.flush()
+					Thread.sleep(fault.millis)
+				}
+				val n: Int
+				if (start < 0L) {
+					val at = (livePosition % payload.size).toInt()
+					n = minOf(slice, payload.size - at)
+					body.write(payload, at, n)
+					livePosition += n
+				} else {
+					n = minOf(slice.toLong(), end - position).toInt()
+					body.write(payload, position.toInt(), n)
+					position += n
+				}
+				sent += n
+				val rate = bytesPerSecond
+				if (rate > 0L) {
+					val dueNs = sent * 1_000_000_000L / rate
+					val aheadNs = dueNs - (System.nanoTime() - began)
+					if (aheadNs > 0L) Thread.sleep(aheadNs / 1_000_000L, (aheadNs % 1_000_000L).toInt())
+				}
+			}
+		} catch (_: IOException) {
+			// The client went away, or the fault above.
+		} catch (_: InterruptedException) {
+		}
+	}
+
+	private fun parseRangeStart(header: String?): Long? {
+		val spec = header?.removePrefix("bytes=")?.takeIf { it != header } ?: return null
+		return spec.substringBefore('-').toLongOrNull()
+	}
+}
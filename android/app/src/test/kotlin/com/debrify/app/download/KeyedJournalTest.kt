@@ -0,0 +1,129 @@
+package com.debrify.app.download
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class KeyedJournalTest {
+	private val dir: File = Files.createTempDirectory("journal").toFile()
+	private val file = File(dir, "tasks.journal")
+
+	@After
+	fun cleanUp() {
+		dir.deleteRecursively()
+	}
+
+	@Test
+	fun rowsSurviveReopen() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "{\"status\":\"running\"}")
+		journal.put("b", "{}")
+		journal.put("a", "{\"status\":\"paused\"}")
+		journal.remove("b")
+
+		val reopened = KeyedJournal(file)
+		assertEquals(mapOf("a" to "{\"status\":\"paused\"}"), reopened.snapshot())
+		assertNull(reopened.get("b"))
+	}
+
+	@Test
+	fun tornTailIsDroppedAndAppendsContinueAfterIt() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "1")
+		journal.put("b", "2")
+		val intact = file.length()
+		journal.put("c", "3")
+		// Death mid-append: the last record is cut short.
+		RandomAccessFile(file, "rw").use { it.setLength(file.length() - 2) }
+
+		val reopened = KeyedJournal(file)
+		assertEquals(mapOf("a" to "1", "b" to "2"), reopened.snapshot())
+		assertEquals(intact, file.length())
+		reopened.put("d", "4")
+		assertEquals(mapOf("a" to "1", "b" to "2", "d" to "4"), KeyedJournal(file).snapshot())
+	}
+
+	@Test
+	fun corruptRecordEndsTheReadableJournal() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "1")
+		val second = file.length()
+		journal.put("b", "2")
+		journal.put("c", "3")
+		// Flip a byte inside b's payload: its CRC no longer matches.
+		RandomAccessFile(file, "rw").use {
+			it.seek(second + 12)
+			val b = it.read()
+			it.seek(second + 12)
+			it.write(b xor 0xFF)
+		}
+		assertEquals(mapOf("a" to "1"), KeyedJournal(file).snapshot())
+	}
+
+	@Test
+	fun checkpointsCompactOnceDeadRecordsDominate() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "0")
+		journal.put("b", "0")
+		var peak = 0L
+		for (i in 1..500) {
+			journal.put("a", i.toString())
+			peak = maxOf(peak, file.length())
+		}
+		// Bounded by the compaction threshold, not by the number of writes.
+		assertTrue("journal grew to $peak bytes", peak < 200 * 20)
+		assertEquals(mapOf("a" to "500", "b" to "0"), KeyedJournal(file).snapshot())
+		assertFalse(File(file.path + ".tmp").exists())
+	}
+
+	@Test
+	fun unreadableJournalIsNeverRewritten() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "1")
+		journal.put("b", "2")
+		// A directory where the journal should be: the read fails.
+		val aside = File(dir, "aside.journal")
+		assertTrue(file.renameTo(aside))
+		assertTrue(file.mkdir())
+
+		val blind = KeyedJournal(file)
+		assertFalse(blind.isReadable())
+		blind.put("c", "3")
+		blind.remove("a")
+		assertTrue(file.isDirectory)
+		try {
+			blind.replaceAll(mapOf("c" to "3"))
+			fail("replaceAll over an unreadable journal")
+		} catch (_: IOException) {
+		}
+
+		// Readable again: the writes made meanwhile land on the file's rows.
+		assertTrue(file.delete())
+		assertTrue(aside.renameTo(file))
+		blind.put("d", "4")
+		assertTrue(blind.isReadable())
+		val expected = mapOf("b" to "2", "c" to "3", "d" to "4")
+		assertEquals(expected, blind.snapshot())
+		assertEquals(expected, KeyedJournal(file).snapshot())
+	}
+
+	@Test
+	fun replaceAllSwapsEveryRow() {
+		val journal = KeyedJournal(file)
+		journal.put("a", "1")
+		journal.put("b", "2")
+		journal.replaceAll(linkedMapOf("b" to "3", "c" to "4"))
+		assertEquals(mapOf("b" to "3", "c" to "4"), KeyedJournal(file).snapshot())
+
+		journal.clear()
+		assertTrue(KeyedJournal(file).isEmpty())
+	}
+}
@@ -0,0 +1,56 @@
+package com.debrify.app.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LocalCopiesTest {
+	@Test
+	fun resignedLinksNormalizeToTheSameKey() {
+		val first = LocalCopies.normalizeUrl(
+			"HTTPS://Download.Example.com:443/d/ABC/Movie.mkv?token=1&expires=100&quality=1080#t=5",
+		)
+		val second = LocalCopies.normalizeUrl(
+			"https://download.example.com/d/ABC/Movie.mkv?quality=1080&expires=200&token=2",
+		)
+		assertEquals("https://download.example.com/d/ABC/Movie.mkv?quality=1080", first)
+		assertEquals(first, second)
+	}
+
+	@Test
+	fun signedStorageParamsAreDroppedButIdentityIsKept() {
+		assertEquals(
+			"https://cdn.example.com/f?b=2&id=7",
+			LocalCopies.normalizeUrl("https://cdn.example.com/f?id=7&X-Amz-Signature=s&X-Amz-Date=d&b=2"),
+		)
+		// The path is the file: case matters there.
+		assertNotEquals(
+			LocalCopies.normalizeUrl("https://cdn.example.com/A.mkv"),
+			LocalCopies.normalizeUrl("https://cdn.example.com/a.mkv"),
+		)
+		assertNull(LocalCopies.normalizeUrl("not a url"))
+	}
+
+	@Test
+	fun eachProfileKeepsItsOwnCopyOfATitle() {
+		val url = "https://cdn.example.com/Movie.mkv?token=1"
+		val contentId = LocalCopies.contentId("tt0133093", null, null)
+		val admin = LocalCopies.keys("admin", url, contentId)
+		val kid = LocalCopies.keys("kid", url, contentId)
+		assertEquals(2, admin.size)
+		assertTrue(admin.none { it in kid })
+		assertEquals(admin, LocalCopies.keys("admin", "https://cdn.example.com/Movie.mkv?token=2", contentId))
+		assertEquals(emptyList<String>(), LocalCopies.keys("admin", null, null))
+	}
+
+	@Test
+	fun contentIdNamesEpisodesAndFilms() {
+		assertEquals("imdb:tt0903747:2:3", LocalCopies.contentId("tt0903747", 2, 3))
+		assertEquals("imdb:tt0133093", LocalCopies.contentId(" TT0133093 ", null, null))
+		assertEquals("imdb:tt0133093", LocalCopies.contentId("tt0133093", 1, null))
+		assertNull(LocalCopies.contentId("tmdb:603", null, null))
+		assertNull(LocalCopies.contentId(null, 1, 1))
+	}
+}
@@ -0,0 +1,93 @@
+package com.debrify.app.download
+
+import java.nio.ByteBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ProgressFrameEncoderTest {
+	private class Decoded(
+		val hasTable: Boolean,
+		val generation: Int,
+		val kinds: List<Byte>,
+		val bytes: List<Long>,
+		val totals: List<Long>,
+		val rates: List<Long>,
+		val flags: List<Byte>,
+		val ids: List<String>,
+		val owners: List<String>,
+	)
+
+	// Mirrors the Dart reader in android_native_downloader.dart.
+	private fun decode(frame: ByteArray): Decoded {
+		val b = ByteBuffer.wrap(frame)
+		assertEquals(ProgressFrameEncoder.VERSION, b.get())
+		val hasTable = b.get() == 1.toByte()
+		val generation = b.int
+		b.long // timestamp
+		val n = b.int
+		val kinds = List(n) { b.get() }
+		val bytes = List(n) { b.long }
+		val totals = List(n) { b.long }
+		val rates = List(n) { b.long }
+		val flags = List(n) { b.get() }
+		val ids = ArrayList<String>()
+		val owners = ArrayList<String>()
+		if (hasTable) {
+			repeat(n) {
+				ids.add(ByteArray(b.short.toInt()).also { b.get(it) }.toString(Charsets.UTF_8))
+				owners.add(ByteArray(b.short.toInt()).also { b.get(it) }.toString(Charsets.UTF_8))
+			}
+		}
+		assertEquals("trailing bytes", 0, b.remaining())
+		return Decoded(hasTable, generation, kinds, bytes, totals, rates, flags, ids, owners)
+	}
+
+	private fun download(id: String, bytes: Long) = ProgressFrameEncoder.Sample(
+		id, "owner-$id", ProgressFrameEncoder.KIND_DOWNLOAD, bytes, 1000L, 50L, ProgressFrameEncoder.FLAG_THROTTLED,
+	)
+
+	private fun recording(id: String, bytes: Long) = ProgressFrameEncoder.Sample(
+		id, "owner-$id", ProgressFrameEncoder.KIND_RECORDING, bytes, -1L, 7L, 0,
+	)
+
+	@Test
+	fun frameCarriesEveryTaskAsParallelArrays() {
+		val encoder = ProgressFrameEncoder()
+		val frame = decode(encoder.encode(listOf(download("a", 10L), recording("b", 20L)), 1L))
+		assertTrue(frame.hasTable)
+		assertEquals(listOf("a", "b"), frame.ids)
+		assertEquals(listOf("owner-a", "owner-b"), frame.owners)
+		assertEquals(listOf(ProgressFrameEncoder.KIND_DOWNLOAD, ProgressFrameEncoder.KIND_RECORDING), frame.kinds)
+		assertEquals(listOf(10L, 20L), frame.bytes)
+		assertEquals(listOf(1000L, -1L), frame.totals)
+		assertEquals(listOf(50L, 7L), frame.rates)
+		assertEquals(listOf<Byte>(1, 0), frame.flags)
+	}
+
+	@Test
+	fun idTableIsOnlyResentWhenMembershipChanges() {
+		val encoder = ProgressFrameEncoder()
+		val first = decode(encoder.encode(listOf(download("a", 1L)), 1L))
+		val second = decode(encoder.encode(listOf(download("a", 2L)), 2L))
+		assertTrue(first.hasTable)
+		assertEquals(false, second.hasTable)
+		assertEquals(first.generation, second.generation)
+		assertEquals(listOf(2L), second.bytes)
+
+		val third = decode(encoder.encode(listOf(download("a", 3L), download("c", 0L)), 3L))
+		assertTrue(third.hasTable)
+		assertEquals(first.generation + 1, third.generation)
+
+		// A new listener has no table yet.
+		encoder.reset()
+		assertTrue(decode(encoder.encode(listOf(download("a", 4L), download("c", 1L)), 4L)).hasTable)
+	}
+
+	@Test
+	fun emptyFrameIsWellFormed() {
+		val frame = decode(ProgressFrameEncoder().encode(emptyList(), 1L))
+		assertTrue(frame.ids.isEmpty())
+		assertTrue(frame.bytes.isEmpty())
+	}
+}
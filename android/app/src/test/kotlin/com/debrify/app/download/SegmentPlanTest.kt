@@ -0,0 +1,168 @@
+package com.debrify.app.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SegmentPlanTest {
+	private val mib = 1024L * 1024
+
+	@Test
+	fun initialPlanCoversTheWholeFile() {
+		val plan = SegmentPlan.initial(100 * mib + 3, 4)
+		val decoded = SegmentPlan.decode(plan.total, plan.encode())
+		assertNotNull(decoded)
+		assertEquals(0L, plan.downloaded())
+		assertFalse(plan.isComplete())
+		// Four claims drain the unowned segments; none of them overlap.
+		val claimed = (0 until 4).map { plan.claim(Long.MAX_VALUE / 4)!! }
+		assertEquals(100 * mib + 3, claimed.sumOf { it.end - it.start })
+	}
+
+	@Test
+	fun claimSplitsTheLargestOwnedSegmentWhenNothingIsFree() {
+		val plan = SegmentPlan.initial(64 * mib, 1)
+		val first = plan.claim(4 * mib)!!
+		plan.commit(first, plan.writable(first, (8 * mib).toInt()))
+		val tail = plan.claim(4 * mib)!!
+		// The owner keeps [8 MiB, 36 MiB); the tail takes the back half.
+		assertEquals(36 * mib, first.end)
+		assertEquals(36 * mib, tail.start)
+		assertEquals(64 * mib, tail.end)
+		assertEquals(plan.encode(), SegmentPlan.decode(plan.total, plan.encode())!!.encode())
+	}
+
+	@Test
+	fun claimRefusesSplitsBelowTheMinimum() {
+		val plan = SegmentPlan.initial(6 * mib, 1)
+		plan.claim(4 * mib)!!
+		assertNull(plan.claim(4 * mib))
+	}
+
+	@Test
+	fun commitIsClampedWhenASplitRacesTheWrite() {
+		val plan = SegmentPlan.initial(32 * mib, 1)
+		val seg = plan.claim(mib)!!
+		val allowed = plan.writable(seg, (20 * mib).toInt())
+		plan.claim(mib) // splits at 16 MiB before the owner commits
+		plan.commit(seg, allowed)
+		assertEquals(16 * mib, seg.next)
+		assertTrue(seg.done)
+		assertEquals(16 * mib, plan.downloaded())
+	}
+
+	@Test
+	fun contiguousPrefixStopsAtTheFirstUnfinishedSegment() {
+		val plan = SegmentPlan.initial(48 * mib, 3)
+		val a = plan.claim(mib)!!
+		val b = plan.claim(mib)!!
+		plan.commit(b, plan.writable(b, (16 * mib).toInt()))
+		plan.commit(a, plan.writable(a, (4 * mib).toInt()))
+		assertEquals(4 * mib, plan.contiguousPrefix())
+		plan.commit(a, plan.writable(a, (12 * mib).toInt()))
+		assertEquals(32 * mib, plan.contiguousPrefix())
+	}
+
+	@Test
+	fun boundariesStayOnChunkMultiples() {
+		val chunk = SegmentPlan.ALIGN_BYTES
+		val thirds = SegmentPlan.initial(100 * mib + 3, 3)
+		assertEquals(0L, thirds.claim(mib)!!.end % chunk)
+
+		val plan = SegmentPlan.initial(64 * mib, 1)
+		val first = plan.claim(mib)!!
+		plan.commit(first, 5 * mib.toInt() + 17)
+		// The middle of [5 MiB + 17, 64 MiB) rounds down to 32 MiB.
+		val tail = plan.claim(mib)!!
+		assertEquals(32 * mib, tail.start)
+		assertEquals(32 * mib, first.end)
+	}
+
+	@Test
+	fun rewindDropsHalfWrittenChunks() {
+		val chunk = SegmentPlan.ALIGN_BYTES
+		val plan = SegmentPlan.initial(64 * mib, 2)
+		val a = plan.claim(mib)!!
+		val b = plan.claim(mib)!!
+		plan.commit(a, (chunk + 100).toInt())
+		plan.commit(b, plan.writable(b, Int.MAX_VALUE))
+		val restored = SegmentPlan.decode(plan.total, plan.encode())!!
+		restored.rewindToChunks()
+		assertEquals(chunk + 32 * mib, restored.downloaded())
+	}
+
+	@Test
+	fun aSegmentWhoseTailFailsItsCheckGoesBackOneChunk() {
+		val chunk = SegmentPlan.ALIGN_BYTES
+		val plan = SegmentPlan.initial(8 * chunk + 10, 2) // 4 chunks each
+		val a = plan.claim(mib)!!
+		val b = plan.claim(mib)!!
+		plan.commit(a, (2 * chunk).toInt())
+		plan.commit(b, (chunk / 2).toInt())
+		// Only the first segment has a whole chunk to re-read.
+		assertEquals(listOf(1), plan.tailChunks())
+		assertEquals(2 * chunk, plan.rewindChunk(1))
+		assertEquals(chunk + chunk / 2, plan.downloaded())
+		assertNull(plan.rewindChunk(5)) // not written yet
+
+		val sums = ChunkChecksums.empty()
+		val bytes = java.nio.ByteBuffer.allocate(chunk.toInt())
+		sums.record(0L, bytes.duplicate())
+		sums.record(chunk, bytes.duplicate())
+		sums.forget(chunk, 2 * chunk)
+		assertEquals(1, sums.completeChunks())
+		// The rewritten chunk is hashed again instead of skipped as known.
+		sums.record(chunk, bytes.duplicate())
+		assertEquals(2, sums.completeChunks())
+	}
+
+	@Test
+	fun decodeRejectsPlansThatDoNotAddUp() {
+		assertNull(SegmentPlan.decode(100, "0-50-10,60-100-60"))
+		assertNull(SegmentPlan.decode(100, "0-50-60,50-100-50"))
+		assertNull(SegmentPlan.decode(100, "0-50-0"))
+		assertNull(SegmentPlan.decode(100, "garbage"))
+		assertNotNull(SegmentPlan.decode(100, "50-100-75,0-50-50"))
+	}
+
+	@Test
+	fun availableFromRunsThroughFinishedSegmentsOnly() {
+		val plan = SegmentPlan.initial(48 * mib, 3)
+		val a = plan.claim(mib)!!
+		val b = plan.claim(mib)!!
+		plan.commit(a, plan.writable(a, Int.MAX_VALUE))
+		plan.commit(b, (mib).toInt())
+		assertEquals(17 * mib, plan.availableFrom(0L))
+		assertEquals(mib - 10, plan.availableFrom(16 * mib + 10))
+		assertEquals(0L, plan.availableFrom(17 * mib))
+		assertEquals(0L, plan.availableFrom(40 * mib))
+	}
+
+	@Test
+	fun preferredPositionIsClaimedFirst() {
+		val plan = SegmentPlan.initial(64 * mib, 1)
+		val owner = plan.claim(mib)!!
+		plan.commit(owner, mib.toInt())
+		// The owner is 1 MiB in; a reader wants 40 MiB + change.
+		assertTrue(plan.prefer(40 * mib + 123))
+		val tail = plan.claim(Long.MAX_VALUE / 4)!!
+		assertEquals(40 * mib, tail.start)
+		assertEquals(40 * mib, owner.end)
+		// Already on disk, or the owner gets there within a chunk: no-op.
+		assertFalse(plan.prefer(100))
+		assertFalse(plan.prefer(mib + 10))
+	}
+
+	@Test
+	fun governorKeepsConnectionsThatRaiseThroughput() {
+		val governor = ConnectionGovernor(min = 1, max = 4, initial = 2)
+		assertEquals(3, governor.onSample(10.0)) // probe a third connection
+		assertEquals(3, governor.onSample(15.0)) // +50%: keep it
+		assertEquals(4, governor.onSample(15.0)) // probe a fourth
+		assertEquals(3, governor.onSample(15.5)) // +3%: give it back
+		assertEquals(3, governor.onSample(15.5)) // and hold
+	}
+}
@@ -0,0 +1,354 @@
+package com.debrify.app.download
+
+import com.debrify.app.recording.CaptureLoop
+import com.debrify.app.recording.RecordingIndex
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.lang.management.ManagementFactory
+import java.net.HttpURLConnection
+import java.nio.channels.Channels
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Test
+
+/**
+ * Throughput of the download and recording transfer loops against
+ * [FaultyOrigin], with and without faults. Opt-in: skipped unless the
+ * `debrify.bench` system property names a report file
+ * (`./gradlew :app:testDebugUnitTest -Pbench=bench.txt`), which gets one
+ * line per scenario:
+ *
+ *     BENCH <scenario> mbps=… cpu_ms_per_gib=… alloc_kib_per_mib=… resume_ms=…
+ *
+ * Only the bytes are asserted; the numbers are tracked, not gated — CI
+ * machines are too noisy. The copy loops are the services' own
+ * ([TransferLoops], [CaptureLoop]); connections and retries are driven here,
+ * since the services themselves need a device. A short read timeout stands
+ * in for the stall watchdog, and retries skip the services' backoff, so
+ * resume_ms is fault detection to the first byte of the next connection.
+ */
+class TransferBenchmarkTest {
+	companion object {
+		private const val STALL_MS = 500
+		private const val MAX_ATTEMPTS = 8
+		private const val MIB = 1024L * 1024
+
+		private val report: File? = System.getProperty("debrify.bench")?.let { File(it) }
+
+		@BeforeClass
+		@JvmStatic
+		fun optIn() {
+			assumeTrue("benchmark not requested (-Pbench)", report != null)
+		}
+	}
+
+	private val payload = ByteArray(16 * MIB.toInt()).also { java.util.Random(11).nextBytes(it) }
+	private lateinit var origin: FaultyOrigin
+	private lateinit var out: File
+
+	@Before
+	fun setUp() {
+		origin = FaultyOrigin(payload)
+		out = File.createTempFile("transfer-bench", ".bin")
+		// Class loading and JIT on a clean run, not on the first scenario.
+		repeat(2) { singleStream(Meter(), CopyOnWriteArrayList()) }
+	}
+
+	@After
+	fun tearDown() {
+		origin.close()
+		out.delete()
+	}
+
+	@Test
+	fun singleStreamDownload() {
+		scenario("single/clean") { m, r -> singleStream(m, r) }
+		scenario("single/throttled-32MBps", bytesPerSecond = 32 * MIB) { m, r -> singleStream(m, r) }
+		scenario("single/drop", listOf(FaultyOrigin.Fault.Drop(5 * MIB))) { m, r -> singleStream(m, r) }
+		scenario("single/stall", listOf(FaultyOrigin.Fault.Stall(5 * MIB, 4L * STALL_MS))) { m, r ->
+			singleStream(m, r)
+		}
+		scenario(
+			"single/drop-then-range-ignored",
+			listOf(FaultyOrigin.Fault.Drop(5 * MIB), FaultyOrigin.Fault.IgnoreRange),
+		) { m, r -> singleStream(m, r) }
+		scenario(
+			"single/drop-then-rewound-range",
+			listOf(FaultyOrigin.Fault.Drop(5 * MIB), FaultyOrigin.Fault.RewoundRange(MIB)),
+		) { m, r -> singleStream(m, r) }
+		// Resuming a file that is already whole: the origin answers 416.
+		out.writeBytes(payload)
+		scenario("single/resume-complete-416") { m, r -> singleStream(m, r, startAt = payload.size.toLong()) }
+		assertEquals(416, origin.served.last().status)
+	}
+
+	@Test
+	fun segmentedDownload() {
+		// Per-connection caps are what segmenting is for.
+		scenario("segmented/x1-throttled-16MBps", bytesPerSecond = 16 * MIB) { m, r -> segmented(1, m, r) }
+		scenario("segmented/x4-throttled-16MBps", bytesPerSecond = 16 * MIB) { m, r -> segmented(4, m, r) }
+		scenario("segmented/x4-clean") { m, r -> segmented(4, m, r) }
+		scenario("segmented/x4-drop", listOf(FaultyOrigin.Fault.Drop(2 * MIB))) { m, r -> segmented(4, m, r) }
+	}
+
+	@Test
+	fun recordingCapture() {
+		val target = payload.size.toLong()
+		scenario("recording/clean", expected = null) { m, r -> capture(target, m, r) }
+		scenario("recording/drop", listOf(FaultyOrigin.Fault.Drop(5 * MIB)), expected = null) { m, r ->
+			capture(target, m, r)
+		}
+		scenario("recording/stall", listOf(FaultyOrigin.Fault.Stall(5 * MIB, 4L * STALL_MS)), expected = null) { m, r ->
+			capture(target, m, r)
+		}
+		assertEquals(target, out.length())
+	}
+
+	// ---- Measurement ---------------------------------------------------------
+
+	/** CPU and allocation of every thread that did the work, and the bytes it moved. */
+	private class Meter {
+		val cpuNs = AtomicLong()
+		val allocated = AtomicLong()
+		val bytes = AtomicLong()
+
+		fun track(block: () -> Unit) {
+			val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+			val id = Thread.currentThread().id
+			val cpuBefore = threads.currentThreadCpuTime
+			val allocatedBefore = threads.getThreadAllocatedBytes(id)
+			try {
+				block()
+			} finally {
+				cpuNs.addAndGet(threads.currentThreadCpuTime - cpuBefore)
+				allocated.addAndGet(threads.getThreadAllocatedBytes(id) - allocatedBefore)
+			}
+		}
+	}
+
+	private fun scenario(
+		name: String,
+		faults: List<FaultyOrigin.Fault> = emptyList(),
+		bytesPerSecond: Long = 0L,
+		expected: ByteArray? = payload,
+		transfer: (Meter, MutableList<Long>) -> Unit,
+	) {
+		origin.faults.clear()
+		origin.faults.addAll(faults)
+		origin.bytesPerSecond = bytesPerSecond
+		val meter = Meter()
+		val resumes = CopyOnWriteArrayList<Long>()
+		val start = System.nanoTime()
+		meter.track { transfer(meter, resumes) }
+		val wallNs = (System.nanoTime() - start).coerceAtLeast(1L)
+		if (expected != null) assertTrue("$name: bytes differ", expected.contentEquals(out.readBytes()))
+		assertTrue("$name: ${origin.faults.size} faults never fired", origin.faults.isEmpty())
+
+		val bytes = meter.bytes.get()
+		val mib = bytes.toDouble() / MIB
+		val line = StringBuilder("BENCH $name")
+		line.append(" mbps=").append(fmt(mib / (wallNs / 1e9)))
+		line.append(" cpu_ms_per_gib=").append(if (bytes > 0L) fmt(meter.cpuNs.get() / 1e6 / (mib / 1024)) else "-")
+		line.append(" alloc_kib_per_mib=").append(if (bytes > 0L) fmt(meter.allocated.get() / 1024.0 / mib) else "-")
+		line.append(" resume_ms=").append(if (resumes.isEmpty()) "-" else fmt(resumes.average() / 1e6))
+		report!!.appendText(line.append('\n').toString())
+	}
+
+	private fun fmt(value: Double) = String.format(java.util.Locale.US, "%.1f", value)
+
+	// ---- Transfer loops ------------------------------------------------------
+
+	// MediaStoreDownloadService.runSingleStreamAttempt, retried like
+	// downloadLoop: Range + If-Range from the bytes on disk; a 200 restarts
+	// from 0, a 416 means the file is whole, a rewound Content-Range appends
+	// from its start.
+	private fun singleStream(meter: Meter, resumes: MutableList<Long>, startAt: Long = 0L) {
+		val total = payload.size.toLong()
+		var downloaded = startAt
+		var faultAt = 0L
+		val sums = ChunkChecksums.empty()
+		RandomAccessFile(out, "rw").channel.use { channel ->
+			val sink = ChannelSink(channel, 8 * MIB)
+			repeat(MAX_ATTEMPTS) {
+				val connection = origin.fileUrl.openConnection() as HttpURLConnection
+				connection.readTimeout = STALL_MS
+				if (downloaded > 0L) {
+					connection.setRequestProperty("Range", "bytes=$downloaded-")
+					connection.setRequestProperty("If-Range", "\"bench\"")
+				}
+				val buffer = DirectBufferPool.acquire()
+				try {
+					val resp = connection.responseCode
+					when {
+						downloaded > 0L && resp == 416 -> return
+						downloaded > 0L && resp == HttpURLConnection.HTTP_OK -> downloaded = 0L
+						resp == HttpURLConnection.HTTP_PARTIAL -> {
+							val start = connection.getHeaderField("Content-Range")
+								?.substringAfter(' ')?.substringBefore('-')?.toLongOrNull()
+							if (start != null && start < downloaded) downloaded = start
+						}
+						resp != HttpURLConnection.HTTP_OK -> throw AssertionError("HTTP $resp")
+					}
+					channel.truncate(downloaded)
+					sums.rewindTo(downloaded)
+					val source = Channels.newChannel(connection.inputStream)
+					TransferLoops.stream(
+						source, buffer, sink, sums, downloaded,
+						proceed = { true },
+						throttle = {
+							if (faultAt != 0L) {
+								resumes.add(System.nanoTime() - faultAt)
+								faultAt = 0L
+							}
+						},
+					) { position ->
+						meter.bytes.addAndGet(position - downloaded)
+						downloaded = position
+					}
+					if (downloaded == total) {
+						sink.sync()
+						return
+					}
+				} catch (_: IOException) {
+					// Dropped or stalled: the next attempt resumes.
+				} finally {
+					DirectBufferPool.release(buffer)
+					connection.disconnect()
+				}
+				if (faultAt == 0L) faultAt = System.nanoTime()
+			}
+		}
+		throw AssertionError("gave up at $downloaded of $total")
+	}
+
+	// runSegmentedAttempt at a fixed connection count: workers claim segments
+	// of one plan and write through one shared sink; a failed connection
+	// hands its segment back and claims again.
+	private fun segmented(connections: Int, meter: Meter, resumes: MutableList<Long>) {
+		val plan = SegmentPlan.initial(payload.size.toLong(), connections)
+		val sums = ChunkChecksums.empty()
+		RandomAccessFile(out, "rw").channel.use { channel ->
+			channel.truncate(0L)
+			val sink = ChannelSink(channel, 0L)
+			val failure = AtomicReference<Throwable>()
+			val workers = List(connections) {
+				Thread {
+					meter.track {
+						try {
+							segmentWorker(plan, sink, sums, meter, resumes)
+						} catch (t: Throwable) {
+							failure.set(t)
+						}
+					}
+				}
+			}
+			workers.forEach { it.start() }
+			workers.forEach { it.join() }
+			failure.get()?.let { throw it }
+			sink.sync()
+		}
+		assertTrue("plan incomplete: ${plan.encode()}", plan.isComplete())
+	}
+
+	private fun segmentWorker(
+		plan: SegmentPlan,
+		sink: ChannelSink,
+		sums: ChunkChecksums,
+		meter: Meter,
+		resumes: MutableList<Long>,
+	) {
+		val buffer = DirectBufferPool.acquire()
+		var faultAt = 0L
+		var failures = 0
+		try {
+			while (true) {
+				val segment = plan.claim(ChunkChecksums.CHUNK_BYTES) ?: return
+				val connection = origin.fileUrl.openConnection() as HttpURLConnection
+				connection.readTimeout = STALL_MS
+				connection.setRequestProperty("Range", "bytes=${segment.next}-${segment.end - 1}")
+				try {
+					if (connection.responseCode != HttpURLConnection.HTTP_PARTIAL) {
+						throw AssertionError("HTTP ${connection.responseCode} for a segment")
+					}
+					TransferLoops.segment(
+						Channels.newChannel(connection.inputStream), buffer, sink, plan, segment, sums,
+						proceed = { true },
+						throttle = {
+							if (faultAt != 0L) {
+								resumes.add(System.nanoTime() - faultAt)
+								faultAt = 0L
+							}
+						},
+					) { count -> meter.bytes.addAndGet(count.toLong()) }
+				} catch (_: IOException) {
+				} finally {
+					connection.disconnect()
+					plan.release(segment)
+				}
+				if (!segment.done) {
+					if (++failures > MAX_ATTEMPTS) throw AssertionError("segment ${segment.start} kept failing")
+					if (faultAt == 0L) faultAt = System.nanoTime()
+				}
+			}
+		} finally {
+			DirectBufferPool.release(buffer)
+		}
+	}
+
+	// LiveRecordingService.runCapture: the capture loop into a buffered
+	// file and its seek index through a 256 KiB array, reconnecting after a
+	// drop, until at least [target] bytes are captured; the file is then cut
+	// to [target] so runs compare.
+	private fun capture(target: Long, meter: Meter, resumes: MutableList<Long>) {
+		var bytes = 0L
+		var faultAt = 0L
+		val indexFile = File(out.path + ".idx")
+		FileOutputStream(out).use { fos ->
+			val output = BufferedOutputStream(fos)
+			val index = RecordingIndex.Writer(indexFile, emptyList())
+			val sink = CaptureLoop.Sink(output, index)
+			val buffer = ByteArray(256 * 1024)
+			repeat(MAX_ATTEMPTS) {
+				val connection = origin.liveUrl.openConnection() as HttpURLConnection
+				connection.readTimeout = STALL_MS
+				try {
+					val input = BufferedInputStream(connection.inputStream)
+					CaptureLoop.copy(input, buffer, sniff = bytes == 0L, proceed = { bytes < target }) { n ->
+						if (faultAt != 0L) {
+							resumes.add(System.nanoTime() - faultAt)
+							faultAt = 0L
+						}
+						sink.write(buffer, 0, n)
+						bytes += n
+						meter.bytes.addAndGet(n.toLong())
+						true
+					}
+				} catch (_: IOException) {
+				} finally {
+					connection.disconnect()
+				}
+				if (bytes >= target) {
+					output.flush()
+					index.close()
+					indexFile.delete()
+					fos.channel.truncate(target)
+					fos.fd.sync()
+					return
+				}
+				if (faultAt == 0L) faultAt = System.nanoTime()
+			}
+		}
+		throw AssertionError("captured $bytes of $target")
+	}
+}
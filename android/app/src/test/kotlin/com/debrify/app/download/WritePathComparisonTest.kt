@@ -0,0 +1,131 @@
+package com.debrify.app.download
+
+import com.sun.net.httpserver.HttpServer
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.lang.management.ManagementFactory
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.URL
+import java.nio.channels.Channels
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * The download write path against a local HTTP stand-in for a debrid CDN:
+ * the pre-[ChannelSink] loop (heap array, BufferedInputStream,
+ * BufferedOutputStream) next to the direct-buffer one the service uses now.
+ * Both must produce the same bytes; the direct path must allocate less per
+ * transfer. Throughput is left to TransferBenchmarkTest — CI machines are
+ * too noisy to assert it.
+ */
+class WritePathComparisonTest {
+	private val payload = ByteArray(32 * 1024 * 1024).also { java.util.Random(7).nextBytes(it) }
+	private lateinit var server: HttpServer
+	private lateinit var url: URL
+	private lateinit var out: File
+
+	@Before
+	fun setUp() {
+		server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+		server.createContext("/file") { exchange ->
+			exchange.sendResponseHeaders(200, payload.size.toLong())
+			exchange.responseBody.use { body ->
+				var offset = 0
+				while (offset < payload.size) {
+					val n = minOf(64 * 1024, payload.size - offset)
+					body.write(payload, offset, n)
+					offset += n
+				}
+			}
+		}
+		server.start()
+		url = URL("http://127.0.0.1:${server.address.port}/file")
+		out = File.createTempFile("write-path", ".bin")
+	}
+
+	@After
+	fun tearDown() {
+		server.stop(0)
+		out.delete()
+	}
+
+	@Test
+	fun directPathMatchesBytesAndAllocatesLess() {
+		// Warm both paths so class loading and JIT don't land on one side.
+		repeat(2) { legacyCopy(); directCopy() }
+
+		val legacy = measure { legacyCopy() }
+		assertArrayEquals(payload, out.readBytes())
+		val direct = measure { directCopy() }
+		assertArrayEquals(payload, out.readBytes())
+
+		assertTrue(
+			"direct path allocated $direct bytes, legacy $legacy",
+			direct < legacy,
+		)
+	}
+
+	/** Bytes [block] allocated on this thread. */
+	private fun measure(block: () -> Unit): Long {
+		val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+		val id = Thread.currentThread().id
+		val before = threads.getThreadAllocatedBytes(id)
+		block()
+		return threads.getThreadAllocatedBytes(id) - before
+	}
+
+	// The service's loop before the direct write path, line for line.
+	private fun legacyCopy() {
+		val connection = url.openConnection() as HttpURLConnection
+		try {
+			val input = BufferedInputStream(connection.inputStream)
+			FileOutputStream(out).use { fos ->
+				fos.channel.truncate(0L)
+				val output = BufferedOutputStream(fos)
+				val buffer = ByteArray(256 * 1024)
+				while (true) {
+					val n = input.read(buffer)
+					if (n == -1) break
+					output.write(buffer, 0, n)
+				}
+				output.flush()
+				fos.fd.sync()
+			}
+			input.close()
+		} finally {
+			connection.disconnect()
+		}
+	}
+
+	private fun directCopy() {
+		val connection = url.openConnection() as HttpURLConnection
+		val buffer = DirectBufferPool.acquire()
+		try {
+			val source = Channels.newChannel(connection.inputStream)
+			FileOutputStream(out).use { fos ->
+				val channel = fos.channel
+				channel.truncate(0L)
+				val sink = ChannelSink(channel, 8L * 1024 * 1024)
+				var position = 0L
+				while (true) {
+					buffer.clear()
+					val n = source.read(buffer)
+					if (n == -1) break
+					buffer.flip()
+					position += sink.writeAt(buffer, position)
+				}
+				sink.sync()
+			}
+			source.close()
+		} finally {
+			DirectBufferPool.release(buffer)
+			connection.disconnect()
+		}
+	}
+}
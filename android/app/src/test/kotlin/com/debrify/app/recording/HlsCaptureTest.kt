@@ -0,0 +1,212 @@
+package com.debrify.app.recording
+
+import com.sun.net.httpserver.HttpServer
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class HlsCaptureTest {
+	private val base = URL("https://edge.example.com/live/ch1/index.m3u8")
+
+	@Test
+	fun mediaPlaylistCarriesSequenceKeysAndDiscontinuities() {
+		val playlist = HlsPlaylist.parse(
+			"""
+			#EXTM3U
+			#EXT-X-TARGETDURATION:6
+			#EXT-X-MEDIA-SEQUENCE:100
+			#EXT-X-KEY:METHOD=AES-128,URI="keys/1.key",IV=0x0000000000000000000000000000002A
+			#EXTINF:6.0,
+			s100.ts
+			#EXT-X-DISCONTINUITY
+			#EXT-X-KEY:METHOD=NONE
+			#EXTINF:6.0,
+			https://cdn.example.com/s101.ts
+			""".trimIndent(),
+			base,
+		) as HlsPlaylist.Media
+		assertEquals(6_000L, playlist.targetDurationMs)
+		assertEquals(100L, playlist.firstSequence)
+		assertEquals(101L, playlist.lastSequence)
+		val (first, second) = playlist.segments
+		assertEquals("https://edge.example.com/live/ch1/s100.ts", first.url.toString())
+		assertEquals("https://edge.example.com/live/ch1/keys/1.key", first.key!!.url.toString())
+		assertEquals(42, first.key!!.iv!![15].toInt())
+		assertTrue(!first.discontinuity && second.discontinuity)
+		assertNull(second.key)
+		assertEquals("https://cdn.example.com/s101.ts", second.url.toString())
+	}
+
+	@Test
+	fun masterPicksTheBestVariantWithItsOwnAudio() {
+		val master = HlsPlaylist.parse(
+			"""
+			#EXTM3U
+			#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aud",NAME="en",URI="audio.m3u8"
+			#EXT-X-STREAM-INF:BANDWIDTH=9000000,AUDIO="aud"
+			hi-video-only.m3u8
+			#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360
+			low.m3u8
+			#EXT-X-STREAM-INF:BANDWIDTH=3000000,CODECS="avc1.4d401f,mp4a.40.2"
+			mid.m3u8
+			""".trimIndent(),
+			base,
+		) as HlsPlaylist.Master
+		assertEquals("https://edge.example.com/live/ch1/mid.m3u8", master.pick().url.toString())
+	}
+
+	@Test
+	fun segmentsThatCantMakeOneTsAreRefused() {
+		for (tag in listOf("#EXT-X-MAP:URI=\"init.mp4\"", "#EXT-X-KEY:METHOD=SAMPLE-AES,URI=\"k\"", "#EXT-X-BYTERANGE:100@0")) {
+			try {
+				HlsPlaylist.parse("#EXTM3U\n#EXT-X-TARGETDURATION:6\n$tag\n#EXTINF:6,\na.ts\n", base)
+				fail("accepted $tag")
+			} catch (_: UnrecordableStreamException) {
+			}
+		}
+	}
+
+	@Test
+	fun sequenceIvIsBigEndian() {
+		val iv = HlsPlaylist.sequenceIv(0x0102L)
+		assertEquals(16, iv.size)
+		assertEquals(1, iv[14].toInt())
+		assertEquals(2, iv[15].toInt())
+		assertEquals(0, iv.take(14).count { it != 0.toByte() })
+	}
+
+	@Test
+	fun discontinuityIsMarkedOncePerPid() {
+		val ts = ByteArray(188 * 3)
+		for (i in 0 until 3) {
+			val at = i * 188
+			ts[at] = 0x47
+			ts[at + 2] = if (i == 1) 0x21 else 0x20 // PIDs 0x20, 0x21, 0x20
+			ts[at + 3] = 0x30 // adaptation field + payload
+			ts[at + 4] = 7
+		}
+		HlsPlaylist.markDiscontinuity(ts)
+		assertEquals(0x80, ts[5].toInt() and 0xff)
+		assertEquals(0x80, ts[188 + 5].toInt() and 0xff)
+		assertEquals(0, ts[376 + 5].toInt())
+	}
+
+	@Test
+	fun liveCaptureAppendsEverySegmentOnceThroughFailuresAndKeyRotation() {
+		LiveOrigin().use { origin ->
+			val out = ByteArrayOutputStream()
+			val engine = HlsCapture(
+				open = { url, track ->
+					val connection = url.openConnection() as HttpURLConnection
+					connection.readTimeout = 2_000
+					track(connection)
+					if (connection.responseCode != 200) {
+						connection.disconnect()
+						throw IOException("HTTP ${connection.responseCode}")
+					}
+					connection
+				},
+				write = { out.write(it) },
+				keepGoing = { true },
+			)
+			val result = engine.run(origin.masterUrl)
+			assertNull(result.note)
+			assertEquals(0L, result.lost)
+			// Starts three behind the live edge (segment 2 of 0..4) and runs
+			// to the end of the event.
+			val expected = ByteArrayOutputStream()
+			for (seq in 2 until LiveOrigin.SEGMENTS) expected.write(origin.plain(seq))
+			assertEquals(LiveOrigin.SEGMENTS - 2, result.segments)
+			assertArrayEquals(expected.toByteArray(), out.toByteArray())
+			assertTrue("a failed segment was never retried", origin.failedOnce.isNotEmpty())
+		}
+	}
+
+	/**
+	 * A live event over loopback: a master pointing at a media playlist whose
+	 * five-segment window slides by one each time it is fetched, AES-128
+	 * with a key that rotates every four segments, and every third segment
+	 * failing on its first request. The window ends with ENDLIST.
+	 */
+	private class LiveOrigin : AutoCloseable {
+		companion object {
+			const val SEGMENTS = 14
+			private const val WINDOW = 5
+		}
+
+		val failedOnce: MutableSet<Int> = ConcurrentHashMap.newKeySet()
+		private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+		private val edge = AtomicInteger(WINDOW - 1)
+
+		val masterUrl: URL get() = URL("http://127.0.0.1:${server.address.port}/master.m3u8")
+
+		init {
+			server.executor = Executors.newCachedThreadPool { r -> Thread(r).apply { isDaemon = true } }
+			server.createContext("/") { exchange ->
+				exchange.use {
+					val path = it.requestURI.path
+					val body: ByteArray? = when {
+						path == "/master.m3u8" ->
+							"#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1000\nmedia.m3u8\n".toByteArray()
+						path == "/media.m3u8" -> mediaPlaylist().toByteArray()
+						path.startsWith("/key") -> key(path.removePrefix("/key").toInt())
+						path.startsWith("/seg") -> {
+							val seq = path.removePrefix("/seg").removeSuffix(".ts").toInt()
+							if (seq % 3 == 0 && failedOnce.add(seq)) null else encrypted(seq)
+						}
+						else -> null
+					}
+					if (body == null) {
+						it.sendResponseHeaders(503, -1L)
+					} else {
+						it.sendResponseHeaders(200, body.size.toLong())
+						it.responseBody.write(body)
+					}
+				}
+			}
+			server.start()
+		}
+
+		override fun close() {
+			server.stop(0)
+			(server.executor as java.util.concurrent.ExecutorService).shutdownNow()
+		}
+
+		fun plain(seq: Int): ByteArray = ByteArray(188 * 4) { i -> if (i % 188 == 0) 0x47 else (seq * 31 + i).toByte() }
+
+		private fun key(generation: Int) = ByteArray(16) { (generation + it).toByte() }
+
+		private fun encrypted(seq: Int): ByteArray {
+			val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding")
+			cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key(seq / 4), "AES"), IvParameterSpec(HlsPlaylist.sequenceIv(seq.toLong())))
+			return cipher.doFinal(plain(seq))
+		}
+
+		private fun mediaPlaylist(): String {
+			val last = edge.getAndUpdate { minOf(it + 1, SEGMENTS - 1) }
+			val first = maxOf(0, last - WINDOW + 1)
+			return buildString {
+				append("#EXTM3U\n#EXT-X-TARGETDURATION:1\n#EXT-X-MEDIA-SEQUENCE:$first\n")
+				for (seq in first..last) {
+					if (seq == first || seq % 4 == 0) append("#EXT-X-KEY:METHOD=AES-128,URI=\"key${seq / 4}\"\n")
+					append("#EXTINF:1.0,\nseg$seq.ts\n")
+				}
+				if (last == SEGMENTS - 1) append("#EXT-X-ENDLIST\n")
+			}
+		}
+	}
+}
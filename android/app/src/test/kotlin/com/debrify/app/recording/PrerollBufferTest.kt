@@ -0,0 +1,81 @@
+package com.debrify.app.recording
+
+import java.io.ByteArrayOutputStream
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PrerollBufferTest {
+	/** A video PES start on PID 0x100 flagged random access; [tag] marks it. */
+	private fun keyframe(tag: Int): ByteArray {
+		val p = ByteArray(TsKeyframeScanner.TS_PACKET) { tag.toByte() }
+		p[0] = 0x47
+		p[1] = 0x41 // PUSI, PID 0x100
+		p[2] = 0x00
+		p[3] = 0x30 // adaptation + payload
+		p[4] = 1
+		p[5] = 0x40 // random access
+		val pes = intArrayOf(0, 0, 1, 0xE0, 0, 0, 0x80, 0x80, 5, 0x21, 0, 1, 0, 1)
+		for (i in pes.indices) p[6 + i] = pes[i].toByte()
+		return p
+	}
+
+	/** A continuation packet on the same PID, no keyframe. */
+	private fun filler(tag: Int): ByteArray {
+		val p = ByteArray(TsKeyframeScanner.TS_PACKET) { tag.toByte() }
+		p[0] = 0x47
+		p[1] = 0x01
+		p[2] = 0x00
+		p[3] = 0x10 // payload only
+		return p
+	}
+
+	private fun drained(buffer: PrerollBuffer): ByteArray {
+		val out = ByteArrayOutputStream()
+		buffer.drainTo { data, off, len -> out.write(data, off, len) }
+		return out.toByteArray()
+	}
+
+	@Test
+	fun drainStartsOnTheNewestKeyframe() {
+		val buffer = PrerollBuffer(1024 * 1024)
+		val expected = ByteArrayOutputStream()
+		for (gop in 0 until 5) {
+			val packets = listOf(keyframe(gop)) + List(10) { filler(gop) }
+			for (packet in packets) {
+				// Split across feeds, as a network read would.
+				buffer.feed(packet, 0, 50)
+				buffer.feed(packet, 50, packet.size - 50)
+				if (gop == 4) expected.write(packet)
+			}
+		}
+		assertTrue(buffer.aligned)
+		assertTrue(buffer.keyframeWallMs > 0L)
+		assertArrayEquals(expected.toByteArray(), drained(buffer))
+		assertEquals(0, buffer.bytes)
+	}
+
+	@Test
+	fun aStreamWithoutKeyframesKeepsOnlyItsNewestBytes() {
+		val capacity = 10 * TsKeyframeScanner.TS_PACKET
+		val buffer = PrerollBuffer(capacity)
+		repeat(100) { buffer.feed(filler(it), 0, TsKeyframeScanner.TS_PACKET) }
+		assertFalse(buffer.aligned)
+		assertEquals(capacity, buffer.bytes)
+		val out = drained(buffer)
+		assertArrayEquals(filler(90), out.copyOfRange(0, TsKeyframeScanner.TS_PACKET))
+	}
+
+	@Test
+	fun aGopLongerThanTheBufferLosesItsAlignment() {
+		val capacity = 10 * TsKeyframeScanner.TS_PACKET
+		val buffer = PrerollBuffer(capacity)
+		buffer.feed(keyframe(1), 0, TsKeyframeScanner.TS_PACKET)
+		assertTrue(buffer.aligned)
+		repeat(20) { buffer.feed(filler(2), 0, TsKeyframeScanner.TS_PACKET) }
+		assertFalse(buffer.aligned)
+		assertEquals(capacity, buffer.bytes)
+	}
+}
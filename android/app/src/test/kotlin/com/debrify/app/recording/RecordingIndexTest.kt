@@ -0,0 +1,112 @@
+package com.debrify.app.recording
+
+import java.io.File
+import java.io.RandomAccessFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class RecordingIndexTest {
+	@get:Rule
+	val folder = TemporaryFolder()
+
+	/** One video PES start with [pts] (90 kHz), flagged random access. */
+	private fun keyframe(pts: Long): ByteArray {
+		val p = ByteArray(TsKeyframeScanner.TS_PACKET) { 0xff.toByte() }
+		p[0] = 0x47
+		p[1] = 0x41 // PUSI, PID 0x100
+		p[2] = 0x00
+		p[3] = 0x30 // adaptation + payload
+		p[4] = 1
+		p[5] = 0x40 // random access
+		val pes = intArrayOf(
+			0, 0, 1, 0xE0, 0, 0, 0x80, 0x80, 5,
+			0x21 or ((pts shr 29).toInt() and 0x0e),
+			(pts shr 22).toInt() and 0xff,
+			((pts shr 14).toInt() and 0xfe) or 1,
+			(pts shr 7).toInt() and 0xff,
+			((pts shl 1).toInt() and 0xfe) or 1,
+		)
+		for (i in pes.indices) p[6 + i] = pes[i].toByte()
+		return p
+	}
+
+	private fun write(file: File, seconds: Int, stepMs: Long = 1_000L, programmes: List<RecordingIndex.Programme> = emptyList()) {
+		val writer = RecordingIndex.Writer(file, programmes)
+		var pts = 900_000L
+		for (i in 0 until seconds * 1_000 / stepMs.toInt()) {
+			val packet = keyframe(pts)
+			// Split packets across appends, as a network read would.
+			writer.append(packet, 0, 100)
+			writer.append(packet, 100, packet.size - 100)
+			pts += stepMs * 90
+		}
+		writer.close()
+	}
+
+	@Test
+	fun seeksLandOnTheKeyframeAtOrBefore() {
+		val file = File(folder.root, "a.idx")
+		write(file, seconds = 30)
+		val index = RecordingIndex.read(file)!!
+		assertEquals(30, index.size)
+		assertEquals(29_000L, index.durationMs)
+		val at = index.pointAtOrBefore(12_500L)!!
+		assertEquals(12_000L, at.mediaMs)
+		assertEquals(12L * TsKeyframeScanner.TS_PACKET, at.offset)
+		assertEquals(13_000L, index.pointAfter(12_500L)!!.mediaMs)
+		assertEquals(0L, index.pointAtOrBefore(-5L)!!.mediaMs)
+		assertNull(index.pointAfter(29_000L))
+	}
+
+	@Test
+	fun keyframesCloserThanTheSpacingShareAnEntry() {
+		val file = File(folder.root, "b.idx")
+		write(file, seconds = 10, stepMs = 250L)
+		val index = RecordingIndex.read(file)!!
+		assertEquals(10, index.size)
+		assertEquals(4L * TsKeyframeScanner.TS_PACKET, index.pointAtOrBefore(1_100L)!!.offset)
+	}
+
+	@Test
+	fun programmesBecomeChaptersFromTheFirstKeyframe() {
+		val file = File(folder.root, "c.idx")
+		val now = System.currentTimeMillis()
+		write(
+			file,
+			seconds = 30,
+			programmes = listOf(
+				RecordingIndex.Programme(now - 7_200_000L, "Earlier"),
+				RecordingIndex.Programme(now - 3_600_000L, "News"),
+				RecordingIndex.Programme(now + 10_000L, "Weather"),
+				RecordingIndex.Programme(now + 3_600_000L, "Past the end"),
+			),
+		)
+		val chapters = RecordingIndex.read(file)!!.chapters
+		assertEquals(listOf("News", "Weather"), chapters.map { it.title })
+		assertEquals(0L, chapters[0].mediaMs)
+		assertTrue(chapters[1].mediaMs in 9_000L..10_000L)
+	}
+
+	@Test
+	fun aTornIndexKeepsItsPrefix() {
+		val file = File(folder.root, "d.idx")
+		write(file, seconds = 20)
+		RandomAccessFile(file, "rw").use { it.setLength(it.length() - 20) }
+		val index = RecordingIndex.read(file)
+		assertNotNull(index)
+		assertTrue(index!!.size in 18..19)
+		assertEquals(index.pointAtOrBefore(Long.MAX_VALUE)!!.mediaMs, index.durationMs)
+	}
+
+	@Test
+	fun aFileThatIsNotAnIndexReadsAsNone() {
+		val file = File(folder.root, "e.idx")
+		file.writeBytes(ByteArray(64) { 7 })
+		assertNull(RecordingIndex.read(file))
+	}
+}
@@ -0,0 +1,34 @@
+package com.debrify.app.recording
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class RecordingLibraryIndexTest {
+	private fun row(id: Long, stamp: Long) =
+		RecordingLibraryIndex.Row(id = id, name = "$id.ts", bytes = 1L, modifiedMs = 0L, stamp = stamp)
+
+	@Test
+	fun onlyNewAndRestampedRowsAreReRead() {
+		val indexed = mapOf(1L to row(1, 10), 2L to row(2, 20), 3L to row(3, 30))
+		val plan = RecordingLibraryIndex.plan(indexed, mapOf(1L to 10L, 2L to 25L, 3L to 30L, 4L to 40L))
+		assertEquals(listOf(2L, 4L), plan.refresh.sorted())
+		assertTrue(plan.drop.isEmpty())
+	}
+
+	@Test
+	fun rowsMediaStoreNoLongerListsAreDropped() {
+		val indexed = mapOf(1L to row(1, 10), 2L to row(2, 20))
+		val plan = RecordingLibraryIndex.plan(indexed, mapOf(2L to 20L))
+		assertTrue(plan.refresh.isEmpty())
+		assertEquals(listOf(1L), plan.drop)
+	}
+
+	@Test
+	fun aWriterRowIsReReadOnceMediaStoreStampsIt() {
+		// Writers record before the row's stamp is known.
+		val indexed = mapOf(5L to row(5, -1))
+		val plan = RecordingLibraryIndex.plan(indexed, mapOf(5L to 50L))
+		assertEquals(listOf(5L), plan.refresh)
+	}
+}
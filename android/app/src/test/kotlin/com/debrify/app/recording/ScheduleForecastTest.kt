@@ -0,0 +1,80 @@
+package com.debrify.app.recording
+
+import kotlin.random.Random
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class ScheduleForecastTest {
+	private fun schedule(id: String, url: String, startMs: Long, endMs: Long) =
+		RecordingSchedule(
+			id = id,
+			channelName = "Channel $url",
+			url = url,
+			headers = hashMapOf(),
+			startMs = startMs,
+			endMs = endMs,
+			programmeTitle = "Programme $id",
+			createdAt = 0L,
+		)
+
+	// Every schedule's window at its channel's rate, summed from scratch.
+	private fun bruteBytes(all: Collection<RecordingSchedule>, rates: Map<String, Long>) =
+		all.groupBy { it.url }.entries.sumOf { (url, schedules) ->
+			ScheduleForecast.bytesFor(schedules.sumOf { it.endMs - it.startMs }, rates.getValue(url))
+		}
+
+	@Test
+	fun aWindowIsItsDurationAtTheChannelRate() {
+		val forecast = ScheduleForecast { 1_000_000L }
+		forecast.put(schedule("a", "http://panel/1", 0L, 3_600_000L))
+		assertEquals(3_600_000_000L, forecast.bytes)
+		forecast.remove("a")
+		assertEquals(0L, forecast.bytes)
+	}
+
+	@Test
+	fun aRelearntRateRepricesOnlyThatChannel() {
+		val rates = hashMapOf("http://panel/1" to 500_000L, "http://panel/2" to 1_000_000L)
+		val forecast = ScheduleForecast { rates.getValue(it) }
+		forecast.put(schedule("a", "http://panel/1", 0L, 60_000L))
+		forecast.put(schedule("b", "http://panel/1", 120_000L, 180_000L))
+		forecast.put(schedule("c", "http://panel/2", 0L, 60_000L))
+		assertEquals(60_000_000L + 60_000_000L, forecast.bytes)
+		forecast.rateChanged("http://panel/1", 250_000L)
+		assertEquals(30_000_000L + 60_000_000L, forecast.bytes)
+		// Nothing scheduled on it: nothing to reprice.
+		forecast.rateChanged("http://panel/3", 9_000_000L)
+		assertEquals(90_000_000L, forecast.bytes)
+	}
+
+	@Test
+	fun matchesARecountThroughPutsRemovesAndRateChanges() {
+		val random = Random(23)
+		val rates = HashMap<String, Long>()
+		val forecast = ScheduleForecast { url -> rates.getOrPut(url) { 400_000L } }
+		val live = HashMap<String, RecordingSchedule>()
+		repeat(2_000) {
+			val url = "http://panel/${random.nextInt(8)}"
+			when (random.nextInt(5)) {
+				0 -> {
+					val id = "s${random.nextInt(100)}"
+					forecast.remove(id)
+					live.remove(id)
+				}
+				1 -> {
+					val rate = random.nextLong(100_000L, 2_000_000L)
+					rates[url] = rate
+					forecast.rateChanged(url, rate)
+				}
+				else -> {
+					val id = "s${random.nextInt(100)}"
+					val start = random.nextLong(0L, 86_400_000L)
+					val s = schedule(id, url, start, start + random.nextLong(0L, 10_800_000L))
+					forecast.put(s)
+					live[id] = s
+				}
+			}
+			assertEquals(bruteBytes(live.values, rates), forecast.bytes)
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.debrify.app.recording
+
+import kotlin.random.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ScheduleIntervalTreeTest {
+	private fun schedule(id: String, startMs: Long, endMs: Long, url: String = "http://panel/$id") =
+		RecordingSchedule(
+			id = id,
+			channelName = "Channel $id",
+			url = url,
+			headers = hashMapOf(),
+			startMs = startMs,
+			endMs = endMs,
+			programmeTitle = "Programme $id",
+			createdAt = 0L,
+		)
+
+	// The linear scans the store used before the tree.
+	private fun bruteOverlapping(all: Collection<RecordingSchedule>, startMs: Long, endMs: Long) =
+		all.filter { it.startMs < endMs && startMs < it.endMs }
+
+	private fun brutePeak(all: Collection<RecordingSchedule>, startMs: Long, endMs: Long): Int {
+		val events = ArrayList<Pair<Long, Int>>()
+		for (s in all) {
+			val from = maxOf(s.startMs, startMs)
+			val to = minOf(s.endMs, endMs)
+			if (to <= from) continue
+			events.add(from to 1)
+			events.add(to to -1)
+		}
+		events.sortWith(compareBy({ it.first }, { it.second }))
+		var current = 0
+		var peak = 0
+		for ((_, delta) in events) {
+			current += delta
+			if (current > peak) peak = current
+		}
+		return peak
+	}
+
+	@Test
+	fun halfOpenWindowsDoNotTouchAtTheirEdges() {
+		val tree = ScheduleIntervalTree()
+		tree.put(schedule("a", 100, 200))
+		tree.put(schedule("b", 200, 300))
+		assertEquals(listOf("a"), tree.overlapping(150, 200).map { it.id })
+		assertEquals(1, tree.peakOverlap(100, 300))
+		assertEquals(listOf("a", "b"), tree.overlapping(199, 201).map { it.id })
+		assertTrue(tree.overlapping(300, 400).isEmpty())
+	}
+
+	@Test
+	fun putReplacesTheScheduleWithTheSameId() {
+		val tree = ScheduleIntervalTree()
+		tree.put(schedule("a", 100, 200))
+		tree.put(schedule("a", 500, 600))
+		assertEquals(1, tree.size)
+		assertTrue(tree.overlapping(100, 200).isEmpty())
+		assertEquals(listOf("a"), tree.startingAt(500).map { it.id })
+		tree.remove("a")
+		assertEquals(0, tree.size)
+		assertTrue(tree.overlapping(0, 1_000).isEmpty())
+	}
+
+	@Test
+	fun answersMatchALinearScanThroughPutsAndRemoves() {
+		val random = Random(17)
+		val tree = ScheduleIntervalTree()
+		val live = HashMap<String, RecordingSchedule>()
+		repeat(2_000) { step ->
+			val id = "s${random.nextInt(300)}"
+			if (random.nextInt(4) == 0) {
+				tree.remove(id)
+				live.remove(id)
+			} else {
+				val start = random.nextLong(0, 10_000) / 50 * 50
+				val s = schedule(id, start, start + random.nextLong(0, 600) / 50 * 50)
+				tree.put(s)
+				live[id] = s
+			}
+			if (step % 10 == 0) {
+				val from = random.nextLong(0, 10_000)
+				val to = from + random.nextLong(1, 2_000)
+				assertEquals(
+					bruteOverlapping(live.values, from, to).sortedWith(compareBy({ it.startMs }, { it.id })),
+					tree.overlapping(from, to),
+				)
+				assertEquals(brutePeak(live.values, from, to), tree.peakOverlap(from, to))
+				val at = random.nextLong(0, 200) * 50
+				assertEquals(
+					live.values.filter { it.startMs == at }.map { it.id }.sorted(),
+					tree.startingAt(at).map { it.id },
+				)
+			}
+		}
+		assertEquals(live.size, tree.size)
+	}
+}
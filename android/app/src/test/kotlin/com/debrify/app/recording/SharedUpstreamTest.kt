@@ -0,0 +1,141 @@
+package com.debrify.app.recording
+
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SharedUpstreamTest {
+	/** A connection fed by the test; an empty array ends the stream. */
+	private class FedUpstream : SharedUpstream.Upstream {
+		val feed = LinkedBlockingQueue<ByteArray>()
+		@Volatile var closed = false
+
+		override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+			while (!closed) {
+				val next = feed.poll(20, TimeUnit.MILLISECONDS) ?: continue
+				if (next.isEmpty()) return -1
+				System.arraycopy(next, 0, buffer, offset, next.size)
+				return next.size
+			}
+			return -1
+		}
+
+		override fun close() {
+			closed = true
+		}
+
+		override fun cancel() {
+			closed = true
+		}
+	}
+
+	private var keys = 0
+	private fun newKey() = SharedUpstream.Key.of("http://panel.example.com/live/${keys++}.ts", mapOf("User-Agent" to "x"))
+
+	private fun readAll(subscription: SharedUpstream.Subscription): ByteArray {
+		val out = ByteArrayOutputStream()
+		val buffer = ByteArray(1000)
+		while (true) {
+			val n = subscription.read(buffer, 0, buffer.size)
+			if (n < 0) return out.toByteArray()
+			out.write(buffer, 0, n)
+		}
+	}
+
+	@Test
+	fun aSecondReaderJoinsTheFirstConnection() {
+		val key = newKey()
+		val opens = AtomicInteger()
+		val upstream = FedUpstream()
+		val first = SharedUpstream.subscribe(key) { opens.incrementAndGet(); upstream }!!
+		val second = SharedUpstream.subscribe(
+			SharedUpstream.Key.of(key.url, mapOf("user-agent" to "x")),
+		) { opens.incrementAndGet(); FedUpstream() }!!
+		assertTrue(first.opened)
+		assertFalse(second.opened)
+		val data = ByteArray(500) { it.toByte() }
+		upstream.feed.put(data.copyOfRange(0, 200))
+		upstream.feed.put(data.copyOfRange(200, 500))
+		upstream.feed.put(ByteArray(0))
+		assertArrayEquals(data, readAll(first))
+		assertArrayEquals(data, readAll(second))
+		assertEquals(1, opens.get())
+	}
+
+	@Test
+	fun aReaderThatFallsBehindLosesChunksWithoutHoldingUpTheOthers() {
+		val key = newKey()
+		val upstream = FedUpstream()
+		val fast = SharedUpstream.subscribe(key) { upstream }!!
+		val slow = SharedUpstream.subscribe(key, bufferBytes = 250) { FedUpstream() }!!
+		val data = ByteArray(1000) { (it * 3).toByte() }
+		for (i in 0 until 10) upstream.feed.put(data.copyOfRange(i * 100, i * 100 + 100))
+		upstream.feed.put(ByteArray(0))
+		// The slow reader reads nothing until the stream is over.
+		assertArrayEquals(data, readAll(fast))
+		assertEquals(200, readAll(slow).size)
+		assertEquals(1L, slow.gaps)
+		assertEquals(800L, slow.droppedBytes)
+	}
+
+	@Test
+	fun theConnectionClosesWhenTheLastReaderLeaves() {
+		val key = newKey()
+		val upstream = FedUpstream()
+		val first = SharedUpstream.subscribe(key) { upstream }!!
+		val second = SharedUpstream.subscribe(key) { FedUpstream() }!!
+		first.close()
+		upstream.feed.put(byteArrayOf(1, 2, 3))
+		val buffer = ByteArray(8)
+		assertEquals(3, second.read(buffer, 0, buffer.size))
+		assertFalse(upstream.closed)
+		second.close()
+		assertTrue(upstream.closed)
+		// The next reader opens afresh.
+		val next = FedUpstream()
+		val third = SharedUpstream.subscribe(key) { next }
+		assertNotNull(third)
+		assertTrue(third!!.opened)
+		third.close()
+	}
+
+	@Test
+	fun thePlayerAndTheEngineKeyAChannelAlike() {
+		val url = "http://panel.example.com/live/${keys++}.ts"
+		val channel = mapOf("User-Agent" to "VLC/3.0.18", "Referer" to "http://panel.example.com/")
+		// The player's open: ExoPlayer's own header, the channel's on top.
+		val player = SharedUpstream.Key.of(url, mapOf("Icy-MetaData" to "1") + channel)
+		// The engine's: the headers the recording was started with.
+		val engine = SharedUpstream.Key.of(url, HashMap(channel))
+		assertEquals(player, engine)
+
+		val upstream = FedUpstream()
+		val watching = SharedUpstream.subscribe(player) { upstream }!!
+		val recording = SharedUpstream.subscribe(engine) { FedUpstream() }!!
+		assertFalse(recording.opened)
+		watching.close()
+		recording.close()
+	}
+
+	@Test
+	fun aPlaylistTakesNoJoinersOnceItsBytesFlowed() {
+		val key = newKey()
+		val upstream = FedUpstream()
+		val first = SharedUpstream.subscribe(key) { upstream }!!
+		upstream.feed.put("#EXTM3U\n#EXT-X-VERSION:3\n".toByteArray())
+		val buffer = ByteArray(64)
+		assertTrue(first.read(buffer, 0, buffer.size) > 0)
+		val own = FedUpstream()
+		val second = SharedUpstream.subscribe(key) { own }!!
+		assertTrue(second.opened)
+		first.close()
+		second.close()
+	}
+}
@@ -0,0 +1,167 @@
+package com.debrify.app.tv
+
+import com.debrify.app.recording.HlsPlaylist
+import com.debrify.app.recording.UnrecordableStreamException
+import java.io.ByteArrayOutputStream
+import java.net.URL
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class HlsTeeTest {
+    private val root = "http://panel.example.com/live/ch1.m3u8"
+
+    /** Two TS packets on one PID, each with an adaptation field. */
+    private fun segment(seq: Int): ByteArray = ByteArray(188 * 2) { i ->
+        when (i % 188) {
+            0 -> 0x47
+            2 -> 0x20
+            3 -> 0x30
+            4 -> 7
+            5 -> 0
+            else -> (seq * 17 + i).toByte()
+        }
+    }
+
+    private fun media(first: Int, last: Int, variant: String = "hi", key: Boolean = false) = buildString {
+        append("#EXTM3U\n#EXT-X-TARGETDURATION:6\n#EXT-X-MEDIA-SEQUENCE:$first\n")
+        if (key) append("#EXT-X-KEY:METHOD=AES-128,URI=\"/key\"\n")
+        for (seq in first..last) append("#EXTINF:6.0,\n/$variant/$seq.ts\n")
+    }
+
+    private fun master() = """
+        #EXTM3U
+        #EXT-X-STREAM-INF:BANDWIDTH=3000000
+        hi.m3u8
+        #EXT-X-STREAM-INF:BANDWIDTH=800000
+        lo.m3u8
+    """.trimIndent()
+
+    private fun url(path: String) = "http://panel.example.com$path"
+
+    private fun tee(): HlsTee = HlsTee(root).also {
+        it.onPlaylist(root, URL(root), master())
+        it.onPlaylist(url("/live/hi.m3u8"), URL(url("/live/hi.m3u8")), media(10, 14))
+        it.onPlaylist(url("/live/lo.m3u8"), URL(url("/live/lo.m3u8")), media(10, 14, "lo"))
+    }
+
+    private fun List<ByteArray>.joined(): ByteArray =
+        ByteArrayOutputStream().also { out -> forEach { out.write(it) } }.toByteArray()
+
+    @Test
+    fun recognisesThePlayersRequests() {
+        val tee = tee()
+        assertTrue(tee.isPlaylist(root))
+        assertTrue(tee.isPlaylist(url("/live/lo.m3u8")))
+        assertTrue(tee.isSegment(url("/hi/12.ts")))
+        assertTrue(tee.isSegment(url("/lo/14.ts")))
+        assertTrue(!tee.isSegment(url("/hi/15.ts")))
+    }
+
+    @Test
+    fun outOfOrderSegmentsAreAppendedInSequenceOrder() {
+        val tee = tee()
+        assertEquals(1, tee.onSegment(url("/hi/10.ts"), 0, segment(10), true).size)
+        assertTrue(tee.onSegment(url("/hi/12.ts"), 0, segment(12), true).isEmpty())
+        val out = tee.onSegment(url("/hi/11.ts"), 0, segment(11), true)
+        assertArrayEquals(listOf(segment(11), segment(12)).joined(), out.joined())
+    }
+
+    @Test
+    fun refetchesAndVariantSwitchesAreWrittenOnce() {
+        val tee = tee()
+        tee.onSegment(url("/hi/10.ts"), 0, segment(10), true)
+        assertTrue(tee.onSegment(url("/hi/10.ts"), 0, segment(10), true).isEmpty())
+        // ABR down-switch re-fetches sequence 10 from the other variant.
+        assertTrue(tee.onSegment(url("/lo/10.ts"), 0, segment(10), true).isEmpty())
+        val switched = tee.onSegment(url("/lo/11.ts"), 0, segment(11), true).single()
+        assertEquals(0x80, switched[5].toInt() and 0x80)
+    }
+
+    @Test
+    fun aResumedLoadCompletesTheAbandonedOne() {
+        val tee = tee()
+        val whole = segment(10)
+        assertTrue(tee.onSegment(url("/hi/10.ts"), 0, whole.copyOf(100), false).isEmpty())
+        val out = tee.onSegment(url("/hi/10.ts"), 100, whole.copyOfRange(100, whole.size), true)
+        assertArrayEquals(whole, out.single())
+    }
+
+    @Test
+    fun aSegmentThatLeftTheWindowIsSkippedAsLost() {
+        val tee = tee()
+        tee.onSegment(url("/hi/10.ts"), 0, segment(10), true)
+        assertTrue(tee.onSegment(url("/hi/12.ts"), 0, segment(12), true).isEmpty())
+        val out = tee.onPlaylist(url("/live/hi.m3u8"), URL(url("/live/hi.m3u8")), media(12, 16))
+        // The low variant's stale window still lists 11; only once it moves on too.
+        assertTrue(out.isEmpty())
+        val moved = tee.onPlaylist(url("/live/lo.m3u8"), URL(url("/live/lo.m3u8")), media(12, 16, "lo"))
+        assertEquals(1, moved.size)
+        assertEquals(1L, tee.lost)
+    }
+
+    @Test
+    fun encryptedSegmentsAreDecryptedWithTheKeyThePlayerLoaded() {
+        val tee = HlsTee(root)
+        tee.onPlaylist(root, URL(root), media(5, 6, key = true))
+        assertTrue(tee.isKey(url("/key")))
+        val key = ByteArray(16) { it.toByte() }
+        tee.onKey(url("/key"), key)
+        val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding")
+        cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), IvParameterSpec(HlsPlaylist.sequenceIv(5)))
+        val out = tee.onSegment(url("/hi/5.ts"), 0, cipher.doFinal(segment(5)), true)
+        assertArrayEquals(segment(5), out.single())
+    }
+
+    @Test
+    fun aRecordingStartedMidStreamIsSeededWithThePlayersPlaylists() {
+        // The player loaded the master and hi.m3u8 before the recording;
+        // from here on it only refreshes hi.m3u8.
+        val tee = HlsTee(root)
+        val hi = url("/live/hi.m3u8")
+        tee.seed(
+            HlsPlaylist.parse(master(), URL(root)) as HlsPlaylist.Master,
+            hi,
+            HlsPlaylist.parse(media(20, 24), URL(hi)) as HlsPlaylist.Media,
+        )
+        assertTrue(tee.isPlaylist(hi))
+        assertArrayEquals(segment(22), tee.onSegment(url("/hi/22.ts"), 0, segment(22), true).single())
+        tee.onPlaylist(hi, URL(hi), media(21, 25))
+        assertArrayEquals(segment(23), tee.onSegment(url("/hi/23.ts"), 0, segment(23), true).single())
+        assertTrue(tee.isSegment(url("/hi/25.ts")))
+    }
+
+    @Test
+    fun segmentsWaitForAKeyThePlayerHadCached() {
+        val tee = HlsTee(root)
+        tee.seed(null, root, HlsPlaylist.parse(media(5, 7, key = true), URL(root)) as HlsPlaylist.Media)
+        assertEquals(listOf(url("/key")), tee.missingKeys())
+        val key = ByteArray(16) { it.toByte() }
+        val encrypted = (5..6).map { seq ->
+            val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding")
+            cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), IvParameterSpec(HlsPlaylist.sequenceIv(seq.toLong())))
+            cipher.doFinal(segment(seq))
+        }
+        assertTrue(tee.onSegment(url("/hi/5.ts"), 0, encrypted[0], true).isEmpty())
+        assertTrue(tee.onSegment(url("/hi/6.ts"), 0, encrypted[1], true).isEmpty())
+        // The recording's own fetch of the key lands.
+        val out = tee.onKey(url("/key"), key)
+        assertArrayEquals(listOf(segment(5), segment(6)).joined(), out.joined())
+        assertTrue(tee.missingKeys().isEmpty())
+    }
+
+    @Test
+    fun segmentsThatArentTsEndTheRecording() {
+        val tee = tee()
+        try {
+            tee.onSegment(url("/hi/10.ts"), 0, "ID3 packed audio".toByteArray(), true)
+            fail("accepted a non-TS segment")
+        } catch (_: UnrecordableStreamException) {
+        }
+    }
+}
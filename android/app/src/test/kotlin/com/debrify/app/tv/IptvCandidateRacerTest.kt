@@ -0,0 +1,58 @@
+package com.debrify.app.tv
+
+import com.debrify.app.tv.IptvCandidateRacer.Container
+import com.debrify.app.tv.IptvCandidateRacer.Probe
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class IptvCandidateRacerTest {
+    private fun sniff(bytes: ByteArray) = IptvCandidateRacer.sniff(bytes, bytes.size)
+
+    private fun sniff(text: String) = sniff(text.toByteArray(Charsets.ISO_8859_1))
+
+    // [packets] TS packets, joined [skip] bytes into the first.
+    private fun ts(packets: Int, skip: Int = 0) =
+        ByteArray(packets * 188) { (if (it % 188 == 0) 0x47 else 0x10).toByte() }.copyOfRange(skip, packets * 188)
+
+    @Test
+    fun recognisesWhatThePlayerOpens() {
+        assertEquals(Container.TS, sniff(ts(4)))
+        assertEquals(Container.TS, sniff(ts(4, skip = 100)))
+        assertEquals(Container.MP4, sniff("\u0000\u0000\u0000\u0018ftypisom"))
+        assertEquals(Container.FLV, sniff("FLV\u0001"))
+        assertEquals(Container.MANIFEST, sniff("ï»¿#EXTM3U\n#EXT-X-VERSION:3"))
+        assertEquals(Container.MANIFEST, sniff("<?xml version=\"1.0\"?>\n<MPD xmlns=\"urn:mpeg:dash\">"))
+    }
+
+    @Test
+    fun errorBodiesServedAsMediaAreNotMedia() {
+        assertNull(sniff("<html><head><title>403 Forbidden</title></head></html>"))
+        assertNull(sniff("{\"error\":\"link expired\"}"))
+        // A 'G' (0x47) in text is no TS: the next packet's sync must follow.
+        assertNull(sniff("<p>Gone</p>".padEnd(400, ' ')))
+    }
+
+    @Test
+    fun ranksByEstimatedStartThenTheRestOfTheLadder() {
+        val finished = listOf(
+            // Quick to answer, then a crawl: 200 ms + 1 MiB at 128 KiB/s.
+            Probe(0, ttfbMs = 200, bytes = 128L * 1024, readMs = 1_000, container = Container.TS),
+            // Slower to answer, then fast: 600 ms + 1 MiB at 2 MiB/s.
+            Probe(1, ttfbMs = 600, bytes = 2L * 1024 * 1024, readMs = 1_000, container = Container.TS),
+            // Answered fast with an error page.
+            Probe(2, ttfbMs = 50, bytes = 0, readMs = 0, container = null),
+        )
+        assertEquals(600L + 500L, IptvCandidateRacer.startMs(finished[1]))
+        assertEquals(listOf(1, 0, 3, 4, 2), IptvCandidateRacer.order(finished, emptySet(), 3, 5))
+    }
+
+    @Test
+    fun stillConnectingRanksAboveUnracedAndFailedRanksLast() {
+        val finished = listOf(
+            Probe(2, ttfbMs = 300, bytes = 0, readMs = 0, container = Container.MANIFEST),
+        )
+        assertEquals(600L, IptvCandidateRacer.startMs(finished[0]))
+        assertEquals(listOf(2, 1, 3, 0), IptvCandidateRacer.order(finished, setOf(0), 3, 4))
+    }
+}
@@ -0,0 +1,65 @@
+package com.debrify.app.tv
+
+import androidx.media3.exoplayer.upstream.Allocation
+import androidx.media3.exoplayer.upstream.Allocator
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MediaBufferPoolTest {
+    private val segment = MediaBufferPool.SEGMENT_BYTES.toLong()
+
+    private class Node(
+        private val allocation: Allocation,
+        private val next: Allocator.AllocationNode?,
+    ) : Allocator.AllocationNode {
+        override fun getAllocation(): Allocation = allocation
+        override fun next(): Allocator.AllocationNode? = next
+    }
+
+    @Test
+    fun aReleasedSegmentIsTheNextOneHandedOut() {
+        val pool = MediaBufferPool(8 * segment)
+        val first = pool.PlayerAllocator()
+        val a = first.allocate()
+        first.release(a)
+        assertEquals(segment, pool.retained)
+        // Another player, same bytes.
+        val second = pool.PlayerAllocator()
+        assertSame(a, second.allocate())
+        assertEquals(0L, pool.retained)
+    }
+
+    @Test
+    fun eachPlayerCountsOnlyItsOwnSegments() {
+        val pool = MediaBufferPool(8 * segment)
+        val first = pool.PlayerAllocator()
+        val second = pool.PlayerAllocator()
+        repeat(3) { first.allocate() }
+        val held = List(2) { second.allocate() }
+        assertEquals(3 * segment, first.totalBytesAllocated.toLong())
+        assertEquals(2 * segment, second.totalBytesAllocated.toLong())
+        assertEquals(5 * segment, pool.current)
+        second.release(Node(held[0], Node(held[1], null)))
+        assertEquals(0, second.totalBytesAllocated)
+        assertEquals(3 * segment, pool.current)
+        assertEquals(5 * segment, pool.peak)
+    }
+
+    @Test
+    fun theBudgetBoundsRoomAndWhatIsKept() {
+        val pool = MediaBufferPool(4 * segment)
+        val allocator = pool.PlayerAllocator()
+        // A starting player may overshoot; the pool says so, and keeps no
+        // more than the budget once it gives back.
+        val held = List(6) { allocator.allocate() }
+        assertFalse(pool.hasRoom)
+        held.forEach { allocator.release(it) }
+        assertTrue(pool.hasRoom)
+        assertEquals(0L, pool.current)
+        assertEquals(4 * segment, pool.retained)
+        assertEquals(6 * segment, pool.peak)
+    }
+}
@@ -0,0 +1,87 @@
+package com.debrify.app.tv
+
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TeeWriterTest {
+    /** A sink that holds every write until [release] — a storage stall. */
+    private class StalledSink : OutputStream() {
+        val bytes = ByteArrayOutputStream()
+        val release = CountDownLatch(1)
+
+        override fun write(b: Int) = write(byteArrayOf(b.toByte()), 0, 1)
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            release.await(5, TimeUnit.SECONDS)
+            synchronized(bytes) { bytes.write(b, off, len) }
+        }
+    }
+
+    private fun payload(size: Int) = ByteArray(size) { (it * 7 + it / 251).toByte() }
+
+    @Test
+    fun growKeepsEveryByteInOrderThroughAStall() {
+        val sink = StalledSink()
+        val writer = TeeWriter(sink, onFailed = {}, chunkBytes = 1024, ringChunks = 4, maxOverflowChunks = 64)
+        val data = payload(40 * 1024)
+        var at = 0
+        // Offers never wait, however far the sink is behind.
+        val started = System.nanoTime()
+        while (at < data.size) {
+            val n = minOf(3000, data.size - at)
+            writer.offer(data, at, n)
+            at += n
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1))
+        assertTrue(writer.stats().queuedChunks > 4)
+        sink.release.countDown()
+        writer.close()
+        assertArrayEquals(data, sink.bytes.toByteArray())
+        assertEquals(0L, writer.stats().gaps)
+    }
+
+    @Test
+    fun dropDiscardsWhatDoesntFitAndCountsOneGapPerRun() {
+        val sink = StalledSink()
+        val writer = TeeWriter(
+            sink,
+            onFailed = {},
+            policy = TeeWriter.Overflow.DROP,
+            chunkBytes = 1024,
+            ringChunks = 4,
+        )
+        writer.offer(payload(16 * 1024), 0, 16 * 1024)
+        val stats = writer.stats()
+        assertEquals(1L, stats.gaps)
+        assertTrue(stats.droppedBytes >= 11 * 1024)
+        sink.release.countDown()
+        writer.close()
+        assertEquals(16 * 1024 - stats.droppedBytes, sink.bytes.size().toLong())
+    }
+
+    @Test
+    fun aFailedWriteIsReportedOnceAndLaterBytesAreDiscarded() {
+        val failures = AtomicInteger()
+        val reported = CountDownLatch(1)
+        val sink = object : OutputStream() {
+            override fun write(b: Int) = throw IOException("ENOSPC")
+        }
+        val writer = TeeWriter(sink, onFailed = {
+            failures.incrementAndGet()
+            reported.countDown()
+        }, chunkBytes = 16)
+        writer.offer(payload(64), 0, 64)
+        assertTrue(reported.await(5, TimeUnit.SECONDS))
+        writer.offer(payload(64), 0, 64)
+        writer.close()
+        assertEquals(1, failures.get())
+    }
+}
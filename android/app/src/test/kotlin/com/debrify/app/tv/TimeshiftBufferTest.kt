@@ -0,0 +1,91 @@
+package com.debrify.app.tv
+
+import java.io.File
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+
+class TimeshiftBufferTest {
+    private val file = File.createTempFile("timeshift", ".ts")
+    private var buffer: TimeshiftBuffer? = null
+
+    @After
+    fun tearDown() {
+        buffer?.close()
+        file.delete()
+    }
+
+    /** A video PES start, optionally flagged random-access, carrying [pts]. */
+    private fun pesStart(pts: Long, keyframe: Boolean): ByteArray {
+        val p = ByteArray(188) { 0xff.toByte() }
+        p[0] = 0x47
+        p[1] = 0x41 // PUSI, PID 0x100
+        p[2] = 0x00
+        p[3] = 0x30 // adaptation field + payload
+        p[4] = 1
+        p[5] = if (keyframe) 0x40 else 0x00
+        val pes = intArrayOf(
+            0x00, 0x00, 0x01, 0xE0, 0x00, 0x00, 0x80, 0x80, 0x05,
+            0x21 or ((pts shr 29).toInt() and 0x0e),
+            (pts shr 22).toInt() and 0xff,
+            ((pts shr 14).toInt() and 0xfe) or 1,
+            (pts shr 7).toInt() and 0xff,
+            ((pts shl 1).toInt() and 0xfe) or 1,
+        )
+        pes.forEachIndexed { i, b -> p[6 + i] = b.toByte() }
+        return p
+    }
+
+    @Test
+    fun readsBackAcrossTheWrapAndRefusesOverwrittenPositions() {
+        val ring = TimeshiftBuffer(file, capacity = 1000).also { buffer = it }
+        val data = ByteArray(2500) { (it % 251).toByte() }
+        var at = 0
+        while (at < data.size) {
+            val n = minOf(300, data.size - at)
+            ring.append(data, at, n)
+            at += n
+        }
+        assertEquals(2500L, ring.liveOffset)
+        assertEquals(1500L, ring.oldestOffset)
+
+        val out = ByteArray(1000)
+        var got = 0
+        while (got < out.size) got += ring.read(1500L + got, out, got, out.size - got)
+        assertArrayEquals(data.copyOfRange(1500, 2500), out)
+
+        try {
+            ring.read(100L, out, 0, 10)
+            throw AssertionError("read from an overwritten position")
+        } catch (_: TimeshiftBuffer.OverwrittenException) {
+        }
+    }
+
+    @Test
+    fun indexesKeyframesAtMostOncePerSpacing() {
+        val ring = TimeshiftBuffer(file, capacity = 1L shl 20).also { buffer = it }
+        // Keyframes every 500 ms with an ordinary frame between each.
+        for (i in 0 until 10) {
+            val pts = 900_000L + i * 45_000L
+            ring.append(pesStart(pts, keyframe = true), 0, 188)
+            ring.append(pesStart(pts + 22_500L, keyframe = false), 0, 188)
+        }
+        assertEquals(entry(0L, 0L), ring.oldestEntry())
+        assertEquals(entry(4_000L, 16L * 188), ring.latestEntry())
+        assertEquals(entry(2_000L, 8L * 188), ring.entryAtOrBefore(2_500L))
+    }
+
+    @Test
+    fun dropsIndexEntriesTheRingOverwroteAndDeletesTheFileOnClose() {
+        val ring = TimeshiftBuffer(file, capacity = 188L * 4).also { buffer = it }
+        for (i in 0 until 8) ring.append(pesStart(i * 90_000L, keyframe = true), 0, 188)
+        assertEquals(entry(4_000L, 4L * 188), ring.oldestEntry())
+        ring.close()
+        assertEquals(-1, ring.read(ring.liveOffset, ByteArray(1), 0, 1))
+        assertFalse(file.exists())
+    }
+
+    private fun entry(mediaMs: Long, offset: Long) = TimeshiftBuffer.Entry(mediaMs, offset)
+}
@@ -101,6 +101,7 @@ class _ExternalPlayerSettingsPageState
   String _skipSegmentProvider = SkipSegmentProviders.auto;
   String _netPatience = NetworkTuning.standard;
   String _netBuffer = NetworkTuning.standard;
+  String _nextPreload = NetworkTuning.standard;
   String?
   _defaultSubtitleLanguage; // null = no preference, 'off' = disabled, 'en'/'es'/etc = language
   String?
@@ -144,6 +145,7 @@ class _ExternalPlayerSettingsPageState
   final FocusNode _subtitleBoldFocusNode = FocusNode();
   final FocusNode _netPatienceFocusNode = FocusNode();
   final FocusNode _netBufferFocusNode = FocusNode();
+  final FocusNode _nextPreloadFocusNode = FocusNode();
   bool _aspectFocused = false;
   bool _defaultAudioLangFocused = false;
   bool _defaultSubtitleLangFocused = false;
@@ -170,6 +172,7 @@ class _ExternalPlayerSettingsPageState
   bool _subtitleBoldFocused = false;
   bool _netPatienceFocused = false;
   bool _netBufferFocused = false;
+  bool _nextPreloadFocused = false;
 
   // DeoVR FocusNodes for DPAD navigation
   final FocusNode _screenTypeFocusNode = FocusNode();
@@ -387,6 +390,12 @@ class _ExternalPlayerSettingsPageState
         _netBufferFocused = _netBufferFocusNode.hasFocus;
       });
     });
+    _nextPreloadFocusNode.addListener(() {
+      if (!mounted) return;
+      setState(() {
+        _nextPreloadFocused = _nextPreloadFocusNode.hasFocus;
+      });
+    });
   }
 
   @override
@@ -430,6 +439,7 @@ class _ExternalPlayerSettingsPageState
     _subtitleBoldFocusNode.dispose();
     _netPatienceFocusNode.dispose();
     _netBufferFocusNode.dispose();
+    _nextPreloadFocusNode.dispose();
     super.dispose();
   }
 
@@ -567,6 +577,7 @@ class _ExternalPlayerSettingsPageState
       final netPatience = await StorageService.getNetworkConnectPatience();
       final iptvDecoderMode = await StorageService.getIptvDecoderMode();
       final netBuffer = await StorageService.getNetworkBufferSize();
+      final nextPreload = await StorageService.getNextEpisodePreload();
 
       // Load subtitle settings
       final subtitleSettings = await SubtitleSettingsService.instance.loadAll();
@@ -626,6 +637,9 @@ class _ExternalPlayerSettingsPageState
         _netBuffer = NetworkTuning.bufferOptions.containsKey(netBuffer)
             ? netBuffer
             : NetworkTuning.standard;
+        _nextPreload = NetworkTuning.nextPreloadOptions.containsKey(nextPreload)
+            ? nextPreload
+            : NetworkTuning.standard;
         _defaultSubtitleLanguage = defaultSubtitleLanguage;
         _defaultAudioLanguage = defaultAudioLanguage;
         _subtitleSizeIndex = subtitleSettings.sizeIndex;
@@ -1171,6 +1185,11 @@ class _ExternalPlayerSettingsPageState
     await StorageService.setNetworkBufferSize(value);
   }
 
+  Future<void> _setNextPreload(String value) async {
+    setState(() => _nextPreload = value);
+    await StorageService.setNextEpisodePreload(value);
+  }
+
   Future<void> _setDefaultSubtitleLanguage(String? languageCode) async {
     setState(() => _defaultSubtitleLanguage = languageCode);
     await StorageService.setDefaultSubtitleLanguage(languageCode);
@@ -2679,13 +2698,25 @@ class _ExternalPlayerSettingsPageState
                             focusNode: _netBufferFocusNode,
                             isFocused: _netBufferFocused,
                           ),
+                          const SizedBox(height: 12),
+                          _buildDropdownSetting(
+                            context,
+                            label: 'Next episode preload',
+                            value: _nextPreload,
+                            items: NetworkTuning.nextPreloadOptions,
+                            onChanged: _setNextPreload,
+                            focusNode: _nextPreloadFocusNode,
+                            isFocused: _nextPreloadFocused,
+                          ),
                           const SizedBox(height: 10),
                           Text(
                             'Patience raises connection timeouts and adds '
                             'automatic retries where the player supports '
                             'them. Bigger buffers ride over origin stalls '
-                            'but use more memory. Live TV keeps its own '
-                            'tuned pipeline. Restart playback to apply.',
+                            'but use more memory. Next episode preload '
+                            'buffers the upcoming episode in the Android TV '
+                            'player so it starts at once. Live TV keeps its '
+                            'own tuned pipeline. Restart playback to apply.',
                             style: theme.textTheme.bodySmall?.copyWith(
                               color: t.dim2,
                             ),
@@ -149,8 +149,11 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
   bool _recordingSectionVisible = false;
   bool _engineToggleVisible = false;
   bool _recordingEngineOn = true;
+  bool _timeshiftOn = false;
+  int _zapPrewarm = 0;
   int _scheduledCount = 0;
   int _maxConcurrent = LiveRecordingService.maxConcurrentDefault;
+  int _prerollSeconds = LiveRecordingService.prerollDefaultSeconds;
 
   /// Null while unknown / non-Android; battery exemption drives the row's
   /// label so users can see at a glance whether long recordings are safe.
@@ -161,6 +164,9 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
   final FocusNode _maxConcurrentFocusNode = FocusNode(
     debugLabel: 'iptv-max-concurrent',
   );
+  final FocusNode _prerollFocusNode = FocusNode(
+    debugLabel: 'iptv-recording-preroll',
+  );
   final FocusNode _batteryFocusNode = FocusNode(
     debugLabel: 'iptv-battery-exemption',
   );
@@ -325,6 +331,7 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
     _xcTabFocusNode.dispose();
     _scheduledRecordingsFocusNode.dispose();
     _maxConcurrentFocusNode.dispose();
+    _prerollFocusNode.dispose();
     WidgetsBinding.instance.removeObserver(this);
     _batteryFocusNode.dispose();
     for (final node in _playlistFocusNodes) {
@@ -557,6 +564,14 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
         ? (await DesktopScheduleService.instance.list()).length
         : 0;
     final maxConcurrent = await LiveRecordingService.maxConcurrent();
+    final prerollSeconds = engineSupported
+        ? await LiveRecordingService.prerollSeconds()
+        : LiveRecordingService.prerollDefaultSeconds;
+    final timeshiftOn =
+        engineSupported && await StorageService.getIptvTimeshiftEnabled();
+    final zapPrewarm = engineSupported
+        ? await StorageService.getIptvZapPrewarmNeighbours()
+        : 0;
     final batteryExempt = engineSupported && !PlatformUtil.isTelevision
         ? await LiveRecordingService.isIgnoringBatteryOptimizations()
         : null;
@@ -577,8 +592,11 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
       _recordingSectionVisible = engineSupported || desktopSched;
       _engineToggleVisible = engineSupported;
       _recordingEngineOn = recordingEngineOn;
+      _timeshiftOn = timeshiftOn;
+      _zapPrewarm = zapPrewarm;
       _scheduledCount = scheduleCount;
       _maxConcurrent = maxConcurrent;
+      _prerollSeconds = prerollSeconds;
       _batteryExempt = batteryExempt;
       _loading = false;
     });
@@ -1948,8 +1966,17 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
       onOpenScheduledRecordings: () => unawaited(_openScheduledRecordings()),
       maxConcurrentRecordings: _maxConcurrent,
       onPickMaxConcurrent: () => unawaited(_pickMaxConcurrent()),
+      prerollSeconds: _engineToggleVisible ? _prerollSeconds : null,
+      onPickPreroll: () => unawaited(_pickPreroll()),
       batteryExempt: _batteryExempt,
       onRequestBatteryExemption: () => unawaited(_requestBatteryExemption()),
+      timeshiftEnabled: _timeshiftOn,
+      onToggleTimeshift: (enabled) async {
+        await StorageService.setIptvTimeshiftEnabled(enabled);
+        if (mounted) setState(() => _timeshiftOn = enabled);
+      },
+      zapPrewarmNeighbours: _zapPrewarm,
+      onPickZapPrewarm: () => unawaited(_pickZapPrewarm()),
     );
   }
 
@@ -2373,6 +2400,15 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
                   label: 'Simultaneous recordings ($_maxConcurrent)',
                   onTap: _pickMaxConcurrent,
                 ),
+                if (_engineToggleVisible) ...[
+                  const Divider(height: 1),
+                  _FocusableSettingsTile(
+                    focusNode: _prerollFocusNode,
+                    icon: Icons.timer_outlined,
+                    label: 'Connect early (${_prerollLabel(_prerollSeconds)})',
+                    onTap: _pickPreroll,
+                  ),
+                ],
                 if (_batteryExempt != null) ...[
                   const Divider(height: 1),
                   _FocusableSettingsTile(
@@ -2397,6 +2433,39 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
             ],
           ),
         ),
+        if (_engineToggleVisible) ...[
+          const SizedBox(height: 16),
+          Card(
+            child: SwitchListTile(
+              title: const Text('Pause & rewind live TV'),
+              subtitle: const Text(
+                'The TV player keeps the last stretch of a live channel on '
+                'disk, so rewind and fast-forward work on live. Uses up to a '
+                'quarter of free cache space; plain stream channels only.',
+              ),
+              value: _timeshiftOn,
+              onChanged: (enabled) async {
+                await StorageService.setIptvTimeshiftEnabled(enabled);
+                if (mounted) setState(() => _timeshiftOn = enabled);
+              },
+            ),
+          ),
+          const SizedBox(height: 8),
+          Card(
+            child: ListTile(
+              leading: const Icon(Icons.bolt_rounded),
+              title: Text(
+                'Fast channel zapping (${_zapPrewarmLabel(_zapPrewarm)})',
+              ),
+              subtitle: const Text(
+                'Keeps the channels next to the one playing connected, so '
+                'channel up/down starts at once. Each uses another provider '
+                'connection.',
+              ),
+              onTap: () => unawaited(_pickZapPrewarm()),
+            ),
+          ),
+        ],
       ],
     );
   }
@@ -2427,6 +2496,127 @@ class _IptvSettingsPageState extends State<IptvSettingsPage>
     if (picked != null && mounted) setState(() => _maxConcurrent = picked);
   }
 
+  static const List<int> _prerollChoices = [0, 15, 30, 60, 120];
+
+  static String _prerollLabel(int seconds) => seconds == 0
+      ? 'off'
+      : seconds < 60
+      ? '${seconds}s'
+      : '${seconds ~/ 60} min';
+
+  /// Scheduled recordings connect this long before the programme and keep
+  /// the lead in memory only, so the file starts on time instead of a
+  /// connect-and-redirect late.
+  Future<void> _pickPreroll() async {
+    final picked = await showDialog<int>(
+      context: context,
+      builder: (dialogContext) => SimpleDialog(
+        title: const Text('Connect early'),
+        children: [
+          Padding(
+            padding: const EdgeInsets.fromLTRB(24, 0, 24, 10),
+            child: Text(
+              'Scheduled recordings connect this long before the programme '
+              'so its first seconds aren\'t lost. Nothing before the start '
+              'is saved; the connection is just held a little longer.',
+              style: TextStyle(
+                fontSize: 12.5,
+                height: 1.4,
+                color: Theme.of(
+                  dialogContext,
+                ).colorScheme.onSurface.withValues(alpha: 0.6),
+              ),
+            ),
+          ),
+          for (final seconds in _prerollChoices)
+            SimpleDialogOption(
+              onPressed: () => Navigator.of(dialogContext).pop(seconds),
+              child: Row(
+                children: [
+                  Expanded(
+                    child: Text(
+                      seconds == LiveRecordingService.prerollDefaultSeconds
+                          ? '${_prerollLabel(seconds)} (default)'
+                          : _prerollLabel(seconds),
+                      style: TextStyle(
+                        fontWeight: seconds == _prerollSeconds
+                            ? FontWeight.w800
+                            : FontWeight.w500,
+                      ),
+                    ),
+                  ),
+                  if (seconds == _prerollSeconds)
+                    const Icon(Icons.check_rounded, size: 18),
+                ],
+              ),
+            ),
+        ],
+      ),
+    );
+    if (picked == null) return;
+    await LiveRecordingService.setPrerollSeconds(picked);
+    if (mounted) setState(() => _prerollSeconds = picked);
+  }
+
+  static String _zapPrewarmLabel(int neighbours) =>
+      neighbours == 0 ? 'off' : '±$neighbours';
+
+  /// Channels either side of the playing one the TV player keeps warm. Off
+  /// by default: each is a connection most accounts don't have to spare.
+  Future<void> _pickZapPrewarm() async {
+    final picked = await showDialog<int>(
+      context: context,
+      builder: (dialogContext) => SimpleDialog(
+        title: const Text('Fast channel zapping'),
+        children: [
+          Padding(
+            padding: const EdgeInsets.fromLTRB(24, 0, 24, 10),
+            child: Text(
+              'The TV player keeps this many channels on each side of the '
+              'one you\'re watching connected and buffered. Every one is an '
+              'extra connection to your provider — leave it off unless your '
+              'account allows several at once.',
+              style: TextStyle(
+                fontSize: 12.5,
+                height: 1.4,
+                color: Theme.of(
+                  dialogContext,
+                ).colorScheme.onSurface.withValues(alpha: 0.6),
+              ),
+            ),
+          ),
+          for (final neighbours in const [0, 1, 2])
+            SimpleDialogOption(
+              onPressed: () => Navigator.of(dialogContext).pop(neighbours),
+              child: Row(
+                children: [
+                  Expanded(
+                    child: Text(
+                      neighbours == 0
+                          ? 'Off (default)'
+                          : '${_zapPrewarmLabel(neighbours)} channel'
+                                '${neighbours == 1 ? '' : 's'} '
+                                '(${neighbours * 2} extra connections)',
+                      style: TextStyle(
+                        fontWeight: neighbours == _zapPrewarm
+                            ? FontWeight.w800
+                            : FontWeight.w500,
+                      ),
+                    ),
+                  ),
+                  if (neighbours == _zapPrewarm)
+                    const Icon(Icons.check_rounded, size: 18),
+                ],
+              ),
+            ),
+        ],
+      ),
+    );
+    if (picked == null) return;
+    await StorageService.setIptvZapPrewarmNeighbours(picked);
+    if (mounted) setState(() => _zapPrewarm = picked);
+  }
+
   Future<void> _openScheduledRecordings() async {
     await Navigator.of(
       context,
@@ -76,8 +76,14 @@ class IptvSettingsTwoPane extends StatefulWidget {
     this.onOpenScheduledRecordings,
     this.maxConcurrentRecordings = 2,
     this.onPickMaxConcurrent,
+    this.prerollSeconds,
+    this.onPickPreroll,
     this.batteryExempt,
     this.onRequestBatteryExemption,
+    this.timeshiftEnabled = false,
+    this.onToggleTimeshift,
+    this.zapPrewarmNeighbours = 0,
+    this.onPickZapPrewarm,
     this.openAddSource = false,
   });
 
@@ -117,11 +123,26 @@ class IptvSettingsTwoPane extends StatefulWidget {
   final int maxConcurrentRecordings;
   final VoidCallback? onPickMaxConcurrent;
 
+  /// Scheduled-recording connect-early lead in seconds; null hides the row
+  /// (only the Android engine pre-rolls).
+  final int? prerollSeconds;
+  final VoidCallback? onPickPreroll;
+
   /// Null hides the row (non-Android / TV); otherwise current exemption
   /// state, label-driving.
   final bool? batteryExempt;
   final VoidCallback? onRequestBatteryExemption;
 
+  /// Pause & rewind for live channels in the native player — Android only,
+  /// shown with the engine toggle; the host page owns persistence.
+  final bool timeshiftEnabled;
+  final ValueChanged<bool>? onToggleTimeshift;
+
+  /// Live channels either side of the playing one the native player keeps
+  /// connected (0 = off); shown with the timeshift row.
+  final int zapPrewarmNeighbours;
+  final VoidCallback? onPickZapPrewarm;
+
   /// 0 = from URL, 1 = from file, 2 = Xtream login. Owned by the parent so the
   /// existing TabController (and the phone layout) stay in sync with it.
   final int addMethod;
@@ -1352,6 +1373,22 @@ class IptvSettingsTwoPaneState extends State<IptvSettingsTwoPane> {
                 onLeft: _returnToRail,
                 isLast: false,
               ),
+            if ((!widget.showEngineToggle || widget.recordingEngineEnabled) &&
+                widget.prerollSeconds != null)
+              _PaneRow(
+                focusNode: _paneNode(row++),
+                icon: Icons.timer_outlined,
+                title: 'Connect early',
+                subtitle: widget.prerollSeconds == 0
+                    ? 'Off — scheduled recordings connect at the start time'
+                    : 'Scheduled recordings connect '
+                          '${widget.prerollSeconds}s ahead so the start '
+                          'isn\'t missed',
+                trailing: _chevron,
+                onTap: () => widget.onPickPreroll?.call(),
+                onLeft: _returnToRail,
+                isLast: false,
+              ),
             if ((!widget.showEngineToggle || widget.recordingEngineEnabled) &&
                 widget.batteryExempt != null)
               _PaneRow(
@@ -1383,6 +1420,45 @@ class IptvSettingsTwoPaneState extends State<IptvSettingsTwoPane> {
               ),
           ],
         ),
+        if (widget.showEngineToggle) ...[
+          const SizedBox(height: 20),
+          _RowGroup(
+            children: [
+              _PaneRow(
+                focusNode: _paneNode(row++),
+                icon: Icons.fast_rewind_rounded,
+                title: 'Pause & rewind live TV',
+                subtitle:
+                    'Keeps the last stretch of a live channel on disk — up '
+                    'to a quarter of free cache space. Plain stream '
+                    'channels only.',
+                trailing: Switch(
+                  value: widget.timeshiftEnabled,
+                  onChanged: widget.onToggleTimeshift,
+                ),
+                onTap: () =>
+                    widget.onToggleTimeshift?.call(!widget.timeshiftEnabled),
+                onLeft: _returnToRail,
+                isLast: false,
+              ),
+              _PaneRow(
+                focusNode: _paneNode(row++),
+                icon: Icons.bolt_rounded,
+                title: 'Fast channel zapping',
+                subtitle: widget.zapPrewarmNeighbours == 0
+                    ? 'Off — channel up/down connects when you press it'
+                    : 'Keeps ±${widget.zapPrewarmNeighbours} channel'
+                          '${widget.zapPrewarmNeighbours == 1 ? '' : 's'} '
+                          'connected · ${widget.zapPrewarmNeighbours * 2} '
+                          'extra provider connections',
+                trailing: _chevron,
+                onTap: () => widget.onPickZapPrewarm?.call(),
+                onLeft: _returnToRail,
+                isLast: true,
+              ),
+            ],
+          ),
+        ],
       ],
     );
   }
@@ -1,10 +1,12 @@
 import 'dart:async';
 import 'dart:io';
+import 'dart:math' show max;
 
 import 'package:flutter/foundation.dart' show kIsWeb;
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
 
+import '../../services/android_native_downloader.dart';
 import '../../services/desktop_recording_service.dart';
 import '../../services/desktop_schedule_service.dart';
 import '../../services/live_recording_service.dart';
@@ -49,6 +51,15 @@ class _RecordingsPageState extends State<RecordingsPage>
   List<ScheduledRecording> _schedules = const [];
   List<RecordingLibraryEntry> _library = const [];
   bool _loading = true;
+
+  /// Android pages the library: [_loadAll] asks for as many rows as are
+  /// shown (at least a page), and scrolling to the last row asks for the
+  /// next page. [_libraryGeneration] drops a page that lands after a reload.
+  static const int _kLibraryPage = 60;
+  int _libraryOffset = 0;
+  bool _libraryHasMore = false;
+  bool _libraryLoadingMore = false;
+  int _libraryGeneration = 0;
   bool _exactAlarms = true;
 
   /// Wall clock for elapsed/countdown text. Only ticks while something needs
@@ -56,11 +67,16 @@ class _RecordingsPageState extends State<RecordingsPage>
   final ValueNotifier<DateTime> _now = ValueNotifier<DateTime>(DateTime.now());
   Timer? _ticker;
 
-  /// Android: live captures mutate natively (bytes grow, alarms fire, the
-  /// engine finalizes) with no in-process signal — poll while anything is
-  /// live or could go live, idle otherwise.
+  /// Android: alarms fire and the engine finalizes with no in-process
+  /// signal — poll while anything is live or could go live, idle otherwise.
   Timer? _poll;
 
+  /// Android: byte counts of live captures from the native progress frames,
+  /// which also reveal a capture finishing between polls.
+  StreamSubscription<NativeProgressFrame>? _frames;
+  final Map<String, int> _frameBytes = <String, int>{};
+  bool _framePollInFlight = false;
+
   /// False while the app is paused/hidden. _syncTimers refuses to arm
   /// anything in that state — otherwise a revision bump arriving while
   /// covered (a desktop capture ending with the window minimized) would
@@ -97,6 +113,9 @@ class _RecordingsPageState extends State<RecordingsPage>
     super.initState();
     WidgetsBinding.instance.addObserver(this);
     LiveRecordingService.schedulesRevision.addListener(_onRevision);
+    if (_isAndroid) {
+      _frames = AndroidNativeDownloader.progressFrames.listen(_onFrame);
+    }
     if (_desktop) {
       DesktopRecordingService.instance.revision.addListener(_onRevision);
     }
@@ -119,6 +138,7 @@ class _RecordingsPageState extends State<RecordingsPage>
     }
     _ticker?.cancel();
     _poll?.cancel();
+    _frames?.cancel();
     _now.dispose();
     _firstLibraryFocus.dispose();
     super.dispose();
@@ -168,6 +188,8 @@ class _RecordingsPageState extends State<RecordingsPage>
   }
 
   Future<void> _loadAll() async {
+    final generation = ++_libraryGeneration;
+    final libraryLimit = max(_libraryOffset, _kLibraryPage);
     final results = await Future.wait<Object>([
       _isAndroid
           ? LiveRecordingService.query()
@@ -182,7 +204,7 @@ class _RecordingsPageState extends State<RecordingsPage>
                 ? LiveRecordingService.listSchedules()
                 : Future.value(const <ScheduledRecording>[])),
       _isAndroid
-          ? LiveRecordingService.queryLibrary()
+          ? LiveRecordingService.queryLibrary(limit: libraryLimit)
           : DesktopRecordingService.listLibrary(),
       _isAndroid
           ? LiveRecordingService.exactAlarmsGranted()
@@ -198,14 +220,15 @@ class _RecordingsPageState extends State<RecordingsPage>
     final schedules = (results[1] as List<ScheduledRecording>).toList()
       ..sort((a, b) => a.startMs.compareTo(b.startMs));
     final library = (results[2] as List<RecordingLibraryEntry>).toList()
-      ..sort(
-        (a, b) =>
-            _displayFor(b).recordedAt.compareTo(_displayFor(a).recordedAt),
-      );
+      ..sort(_newestFirst);
     setState(() {
       _live = live;
       _schedules = schedules;
       _library = library;
+      if (generation == _libraryGeneration) {
+        _libraryOffset = libraryLimit;
+        _libraryHasMore = _isAndroid && library.length >= libraryLimit;
+      }
       _exactAlarms = results[3] as bool;
       _batteryExempt = results[4] as bool;
       _loading = false;
@@ -213,6 +236,31 @@ class _RecordingsPageState extends State<RecordingsPage>
     _syncTimers();
   }
 
+  int _newestFirst(RecordingLibraryEntry a, RecordingLibraryEntry b) =>
+      _displayFor(b).recordedAt.compareTo(_displayFor(a).recordedAt);
+
+  /// The next library page, once the last loaded row is on screen.
+  Future<void> _loadMoreLibrary() async {
+    if (!_libraryHasMore || _libraryLoadingMore) return;
+    _libraryLoadingMore = true;
+    final generation = _libraryGeneration;
+    final offset = _libraryOffset;
+    try {
+      final page = await LiveRecordingService.queryLibrary(
+        offset: offset,
+        limit: _kLibraryPage,
+      );
+      if (!mounted || generation != _libraryGeneration) return;
+      setState(() {
+        _libraryOffset = offset + _kLibraryPage;
+        _libraryHasMore = page.length >= _kLibraryPage;
+        _library = [..._library, ...page]..sort(_newestFirst);
+      });
+    } finally {
+      _libraryLoadingMore = false;
+    }
+  }
+
   void _syncTimers() {
     if (!_appVisible) return;
     final needTick = _anythingLive || _schedules.isNotEmpty;
@@ -224,8 +272,9 @@ class _RecordingsPageState extends State<RecordingsPage>
       _ticker?.cancel();
       _ticker = null;
     }
-    // Android live poll: 3s while capturing (bytes + finalize detection),
-    // 15s while merely scheduled (an alarm can fire any minute), off idle.
+    // Android live poll: 15s while anything is live or scheduled (an alarm
+    // can fire any minute), off idle. Bytes and captures ending arrive with
+    // the progress frames in between.
     // The poll is the LIGHT query — the library (whose native call walks the
     // store against the filesystem) only reloads when the live/scheduled
     // sets actually change.
@@ -233,12 +282,30 @@ class _RecordingsPageState extends State<RecordingsPage>
     _poll = null;
     if (_isAndroid && (_live.isNotEmpty || _schedules.isNotEmpty)) {
       _poll = Timer.periodic(
-        Duration(seconds: _live.isNotEmpty ? 3 : 15),
+        const Duration(seconds: 15),
         (_) => unawaited(_pollLive()),
       );
     }
   }
 
+  /// Live bytes for the cards (read on the 1s clock tick, no rebuild here);
+  /// a capture vanishing from the frame means it finished — poll now.
+  void _onFrame(NativeProgressFrame frame) {
+    if (!mounted || !_appVisible) return;
+    final recordings = {
+      for (final t in frame.tasks)
+        if (t.isRecording) t.taskId: t.bytes,
+    };
+    _frameBytes
+      ..clear()
+      ..addAll(recordings);
+    if (!_framePollInFlight &&
+        _live.any((r) => !recordings.containsKey(r.taskId))) {
+      _framePollInFlight = true;
+      unawaited(_pollLive().whenComplete(() => _framePollInFlight = false));
+    }
+  }
+
   /// The poll body: refresh live captures + schedules only. A membership
   /// change (a capture started or finished, a schedule fired) escalates to a
   /// full [_loadAll] so the library picks up the new file too.
@@ -384,6 +451,28 @@ class _RecordingsPageState extends State<RecordingsPage>
     await _loadAll();
   }
 
+  /// Auto-delete recordings are what the storage budget removes, oldest
+  /// first, when a recording would otherwise run out of room.
+  Future<void> _toggleAutoDelete(RecordingLibraryEntry entry) async {
+    final ok = await LiveRecordingService.setAutoDelete(
+      entry.uri,
+      !entry.autoDelete,
+    );
+    if (!mounted) return;
+    ScaffoldMessenger.of(context).showSnackBar(
+      SnackBar(
+        content: Text(
+          !ok
+              ? "Couldn't change auto-delete"
+              : entry.autoDelete
+              ? 'Kept — no longer deleted to make room'
+              : 'Will be deleted when a recording needs the room',
+        ),
+      ),
+    );
+    await _loadAll();
+  }
+
   Future<void> _openFolder() async {
     final dir = await DesktopRecordingService.recordingsDir();
     try {
@@ -518,11 +607,14 @@ class _RecordingsPageState extends State<RecordingsPage>
       return;
     }
     final message = result.ok
-        ? (startsImmediately
-              ? 'Recording starts in a few seconds'
-              : 'Recording scheduled')
+        ? (result.storageWarning ??
+              (startsImmediately
+                  ? 'Recording starts in a few seconds'
+                  : 'Recording scheduled'))
         : switch (result.errorCode) {
             'duplicate' => 'Already scheduled at that time',
+            'storage' =>
+              result.errorMessage ?? 'Not enough storage for this recording',
             'overlap' =>
               'Would exceed the simultaneous-recordings limit — raise it '
                   'in IPTV settings or pick another slot',
@@ -847,7 +939,8 @@ class _RecordingsPageState extends State<RecordingsPage>
                                 rec.startedAtMs,
                               ),
                               now: _now,
-                              bytesOf: () => rec.bytes,
+                              bytesOf: () =>
+                                  _frameBytes[rec.taskId] ?? rec.bytes,
                               fmtBytes: _fmtBytes,
                               fmtElapsed: _fmtElapsed,
                               autofocus:
@@ -894,7 +987,8 @@ class _RecordingsPageState extends State<RecordingsPage>
                           label: 'LIBRARY',
                           chip: _library.isEmpty
                               ? null
-                              : '${_library.length} · ${_fmtBytes(totalBytes)}',
+                              : '${_library.length}${_libraryHasMore ? '+' : ''} · '
+                                    '${_fmtBytes(totalBytes)}',
                           chipColor: Colors.white38,
                           action: _desktop
                               ? _HubIconButton(
@@ -919,6 +1013,12 @@ class _RecordingsPageState extends State<RecordingsPage>
                           for (final (i, entry) in _library.indexed)
                             Builder(
                               builder: (context) {
+                                if (i == _library.length - 1 &&
+                                    _libraryHasMore) {
+                                  WidgetsBinding.instance.addPostFrameCallback(
+                                    (_) => unawaited(_loadMoreLibrary()),
+                                  );
+                                }
                                 final display = _displayFor(entry);
                                 return _LibraryRow(
                                   focusNode: i == 0 ? _firstLibraryFocus : null,
@@ -945,6 +1045,12 @@ class _RecordingsPageState extends State<RecordingsPage>
                                       i == 0,
                                   onPlay: () => unawaited(_play(entry)),
                                   onDelete: () => unawaited(_delete(entry)),
+                                  autoDelete: entry.autoDelete,
+                                  onToggleAutoDelete:
+                                      _isAndroid &&
+                                          entry.uri.startsWith('content://')
+                                      ? () => unawaited(_toggleAutoDelete(entry))
+                                      : null,
                                 );
                               },
                             ),
@@ -1429,6 +1535,10 @@ class _LibraryRow extends StatefulWidget {
   final VoidCallback onPlay;
   final VoidCallback onDelete;
 
+  /// Null hides the auto-delete toggle (desktop, pre-Q files).
+  final VoidCallback? onToggleAutoDelete;
+  final bool autoDelete;
+
   const _LibraryRow({
     this.focusNode,
     required this.title,
@@ -1437,6 +1547,8 @@ class _LibraryRow extends StatefulWidget {
     required this.autofocus,
     required this.onPlay,
     required this.onDelete,
+    this.onToggleAutoDelete,
+    this.autoDelete = false,
   });
 
   @override
@@ -1539,6 +1651,16 @@ class _LibraryRowState extends State<_LibraryRow> {
               ),
             ),
           ),
+          if (widget.onToggleAutoDelete != null)
+            _RowIconButton(
+              icon: widget.autoDelete
+                  ? Icons.auto_delete_rounded
+                  : Icons.auto_delete_outlined,
+              tooltip: widget.autoDelete
+                  ? 'Auto-delete on — tap to keep'
+                  : 'Auto-delete when space is needed',
+              onPressed: widget.onToggleAutoDelete!,
+            ),
           _RowIconButton(
             icon: Icons.delete_outline_rounded,
             tooltip: 'Delete recording',
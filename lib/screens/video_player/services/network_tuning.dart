@@ -54,6 +54,16 @@ class NetworkTuning {
     'huge': 'Huge (~5 min read-ahead)',
   };
 
+  /// Android TV player only: how much of the next episode is buffered while
+  /// the current one plays (`nextPreload` in the launch payload). The
+  /// player also caps it at its memory budget.
+  static const Map<String, String> nextPreloadOptions = {
+    'off': 'Off',
+    'short': '15 seconds',
+    'standard': '30 seconds (default)',
+    'long': '1 minute',
+  };
+
   bool get isStandard => patience == standard && buffer == standard;
 
   static Future<NetworkTuning> load() async => NetworkTuning(
@@ -1952,12 +1952,15 @@ class IptvChannelSheetState extends State<IptvChannelSheet>
       return;
     }
     final message = result.ok
-        ? (airsNow
-              ? 'Recording starts in a few seconds'
-              : 'Recording scheduled')
+        ? (result.storageWarning ??
+              (airsNow
+                  ? 'Recording starts in a few seconds'
+                  : 'Recording scheduled'))
         : switch (result.errorCode) {
             'duplicate' => 'Already scheduled',
             'overlap' => 'Overlaps another scheduled recording',
+            'storage' =>
+              result.errorMessage ?? 'Not enough storage for this recording',
             'bad_time' => 'This programme is already over',
             _ => "Couldn't schedule recording",
           };
@@ -1,5 +1,7 @@
 import 'dart:async';
+import 'dart:convert';
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 
@@ -20,6 +22,38 @@ class AndroidStartResult {
   bool get ok => taskId != null;
 }
 
+/// One live native task in a [NativeProgressFrame].
+class NativeTaskProgress {
+  final String taskId;
+  final String ownerProfileId;
+  final bool isRecording;
+  final int bytes;
+
+  /// -1 when unknown (always, for recordings).
+  final int total;
+  final int rateBps;
+  final bool throttled;
+
+  const NativeTaskProgress({
+    required this.taskId,
+    required this.ownerProfileId,
+    required this.isRecording,
+    required this.bytes,
+    required this.total,
+    required this.rateBps,
+    required this.throttled,
+  });
+}
+
+/// One coalesced progress tick: every live native download and engine
+/// recording. A task missing from a frame is no longer live.
+class NativeProgressFrame {
+  final int timestampMs;
+  final List<NativeTaskProgress> tasks;
+
+  const NativeProgressFrame({required this.timestampMs, required this.tasks});
+}
+
 class AndroidNativeDownloader {
   static const MethodChannel _channel = MethodChannel(
     'com.debrify.app/downloader',
@@ -29,15 +63,117 @@ class AndroidNativeDownloader {
     'com.debrify.app/downloader_events',
   );
 
+  static Stream<dynamic>? _rawStream;
   static Stream<Map<String, dynamic>>? _eventStream;
+  static Stream<NativeProgressFrame>? _frameStream;
+
+  // One platform stream carries both lifecycle maps and binary progress
+  // frames; native only ticks frames while something here listens. Every
+  // frame's ID table is kept on the way through, whoever is listening: native
+  // sends it once per membership change, and a [progressFrames] subscriber
+  // that attaches after it went by to an [events] one still needs it.
+  static Stream<dynamic> get _raw =>
+      _rawStream ??= _events.receiveBroadcastStream().map((e) {
+        if (e is Uint8List) _noteFrameTable(e);
+        return e;
+      });
 
   static Stream<Map<String, dynamic>> get events {
-    _eventStream ??= _events.receiveBroadcastStream().map(
-      (e) => Map<String, dynamic>.from(e as Map),
-    );
+    _eventStream ??= _raw
+        .where((e) => e is Map)
+        .map((e) => Map<String, dynamic>.from(e as Map));
     return _eventStream!;
   }
 
+  /// Progress of every live native download and recording, batched into one
+  /// frame per tick (see ProgressFrames.kt for the layout).
+  static Stream<NativeProgressFrame> get progressFrames {
+    _frameStream ??= _raw
+        .where((e) => e is Uint8List)
+        .map((e) => _decodeFrame(e as Uint8List))
+        .where((f) => f != null)
+        .cast<NativeProgressFrame>();
+    return _frameStream!;
+  }
+
+  // The ID table is only sent when membership changes; frames in between
+  // index into the last one (see [_raw]).
+  static int _frameGeneration = -1;
+  static List<String> _frameIds = const [];
+  static List<String> _frameOwners = const [];
+
+  // Header offsets: version, hasTable, generation, timestamp, count.
+  static const int _hasTableAt = 1;
+  static const int _generationAt = 2;
+  static const int _timestampAt = 6;
+  static const int _countAt = 14;
+  static const int _arraysAt = 18;
+
+  /// Keep [raw]'s ID table, if it carries one.
+  static void _noteFrameTable(Uint8List raw) {
+    try {
+      final data = ByteData.sublistView(raw);
+      if (data.getInt8(0) != 1 || data.getInt8(_hasTableAt) != 1) return;
+      final n = data.getInt32(_countAt);
+      // Past the kinds, bytes, totals, rates and flags arrays.
+      var o = _arraysAt + n + 3 * 8 * n + n;
+      String readString() {
+        final len = data.getUint16(o);
+        o += 2;
+        final s = utf8.decode(Uint8List.sublistView(raw, o, o + len));
+        o += len;
+        return s;
+      }
+
+      final ids = <String>[];
+      final owners = <String>[];
+      for (var i = 0; i < n; i++) {
+        ids.add(readString());
+        owners.add(readString());
+      }
+      _frameIds = ids;
+      _frameOwners = owners;
+      _frameGeneration = data.getInt32(_generationAt);
+    } catch (_) {
+      // A torn table: frames of its generation are dropped until the next.
+    }
+  }
+
+  static NativeProgressFrame? _decodeFrame(Uint8List raw) {
+    try {
+      final data = ByteData.sublistView(raw);
+      if (data.getInt8(0) != 1) return null;
+      final generation = data.getInt32(_generationAt);
+      final timestampMs = data.getInt64(_timestampAt);
+      final n = data.getInt32(_countAt);
+      if (generation != _frameGeneration || _frameIds.length != n) {
+        return null;
+      }
+      final kindsAt = _arraysAt;
+      final bytesAt = kindsAt + n;
+      final totalsAt = bytesAt + 8 * n;
+      final ratesAt = totalsAt + 8 * n;
+      final flagsAt = ratesAt + 8 * n;
+      return NativeProgressFrame(
+        timestampMs: timestampMs,
+        tasks: [
+          for (var i = 0; i < n; i++)
+            NativeTaskProgress(
+              taskId: _frameIds[i],
+              ownerProfileId: _frameOwners[i],
+              isRecording: data.getInt8(kindsAt + i) == 1,
+              bytes: data.getInt64(bytesAt + 8 * i),
+              total: data.getInt64(totalsAt + 8 * i),
+              rateBps: data.getInt64(ratesAt + 8 * i),
+              throttled: data.getInt8(flagsAt + i) & 1 != 0,
+            ),
+        ],
+      );
+    } catch (_) {
+      return null;
+    }
+  }
+
   static Future<AndroidStartResult> start({
     required String url,
     String? taskId,
@@ -48,6 +184,12 @@ class AndroidNativeDownloader {
     String? treeUri,
     String? connectionResourceId,
     int? resourceAuthorizationRevision,
+    // Native scheduler order when more tasks are started than may run at
+    // once; higher starts first. Null keeps a restarted task's priority.
+    int? priority,
+    // `imdb:tt…` or `imdb:tt…:season:episode`: lets the player find the
+    // finished file for the same title even when it streams another link.
+    String? contentId,
   }) async {
     if (!Platform.isAndroid) {
       return const AndroidStartResult(errorCode: 'not_android');
@@ -87,6 +229,8 @@ class AndroidNativeDownloader {
               'connectionResourceId': connectionResourceId,
             if (resourceAuthorizationRevision != null)
               'resourceAuthorizationRevision': resourceAuthorizationRevision,
+            if (priority != null) 'priority': priority,
+            if (contentId != null) 'contentId': contentId,
           });
       if (id == null) {
         return const AndroidStartResult(errorCode: 'no_task_id');
@@ -682,8 +682,9 @@ class AndroidTvPlayerBridge {
         case 'requestIptvStreamUrls':
           // Native IPTV player hit a Stremio-addon channel (its `url` is a
           // stremio-tv:// key, not a stream). Resolve the ordered candidate
-          // list; the native side tries them serially. Stateless — no
-          // per-session provider, the resolver service holds the caches.
+          // list; the native side races the top few, then tries them in the
+          // order that race ranked. Stateless — no per-session provider, the
+          // resolver service holds the caches.
           final iptvArgs = call.arguments;
           String? iptvChannelUrl;
           String? iptvChannelName;
@@ -705,10 +706,17 @@ class AndroidTvPlayerBridge {
             // (addon unreachable vs. no streams) for the native side to show.
             final candidates = await StremioIptvService.instance
                 .resolveCandidates(iptvChannelUrl, refreshIfEmpty: true);
+            // A link that played here lately leads the list; the native side
+            // starts it directly instead of racing the top links.
+            final winner = StremioIptvService.instance.cachedWinner(
+              iptvChannelUrl,
+            );
             return {
               'candidates': [
                 for (final c in candidates) {'url': c.url, 'label': c.label},
               ],
+              'provenWinner':
+                  candidates.isNotEmpty && candidates.first.url == winner,
               if (candidates.isEmpty)
                 'message': StremioIptvService.instance.unplayableMessage(
                   iptvChannelUrl,
@@ -1449,6 +1457,10 @@ class AndroidTvPlayerBridge {
         if (buffer != 'standard') {
           payloadWithFont['networkBuffer'] = buffer;
         }
+        final nextPreload = await StorageService.getNextEpisodePreload();
+        if (nextPreload != 'standard') {
+          payloadWithFont['nextPreload'] = nextPreload;
+        }
         // Android TV IPTV decoder preference ('auto' = platform order
         // untouched, so it is only sent when the user picked otherwise).
         final iptvDecoder = await StorageService.getIptvDecoderMode();
@@ -90,6 +90,7 @@ class DownloadService {
   bool _profileViewWasStarted = false;
   bool _profileSwitchInProgress = false;
   StreamSubscription<Map<String, dynamic>>? _androidEventsSub;
+  StreamSubscription<NativeProgressFrame>? _androidFramesSub;
   bool _batteryCheckShown = false;
   ConnectivityResult _net = ConnectivityResult.wifi; // default optimistic
   StreamSubscription<List<ConnectivityResult>>? _netSub;
@@ -490,6 +491,50 @@ class DownloadService {
     }
   }
 
+  void _onNativeProgressFrame(NativeProgressFrame frame) {
+    if (!_profileViewAttached) return;
+    for (final p in frame.tasks) {
+      if (p.isRecording) continue;
+      final taskId = p.taskId;
+      if (taskId.startsWith(AndroidNativeDownloader.updateTaskPrefix)) {
+        continue;
+      }
+      if (ProfileRuntime.isProfileCommitted) {
+        if (p.ownerProfileId != _activeOwnerProfileId) continue;
+        if (_resolveRecordIdForTaskId(taskId) == null) continue;
+      }
+      // Frames carry ids, not names: reuse what 'started' recorded. A frame
+      // that beats it is dropped rather than saved as a nameless record;
+      // the next one after 'started' carries the same totals.
+      final task = AndroidDownloadHistory.instance.byId(taskId)?.task;
+      if (task is! DownloadTask) continue;
+      final total = p.total;
+      final bytes = p.bytes;
+      // Fresh progress past the last-error baseline means the refreshed
+      // link genuinely works — only then reset the refresh budget.
+      final baseline = _bytesAtLastError[taskId];
+      if (baseline != null && bytes > baseline + _refreshResetFreshBytes) {
+        _linkRefreshAttempts.remove(taskId);
+        _bytesAtLastError.remove(taskId);
+      }
+      final prog = total > 0 ? (bytes / total).clamp(0.0, 1.0) : 0.0;
+      AndroidDownloadHistory.instance.upsert(
+        task,
+        TaskStatus.running,
+        prog,
+        expectedFileSize: total,
+      );
+      _progressController.add(TaskProgressUpdate(task, prog));
+      _bytesController.add(
+        AndroidBytesProgress(
+          taskId: taskId,
+          bytes: bytes,
+          total: total > 0 ? total : -1,
+        ),
+      );
+    }
+  }
+
   String? _resolveRecordIdForTaskId(String taskId) {
     // If the taskId itself is a known record key (queued placeholder), return it
     if (_records.containsKey(taskId)) return taskId;
@@ -664,6 +709,25 @@ class DownloadService {
     return headers;
   }
 
+  /// Title identity for the native local-copy index (`imdb:tt…[:s:e]`),
+  /// when the download's meta names one.
+  String? _contentIdFromMeta(String? meta) {
+    if (meta == null || meta.isEmpty) return null;
+    try {
+      final m = jsonDecode(meta);
+      if (m is! Map) return null;
+      final imdbId = (m['imdbId'] ?? '').toString().trim().toLowerCase();
+      if (!RegExp(r'^tt\d+$').hasMatch(imdbId)) return null;
+      final season = int.tryParse('${m['season'] ?? ''}');
+      final episode = int.tryParse('${m['episode'] ?? ''}');
+      return season != null && episode != null
+          ? 'imdb:$imdbId:$season:$episode'
+          : 'imdb:$imdbId';
+    } catch (_) {
+      return null;
+    }
+  }
+
   String _computeContentKey(
     String? meta,
     String url,
@@ -1496,6 +1560,11 @@ class DownloadService {
 
     if (Platform.isAndroid) {
       await AndroidDownloadHistory.instance.initialize();
+      // Progress comes as one binary frame per tick covering every live
+      // task; [events] below only carries lifecycle transitions.
+      _androidFramesSub = AndroidNativeDownloader.progressFrames.listen(
+        _onNativeProgressFrame,
+      );
       _androidEventsSub = AndroidNativeDownloader.events.listen((event) async {
         if (!_profileViewAttached) return;
         final eventOwner = event['ownerProfileId']?.toString();
@@ -1534,33 +1603,6 @@ class DownloadService {
               });
             }
             break;
-          case 'progress':
-            final total = (event['total'] as num?)?.toInt() ?? 0;
-            final bytes = (event['bytes'] as num?)?.toInt() ?? 0;
-            // Fresh progress past the last-error baseline means the refreshed
-            // link genuinely works — only then reset the refresh budget.
-            final baseline = _bytesAtLastError[taskId];
-            if (baseline != null &&
-                bytes > baseline + _refreshResetFreshBytes) {
-              _linkRefreshAttempts.remove(taskId);
-              _bytesAtLastError.remove(taskId);
-            }
-            final prog = total > 0 ? (bytes / total).clamp(0.0, 1.0) : 0.0;
-            AndroidDownloadHistory.instance.upsert(
-              task,
-              TaskStatus.running,
-              prog,
-              expectedFileSize: total,
-            );
-            _progressController.add(TaskProgressUpdate(task, prog));
-            _bytesController.add(
-              AndroidBytesProgress(
-                taskId: taskId,
-                bytes: bytes,
-                total: total > 0 ? total : -1,
-              ),
-            );
-            break;
           case 'paused':
             AndroidDownloadHistory.instance.upsert(
               task,
@@ -1615,7 +1657,15 @@ class DownloadService {
             if (uri.isNotEmpty) {
               _lastFileByTaskId[taskId] = (uri, mime);
             }
-            if (recId != null) _upsertRecord(recId, {'state': 'complete'});
+            // Whole-file CRC-32C computed natively while writing; absent for
+            // partials started before chunk checksums existed.
+            final digest = event['digest'] as String?;
+            if (recId != null) {
+              _upsertRecord(recId, {
+                'state': 'complete',
+                if (digest != null) 'digest': digest,
+              });
+            }
             if (ProfileRuntime.isProfileCommitted) {
               unawaited(() async {
                 await DeviceJobStore.markTerminal(
@@ -3032,6 +3082,7 @@ class DownloadService {
       treeUri: rec?['treeUri'] as String?,
       connectionResourceId: adoptResourceId,
       resourceAuthorizationRevision: adoptRevision,
+      contentId: _contentIdFromMeta(rec?['meta'] as String?),
     );
     if (!res.ok) {
       debugPrint('DL ADOPT: start failed code=${res.errorCode}');
@@ -3700,6 +3751,7 @@ class DownloadService {
             treeUri: p.treeUri,
             connectionResourceId: p.connectionResourceId,
             resourceAuthorizationRevision: p.resourceAuthorizationRevision,
+            contentId: _contentIdFromMeta(p.meta),
           );
           if (!startRes.ok) {
             if (startRes.errorCode == 'fgs_not_allowed') {
@@ -133,6 +133,10 @@ class RecordingLibraryEntry {
   final bool interrupted;
   final int? interruptedAtMs;
 
+  /// The user lets the storage budget delete this one (oldest first) when a
+  /// recording needs the room. Android Q+ only.
+  final bool autoDelete;
+
   const RecordingLibraryEntry({
     required this.taskId,
     required this.uri,
@@ -145,6 +149,7 @@ class RecordingLibraryEntry {
     this.ownershipState = 'unassigned',
     this.interrupted = false,
     this.interruptedAtMs,
+    this.autoDelete = false,
   });
 
   bool get isUnassigned =>
@@ -165,6 +170,7 @@ class RecordingLibraryEntry {
           (map['ownerProfileId'] == null ? 'unassigned' : 'assigned'),
       interrupted: map['interrupted'] == true,
       interruptedAtMs: (map['interruptedAtMs'] as num?)?.toInt(),
+      autoDelete: map['autoDelete'] == true,
     );
   }
 }
@@ -191,12 +197,17 @@ class RecordingCallResult {
   /// Schedule calls only: false when exact alarms aren't granted, so the
   /// start time may slip by up to ~10 minutes.
   final bool exact;
+
+  /// Schedule calls only: set when the forecast says the recording needs
+  /// auto-delete recordings to go (or storage may run out) — say so.
+  final String? storageWarning;
   final String? errorCode;
   final String? errorMessage;
 
   const RecordingCallResult({
     this.id,
     this.exact = true,
+    this.storageWarning,
     this.errorCode,
     this.errorMessage,
   });
@@ -268,6 +279,29 @@ class LiveRecordingService {
     maxConcurrentCached = clamped;
   }
 
+  static const String _prerollPref = 'recording_preroll_seconds';
+  static const int prerollDefaultSeconds = 30;
+  static const int prerollCeilingSeconds = 120;
+
+  /// How early a scheduled recording connects to its channel (0..
+  /// [prerollCeilingSeconds], default 30). The lead is held in memory and
+  /// never saved — the file still starts on the keyframe just before the
+  /// programme — so it only costs a connection held a little longer.
+  /// Android-only; Kotlin reads the same key from device prefs
+  /// (`RecordingAlarmReceiver.prerollMs`).
+  static Future<int> prerollSeconds() async {
+    final prefs = await DevicePreferences.instance();
+    return (prefs.getInt(_prerollPref) ?? prerollDefaultSeconds).clamp(
+      0,
+      prerollCeilingSeconds,
+    );
+  }
+
+  static Future<void> setPrerollSeconds(int value) async {
+    final prefs = await DevicePreferences.instance();
+    await prefs.setInt(_prerollPref, value.clamp(0, prerollCeilingSeconds));
+  }
+
   // ── URL classification (mirrors the Kotlin helpers; keep in sync) ─────────
 
   /// Segmented (adaptive) stream by URL shape — HLS/DASH/SmoothStreaming.
@@ -585,11 +619,16 @@ class LiveRecordingService {
 
   // ── Library ───────────────────────────────────────────────────────────────
 
-  /// Finished recordings on this device: the native store's `done` entries
-  /// merged with an on-disk scan of the recordings folder (which also finds
-  /// files the store no longer indexes). Android only — desktop lists its
-  /// folder in [DesktopRecordingService].
-  static Future<List<RecordingLibraryEntry>> queryLibrary() async {
+  /// Finished recordings on this device, newest first: the native store's
+  /// `done` entries merged with the native library index of the recordings
+  /// folder (which also finds files the store no longer indexes). [offset]
+  /// and [limit] page the list; a page past the first slices the listing
+  /// the last offset-0 call took, so start from 0. Android only — desktop
+  /// lists its folder in [DesktopRecordingService].
+  static Future<List<RecordingLibraryEntry>> queryLibrary({
+    int offset = 0,
+    int? limit,
+  }) async {
     if (!Platform.isAndroid) return const [];
     try {
       final committed = ProfileRuntime.isProfileCommitted;
@@ -609,6 +648,8 @@ class LiveRecordingService {
         <String, Object?>{
           if (capturedScope != null) 'ownerProfileId': capturedScope.profileId,
           if (mayRecoverUnassigned) 'includeUnassigned': true,
+          if (offset > 0) 'offset': offset,
+          if (limit != null) 'limit': limit,
         },
       );
       if (raw == null) return const [];
@@ -683,6 +724,15 @@ class LiveRecordingService {
     return deleted;
   }
 
+  /// Let the storage budget delete [uri] when a recording needs the room
+  /// (oldest marked first), or stop it. False when the file isn't in the
+  /// native library index yet.
+  static Future<bool> setAutoDelete(String uri, bool autoDelete) =>
+      _invokeBool('setRecordingAutoDelete', {
+        'uri': uri,
+        'autoDelete': autoDelete,
+      });
+
   // ── Schedules ─────────────────────────────────────────────────────────────
 
   static Future<RecordingCallResult> schedule({
@@ -735,6 +785,7 @@ class LiveRecordingService {
       final result = RecordingCallResult(
         id: raw['id']?.toString(),
         exact: raw['exact'] == true,
+        storageWarning: raw['storageWarning']?.toString(),
       );
       if (result.ok) schedulesRevision.value++;
       if (result.id != null && authorization != null) {
@@ -44,6 +44,8 @@ class ProfileCreationService {
     'subtitle_auto_sync_enabled',
     'iptv_player_guide_style',
     'recording_engine_enabled',
+    'iptv_timeshift_enabled',
+    'iptv_zap_prewarm_neighbours',
     'tv_hero_artwork_quality',
   };
 
@@ -44,6 +44,8 @@ class ProfilePreferences implements SharedPreferences {
     'tv_ui_scale_percent',
     'tv_low_res_render',
     'recording_engine_enabled',
+    'iptv_timeshift_enabled',
+    'iptv_zap_prewarm_neighbours',
     'iptv_player_guide_style',
     'subtitle_auto_sync_enabled',
     'player_default_aspect_index_tv',
@@ -392,6 +394,7 @@ class DevicePreferences {
     'support_remote_config_cache_v1',
     'dismissed_donation_campaign_ids_v1',
     'recording_max_concurrent',
+    'recording_preroll_seconds',
     'recording_battery_nudge_dismissed_at',
     'iptv_ios_recording_notice_dismissed',
     'pending_download_queue_v1',
@@ -15,6 +15,7 @@ abstract final class SanitizedProfilePreferences {
       case 'player_system_audio_effects':
       case 'subtitle_auto_sync_enabled':
       case 'recording_engine_enabled':
+      case 'iptv_timeshift_enabled':
       case 'home_hero_trailer_enabled':
       case 'home_cw_hold_to_quick_play':
       case 'detail_trailer_autoplay_enabled':
@@ -46,6 +47,8 @@ abstract final class SanitizedProfilePreferences {
         return _boundedInt(value, 0, 9);
       case 'subtitle_elevation_index':
         return _boundedInt(value, 0, 4);
+      case 'iptv_zap_prewarm_neighbours':
+        return _boundedInt(value, 0, 2);
       case 'app_theme':
         return value is String && _appThemes.contains(value);
       case 'detail_theme':
@@ -319,6 +319,7 @@ class StorageService {
   static const String _networkConnectPatienceKey = 'network_connect_patience';
   static const String _iptvDecoderModeKey = 'iptv_decoder_mode';
   static const String _networkBufferSizeKey = 'network_buffer_size';
+  static const String _nextEpisodePreloadKey = 'next_episode_preload';
   static const String _updateAutoCheckEnabledKey = 'update_auto_check_enabled';
   static const String _updateIgnoredVersionKey = 'update_ignored_version';
 
@@ -1431,6 +1432,39 @@ class StorageService {
     );
   }
 
+  static const String _iptvTimeshiftEnabledKey = 'iptv_timeshift_enabled';
+
+  /// Pause and rewind for live channels in the native TV player: the channel
+  /// spools to a window in the app cache and plays from there. Default OFF —
+  /// the window takes up to a quarter of the free cache space. The player
+  /// reads `flutter.iptv_timeshift_enabled` once at launch.
+  static Future<bool> getIptvTimeshiftEnabled() async {
+    final prefs = await ProfilePreferences.instance();
+    return prefs.getBool(_iptvTimeshiftEnabledKey) ?? false;
+  }
+
+  static Future<void> setIptvTimeshiftEnabled(bool enabled) async {
+    final prefs = await ProfilePreferences.instance();
+    await prefs.setBool(_iptvTimeshiftEnabledKey, enabled);
+  }
+
+  static const String _iptvZapPrewarmKey = 'iptv_zap_prewarm_neighbours';
+
+  /// How many live channels either side of the one playing the native TV
+  /// player keeps connected, so CH +/- starts on bytes already buffered.
+  /// Default 0 (off): every warm channel is another provider connection,
+  /// and most IPTV accounts allow only one. The player reads
+  /// `flutter.iptv_zap_prewarm_neighbours` once at launch.
+  static Future<int> getIptvZapPrewarmNeighbours() async {
+    final prefs = await ProfilePreferences.instance();
+    return (prefs.getInt(_iptvZapPrewarmKey) ?? 0).clamp(0, 2);
+  }
+
+  static Future<void> setIptvZapPrewarmNeighbours(int neighbours) async {
+    final prefs = await ProfilePreferences.instance();
+    await prefs.setInt(_iptvZapPrewarmKey, neighbours.clamp(0, 2));
+  }
+
   static const String _discoverLayoutKey = 'discover_layout';
 
   /// TV Discover layout: 'stage' (the focused title full-bleed with one bottom
@@ -5765,6 +5799,18 @@ class StorageService {
     await prefs.setString(_networkBufferSizeKey, value);
   }
 
+  /// 'off' | 'short' | 'standard' | 'long': how far the Android TV player
+  /// buffers the next episode ahead of its turn. Standard = 30 seconds.
+  static Future<String> getNextEpisodePreload() async {
+    final prefs = await ProfilePreferences.instance();
+    return prefs.getString(_nextEpisodePreloadKey) ?? 'standard';
+  }
+
+  static Future<void> setNextEpisodePreload(String value) async {
+    final prefs = await ProfilePreferences.instance();
+    await prefs.setString(_nextEpisodePreloadKey, value);
+  }
+
   static int _normalizeLocalCompletionThreshold(int value) {
     return localCompletionThresholdOptions.contains(value)
         ? value
@@ -4770,12 +4770,15 @@ class IptvResultsViewState extends State<IptvResultsView>
       return 'Allow "Alarms & reminders" for Debrify to schedule recordings';
     }
     return result.ok
-        ? (airsNow
-              ? 'Recording starts in a few seconds'
-              : 'Recording scheduled')
+        ? (result.storageWarning ??
+              (airsNow
+                  ? 'Recording starts in a few seconds'
+                  : 'Recording scheduled'))
         : switch (result.errorCode) {
             'duplicate' => 'Already scheduled',
             'overlap' => 'Overlaps another scheduled recording',
+            'storage' =>
+              result.errorMessage ?? 'Not enough storage for this recording',
             'bad_time' => 'This programme is already over',
             _ => "Couldn't schedule recording",
           };